@@ -0,0 +1,132 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Resources;
+import org.graylog2.grok.GrokPattern;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Access to the message corpora in {@code src/main/resources/corpus}. The corpora are checked in and never generated,
+ * so results of different runs and releases can be compared with each other.
+ */
+public final class Corpus {
+    public static final String SYSLOG_RFC3164 = "syslog-rfc3164.log";
+    public static final String SYSLOG_RFC5424 = "syslog-rfc5424.log";
+    public static final String GELF = "gelf.json";
+    public static final String ACCESS_LOG = "access.log";
+    public static final String GROK_PATTERNS = "grok-patterns";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private Corpus() {
+    }
+
+    /**
+     * @return the non-empty lines of the given corpus file
+     */
+    public static List<String> lines(String name) {
+        final List<String> lines;
+        try {
+            lines = Resources.readLines(Resources.getResource(Corpus.class, "/corpus/" + name), UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read corpus " + name, e);
+        }
+
+        final ImmutableList.Builder<String> result = ImmutableList.builder();
+        for (String line : lines) {
+            if (!line.trim().isEmpty()) {
+                result.add(line);
+            }
+        }
+        return result.build();
+    }
+
+    public static List<byte[]> payloads(String name) {
+        final ImmutableList.Builder<byte[]> result = ImmutableList.builder();
+        for (String line : lines(name)) {
+            result.add(line.getBytes(UTF_8));
+        }
+        return result.build();
+    }
+
+    public static Set<GrokPattern> grokPatterns() {
+        final ImmutableSet.Builder<GrokPattern> result = ImmutableSet.builder();
+        for (String line : lines(GROK_PATTERNS)) {
+            final int separator = line.indexOf(' ');
+            final GrokPattern pattern = new GrokPattern();
+            pattern.name = line.substring(0, separator);
+            pattern.pattern = line.substring(separator + 1);
+            result.add(pattern);
+        }
+        return result.build();
+    }
+
+    /**
+     * Builds one message per entry of the GELF corpus, without going through the codec. The message IDs are random,
+     * everything else is the same for every call.
+     */
+    public static List<Message> messages() {
+        final ImmutableList.Builder<Message> result = ImmutableList.builder();
+        for (String line : lines(GELF)) {
+            result.add(toMessage(line));
+        }
+        return result.build();
+    }
+
+    private static Message toMessage(String json) {
+        final JsonNode node;
+        try {
+            node = OBJECT_MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid GELF corpus entry " + json, e);
+        }
+
+        final long millis = (long) (node.get("timestamp").asDouble() * 1000);
+        final Message message = new Message(node.get("short_message").asText(),
+                node.get("host").asText(),
+                new DateTime(millis, DateTimeZone.UTC));
+
+        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            final String key = field.getKey();
+            final JsonNode value = field.getValue();
+            if ("full_message".equals(key) || "level".equals(key)) {
+                message.addField(key, value.isNumber() ? value.numberValue() : value.asText());
+            } else if (key.startsWith("_")) {
+                message.addField(key.substring(1), value.isNumber() ? value.numberValue() : value.asText());
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.codecs;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.inputs.codecs.GelfChunkAggregator;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reassembly of chunked GELF messages. One operation adds all chunks of one message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GelfChunkAggregatorBenchmark {
+    private static final byte[] CHUNK_MAGIC_BYTES = new byte[]{0x1e, 0x0f};
+    // the default chunk size of most GELF UDP clients
+    private static final int CHUNK_SIZE = 1420;
+    private static final int MESSAGES = 64;
+
+    @Param({"2", "8", "32"})
+    public int chunks;
+
+    private ScheduledExecutorService scheduler;
+    private GelfChunkAggregator aggregator;
+    private byte[][][] messages;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        aggregator = new GelfChunkAggregator(scheduler, new MetricRegistry());
+
+        final Random random = new Random(42L);
+        messages = new byte[MESSAGES][][];
+        for (int i = 0; i < MESSAGES; i++) {
+            final byte[] messageId = new byte[8];
+            random.nextBytes(messageId);
+            messages[i] = createChunks(messageId, random);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public CodecAggregator.Result addChunks() {
+        final byte[][] message = messages[next];
+        next = (next + 1) % messages.length;
+
+        CodecAggregator.Result result = null;
+        for (byte[] chunk : message) {
+            result = aggregator.addChunk(ChannelBuffers.wrappedBuffer(chunk));
+        }
+        return result;
+    }
+
+    private byte[][] createChunks(byte[] messageId, Random random) {
+        final byte[][] result = new byte[chunks][];
+        for (int sequenceNumber = 0; sequenceNumber < chunks; sequenceNumber++) {
+            final byte[] payload = new byte[CHUNK_SIZE];
+            random.nextBytes(payload);
+
+            final ChannelBuffer chunk = ChannelBuffers.copiedBuffer(
+                    CHUNK_MAGIC_BYTES,
+                    messageId,
+                    new byte[]{(byte) sequenceNumber, (byte) chunks},
+                    payload);
+            result[sequenceNumber] = chunk.array();
+        }
+        return result;
+    }
+}
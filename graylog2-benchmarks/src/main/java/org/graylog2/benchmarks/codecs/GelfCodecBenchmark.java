@@ -0,0 +1,107 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.codecs;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.benchmarks.Corpus;
+import org.graylog2.inputs.codecs.GelfChunkAggregator;
+import org.graylog2.inputs.codecs.GelfCodec;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GelfCodecBenchmark {
+    public enum Compression {
+        NONE, GZIP, ZLIB
+    }
+
+    @Param({"NONE", "GZIP", "ZLIB"})
+    public Compression compression;
+
+    private ScheduledExecutorService scheduler;
+    private GelfCodec codec;
+    private RawMessage[] messages;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        final GelfChunkAggregator aggregator = new GelfChunkAggregator(scheduler, new MetricRegistry());
+        codec = new GelfCodec(new Configuration(Collections.<String, Object>emptyMap()), aggregator);
+
+        final List<byte[]> payloads = Corpus.payloads(Corpus.GELF);
+        final InetSocketAddress remoteAddress = new InetSocketAddress("127.0.0.1", 12201);
+        messages = new RawMessage[payloads.size()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new RawMessage(compress(payloads.get(i)), remoteAddress);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public Message decode() {
+        final RawMessage rawMessage = messages[next];
+        next = (next + 1) % messages.length;
+        return codec.decode(rawMessage);
+    }
+
+    private byte[] compress(byte[] payload) throws IOException {
+        if (compression == Compression.NONE) {
+            return payload;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = compression == Compression.GZIP ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            out.write(payload);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.codecs;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.benchmarks.Corpus;
+import org.graylog2.inputs.codecs.SyslogCodec;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyslogCodecBenchmark {
+    @Param({Corpus.SYSLOG_RFC3164, Corpus.SYSLOG_RFC5424})
+    public String corpus;
+
+    @Param({"false", "true"})
+    public boolean expandStructuredData;
+
+    private SyslogCodec codec;
+    private RawMessage[] messages;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final Configuration configuration = new Configuration(ImmutableMap.<String, Object>of(
+                SyslogCodec.CK_EXPAND_STRUCTURED_DATA, expandStructuredData,
+                SyslogCodec.CK_STORE_FULL_MESSAGE, true));
+        codec = new SyslogCodec(configuration, new MetricRegistry());
+
+        final List<byte[]> payloads = Corpus.payloads(corpus);
+        // a resolved address, reverse lookups would dominate the measurement
+        final InetSocketAddress remoteAddress = new InetSocketAddress("127.0.0.1", 514);
+        messages = new RawMessage[payloads.size()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new RawMessage(payloads.get(i), remoteAddress);
+        }
+    }
+
+    @Benchmark
+    public Message decode() {
+        final RawMessage rawMessage = messages[next];
+        next = (next + 1) % messages.length;
+        return codec.decode(rawMessage);
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.journal;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.graylog2.benchmarks.Corpus;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.joda.time.Duration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes and reads batches of encoded raw messages to and from a journal in a temporary directory, with the default
+ * segment and flush settings. The scores are per batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaJournalBenchmark {
+    private static final int PREFILLED_ENTRIES = 100_000;
+
+    @Param({"1", "100", "1000"})
+    public int batchSize;
+
+    private File journalDirectory;
+    private ScheduledThreadPoolExecutor scheduler;
+    private KafkaJournal journal;
+    private List<Journal.Entry> batch;
+    private long readOffset = 0L;
+
+    @Setup
+    public void setUp() {
+        journalDirectory = Files.createTempDir();
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        journal = new KafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.gigabytes(5L),
+                Duration.standardHours(12),
+                1_000_000,
+                Duration.standardMinutes(1),
+                new MetricRegistry());
+        journal.startAsync().awaitRunning();
+
+        final List<byte[]> payloads = Corpus.payloads(Corpus.GELF);
+        final InetSocketAddress remoteAddress = new InetSocketAddress("127.0.0.1", 12201);
+        batch = Lists.newArrayListWithCapacity(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            final RawMessage rawMessage = new RawMessage(payloads.get(i % payloads.size()), remoteAddress);
+            batch.add(journal.createEntry(rawMessage.getIdBytes(), rawMessage.encode()));
+        }
+
+        for (int written = 0; written < PREFILLED_ENTRIES; written += batchSize) {
+            journal.write(batch);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.stopAsync().awaitTerminated();
+        scheduler.shutdown();
+        FileUtils.deleteDirectory(journalDirectory);
+    }
+
+    @Benchmark
+    public long write() {
+        return journal.write(batch);
+    }
+
+    @Benchmark
+    public List<Journal.JournalReadEntry> read() {
+        final List<Journal.JournalReadEntry> entries = journal.read(readOffset, batchSize);
+        readOffset += batchSize;
+        if (readOffset >= PREFILLED_ENTRIES) {
+            readOffset = 0L;
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.journal;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.graylog2.benchmarks.Corpus;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.NodeId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of raw messages as it happens when writing to and reading from the journal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RawMessageBenchmark {
+    @Param({Corpus.GELF, Corpus.SYSLOG_RFC5424})
+    public String corpus;
+
+    private RawMessage[] messages;
+    private byte[][] encoded;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final File tempDir = Files.createTempDir();
+        tempDir.deleteOnExit();
+        final NodeId nodeId = new NodeId(new File(tempDir, "node-id").getAbsolutePath());
+        // the same kind of codec configuration a GELF or syslog input would carry along
+        final Configuration codecConfig = new Configuration(ImmutableMap.<String, Object>of(
+                "bind_address", "0.0.0.0",
+                "port", 12201,
+                "recv_buffer_size", 1048576,
+                "override_source", ""));
+        final InetSocketAddress remoteAddress = new InetSocketAddress("127.0.0.1", 12201);
+
+        final List<byte[]> payloads = Corpus.payloads(corpus);
+        messages = new RawMessage[payloads.size()];
+        encoded = new byte[payloads.size()][];
+        for (int i = 0; i < messages.length; i++) {
+            final RawMessage rawMessage = new RawMessage(payloads.get(i), remoteAddress);
+            rawMessage.setCodecName("benchmark");
+            rawMessage.setCodecConfig(codecConfig);
+            rawMessage.addSourceNode("5574aa07e4b0a2a0b2b8a1b5", nodeId, true);
+            messages[i] = rawMessage;
+            encoded[i] = rawMessage.encode();
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        final RawMessage rawMessage = messages[next];
+        next = (next + 1) % messages.length;
+        return rawMessage.encode();
+    }
+
+    @Benchmark
+    public RawMessage decode() {
+        final byte[] bytes = encoded[next];
+        next = (next + 1) % encoded.length;
+        return RawMessage.decode(bytes, 42L);
+    }
+}
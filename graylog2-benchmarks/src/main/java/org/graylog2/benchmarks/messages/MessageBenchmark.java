@@ -0,0 +1,78 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.messages;
+
+import com.google.common.collect.ImmutableList;
+import org.bson.types.ObjectId;
+import org.graylog2.benchmarks.Corpus;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of messages into the documents sent to Elasticsearch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+    @Param({"0", "3"})
+    public int streams;
+
+    private Message[] messages;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final ImmutableList.Builder<Stream> routedStreams = ImmutableList.builder();
+        for (int i = 0; i < streams; i++) {
+            routedStreams.add(new StreamImpl(new ObjectId(), Collections.<String, Object>emptyMap(), null, null));
+        }
+
+        final List<Message> corpus = Corpus.messages();
+        messages = corpus.toArray(new Message[corpus.size()]);
+        for (Message message : messages) {
+            message.setStreams(routedStreams.build());
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> toElasticSearchObject() {
+        final Message message = messages[next];
+        next = (next + 1) % messages.length;
+        return message.toElasticSearchObject();
+    }
+}
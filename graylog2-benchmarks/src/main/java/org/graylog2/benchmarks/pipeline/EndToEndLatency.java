@@ -0,0 +1,62 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.pipeline;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.graylog2.plugin.Message;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the messages which left the pipeline and records their latency since the
+ * {@link GelfGeneratorTransport#SENT_AT_FIELD send time} set by the generator.
+ */
+class EndToEndLatency {
+    private static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.MINUTES.toNanos(10);
+
+    private final AtomicLong count = new AtomicLong();
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_VALUE, 3);
+
+    void record(Message message) {
+        final Object sentAt = message.getField(GelfGeneratorTransport.SENT_AT_FIELD);
+        if (sentAt instanceof Number) {
+            final long nanos = System.nanoTime() - ((Number) sentAt).longValue();
+            recorder.recordValue(Math.max(0L, Math.min(nanos, HIGHEST_TRACKABLE_VALUE)));
+        }
+        count.incrementAndGet();
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Discards the latencies recorded so far.
+     */
+    void reset() {
+        recorder.getIntervalHistogram();
+    }
+
+    /**
+     * @return the latencies in nanoseconds recorded since the last call or {@link #reset()}
+     */
+    Histogram intervalHistogram() {
+        return recorder.getIntervalHistogram();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.pipeline;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.RateLimiter;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.transports.GeneratorTransport;
+import org.graylog2.plugin.journal.RawMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Generates uncompressed GELF messages of a fixed shape at a given rate.
+ * <p/>
+ * Unlike the {@link org.graylog2.inputs.transports.RandomMessageTransport}, which can only sleep whole milliseconds
+ * between messages, the rate is enforced with a {@link RateLimiter}, so it can be set well above 1000 msg/s. Every
+ * message carries the {@link System#nanoTime()} it was created at in the {@value #SENT_AT_FIELD} field, the harness
+ * outputs use it to measure the end-to-end latency.
+ * <p/>
+ * The message bodies and additional fields are rendered up front, only the host, timestamp and send time are
+ * rendered per message to keep the generator from becoming the bottleneck.
+ */
+class GelfGeneratorTransport extends GeneratorTransport {
+    static final String SENT_AT_FIELD = "harness_sent_nanos";
+
+    private static final int VARIANTS = 1024;
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789 ".toCharArray();
+
+    private final RateLimiter rateLimiter;
+    private final int hosts;
+    private final String[] suffixes;
+    private final StringBuilder payload = new StringBuilder(256);
+    private long sequence = 0;
+
+    /**
+     * @param rate          messages per second, {@code 0} generates messages as fast as the pipeline accepts them
+     * @param messageLength length of the {@code short_message}
+     * @param fields        number of additional fields
+     * @param hosts         number of distinct {@code host} values
+     * @param seed          seed for the generated message contents
+     */
+    GelfGeneratorTransport(EventBus eventBus, double rate, int messageLength, int fields, int hosts, long seed) {
+        super(eventBus, new Configuration(Collections.<String, Object>emptyMap()));
+        this.rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+        this.hosts = hosts;
+        this.suffixes = renderSuffixes(new Random(seed), messageLength, fields);
+    }
+
+    static String host(int index) {
+        return "host-" + index;
+    }
+
+    @Override
+    protected RawMessage produceRawMessage(MessageInput input) {
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+
+        final long now = System.currentTimeMillis();
+        final long millis = now % 1000;
+        payload.setLength(0);
+        payload.append("{\"version\":\"1.1\",\"host\":\"").append(host((int) (sequence % hosts)))
+                .append("\",\"timestamp\":").append(now / 1000).append('.');
+        if (millis < 100) {
+            payload.append('0');
+        }
+        if (millis < 10) {
+            payload.append('0');
+        }
+        payload.append(millis)
+                .append(",\"_").append(SENT_AT_FIELD).append("\":").append(System.nanoTime())
+                .append(suffixes[(int) (sequence % VARIANTS)]);
+        sequence++;
+
+        return new RawMessage(payload.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] renderSuffixes(Random random, int messageLength, int fields) {
+        final String[] result = new String[VARIANTS];
+        for (int i = 0; i < VARIANTS; i++) {
+            final StringBuilder sb = new StringBuilder(",\"level\":").append(random.nextInt(8))
+                    .append(",\"_facility\":\"harness\"");
+            for (int field = 0; field < fields; field++) {
+                sb.append(",\"_field_").append(field).append("\":\"").append(randomText(random, 8)).append('"');
+            }
+            sb.append(",\"short_message\":\"").append(randomText(random, messageLength)).append("\"}");
+            result[i] = sb.toString();
+        }
+        return result;
+    }
+
+    private static String randomText(Random random, int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.pipeline;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.inputs.codecs.GelfCodec;
+import org.graylog2.plugin.LocalMetricRegistry;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.transports.GeneratorTransport;
+
+/**
+ * GELF input fed by a {@link GelfGeneratorTransport}.
+ */
+class GeneratorMessageInput extends MessageInput {
+    private static final String NAME = "Benchmark generator";
+
+    GeneratorMessageInput(MetricRegistry metricRegistry,
+                          Configuration configuration,
+                          GelfGeneratorTransport transport,
+                          GelfCodec codec,
+                          ServerStatus serverStatus) {
+        super(metricRegistry, configuration, transport, new LocalMetricRegistry(), codec,
+                new Config(), new Descriptor(), serverStatus);
+    }
+
+    private static class Config extends MessageInput.Config {
+        private Config() {
+            super(new GeneratorTransport.Config(), new GelfCodec.Config());
+        }
+    }
+
+    private static class Descriptor extends MessageInput.Descriptor {
+        private Descriptor() {
+            super(NAME, false, "");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.pipeline;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+
+/**
+ * Garbage collection and allocation counters of the JVM at one point in time.
+ * <p/>
+ * Allocations are tracked per thread, so the bytes allocated by threads which terminate between two snapshots are
+ * missing from the difference. The pipeline threads live as long as the harness, the numbers are exact for them.
+ */
+class JvmSnapshot {
+    private final long nanoTime;
+    private final Map<String, Long> gcCounts;
+    private final Map<String, Long> gcTimes;
+    private final Map<Long, Long> allocatedBytes;
+
+    private JvmSnapshot(long nanoTime, Map<String, Long> gcCounts, Map<String, Long> gcTimes, Map<Long, Long> allocatedBytes) {
+        this.nanoTime = nanoTime;
+        this.gcCounts = gcCounts;
+        this.gcTimes = gcTimes;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    static JvmSnapshot take() {
+        final ImmutableMap.Builder<String, Long> gcCounts = ImmutableMap.builder();
+        final ImmutableMap.Builder<String, Long> gcTimes = ImmutableMap.builder();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCounts.put(collector.getName(), Math.max(0L, collector.getCollectionCount()));
+            gcTimes.put(collector.getName(), Math.max(0L, collector.getCollectionTime()));
+        }
+
+        final Map<Long, Long> allocatedBytes = Maps.newHashMap();
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (isAllocationTrackingSupported(threadMXBean)) {
+            final com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            final long[] threadIds = sunThreadMXBean.getAllThreadIds();
+            final long[] bytes = sunThreadMXBean.getThreadAllocatedBytes(threadIds);
+            for (int i = 0; i < threadIds.length; i++) {
+                if (bytes[i] >= 0) {
+                    allocatedBytes.put(threadIds[i], bytes[i]);
+                }
+            }
+        }
+
+        return new JvmSnapshot(System.nanoTime(), gcCounts.build(), gcTimes.build(), allocatedBytes);
+    }
+
+    static boolean isAllocationTrackingSupported() {
+        return isAllocationTrackingSupported(ManagementFactory.getThreadMXBean());
+    }
+
+    private static boolean isAllocationTrackingSupported(ThreadMXBean threadMXBean) {
+        return threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled();
+    }
+
+    long getNanoTime() {
+        return nanoTime;
+    }
+
+    Map<String, Long> getGcCounts() {
+        return gcCounts;
+    }
+
+    Map<String, Long> getGcTimes() {
+        return gcTimes;
+    }
+
+    /**
+     * @return the number of bytes allocated by all threads since the given earlier snapshot
+     */
+    long allocatedBytesSince(JvmSnapshot earlier) {
+        long total = 0L;
+        for (Map.Entry<Long, Long> entry : allocatedBytes.entrySet()) {
+            final Long before = earlier.allocatedBytes.get(entry.getKey());
+            total += entry.getValue() - (before == null ? 0L : before);
+        }
+        return total;
+    }
+}
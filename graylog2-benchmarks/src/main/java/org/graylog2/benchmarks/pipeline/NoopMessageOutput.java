@@ -0,0 +1,61 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.pipeline;
+
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.graylog2.shared.journal.Journal;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drops every message after committing its journal offset, measures the pipeline without any output cost.
+ */
+class NoopMessageOutput implements MessageOutput {
+    private final AtomicBoolean isRunning = new AtomicBoolean(true);
+    private final Journal journal;
+    private final EndToEndLatency latency;
+
+    NoopMessageOutput(Journal journal, EndToEndLatency latency) {
+        this.journal = journal;
+        this.latency = latency;
+    }
+
+    @Override
+    public void write(Message message) throws Exception {
+        journal.markJournalOffsetCommitted(message.getJournalOffset());
+        latency.record(message);
+    }
+
+    @Override
+    public void write(List<Message> messages) throws Exception {
+        for (Message message : messages) {
+            write(message);
+        }
+    }
+
+    @Override
+    public void stop() {
+        isRunning.set(false);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return isRunning.get();
+    }
+}
@@ -0,0 +1,501 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.pipeline;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.joschi.jadconfig.JadConfig;
+import com.github.joschi.jadconfig.RepositoryException;
+import com.github.joschi.jadconfig.ValidationException;
+import com.github.joschi.jadconfig.repositories.InMemoryRepository;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.DB;
+import org.HdrHistogram.Histogram;
+import org.bson.types.ObjectId;
+import org.graylog2.Configuration;
+import org.graylog2.alerts.streaming.StreamingAlertEvaluator;
+import org.graylog2.buffers.OutputBuffer;
+import org.graylog2.buffers.OutputFanout;
+import org.graylog2.buffers.processors.OutputBufferProcessor;
+import org.graylog2.buffers.processors.ServerProcessBufferProcessor;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.database.NotFoundException;
+import org.graylog2.filters.ExtractorFilter;
+import org.graylog2.filters.FilterService;
+import org.graylog2.filters.RulesFilter;
+import org.graylog2.filters.StaticFieldFilter;
+import org.graylog2.filters.StreamMatcherFilter;
+import org.graylog2.filters.blacklist.FilterDescription;
+import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.inputs.InputService;
+import org.graylog2.inputs.codecs.GelfChunkAggregator;
+import org.graylog2.inputs.codecs.GelfCodec;
+import org.graylog2.outputs.BlockingBatchedESOutput;
+import org.graylog2.outputs.ElasticSearchOutput;
+import org.graylog2.outputs.OutputRegistry;
+import org.graylog2.outputs.OutputRouter;
+import org.graylog2.plugin.KafkaJournalConfiguration;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.filters.MessageFilter;
+import org.graylog2.plugin.inputs.MisfireException;
+import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.graylog2.plugin.streams.Output;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.shared.buffers.DirectMessageHandler;
+import org.graylog2.shared.buffers.InputBufferImpl;
+import org.graylog2.shared.buffers.JournallingMessageHandler;
+import org.graylog2.shared.buffers.ProcessBuffer;
+import org.graylog2.shared.buffers.RawMessageEncoderHandler;
+import org.graylog2.shared.buffers.processors.DecodingProcessor;
+import org.graylog2.shared.buffers.processors.ProcessBufferProcessor;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.JournalReader;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.graylog2.shared.journal.NoopJournal;
+import org.graylog2.shared.stats.ThroughputStats;
+import org.graylog2.shared.tracing.PipelineTracer;
+import org.graylog2.streams.StreamFaultManager;
+import org.graylog2.streams.StreamImpl;
+import org.graylog2.streams.StreamMetrics;
+import org.graylog2.streams.StreamRouter;
+import org.graylog2.streams.StreamRouterEngine;
+import org.graylog2.streams.StreamRuleImpl;
+import org.graylog2.streams.StreamService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Provider;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Boots the message processing pipeline of a server node in-process, wired like the server bindings do it:
+ * <p/>
+ * generator inputs &rarr; {@link InputBufferImpl} &rarr; {@link KafkaJournal} in a temporary directory &rarr;
+ * {@link JournalReader} &rarr; {@link ProcessBuffer} with the built-in filters &rarr; {@link OutputBuffer} &rarr;
+ * default output.
+ * <p/>
+ * Only the services backed by MongoDB are stubbed: the inputs have neither extractors nor static fields, the blacklist
+ * is empty and the streams are generated. The default output either drops the messages or is the real
+ * {@link BlockingBatchedESOutput} with a {@link StubMessages stubbed Elasticsearch}.
+ */
+class PipelineHarness {
+    private static final Logger LOG = LoggerFactory.getLogger(PipelineHarness.class);
+
+    enum OutputType {
+        NOOP, ELASTICSEARCH
+    }
+
+    /**
+     * The timers of the pipeline stages in processing order.
+     */
+    static final Map<String, String> STAGES = ImmutableMap.<String, String>builder()
+            .put("journal write", name(KafkaJournal.class, "writeTime"))
+            .put("journal read", name(KafkaJournal.class, "readTime"))
+            .put("decode", name(ProcessBuffer.class, "decodeTime"))
+            .put("parse", name(ProcessBuffer.class, "parseTime"))
+            .put("extractor filter", name(ExtractorFilter.class, "executionTime"))
+            .put("static field filter", name(StaticFieldFilter.class, "executionTime"))
+            .put("rules filter", name(RulesFilter.class, "executionTime"))
+            .put("stream matcher filter", name(StreamMatcherFilter.class, "executionTime"))
+            .put("process buffer processor", name(ProcessBufferProcessor.class, "processTime"))
+            .put("output buffer processor", name(OutputBufferProcessor.class, "processTime"))
+            .put("elasticsearch bulk request", name(ElasticSearchOutput.class, "processTime"))
+            .build();
+
+    private static final String PROCESSOR_WAIT_STRATEGY = "processor_wait_strategy";
+
+    private final File dataDirectory = Files.createTempDir();
+    private final Configuration configuration = new Configuration();
+    private final String processorWaitStrategy;
+    private final OutputType outputType;
+    private final long bulkLatencyMillis;
+    private final int streams;
+    private final int hosts;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final EventBus eventBus = new EventBus("pipeline-harness");
+    private final Map<String, StageTimer> stageTimers = Maps.newLinkedHashMap();
+    private final EndToEndLatency endToEndLatency = new EndToEndLatency();
+    private final List<GeneratorMessageInput> inputs = Lists.newArrayList();
+
+    private ScheduledExecutorService scheduler;
+    private ServerStatus serverStatus;
+    private Journal journal;
+    private PipelineTracer pipelineTracer;
+    private JournalReader journalReader;
+    private InputBufferImpl inputBuffer;
+    private GelfChunkAggregator gelfChunkAggregator;
+
+    /**
+     * @param settings server configuration settings, e.g. {@code processbuffer_processors}, the settings needed to
+     *                 run a node without MongoDB and Elasticsearch don't have to be given
+     */
+    PipelineHarness(Map<String, String> settings, OutputType outputType, long bulkLatencyMillis, int streams, int hosts)
+            throws RepositoryException, ValidationException {
+        final Map<String, String> effectiveSettings = Maps.newHashMap();
+        effectiveSettings.put("password_secret", "pipeline-harness-password-secret");
+        effectiveSettings.put("root_password_sha2", Hashing.sha256().hashString("admin", StandardCharsets.UTF_8).toString());
+        effectiveSettings.put("node_id_file", new File(dataDirectory, "node-id").getPath());
+        effectiveSettings.putAll(settings);
+        new JadConfig(new InMemoryRepository(effectiveSettings), configuration).process();
+
+        this.processorWaitStrategy = firstNonNull(effectiveSettings.get(PROCESSOR_WAIT_STRATEGY), "blocking");
+        this.outputType = outputType;
+        this.bulkLatencyMillis = bulkLatencyMillis;
+        this.streams = streams;
+        this.hosts = hosts;
+    }
+
+    void start() throws Exception {
+        // the components look their timers up by name, register the resettable ones first
+        for (Map.Entry<String, String> stage : STAGES.entrySet()) {
+            final StageTimer timer = new StageTimer();
+            metricRegistry.register(stage.getValue(), timer);
+            stageTimers.put(stage.getKey(), timer);
+        }
+
+        scheduler = Executors.newScheduledThreadPool(2,
+                new ThreadFactoryBuilder().setNameFormat("harness-scheduler-%d").setDaemon(true).build());
+        serverStatus = new ServerStatus(configuration, EnumSet.of(ServerStatus.Capability.SERVER), eventBus);
+        journal = createJournal();
+        pipelineTracer = new PipelineTracer(metricRegistry, configuration.isMessageTracingEnabled(),
+                configuration.getMessageTracingSampleRate(), configuration.getMessageTracingBufferSize());
+
+        final MessageOutput defaultOutput = createDefaultOutput();
+        final OutputFanout outputFanout = new OutputFanout(configuration, metricRegistry);
+        // the streams don't have any outputs, so the services to load and create them are never used
+        final OutputRegistry outputRegistry = new OutputRegistry(defaultOutput, null, null, null, null, outputFanout,
+                configuration.getOutputFaultCountThreshold(), configuration.getOutputFaultPenaltySeconds());
+        final OutputRouter outputRouter = new OutputRouter(defaultOutput, outputRegistry);
+        final OutputBuffer outputBuffer = new OutputBuffer(metricRegistry,
+                new Provider<OutputBufferProcessor>() {
+                    @Override
+                    public OutputBufferProcessor get() {
+                        return new OutputBufferProcessor(configuration, metricRegistry, serverStatus, outputRouter,
+                                defaultOutput, outputFanout);
+                    }
+                },
+                configuration.getOutputBufferProcessors(),
+                configuration.getRingSize(),
+                processorWaitStrategy);
+
+        final Set<MessageFilter> filters = createFilters();
+        gelfChunkAggregator = new GelfChunkAggregator(scheduler, metricRegistry);
+        final Map<String, Codec.Factory<? extends Codec>> codecFactories =
+                ImmutableMap.<String, Codec.Factory<? extends Codec>>of("gelf", new GelfCodecFactory());
+        final ProcessBuffer processBuffer = new ProcessBuffer(metricRegistry, serverStatus,
+                new DecodingProcessor.Factory() {
+                    @Override
+                    public DecodingProcessor create(Timer decodeTime, Timer parseTime) {
+                        return new DecodingProcessor(codecFactories, serverStatus, metricRegistry, pipelineTracer,
+                                decodeTime, parseTime);
+                    }
+                },
+                new Provider<ProcessBufferProcessor>() {
+                    @Override
+                    public ProcessBufferProcessor get() {
+                        return new ServerProcessBufferProcessor(metricRegistry, filters, configuration, serverStatus,
+                                outputBuffer, journal, pipelineTracer);
+                    }
+                },
+                configuration.getProcessBufferProcessors(),
+                configuration.getRingSize(),
+                processorWaitStrategy);
+
+        final Semaphore journalFilled = new Semaphore(0);
+        inputBuffer = new InputBufferImpl(metricRegistry, configuration,
+                new Provider<DirectMessageHandler>() {
+                    @Override
+                    public DirectMessageHandler get() {
+                        return new DirectMessageHandler(processBuffer);
+                    }
+                },
+                new Provider<RawMessageEncoderHandler>() {
+                    @Override
+                    public RawMessageEncoderHandler get() {
+                        return new RawMessageEncoderHandler(metricRegistry);
+                    }
+                },
+                new Provider<JournallingMessageHandler>() {
+                    @Override
+                    public JournallingMessageHandler get() {
+                        return new JournallingMessageHandler(metricRegistry, journal, journalFilled, pipelineTracer);
+                    }
+                });
+
+        if (configuration.isMessageJournalEnabled()) {
+            journalReader = new JournalReader(journal, processBuffer, journalFilled, metricRegistry, eventBus);
+            journalReader.startAsync().awaitRunning();
+        }
+
+        // the journal reader only reads once the node is running
+        serverStatus.start();
+    }
+
+    /**
+     * Launches the given number of generator inputs, each of them producing its share of the rate.
+     */
+    void startGenerators(int count, double rate, int messageLength, int fields) throws MisfireException {
+        for (int i = 0; i < count; i++) {
+            final GelfGeneratorTransport transport = new GelfGeneratorTransport(eventBus, rate / count,
+                    messageLength, fields, hosts, i);
+            final org.graylog2.plugin.configuration.Configuration inputConfiguration =
+                    new org.graylog2.plugin.configuration.Configuration(Collections.<String, Object>emptyMap());
+            final GeneratorMessageInput input = new GeneratorMessageInput(metricRegistry, inputConfiguration,
+                    transport, new GelfCodec(inputConfiguration, gelfChunkAggregator), serverStatus);
+            input.setPersistId(new ObjectId().toHexString());
+            input.initialize();
+            input.launch(inputBuffer);
+            inputs.add(input);
+        }
+    }
+
+    void stop() {
+        for (GeneratorMessageInput input : inputs) {
+            input.stop();
+        }
+        serverStatus.shutdown();
+        if (journalReader != null) {
+            journalReader.stopAsync().awaitTerminated();
+        }
+        if (journal instanceof KafkaJournal) {
+            ((KafkaJournal) journal).stopAsync().awaitTerminated();
+        }
+        scheduler.shutdownNow();
+        deleteRecursively(dataDirectory);
+    }
+
+    /**
+     * Discards the latencies recorded so far, e.g. at the end of the warmup.
+     */
+    void resetLatencies() {
+        for (StageTimer timer : stageTimers.values()) {
+            timer.reset();
+        }
+        endToEndLatency.reset();
+    }
+
+    /**
+     * @return the latencies of every stage which has been passed since the last call, in processing order
+     */
+    Map<String, Histogram> stageLatencies() {
+        final Map<String, Histogram> result = Maps.newLinkedHashMap();
+        for (Map.Entry<String, StageTimer> entry : stageTimers.entrySet()) {
+            final Histogram histogram = entry.getValue().intervalHistogram();
+            if (histogram.getTotalCount() > 0) {
+                result.put(entry.getKey(), histogram);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the latencies from the generator to the output since the last call
+     */
+    Histogram endToEndLatencies() {
+        return endToEndLatency.intervalHistogram();
+    }
+
+    /**
+     * @return the number of messages written by the default output so far
+     */
+    long getWrittenCount() {
+        return endToEndLatency.getCount();
+    }
+
+    MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    private Journal createJournal() throws Exception {
+        if (!configuration.isMessageJournalEnabled()) {
+            return new NoopJournal();
+        }
+
+        final File journalDirectory = new File(dataDirectory, "journal");
+        final KafkaJournalConfiguration journalConfiguration = new KafkaJournalConfiguration();
+        final KafkaJournal kafkaJournal = new KafkaJournal(journalDirectory,
+                scheduler,
+                journalConfiguration.getMessageJournalSegmentSize(),
+                journalConfiguration.getMessageJournalSegmentAge(),
+                journalConfiguration.getMessageJournalMaxSize(),
+                journalConfiguration.getMessageJournalMaxAge(),
+                journalConfiguration.getMessageJournalFlushInterval(),
+                journalConfiguration.getMessageJournalFlushAge(),
+                metricRegistry);
+        kafkaJournal.startAsync().awaitRunning();
+        return kafkaJournal;
+    }
+
+    private MessageOutput createDefaultOutput() {
+        switch (outputType) {
+            case NOOP:
+                return new NoopMessageOutput(journal, endToEndLatency);
+            case ELASTICSEARCH:
+                final Cluster cluster = stub(Cluster.class);
+                when(cluster.isConnected()).thenReturn(true);
+                when(cluster.isHealthy()).thenReturn(true);
+                final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry,
+                        new StubMessages(bulkLatencyMillis, endToEndLatency), cluster, configuration, journal,
+                        pipelineTracer);
+                // flushes partial batches like the BatchedElasticSearchOutputFlushThread periodical
+                scheduler.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            output.forceFlushIfTimedout();
+                        } catch (Exception e) {
+                            LOG.error("Unable to flush output", e);
+                        }
+                    }
+                }, 1, 1, TimeUnit.SECONDS);
+                return output;
+            default:
+                throw new IllegalArgumentException("Unknown output type " + outputType);
+        }
+    }
+
+    private Set<MessageFilter> createFilters() throws NotFoundException {
+        final InputService inputService = stub(InputService.class);
+        final FilterService filterService = stub(FilterService.class);
+        when(filterService.loadAll()).thenReturn(Collections.<FilterDescription>emptySet());
+
+        final StreamService streamService = stub(StreamService.class);
+        when(streamService.loadAllEnabled()).thenReturn(createStreams());
+
+        final StreamMetrics streamMetrics = new StreamMetrics(metricRegistry);
+        final StreamFaultManager streamFaultManager = new StreamFaultManager(configuration, streamMetrics, null, null);
+        final ThroughputStats throughputStats = new ThroughputStats();
+        final StreamRouterEngine.Factory engineFactory = new StreamRouterEngine.Factory() {
+            @Override
+            public StreamRouterEngine create(List<Stream> streams, ExecutorService executorService) {
+                return new StreamRouterEngine(streams, executorService, streamFaultManager, streamMetrics,
+                        throughputStats);
+            }
+        };
+        final StreamRouter streamRouter = new StreamRouter(streamService, serverStatus, engineFactory, scheduler,
+                null, eventBus, false, configuration.getStreamRouterVersionCheckInterval(), throughputStats,
+                pipelineTracer);
+
+        return ImmutableSet.<MessageFilter>of(
+                new ExtractorFilter(inputService),
+                new StaticFieldFilter(inputService),
+                new RulesFilter(null, filterService, null),
+                new StreamMatcherFilter(streamRouter, createStreamingAlertEvaluator()));
+    }
+
+    /**
+     * A disabled evaluator, like on nodes with the default configuration. It only needs MongoDB once enabled.
+     */
+    private StreamingAlertEvaluator createStreamingAlertEvaluator() {
+        final MongoConnection mongoConnection = stub(MongoConnection.class);
+        when(mongoConnection.getDatabase()).thenReturn(stub(DB.class));
+        return new StreamingAlertEvaluator(false, null, null, mongoConnection);
+    }
+
+    /**
+     * Stubs services which would need MongoDB or Elasticsearch. Stub-only mocks don't record their invocations, so
+     * they neither slow down nor fill up the heap of long benchmark runs.
+     */
+    private static <T> T stub(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    /**
+     * Every stream matches the messages of one host, every second stream additionally needs a level above 3.
+     */
+    private List<Stream> createStreams() {
+        final ImmutableList.Builder<Stream> result = ImmutableList.builder();
+        for (int i = 0; i < streams; i++) {
+            final ObjectId streamId = new ObjectId();
+            final List<StreamRule> rules = Lists.newArrayList();
+            rules.add(streamRule(streamId, StreamRuleType.EXACT, "source", GelfGeneratorTransport.host(i % hosts)));
+            if (i % 2 == 1) {
+                rules.add(streamRule(streamId, StreamRuleType.GREATER, "level", "3"));
+            }
+
+            final Map<String, Object> streamFields = Maps.newHashMap();
+            streamFields.put(StreamImpl.FIELD_TITLE, "Stream " + i);
+            streamFields.put(StreamImpl.FIELD_DISABLED, false);
+            streamFields.put(StreamImpl.FIELD_MATCHING_TYPE, Stream.MatchingType.AND.name());
+            result.add(new StreamImpl(streamId, streamFields, rules, Collections.<Output>emptySet()));
+        }
+        return result.build();
+    }
+
+    private static StreamRule streamRule(ObjectId streamId, StreamRuleType type, String field, String value) {
+        final Map<String, Object> ruleFields = Maps.newHashMap();
+        ruleFields.put(StreamRuleImpl.FIELD_TYPE, type.toInteger());
+        ruleFields.put(StreamRuleImpl.FIELD_FIELD, field);
+        ruleFields.put(StreamRuleImpl.FIELD_VALUE, value);
+        ruleFields.put(StreamRuleImpl.FIELD_INVERTED, false);
+        ruleFields.put(StreamRuleImpl.FIELD_STREAM_ID, streamId);
+        return new StreamRuleImpl(ruleFields);
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            LOG.warn("Unable to delete {}", file);
+        }
+    }
+
+    private class GelfCodecFactory implements GelfCodec.Factory {
+        @Override
+        public GelfCodec create(org.graylog2.plugin.configuration.Configuration configuration) {
+            return new GelfCodec(configuration, gelfChunkAggregator);
+        }
+
+        @Override
+        public GelfCodec.Config getConfig() {
+            return new GelfCodec.Config();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.pipeline;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Timer;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer which additionally records into an HDR histogram that can be reset, so the percentiles only cover the
+ * measurement phase of a run and not the warmup.
+ * <p/>
+ * The harness registers these timers before the pipeline is created, the components then pick them up by name from
+ * the metric registry instead of creating their own.
+ */
+class StageTimer extends Timer {
+    private static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.MINUTES.toNanos(1);
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_VALUE, 3);
+
+    StageTimer() {
+        super(new ExponentiallyDecayingReservoir());
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        super.update(duration, unit);
+        if (duration >= 0) {
+            recorder.recordValue(Math.min(unit.toNanos(duration), HIGHEST_TRACKABLE_VALUE));
+        }
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    void reset() {
+        recorder.getIntervalHistogram();
+    }
+
+    /**
+     * @return the durations in nanoseconds recorded since the last call or {@link #reset()}
+     */
+    Histogram intervalHistogram() {
+        return recorder.getIntervalHistogram();
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.pipeline;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.graylog2.indexer.messages.Messages;
+import org.graylog2.plugin.Message;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for Elasticsearch in the {@link org.graylog2.outputs.BlockingBatchedESOutput}. Every bulk request is
+ * rendered like the real one, the documents are serialized and thrown away after an optional simulated round trip.
+ */
+class StubMessages extends Messages {
+    private static final byte[] ACTION_LINE = "{\"index\":{\"_index\":\"graylog_0\",\"_type\":\"message\"}}\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper = new ObjectMapperProvider().get();
+    private final long bulkLatencyMillis;
+    private final EndToEndLatency latency;
+
+    StubMessages(long bulkLatencyMillis, EndToEndLatency latency) {
+        super(null, null, null, null);
+        this.bulkLatencyMillis = bulkLatencyMillis;
+        this.latency = latency;
+    }
+
+    @Override
+    public boolean bulkIndex(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+
+        final ByteArrayOutputStream request = new ByteArrayOutputStream(messages.size() * 512);
+        try {
+            for (Message message : messages) {
+                request.write(ACTION_LINE);
+                request.write(objectMapper.writeValueAsBytes(message.toElasticSearchObject()));
+                request.write('\n');
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize messages", e);
+        }
+
+        if (bulkLatencyMillis > 0) {
+            Uninterruptibles.sleepUninterruptibly(bulkLatencyMillis, TimeUnit.MILLISECONDS);
+        }
+
+        for (Message message : messages) {
+            latency.record(message);
+        }
+        return true;
+    }
+}
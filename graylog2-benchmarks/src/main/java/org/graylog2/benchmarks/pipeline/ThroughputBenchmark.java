@@ -0,0 +1,201 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.pipeline;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import org.HdrHistogram.Histogram;
+import org.graylog2.plugin.GlobalMetricNames;
+import org.graylog2.shared.journal.KafkaJournal;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
+
+/**
+ * Measures the sustained throughput of the in-process {@link PipelineHarness pipeline}.
+ * <p/>
+ * The generators run for the warmup period first, afterwards the messages written by the default output are counted
+ * for the measurement period. The report contains the sustained throughput, the end-to-end and per-stage latency
+ * percentiles of the measurement period, the GC time and the allocation rate.
+ * <p/>
+ * If the generators produce more than the pipeline can process, the journal absorbs the difference: the output rate is
+ * the capacity of the node and the journal backlog in the report grows.
+ */
+public class ThroughputBenchmark {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    public static void main(String[] args) {
+        int status = 0;
+        try {
+            run(args);
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = 1;
+        }
+
+        // the buffer processors run on non-daemon threads which are never shut down
+        System.exit(status);
+    }
+
+    private static void run(String[] args) throws Exception {
+        final OptionParser parser = new OptionParser();
+        final OptionSpec<Double> rate = parser.accepts("rate", "messages per second over all inputs, 0 for as fast as possible")
+                .withRequiredArg().ofType(Double.class).defaultsTo(0.0d);
+        final OptionSpec<Integer> warmup = parser.accepts("warmup", "warmup in seconds")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(30);
+        final OptionSpec<Integer> duration = parser.accepts("duration", "measurement in seconds")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(60);
+        final OptionSpec<Integer> inputs = parser.accepts("inputs", "number of generator inputs")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(2);
+        final OptionSpec<Integer> messageLength = parser.accepts("message-length", "length of the short_message")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(150);
+        final OptionSpec<Integer> fields = parser.accepts("fields", "number of additional fields per message")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(10);
+        final OptionSpec<Integer> hosts = parser.accepts("hosts", "number of distinct message sources")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(16);
+        final OptionSpec<Integer> streams = parser.accepts("streams", "number of streams")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(20);
+        final OptionSpec<String> output = parser.accepts("output", "default output, noop or elasticsearch")
+                .withRequiredArg().defaultsTo("noop");
+        final OptionSpec<Long> bulkLatency = parser.accepts("bulk-latency", "simulated Elasticsearch bulk request latency in milliseconds")
+                .withRequiredArg().ofType(Long.class).defaultsTo(0L);
+        final OptionSpec<String> settings = parser.accepts("set", "server configuration setting, e.g. processbuffer_processors=8")
+                .withRequiredArg().describedAs("key=value");
+        final OptionSpec<Void> help = parser.accepts("help").forHelp();
+
+        final OptionSet options = parser.parse(args);
+        if (options.has(help)) {
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        final Map<String, String> serverSettings = Maps.newHashMap();
+        for (String setting : options.valuesOf(settings)) {
+            final List<String> keyValue = Splitter.on('=').limit(2).trimResults().splitToList(setting);
+            if (keyValue.size() != 2) {
+                throw new IllegalArgumentException("Invalid setting <" + setting + ">, expected key=value");
+            }
+            serverSettings.put(keyValue.get(0), keyValue.get(1));
+        }
+
+        final PipelineHarness.OutputType outputType =
+                PipelineHarness.OutputType.valueOf(options.valueOf(output).toUpperCase(Locale.ENGLISH));
+        final PipelineHarness harness = new PipelineHarness(serverSettings, outputType,
+                options.valueOf(bulkLatency), options.valueOf(streams), options.valueOf(hosts));
+        final PrintStream out = System.out;
+        try {
+            harness.start();
+            harness.startGenerators(options.valueOf(inputs), options.valueOf(rate), options.valueOf(messageLength),
+                    options.valueOf(fields));
+
+            out.println(String.format(Locale.ENGLISH, "Warming up for %d s", options.valueOf(warmup)));
+            sleepUninterruptibly(options.valueOf(warmup), TimeUnit.SECONDS);
+
+            harness.resetLatencies();
+            final long generatedBefore = generatedCount(harness);
+            final long backlogBefore = journalBacklog(harness);
+            final long writtenBefore = harness.getWrittenCount();
+            final JvmSnapshot jvmBefore = JvmSnapshot.take();
+
+            out.println(String.format(Locale.ENGLISH, "Measuring for %d s", options.valueOf(duration)));
+            sleepUninterruptibly(options.valueOf(duration), TimeUnit.SECONDS);
+
+            final JvmSnapshot jvmAfter = JvmSnapshot.take();
+            final long written = harness.getWrittenCount() - writtenBefore;
+            final long generated = generatedCount(harness) - generatedBefore;
+            final long backlog = journalBacklog(harness) - backlogBefore;
+            final Histogram endToEnd = harness.endToEndLatencies();
+            final Map<String, Histogram> stages = harness.stageLatencies();
+            final double seconds = (jvmAfter.getNanoTime() - jvmBefore.getNanoTime()) / 1e9d;
+
+            out.println();
+            out.println(String.format(Locale.ENGLISH, "Throughput:       %,.0f msg/s written, %,.0f msg/s generated",
+                    written / seconds, generated / seconds));
+            if (backlog != 0L) {
+                out.println(String.format(Locale.ENGLISH, "Journal backlog:  %+,d messages", backlog));
+            }
+            out.println();
+            out.println(String.format(Locale.ENGLISH, "%-28s %10s %10s %10s %10s %10s", "Latency (us)", "p50", "p90", "p99", "p99.9", "max"));
+            printLatencies(out, "end-to-end", endToEnd);
+            for (Map.Entry<String, Histogram> stage : stages.entrySet()) {
+                printLatencies(out, stage.getKey(), stage.getValue());
+            }
+            out.println();
+            printJvmStatistics(out, jvmBefore, jvmAfter, seconds);
+        } finally {
+            harness.stop();
+        }
+    }
+
+    private static void printLatencies(PrintStream out, String label, Histogram histogram) {
+        final StringBuilder line = new StringBuilder(String.format(Locale.ENGLISH, "%-28s", label));
+        for (double percentile : PERCENTILES) {
+            line.append(String.format(Locale.ENGLISH, " %10.1f", histogram.getValueAtPercentile(percentile) / 1000.0d));
+        }
+        line.append(String.format(Locale.ENGLISH, " %10.1f", histogram.getMaxValue() / 1000.0d));
+        out.println(line);
+    }
+
+    private static void printJvmStatistics(PrintStream out, JvmSnapshot before, JvmSnapshot after, double seconds) {
+        long totalGcMillis = 0L;
+        for (Map.Entry<String, Long> entry : after.getGcTimes().entrySet()) {
+            final String collector = entry.getKey();
+            final long gcMillis = entry.getValue() - nullToZero(before.getGcTimes().get(collector));
+            final long collections = after.getGcCounts().get(collector) - nullToZero(before.getGcCounts().get(collector));
+            totalGcMillis += gcMillis;
+            out.println(String.format(Locale.ENGLISH, "GC %-25s %,d collections, %,d ms", collector, collections, gcMillis));
+        }
+        out.println(String.format(Locale.ENGLISH, "GC time:          %,d ms (%.2f%% of the measurement)",
+                totalGcMillis, totalGcMillis / (seconds * 10.0d)));
+
+        if (JvmSnapshot.isAllocationTrackingSupported()) {
+            out.println(String.format(Locale.ENGLISH, "Allocation rate:  %,.1f MB/s",
+                    after.allocatedBytesSince(before) / seconds / (1024.0d * 1024.0d)));
+        } else {
+            out.println("Allocation rate:  not supported by this JVM");
+        }
+    }
+
+    private static long generatedCount(PipelineHarness harness) {
+        final Counter counter = harness.getMetricRegistry().getCounters().get(GlobalMetricNames.INPUT_THROUGHPUT);
+        return counter == null ? 0L : counter.getCount();
+    }
+
+    private static long journalBacklog(PipelineHarness harness) {
+        final Gauge gauge = harness.getMetricRegistry().getGauges().get(name(KafkaJournal.class, "uncommittedMessages"));
+        if (gauge == null) {
+            return 0L;
+        }
+        final Object value = gauge.getValue();
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private static long nullToZero(Long value) {
+        return value == null ? 0L : value;
+    }
+}
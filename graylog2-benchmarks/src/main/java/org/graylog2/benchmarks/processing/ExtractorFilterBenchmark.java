@@ -0,0 +1,122 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.processing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.benchmarks.Corpus;
+import org.graylog2.filters.ExtractorFilter;
+import org.graylog2.inputs.Input;
+import org.graylog2.inputs.InputService;
+import org.graylog2.inputs.extractors.GrokExtractor;
+import org.graylog2.inputs.extractors.RegexExtractor;
+import org.graylog2.plugin.LocalMetricRegistry;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.inputs.Converter;
+import org.graylog2.plugin.inputs.Extractor;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the {@link ExtractorFilter} with Grok and regex extractors on Apache access log lines. The messages are
+ * created as part of the measured operation because the extractors modify them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtractorFilterBenchmark {
+    private static final String INPUT_ID = "5574aa07e4b0a2a0b2b8a1b5";
+    private static final DateTime TIMESTAMP = new DateTime(2015, 7, 14, 8, 0, DateTimeZone.UTC);
+
+    public enum Extractors {
+        NONE, GROK, REGEX, GROK_AND_REGEX
+    }
+
+    @Param({"NONE", "GROK", "REGEX", "GROK_AND_REGEX"})
+    public Extractors extractors;
+
+    private ExtractorFilter filter;
+    private String[] lines;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ImmutableList.Builder<Extractor> configured = ImmutableList.builder();
+        if (extractors == Extractors.GROK || extractors == Extractors.GROK_AND_REGEX) {
+            configured.add(new GrokExtractor(new LocalMetricRegistry(), Corpus.grokPatterns(), "grok", "Apache access log",
+                    0, Extractor.CursorStrategy.COPY, "message", "message",
+                    ImmutableMap.<String, Object>of("grok_pattern", "%{COMBINEDAPACHELOG}"), "admin",
+                    Collections.<Converter>emptyList(), Extractor.ConditionType.NONE, null));
+        }
+        if (extractors == Extractors.REGEX || extractors == Extractors.GROK_AND_REGEX) {
+            configured.add(regexExtractor(1, "^(\\S+) ", "client_address"));
+            configured.add(regexExtractor(2, "\"([A-Z]+) ", "http_method"));
+            configured.add(regexExtractor(3, "\" (\\d{3}) ", "http_status"));
+            configured.add(regexExtractor(4, "\"([^\"]*)\"$", "user_agent"));
+        }
+        final List<Extractor> extractorList = configured.build();
+
+        // the filter caches the extractors, the stubs are only called once a second
+        final Input input = mock(Input.class);
+        final InputService inputService = mock(InputService.class);
+        when(inputService.find(INPUT_ID)).thenReturn(input);
+        when(inputService.getExtractors(input)).thenReturn(extractorList);
+        filter = new ExtractorFilter(inputService);
+
+        final List<String> corpus = Corpus.lines(Corpus.ACCESS_LOG);
+        lines = corpus.toArray(new String[corpus.size()]);
+    }
+
+    @Benchmark
+    public Message filter() {
+        final String line = lines[next];
+        next = (next + 1) % lines.length;
+
+        final Message message = new Message(line, "web-01", TIMESTAMP);
+        message.setSourceInputId(INPUT_ID);
+        filter.filter(message);
+        return message;
+    }
+
+    private static Extractor regexExtractor(int order, String regex, String targetField) throws Exception {
+        return new RegexExtractor(new LocalMetricRegistry(), "regex-" + order, targetField, order,
+                Extractor.CursorStrategy.COPY, "message", targetField,
+                ImmutableMap.<String, Object>of("regex_value", regex), "admin",
+                Collections.<Converter>emptyList(), Extractor.ConditionType.NONE, null);
+    }
+}
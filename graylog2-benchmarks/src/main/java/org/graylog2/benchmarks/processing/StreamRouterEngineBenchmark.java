@@ -0,0 +1,147 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.processing;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.bson.types.ObjectId;
+import org.graylog2.Configuration;
+import org.graylog2.benchmarks.Corpus;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Output;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.shared.stats.ThroughputStats;
+import org.graylog2.streams.StreamFaultManager;
+import org.graylog2.streams.StreamImpl;
+import org.graylog2.streams.StreamMetrics;
+import org.graylog2.streams.StreamRouterEngine;
+import org.graylog2.streams.StreamRuleImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream routing of the GELF corpus. The stream rules are drawn from rules commonly seen in production setups, with a
+ * fixed seed so every run uses the same rule set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamRouterEngineBenchmark {
+    private static final Object[][] RULE_TEMPLATES = {
+            {StreamRuleType.EXACT, "source", "web-01"},
+            {StreamRuleType.EXACT, "source", "checkout-3"},
+            {StreamRuleType.EXACT, "facility", "postgres"},
+            {StreamRuleType.EXACT, "tenant", "acme"},
+            {StreamRuleType.PRESENCE, "http_status", null},
+            {StreamRuleType.PRESENCE, "order_id", null},
+            {StreamRuleType.GREATER, "took_ms", "500"},
+            {StreamRuleType.SMALLER, "level", "4"},
+            {StreamRuleType.CIDR, "src_ip", "203.0.113.0/24"},
+            {StreamRuleType.CIDR, "remote_addr", "192.168.0.0/16"},
+            {StreamRuleType.REGEX, "message", "^(GET|POST) /api/.*"},
+            {StreamRuleType.REGEX, "message", ".*(refused|timed out|failed).*"},
+            {StreamRuleType.REGEX, "source", "^(db|storage)-\\d+$"},
+    };
+
+    @Param({"10", "50", "200"})
+    public int streams;
+
+    @Param({"true", "false"})
+    public boolean withRegexRules;
+
+    private ExecutorService executorService;
+    private StreamRouterEngine engine;
+    private Message[] messages;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final StreamMetrics streamMetrics = new StreamMetrics(metricRegistry);
+        final StreamFaultManager streamFaultManager = new StreamFaultManager(new Configuration(), streamMetrics, null, null);
+        executorService = Executors.newCachedThreadPool();
+        engine = new StreamRouterEngine(createStreams(new Random(42L)), executorService, streamFaultManager,
+                streamMetrics, new ThroughputStats());
+
+        final List<Message> corpus = Corpus.messages();
+        messages = corpus.toArray(new Message[corpus.size()]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Stream> match() {
+        final Message message = messages[next];
+        next = (next + 1) % messages.length;
+        return engine.match(message);
+    }
+
+    private List<Stream> createStreams(Random random) {
+        final int templates = withRegexRules ? RULE_TEMPLATES.length : RULE_TEMPLATES.length - 3;
+        final ImmutableList.Builder<Stream> result = ImmutableList.builder();
+        for (int i = 0; i < streams; i++) {
+            final ObjectId streamId = new ObjectId();
+            final int ruleCount = 1 + random.nextInt(3);
+            final List<StreamRule> rules = Lists.newArrayListWithCapacity(ruleCount);
+            for (int j = 0; j < ruleCount; j++) {
+                final Object[] template = RULE_TEMPLATES[random.nextInt(templates)];
+                final Map<String, Object> ruleFields = Maps.newHashMap();
+                ruleFields.put(StreamRuleImpl.FIELD_TYPE, ((StreamRuleType) template[0]).toInteger());
+                ruleFields.put(StreamRuleImpl.FIELD_FIELD, template[1]);
+                ruleFields.put(StreamRuleImpl.FIELD_VALUE, template[2]);
+                ruleFields.put(StreamRuleImpl.FIELD_INVERTED, random.nextInt(10) == 0);
+                ruleFields.put(StreamRuleImpl.FIELD_STREAM_ID, streamId);
+                rules.add(new StreamRuleImpl(ruleFields));
+            }
+
+            final Map<String, Object> streamFields = Maps.newHashMap();
+            streamFields.put(StreamImpl.FIELD_TITLE, "Stream " + i);
+            streamFields.put(StreamImpl.FIELD_DISABLED, false);
+            streamFields.put(StreamImpl.FIELD_MATCHING_TYPE, (random.nextBoolean() ? Stream.MatchingType.AND : Stream.MatchingType.OR).name());
+            result.add(new StreamImpl(streamId, streamFields, rules, Collections.<Output>emptySet()));
+        }
+        return result.build();
+    }
+}
@@ -116,6 +116,15 @@ public abstract class BaseConfiguration {
     @Parameter("message_recordings_enable")
     private boolean messageRecordingsEnable = false;
 
+    @Parameter("message_tracing_enabled")
+    private boolean messageTracingEnabled = true;
+
+    @Parameter("message_tracing_sample_rate")
+    private int messageTracingSampleRate = 1000;
+
+    @Parameter(value = "message_tracing_buffer_size", validator = PositiveIntegerValidator.class)
+    private int messageTracingBufferSize = 100;
+
     @Parameter("disable_sigar")
     private boolean disableSigar = false;
 
@@ -286,6 +295,18 @@ public abstract class BaseConfiguration {
         return messageRecordingsEnable;
     }
 
+    public boolean isMessageTracingEnabled() {
+        return messageTracingEnabled;
+    }
+
+    public int getMessageTracingSampleRate() {
+        return messageTracingSampleRate;
+    }
+
+    public int getMessageTracingBufferSize() {
+        return messageTracingBufferSize;
+    }
+
     public boolean isDisableSigar() {
         return disableSigar;
     }
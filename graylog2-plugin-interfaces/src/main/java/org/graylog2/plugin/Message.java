@@ -37,6 +37,7 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -125,6 +126,9 @@ public class Message {
 
     private ArrayList<Recording> recordings;
 
+    // stage latencies, only set if message tracing is enabled
+    private MessageTrace trace;
+
     public Message(final String message, final String source, final DateTime timestamp) {
         // Adding the fields directly because they would not be accepted as a reserved fields.
         fields.put(FIELD_ID, new UUID().toString());
@@ -417,6 +421,34 @@ public class Message {
         recordings.add(Recording.counter(name, counter));
     }
 
+    public void setTrace(@Nullable MessageTrace trace) {
+        this.trace = trace;
+    }
+
+    @Nullable
+    public MessageTrace getTrace() {
+        return trace;
+    }
+
+    // helper methods to add pipeline stages to the message trace, if there is one. not thread safe!
+    public void recordStage(String stage, long elapsedNanos) {
+        if (trace != null) {
+            trace.record(stage, elapsedNanos);
+        }
+    }
+
+    public void markStage() {
+        if (trace != null) {
+            trace.mark();
+        }
+    }
+
+    public void recordStageSinceMark(String stage) {
+        if (trace != null) {
+            trace.recordSinceMark(stage);
+        }
+    }
+
     public String recordingsAsString() {
         if (hasRecordings()) {
             return Joiner.on(", ").join(recordings);
@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 Graylog, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin;
+
+import java.util.Arrays;
+
+/**
+ * Latency trace of a single message through the processing pipeline. Every stage the message passes records the time
+ * it spent there, in nanoseconds and in the order the stages were passed.
+ * <p/>
+ * Unlike the {@link Message#recordTiming(ServerStatus, String, long) recordings} a trace is cheap enough to be kept
+ * for every message. It is only ever touched by the thread currently handling the message, the buffers between the
+ * stages take care of the visibility. Not thread safe!
+ */
+public final class MessageTrace {
+    // journal_write and journal_read are both measured from the receipt of the message, total spans the whole pipeline
+    public static final String JOURNAL_WRITE = "journal_write";
+    public static final String JOURNAL_READ = "journal_read";
+    public static final String PROCESS_QUEUE = "process_queue";
+    public static final String DECODE = "decode";
+    public static final String FILTER_PREFIX = "filter.";
+    public static final String OUTPUT_QUEUE = "output_queue";
+    public static final String BULK_INDEX = "bulk_index";
+    public static final String TOTAL = "total";
+
+    private static final int INITIAL_CAPACITY = 12;
+
+    private final long receivedAt;
+    private String[] stages = new String[INITIAL_CAPACITY];
+    private long[] elapsedNanos = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private long markNanos;
+    private boolean marked = false;
+
+    /**
+     * @param receivedAt the time the message was received by its input, in milliseconds since the epoch
+     */
+    public MessageTrace(long receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public void record(String stage, long nanos) {
+        if (size == stages.length) {
+            stages = Arrays.copyOf(stages, size * 2);
+            elapsedNanos = Arrays.copyOf(elapsedNanos, size * 2);
+        }
+        stages[size] = stage;
+        elapsedNanos[size] = Math.max(0, nanos);
+        size++;
+    }
+
+    /**
+     * Remembers the current time as the start of the next stage, see {@link #recordSinceMark(String)}.
+     */
+    public void mark() {
+        markNanos = System.nanoTime();
+        marked = true;
+    }
+
+    /**
+     * Records the time since the last {@link #mark()} for the given stage. Does nothing if there was no mark.
+     */
+    public void recordSinceMark(String stage) {
+        if (marked) {
+            record(stage, System.nanoTime() - markNanos);
+            marked = false;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getStage(int index) {
+        return stages[index];
+    }
+
+    public long getElapsedNanos(int index) {
+        return elapsedNanos[index];
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("MessageTrace{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(stages[i]).append('=').append(elapsedNanos[i] / 1000).append("us");
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -47,6 +47,8 @@ public class MessageEvent {
     private RawMessage raw;
     private Message msg;
     private Collection<Message> messages;
+    // System.nanoTime() when the raw message was inserted into the buffer, used to trace the queue wait
+    private long rawInsertedNanos;
 
     public boolean isSingleMessage() {
         return msg != null;
@@ -97,6 +99,14 @@ public class MessageEvent {
         return raw;
     }
 
+    public long getRawInsertedNanos() {
+        return rawInsertedNanos;
+    }
+
+    public void setRawInsertedNanos(long rawInsertedNanos) {
+        this.rawInsertedNanos = rawInsertedNanos;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
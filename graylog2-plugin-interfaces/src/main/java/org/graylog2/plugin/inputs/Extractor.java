@@ -121,6 +121,8 @@ public abstract class Extractor implements EmbeddedPersistable {
 
     private final String totalTimerName;
     private final String converterTimerName;
+    private final Timer totalTimer;
+    private final Timer converterTimer;
 
     protected abstract Result[] run(String field);
 
@@ -166,6 +168,9 @@ public abstract class Extractor implements EmbeddedPersistable {
 
         this.totalTimerName = name(getClass(), getType().toString().toLowerCase(Locale.ENGLISH), getId(), "executionTime");
         this.converterTimerName = name(getClass(), getType().toString().toLowerCase(Locale.ENGLISH), getId(), "converterExecutionTime");
+        // resolved once, extractors run for every message of their input
+        this.totalTimer = metricRegistry.timer(totalTimerName);
+        this.converterTimer = metricRegistry.timer(converterTimerName);
     }
 
     public void runExtractor(Message msg) {
@@ -187,7 +192,7 @@ public abstract class Extractor implements EmbeddedPersistable {
             }
         }
 
-        final Timer.Context timerContext = metricRegistry.timer(getTotalTimerName()).time();
+        final Timer.Context timerContext = totalTimer.time();
 
         final Result[] results = run(field);
 
@@ -236,7 +241,7 @@ public abstract class Extractor implements EmbeddedPersistable {
     }
 
     public void runConverters(Message msg) {
-        final Timer.Context timerContext = metricRegistry.timer(getConverterTimerName()).time();
+        final Timer.Context timerContext = converterTimer.time();
 
         for (Converter converter : converters) {
             try {
@@ -170,6 +170,10 @@ public class RawMessage implements Serializable {
         return new DateTime(msgBuilder.getTimestamp(), DateTimeZone.UTC); // TODO PERFORMANCE object creation
     }
 
+    public long getTimestampMillis() {
+        return msgBuilder.getTimestamp();
+    }
+
     public byte[] getPayload() {
         return msgBuilder.getPayload().toByteArray(); // TODO PERFORMANCE array copy
     }
@@ -236,6 +240,15 @@ public class RawMessage implements Serializable {
         this.codecConfig = codecConfig;
     }
 
+    /**
+     * @return the input id of the last source node without copying the source nodes, see {@link #getSourceNodes()}
+     */
+    @Nullable
+    public String getLastSourceInputId() {
+        final int count = msgBuilder.getSourceNodesCount();
+        return count == 0 ? null : msgBuilder.getSourceNodes(count - 1).getInputId();
+    }
+
     public List<SourceNode> getSourceNodes() {
         final ArrayList<SourceNode> list = Lists.newArrayList();
 
@@ -27,7 +27,8 @@ public enum StreamRuleType {
     GREATER(3),
     SMALLER(4),
     REGEX(2),
-    PRESENCE(5);
+    PRESENCE(5),
+    CIDR(6);
 
     private final int value;
 
@@ -31,7 +31,8 @@ public class StreamRule {
         MATCH_REGEX(2, "match regular expression", "match regular expression"),
         GREATER_THAN(3, "greater than", "be greater than"),
         SMALLER_THAN(4, "smaller than", "be smaller than"),
-        FIELD_PRESENCE(5, "field presence", "be present");
+        FIELD_PRESENCE(5, "field presence", "be present"),
+        IN_NETWORK(6, "in network", "be an IP address in one of the networks");
 
         private final int id;
         private final String shortDesc;
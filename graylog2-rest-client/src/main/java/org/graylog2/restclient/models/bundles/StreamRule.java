@@ -43,7 +43,8 @@ public class StreamRule {
         GREATER,
         SMALLER,
         REGEX,
-        PRESENCE;
+        PRESENCE,
+        CIDR;
     }
 
     @JsonProperty
@@ -0,0 +1,59 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest.models.system.traces.responses;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import org.joda.time.DateTime;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+
+@AutoValue
+@JsonAutoDetect
+public abstract class MessageTraceSummary {
+    @JsonProperty
+    public abstract String messageId();
+
+    @JsonProperty
+    @Nullable
+    public abstract String inputId();
+
+    @JsonProperty
+    public abstract List<String> streamIds();
+
+    @JsonProperty
+    public abstract DateTime receivedAt();
+
+    /**
+     * The time spent in each pipeline stage in microseconds, in the order the stages were passed.
+     */
+    @JsonProperty
+    public abstract Map<String, Long> stages();
+
+    @JsonCreator
+    public static MessageTraceSummary create(@JsonProperty("message_id") String messageId,
+                                             @JsonProperty("input_id") @Nullable String inputId,
+                                             @JsonProperty("stream_ids") List<String> streamIds,
+                                             @JsonProperty("received_at") DateTime receivedAt,
+                                             @JsonProperty("stages") Map<String, Long> stages) {
+        return new AutoValue_MessageTraceSummary(messageId, inputId, streamIds, receivedAt, stages);
+    }
+}
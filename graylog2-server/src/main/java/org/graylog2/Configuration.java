@@ -17,14 +17,19 @@
 package org.graylog2;
 
 import com.github.joschi.jadconfig.Parameter;
+import com.github.joschi.jadconfig.converters.StringListConverter;
 import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.github.joschi.jadconfig.validators.PositiveLongValidator;
 import org.graylog2.plugin.BaseConfiguration;
 import org.joda.time.DateTimeZone;
 
+import java.io.File;
 import java.net.URI;
+import java.util.Collections;
+import java.util.List;
 
 import static org.graylog2.plugin.Tools.getUriWithDefaultPath;
 import static org.graylog2.plugin.Tools.getUriWithPort;
@@ -62,9 +67,27 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "outputbuffer_processor_keep_alive_time", validator = PositiveIntegerValidator.class)
     private int outputBufferProcessorKeepAliveTime = 5000;
 
+    @Parameter(value = "outputbuffer_fanout_enabled")
+    private boolean outputBufferFanoutEnabled = false;
+
+    @Parameter(value = "outputbuffer_fanout_queue_size", validator = PositiveIntegerValidator.class)
+    private int outputBufferFanoutQueueSize = 8192;
+
     @Parameter(value = "dead_letters_enabled")
     private boolean deadLettersEnabled = false;
 
+    @Parameter(value = "dead_letters_spool_dir", required = true)
+    private File deadLettersSpoolDir = new File("data/dead-letters");
+
+    @Parameter(value = "dead_letters_spool_max_size")
+    private Size deadLettersSpoolMaxSize = Size.megabytes(256L);
+
+    @Parameter(value = "dead_letters_batch_size", validator = PositiveIntegerValidator.class)
+    private int deadLettersBatchSize = 500;
+
+    @Parameter(value = "dead_letters_replay_rate", validator = PositiveIntegerValidator.class)
+    private int deadLettersReplayRate = 1000;
+
     @Parameter("rules_file")
     private String droolsRulesFile;
 
@@ -101,6 +124,12 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "stream_processing_max_faults", validator = PositiveIntegerValidator.class)
     private int streamProcessingMaxFaults = 3;
 
+    @Parameter(value = "stream_router_incremental_updates")
+    private boolean streamRouterIncrementalUpdates = false;
+
+    @Parameter(value = "stream_router_version_check_interval", validator = PositiveDurationValidator.class)
+    private Duration streamRouterVersionCheckInterval = Duration.seconds(10L);
+
     @Parameter(value = "output_module_timeout", validator = PositiveLongValidator.class)
     private long outputModuleTimeout = 10000;
 
@@ -119,6 +148,66 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "alert_check_interval", validator = PositiveIntegerValidator.class)
     private int alertCheckInterval = 60;
 
+    @Parameter(value = "alert_check_threads", validator = PositiveIntegerValidator.class)
+    private int alertCheckThreads = 4;
+
+    @Parameter(value = "alert_check_timeout", validator = PositiveDurationValidator.class)
+    private Duration alertCheckTimeout = Duration.minutes(1L);
+
+    @Parameter(value = "alarm_callback_threads", validator = PositiveIntegerValidator.class)
+    private int alarmCallbackThreads = 4;
+
+    @Parameter(value = "alarm_callback_retries", validator = PositiveIntegerValidator.class)
+    private int alarmCallbackRetries = 2;
+
+    @Parameter(value = "alarm_callback_retry_interval", validator = PositiveDurationValidator.class)
+    private Duration alarmCallbackRetryInterval = Duration.seconds(30L);
+
+    @Parameter(value = "streaming_alert_evaluation")
+    private boolean streamingAlertEvaluation = false;
+
+    @Parameter(value = "search_cache_enabled")
+    private boolean searchCacheEnabled = false;
+
+    @Parameter(value = "search_cache_max_size", validator = PositiveIntegerValidator.class)
+    private int searchCacheMaxSize = 1000;
+
+    @Parameter(value = "search_cache_ttl", validator = PositiveDurationValidator.class)
+    private Duration searchCacheTtl = Duration.seconds(5L);
+
+    @Parameter(value = "search_export_concurrency", validator = PositiveIntegerValidator.class)
+    private int searchExportConcurrency = 1;
+
+    @Parameter(value = "search_export_page_size", validator = PositiveIntegerValidator.class)
+    private int searchExportPageSize = 500;
+
+    @Parameter(value = "search_export_keep_alive", validator = PositiveDurationValidator.class)
+    private Duration searchExportKeepAlive = Duration.minutes(1L);
+
+    @Parameter(value = "search_export_threads", validator = PositiveIntegerValidator.class)
+    private int searchExportThreads = 4;
+
+    @Parameter(value = "index_ranges_rebuild_concurrency", validator = PositiveIntegerValidator.class)
+    private int indexRangesRebuildConcurrency = 1;
+
+    @Parameter(value = "rollups_enabled")
+    private boolean rollupsEnabled = false;
+
+    @Parameter(value = "rollups_fields", converter = StringListConverter.class)
+    private List<String> rollupsFields = Collections.emptyList();
+
+    @Parameter(value = "rollups_min_time_range", validator = PositiveDurationValidator.class)
+    private Duration rollupsMinTimeRange = Duration.days(1L);
+
+    @Parameter(value = "field_catalog_enabled")
+    private boolean fieldCatalogEnabled = true;
+
+    @Parameter(value = "field_catalog_per_stream")
+    private boolean fieldCatalogPerStream = true;
+
+    @Parameter(value = "field_catalog_resync_interval", validator = PositiveDurationValidator.class)
+    private Duration fieldCatalogResyncInterval = Duration.hours(1L);
+
     @Parameter(value = "gc_warning_threshold")
     private Duration gcWarningThreshold = Duration.seconds(1L);
 
@@ -176,6 +265,14 @@ public class Configuration extends BaseConfiguration {
         return outputBufferProcessorKeepAliveTime;
     }
 
+    public boolean isOutputBufferFanoutEnabled() {
+        return outputBufferFanoutEnabled;
+    }
+
+    public int getOutputBufferFanoutQueueSize() {
+        return outputBufferFanoutQueueSize;
+    }
+
     public String getDroolsRulesFile() {
         return droolsRulesFile;
     }
@@ -221,6 +318,22 @@ public class Configuration extends BaseConfiguration {
         return deadLettersEnabled;
     }
 
+    public File getDeadLettersSpoolDir() {
+        return deadLettersSpoolDir;
+    }
+
+    public Size getDeadLettersSpoolMaxSize() {
+        return deadLettersSpoolMaxSize;
+    }
+
+    public int getDeadLettersBatchSize() {
+        return deadLettersBatchSize;
+    }
+
+    public int getDeadLettersReplayRate() {
+        return deadLettersReplayRate;
+    }
+
     public int getLoadBalancerRecognitionPeriodSeconds() {
         return loadBalancerRecognitionPeriodSeconds;
     }
@@ -233,6 +346,14 @@ public class Configuration extends BaseConfiguration {
         return streamProcessingMaxFaults;
     }
 
+    public boolean isStreamRouterIncrementalUpdates() {
+        return streamRouterIncrementalUpdates;
+    }
+
+    public Duration getStreamRouterVersionCheckInterval() {
+        return streamRouterVersionCheckInterval;
+    }
+
     public long getOutputModuleTimeout() {
         return outputModuleTimeout;
     }
@@ -257,6 +378,86 @@ public class Configuration extends BaseConfiguration {
         return alertCheckInterval;
     }
 
+    public int getAlertCheckThreads() {
+        return alertCheckThreads;
+    }
+
+    public Duration getAlertCheckTimeout() {
+        return alertCheckTimeout;
+    }
+
+    public int getAlarmCallbackThreads() {
+        return alarmCallbackThreads;
+    }
+
+    public int getAlarmCallbackRetries() {
+        return alarmCallbackRetries;
+    }
+
+    public Duration getAlarmCallbackRetryInterval() {
+        return alarmCallbackRetryInterval;
+    }
+
+    public boolean isSearchCacheEnabled() {
+        return searchCacheEnabled;
+    }
+
+    public int getSearchCacheMaxSize() {
+        return searchCacheMaxSize;
+    }
+
+    public Duration getSearchCacheTtl() {
+        return searchCacheTtl;
+    }
+
+    public int getSearchExportConcurrency() {
+        return searchExportConcurrency;
+    }
+
+    public int getSearchExportPageSize() {
+        return searchExportPageSize;
+    }
+
+    public Duration getSearchExportKeepAlive() {
+        return searchExportKeepAlive;
+    }
+
+    public int getSearchExportThreads() {
+        return searchExportThreads;
+    }
+
+    public int getIndexRangesRebuildConcurrency() {
+        return indexRangesRebuildConcurrency;
+    }
+
+    public boolean isRollupsEnabled() {
+        return rollupsEnabled;
+    }
+
+    public List<String> getRollupsFields() {
+        return rollupsFields;
+    }
+
+    public Duration getRollupsMinTimeRange() {
+        return rollupsMinTimeRange;
+    }
+
+    public boolean isFieldCatalogEnabled() {
+        return fieldCatalogEnabled;
+    }
+
+    public boolean isFieldCatalogPerStream() {
+        return fieldCatalogPerStream;
+    }
+
+    public Duration getFieldCatalogResyncInterval() {
+        return fieldCatalogResyncInterval;
+    }
+
+    public boolean isStreamingAlertEvaluation() {
+        return streamingAlertEvaluation;
+    }
+
     public Duration getGcWarningThreshold() {
         return gcWarningThreshold;
     }
@@ -0,0 +1,206 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.alarmcallbacks;
+
+import com.codahale.metrics.InstrumentedScheduledExecutorService;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog2.alerts.Alert;
+import org.graylog2.plugin.alarms.AlertCondition;
+import org.graylog2.plugin.alarms.callbacks.AlarmCallback;
+import org.graylog2.plugin.streams.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Calls the alarm callbacks of triggered alert conditions asynchronously, so that slow callbacks (e.g. an
+ * unresponsive SMTP server) don't delay the alert checks. Failed callbacks are retried. The latency of the callbacks
+ * is recorded per callback class.
+ */
+@Singleton
+public class AlarmCallbackDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(AlarmCallbackDispatcher.class);
+
+    private final AlarmCallbackConfigurationService alarmCallbackConfigurationService;
+    private final AlarmCallbackFactory alarmCallbackFactory;
+    private final EmailAlarmCallback emailAlarmCallback;
+    private final AlarmCallbackHistoryService alarmCallbackHistoryService;
+    private final int retries;
+    private final long retryIntervalMillis;
+    private final ScheduledExecutorService executor;
+    private final MetricRegistry metricRegistry;
+    private final ConcurrentMap<Class<?>, Timer> latencyTimers = new ConcurrentHashMap<>();
+    private final Meter failures;
+    private final Meter retried;
+
+    @Inject
+    public AlarmCallbackDispatcher(AlarmCallbackConfigurationService alarmCallbackConfigurationService,
+                                   AlarmCallbackFactory alarmCallbackFactory,
+                                   EmailAlarmCallback emailAlarmCallback,
+                                   AlarmCallbackHistoryService alarmCallbackHistoryService,
+                                   MetricRegistry metricRegistry,
+                                   @Named("alarm_callback_threads") int threads,
+                                   @Named("alarm_callback_retries") int retries,
+                                   @Named("alarm_callback_retry_interval") Duration retryInterval) {
+        this.alarmCallbackConfigurationService = alarmCallbackConfigurationService;
+        this.alarmCallbackFactory = alarmCallbackFactory;
+        this.emailAlarmCallback = emailAlarmCallback;
+        this.alarmCallbackHistoryService = alarmCallbackHistoryService;
+        this.retries = retries;
+        this.retryIntervalMillis = retryInterval.toMilliseconds();
+        this.executor = executorService(threads, metricRegistry);
+        this.metricRegistry = metricRegistry;
+        this.failures = metricRegistry.meter(name(AlarmCallbackDispatcher.class, "failures"));
+        this.retried = metricRegistry.meter(name(AlarmCallbackDispatcher.class, "retries"));
+    }
+
+    private ScheduledExecutorService executorService(int threads, MetricRegistry metricRegistry) {
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("alarm-callback-dispatcher-%d")
+                .setDaemon(true)
+                .build();
+        return new InstrumentedScheduledExecutorService(
+                Executors.newScheduledThreadPool(threads, threadFactory),
+                metricRegistry,
+                name(this.getClass(), "executor-service"));
+    }
+
+    /**
+     * Schedules all alarm callbacks of the stream for the given alert. Returns immediately.
+     */
+    public void dispatch(Stream stream, AlertCondition alertCondition, AlertCondition.CheckResult result, Alert alert) {
+        final List<AlarmCallbackConfiguration> callConfigurations = alarmCallbackConfigurationService.getForStream(stream);
+
+        if (callConfigurations.isEmpty()) {
+            /* Using e-mail alarm callback per default if there are no alarm callbacks configured explicitly.
+               This way we are supporting users who have upgraded from an old version where alarm callbacks
+               were non-existent. It also helps for users who forgot to set up alarm callbacks for newly
+               created alert conditions. */
+            submit(new Delivery(null, stream, alertCondition, result, alert), 0L);
+        } else {
+            for (AlarmCallbackConfiguration configuration : callConfigurations) {
+                submit(new Delivery(configuration, stream, alertCondition, result, alert), 0L);
+            }
+        }
+    }
+
+    private Timer latency(Class<?> alarmCallbackClass) {
+        final Timer timer = latencyTimers.get(alarmCallbackClass);
+        if (timer != null) {
+            return timer;
+        }
+        final String type = alarmCallbackClass.getCanonicalName() == null
+                ? alarmCallbackClass.getName()
+                : alarmCallbackClass.getCanonicalName();
+        final Timer newTimer = metricRegistry.timer(name(AlarmCallbackDispatcher.class, type, "latency"));
+        final Timer existingTimer = latencyTimers.putIfAbsent(alarmCallbackClass, newTimer);
+        return existingTimer == null ? newTimer : existingTimer;
+    }
+
+    private void submit(Delivery delivery, long delayMillis) {
+        try {
+            executor.schedule(delivery, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.error("Couldn't schedule alarm callback for alert condition <" + delivery.alertCondition.getId() + ">.", e);
+        }
+    }
+
+    private class Delivery implements Runnable {
+        // null for the default e-mail alarm callback
+        private final AlarmCallbackConfiguration configuration;
+        private final Stream stream;
+        private final AlertCondition alertCondition;
+        private final AlertCondition.CheckResult result;
+        private final Alert alert;
+        private int attempts = 0;
+
+        private Delivery(AlarmCallbackConfiguration configuration,
+                         Stream stream,
+                         AlertCondition alertCondition,
+                         AlertCondition.CheckResult result,
+                         Alert alert) {
+            this.configuration = configuration;
+            this.stream = stream;
+            this.alertCondition = alertCondition;
+            this.result = result;
+            this.alert = alert;
+        }
+
+        @Override
+        public void run() {
+            attempts++;
+
+            final String type = configuration == null ? EmailAlarmCallback.class.getCanonicalName() : configuration.getType();
+            AlarmCallback alarmCallback = null;
+            try {
+                alarmCallback = configuration == null ? emailAlarmCallback : alarmCallbackFactory.create(configuration);
+                final Timer.Context timer = latency(alarmCallback.getClass()).time();
+                try {
+                    alarmCallback.call(stream, result);
+                } finally {
+                    timer.stop();
+                }
+
+                if (configuration != null) {
+                    saveHistory(alarmCallbackHistoryService.success(configuration, alert, alertCondition));
+                }
+            } catch (Exception e) {
+                failures.mark();
+
+                final String description = alarmCallback != null
+                        ? "Alarm callback <" + alarmCallback.getName() + ">"
+                        : "Alarm callback of type " + type;
+                if (attempts <= retries) {
+                    LOG.warn(description + " failed, retrying in " + retryIntervalMillis + "ms (attempt " + attempts + ").", e);
+                    retried.mark();
+                    submit(this, retryIntervalMillis);
+                    return;
+                }
+
+                LOG.warn(description + " failed. Skipping.", e);
+                if (configuration != null) {
+                    saveHistory(alarmCallbackHistoryService.error(configuration, alert, alertCondition, e.getMessage()));
+                }
+            }
+        }
+
+        private void saveHistory(AlarmCallbackHistory alarmCallbackHistory) {
+            try {
+                alarmCallbackHistoryService.save(alarmCallbackHistory);
+            } catch (Exception e) {
+                LOG.warn("Unable to save history of alarm callback run: ", e);
+            }
+        }
+    }
+}
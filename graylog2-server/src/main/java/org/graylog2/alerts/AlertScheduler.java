@@ -0,0 +1,200 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.alerts;
+
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog2.alarmcallbacks.AlarmCallbackDispatcher;
+import org.graylog2.plugin.alarms.AlertCondition;
+import org.graylog2.plugin.streams.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Runs the alert condition checks on a bounded worker pool.
+ * <p/>
+ * Every condition is checked at most once per check interval, which defaults to {@code alert_check_interval} and
+ * can be overridden per condition with the {@value #PARAMETER_CHECK_INTERVAL} parameter (in seconds). A check of a
+ * condition is never started while the previous one is still running, checks exceeding {@code alert_check_timeout}
+ * are cancelled. The alarm callbacks of triggered conditions are handed over to the {@link AlarmCallbackDispatcher}.
+ */
+@Singleton
+public class AlertScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(AlertScheduler.class);
+
+    public static final String PARAMETER_CHECK_INTERVAL = "check_interval";
+
+    private final AlertService alertService;
+    private final AlarmCallbackDispatcher alarmCallbackDispatcher;
+    private final long defaultIntervalMillis;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, ScheduledCheck> checks = new ConcurrentHashMap<>();
+    private final Timer checkTimer;
+    private final Meter triggered;
+    private final Meter timeouts;
+    private final Meter failures;
+
+    @Inject
+    public AlertScheduler(AlertService alertService,
+                          AlarmCallbackDispatcher alarmCallbackDispatcher,
+                          MetricRegistry metricRegistry,
+                          @Named("alert_check_interval") int alertCheckInterval,
+                          @Named("alert_check_threads") int threads,
+                          @Named("alert_check_timeout") Duration timeout) {
+        this.alertService = alertService;
+        this.alarmCallbackDispatcher = alarmCallbackDispatcher;
+        this.defaultIntervalMillis = TimeUnit.SECONDS.toMillis(alertCheckInterval);
+        this.timeoutMillis = timeout.toMilliseconds();
+        this.executor = executorService(threads, metricRegistry);
+        this.checkTimer = metricRegistry.timer(name(AlertScheduler.class, "check-time"));
+        this.triggered = metricRegistry.meter(name(AlertScheduler.class, "triggered"));
+        this.timeouts = metricRegistry.meter(name(AlertScheduler.class, "timeouts"));
+        this.failures = metricRegistry.meter(name(AlertScheduler.class, "failures"));
+    }
+
+    private ExecutorService executorService(int threads, MetricRegistry metricRegistry) {
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("alert-check-%d")
+                .setDaemon(true)
+                .build();
+        return new InstrumentedExecutorService(
+                Executors.newFixedThreadPool(threads, threadFactory),
+                metricRegistry,
+                name(this.getClass(), "executor-service"));
+    }
+
+    /**
+     * Starts the checks of all given conditions which are due. Conditions which are not passed in anymore are
+     * forgotten.
+     */
+    public void schedule(Map<Stream, List<AlertCondition>> alertConditions) {
+        final long now = System.currentTimeMillis();
+        final Set<String> keys = new HashSet<>();
+
+        for (Map.Entry<Stream, List<AlertCondition>> entry : alertConditions.entrySet()) {
+            final Stream stream = entry.getKey();
+            for (AlertCondition alertCondition : entry.getValue()) {
+                final String key = stream.getId() + ":" + alertCondition.getId();
+                keys.add(key);
+                schedule(key, stream, alertCondition, now);
+            }
+        }
+
+        checks.keySet().retainAll(keys);
+    }
+
+    private void schedule(String key, final Stream stream, final AlertCondition alertCondition, long now) {
+        ScheduledCheck check = checks.get(key);
+        if (check == null) {
+            check = new ScheduledCheck();
+            checks.put(key, check);
+        }
+
+        final Future<?> running = check.future;
+        if (running != null && !running.isDone()) {
+            if (now - check.startedAt > timeoutMillis) {
+                LOG.warn("Check of alert condition <{}> on stream <{}> exceeded its deadline of {}ms, cancelling it.",
+                        alertCondition.getId(), stream.getId(), timeoutMillis);
+                timeouts.mark();
+                running.cancel(true);
+            } else {
+                LOG.debug("Check of alert condition <{}> is still running, skipping it.", alertCondition.getId());
+            }
+            return;
+        }
+
+        if (now < check.nextRun) {
+            return;
+        }
+
+        check.startedAt = now;
+        check.nextRun = now + intervalMillis(alertCondition);
+        try {
+            check.future = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runCheck(stream, alertCondition);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.error("Couldn't schedule check of alert condition <" + alertCondition.getId() + ">.", e);
+        }
+    }
+
+    private long intervalMillis(AlertCondition alertCondition) {
+        final Object interval = alertCondition.getParameters().get(PARAMETER_CHECK_INTERVAL);
+        if (interval instanceof Number && ((Number) interval).longValue() > 0) {
+            return TimeUnit.SECONDS.toMillis(((Number) interval).longValue());
+        }
+        return defaultIntervalMillis;
+    }
+
+    private void runCheck(Stream stream, AlertCondition alertCondition) {
+        final Timer.Context timer = checkTimer.time();
+        try {
+            final AlertCondition.CheckResult result = alertService.triggered(alertCondition);
+            if (result.isTriggered()) {
+                // Alert is triggered!
+                LOG.debug("Alert condition [{}] is triggered. Sending alerts.", alertCondition);
+                triggered.mark();
+
+                // Persist alert.
+                final Alert alert = alertService.factory(result);
+                alertService.save(alert);
+
+                alarmCallbackDispatcher.dispatch(stream, alertCondition, result, alert);
+            } else {
+                // Alert not triggered.
+                LOG.debug("Alert condition [{}] is not triggered.", alertCondition);
+            }
+        } catch (Exception e) {
+            failures.mark();
+            LOG.error("Skipping alert check that threw an exception.", e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static class ScheduledCheck {
+        private volatile long nextRun = 0L;
+        private volatile long startedAt = 0L;
+        private volatile Future<?> future;
+    }
+}
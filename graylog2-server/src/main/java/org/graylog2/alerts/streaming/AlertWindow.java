@@ -0,0 +1,271 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.alerts.streaming;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Doubles;
+import com.google.common.util.concurrent.AtomicDouble;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.graylog2.plugin.Message;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sliding window of the message count and numeric field statistics of a single stream on this node. The window is
+ * split into buckets of {@link #BUCKET_MILLIS} milliseconds which are recycled once they fell out of the window.
+ * <p/>
+ * Messages are accounted by the time they have been processed, not by their timestamp. Updates are lock free and
+ * can be done concurrently from all processing threads.
+ * <p/>
+ * A query over the last {@code n} minutes includes the current bucket and all buckets which at least partially
+ * overlap the queried range, so it covers the whole range plus up to {@link #BUCKET_MILLIS} milliseconds before it.
+ * <p/>
+ * Like Elasticsearch, the field statistics include numeric values and strings which can be parsed as numbers.
+ */
+public class AlertWindow {
+    public static final long BUCKET_MILLIS = TimeUnit.SECONDS.toMillis(10L);
+
+    static final String FIELD_EPOCH = "epoch";
+    static final String FIELD_COUNT = "count";
+    static final String FIELD_FIELDS = "fields";
+    static final String FIELD_NAME = "name";
+    static final String FIELD_SUM = "sum";
+    static final String FIELD_SUM_OF_SQUARES = "sum_of_squares";
+    static final String FIELD_MIN = "min";
+    static final String FIELD_MAX = "max";
+
+    private final int minutes;
+    private final String[] fields;
+    private final Set<String> fieldSet;
+    private final long trackingSince;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public AlertWindow(int minutes, Set<String> fields, long now) {
+        this.minutes = minutes;
+        this.fieldSet = ImmutableSet.copyOf(fields);
+        this.fields = fieldSet.toArray(new String[fieldSet.size()]);
+        this.trackingSince = now;
+        // a full window spans bucketCount(minutes) + 1 buckets, one more so its oldest bucket is never recycled
+        // while being read
+        this.buckets = new AtomicReferenceArray<>(bucketCount(minutes) + 2);
+    }
+
+    public int getMinutes() {
+        return minutes;
+    }
+
+    public Set<String> getFields() {
+        return fieldSet;
+    }
+
+    public long getTrackingSince() {
+        return trackingSince;
+    }
+
+    /**
+     * @return {@code true} if the window has been tracking long enough to answer a query over the given minutes
+     */
+    public boolean covers(int minutes, String field, long now) {
+        return minutes <= this.minutes
+                && (field == null || fieldSet.contains(field))
+                && covers(trackingSince, minutes, now);
+    }
+
+    static boolean covers(long trackingSince, int minutes, long now) {
+        // the bucket which was current when tracking started is incomplete
+        return trackingSince <= now - TimeUnit.MINUTES.toMillis(minutes) - BUCKET_MILLIS;
+    }
+
+    public void add(Message message, long now) {
+        final Bucket bucket = bucket(now / BUCKET_MILLIS);
+        bucket.count.increment();
+        for (int i = 0; i < fields.length; i++) {
+            final Double value = numericValue(message.getField(fields[i]));
+            if (value != null) {
+                bucket.fields[i].add(value);
+            }
+        }
+    }
+
+    @Nullable
+    static Double numericValue(@Nullable Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            final Double parsed = Doubles.tryParse(((String) value).trim());
+            if (parsed != null && !parsed.isNaN() && !parsed.isInfinite()) {
+                return parsed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the buckets of the last {@code minutes} minutes to the given statistics.
+     */
+    public void collect(WindowStatistics statistics, int minutes, long now) {
+        final long newest = now / BUCKET_MILLIS;
+        final long oldest = oldestEpoch(minutes, now);
+        for (int i = 0; i < buckets.length(); i++) {
+            final Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.epoch > oldest && bucket.epoch <= newest) {
+                statistics.addCount(bucket.count.sum());
+                for (int j = 0; j < fields.length; j++) {
+                    final FieldAccumulator field = bucket.fields[j];
+                    statistics.addField(fields[j], field.count.sum(), field.sum.sum(), field.sumOfSquares.sum(),
+                            field.min.get(), field.max.get());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the persisted buckets of the last {@code minutes} minutes to the given statistics.
+     *
+     * @see #toDBObjects(long)
+     */
+    @SuppressWarnings("unchecked")
+    static void collect(WindowStatistics statistics, List<DBObject> buckets, int minutes, long now) {
+        final long newest = now / BUCKET_MILLIS;
+        final long oldest = oldestEpoch(minutes, now);
+        for (DBObject bucket : buckets) {
+            final long epoch = ((Number) bucket.get(FIELD_EPOCH)).longValue();
+            if (epoch <= oldest || epoch > newest) {
+                continue;
+            }
+            statistics.addCount(((Number) bucket.get(FIELD_COUNT)).longValue());
+            for (DBObject field : (List<DBObject>) bucket.get(FIELD_FIELDS)) {
+                statistics.addField((String) field.get(FIELD_NAME),
+                        ((Number) field.get(FIELD_COUNT)).longValue(),
+                        ((Number) field.get(FIELD_SUM)).doubleValue(),
+                        ((Number) field.get(FIELD_SUM_OF_SQUARES)).doubleValue(),
+                        ((Number) field.get(FIELD_MIN)).doubleValue(),
+                        ((Number) field.get(FIELD_MAX)).doubleValue());
+            }
+        }
+    }
+
+    /**
+     * @return the non-empty buckets which are still part of the window
+     */
+    List<DBObject> toDBObjects(long now) {
+        final long oldest = oldestEpoch(minutes, now);
+        final List<DBObject> result = Lists.newArrayList();
+        for (int i = 0; i < buckets.length(); i++) {
+            final Bucket bucket = buckets.get(i);
+            if (bucket == null || bucket.epoch <= oldest) {
+                continue;
+            }
+            final long count = bucket.count.sum();
+            if (count == 0L) {
+                continue;
+            }
+
+            final BasicDBList fieldObjects = new BasicDBList();
+            for (int j = 0; j < fields.length; j++) {
+                final FieldAccumulator field = bucket.fields[j];
+                final long fieldCount = field.count.sum();
+                if (fieldCount > 0L) {
+                    fieldObjects.add(new BasicDBObject(FIELD_NAME, fields[j])
+                            .append(FIELD_COUNT, fieldCount)
+                            .append(FIELD_SUM, field.sum.sum())
+                            .append(FIELD_SUM_OF_SQUARES, field.sumOfSquares.sum())
+                            .append(FIELD_MIN, field.min.get())
+                            .append(FIELD_MAX, field.max.get()));
+                }
+            }
+
+            result.add(new BasicDBObject(FIELD_EPOCH, bucket.epoch)
+                    .append(FIELD_COUNT, count)
+                    .append(FIELD_FIELDS, fieldObjects));
+        }
+        return result;
+    }
+
+    private Bucket bucket(long epoch) {
+        final int index = (int) (epoch % buckets.length());
+        while (true) {
+            final Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.epoch >= epoch) {
+                // a newer bucket only shows up if this thread was descheduled for a whole window
+                return bucket;
+            }
+            final Bucket fresh = new Bucket(epoch, fields.length);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * @return the epoch of the newest bucket which is not part of a window over the last {@code minutes} minutes
+     */
+    static long oldestEpoch(int minutes, long now) {
+        // the current bucket is incomplete, the oldest included bucket only partially overlaps the queried range
+        return now / BUCKET_MILLIS - bucketCount(minutes) - 1;
+    }
+
+    static int bucketCount(int minutes) {
+        return (int) (TimeUnit.MINUTES.toMillis(minutes) / BUCKET_MILLIS);
+    }
+
+    private static class Bucket {
+        private final long epoch;
+        private final LongAdder count = new LongAdder();
+        private final FieldAccumulator[] fields;
+
+        private Bucket(long epoch, int fieldCount) {
+            this.epoch = epoch;
+            this.fields = new FieldAccumulator[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                fields[i] = new FieldAccumulator();
+            }
+        }
+    }
+
+    private static class FieldAccumulator {
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final DoubleAdder sumOfSquares = new DoubleAdder();
+        private final AtomicDouble min = new AtomicDouble(Double.POSITIVE_INFINITY);
+        private final AtomicDouble max = new AtomicDouble(Double.NEGATIVE_INFINITY);
+
+        private void add(double value) {
+            count.increment();
+            sum.add(value);
+            sumOfSquares.add(value * value);
+
+            double current;
+            while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+                // retry
+            }
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // retry
+            }
+        }
+    }
+}
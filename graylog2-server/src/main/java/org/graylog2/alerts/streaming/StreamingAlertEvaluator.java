@@ -0,0 +1,319 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.alerts.streaming;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import org.graylog2.alerts.types.FieldValueAlertCondition;
+import org.graylog2.alerts.types.MessageCountAlertCondition;
+import org.graylog2.cluster.Node;
+import org.graylog2.cluster.NodeService;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.alarms.AlertCondition;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.system.NodeId;
+import org.joda.time.DateTimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps sliding windows of message counts and field statistics for all streams with message count or field value
+ * alert conditions, so that these conditions can be checked without querying Elasticsearch.
+ * <p/>
+ * Every node updates its windows from the processing pipeline after stream matching and regularly publishes them
+ * to MongoDB. The node checking the alert conditions merges its own windows with the ones published by all other
+ * active nodes. If any node cannot provide a complete window yet (e.g. right after it has been started or the
+ * alert conditions have been changed), no statistics are returned and the conditions fall back to Elasticsearch.
+ */
+@Singleton
+public class StreamingAlertEvaluator {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingAlertEvaluator.class);
+
+    static final String COLLECTION_NAME = "alert_windows";
+    private static final String FIELD_ID = "_id";
+    private static final String FIELD_UPDATED_AT = "updated_at";
+    private static final String FIELD_STREAMS = "streams";
+    private static final String FIELD_STREAM_ID = "stream_id";
+    private static final String FIELD_MINUTES = "minutes";
+    private static final String FIELD_TRACKING_SINCE = "tracking_since";
+    private static final String FIELD_FIELDS = "fields";
+    private static final String FIELD_BUCKETS = "buckets";
+
+    public static final long PUBLISH_INTERVAL_MILLIS = AlertWindow.BUCKET_MILLIS;
+    // windows of other nodes are only used if they have been published recently
+    private static final long MAX_REMOTE_WINDOW_AGE_MILLIS = 3 * PUBLISH_INTERVAL_MILLIS;
+    private static final long REMOTE_WINDOW_CACHE_MILLIS = TimeUnit.SECONDS.toMillis(2L);
+
+    private final boolean enabled;
+    private final NodeId nodeId;
+    private final NodeService nodeService;
+    private final DBCollection collection;
+    private final Supplier<Map<String, DBObject>> remoteWindows;
+
+    private volatile Map<String, AlertWindow> windows = Collections.emptyMap();
+
+    @Inject
+    public StreamingAlertEvaluator(@Named("streaming_alert_evaluation") boolean enabled,
+                                   NodeId nodeId,
+                                   NodeService nodeService,
+                                   MongoConnection mongoConnection) {
+        this.enabled = enabled;
+        this.nodeId = nodeId;
+        this.nodeService = nodeService;
+        this.collection = mongoConnection.getDatabase().getCollection(COLLECTION_NAME);
+        this.remoteWindows = Suppliers.memoizeWithExpiration(new Supplier<Map<String, DBObject>>() {
+            @Override
+            public Map<String, DBObject> get() {
+                return loadRemoteWindows();
+            }
+        }, REMOTE_WINDOW_CACHE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Accounts the message in the windows of all its streams. Must be called after stream matching.
+     */
+    public void process(Message message) {
+        if (!enabled) {
+            return;
+        }
+        final Map<String, AlertWindow> currentWindows = windows;
+        if (currentWindows.isEmpty()) {
+            return;
+        }
+
+        final long now = DateTimeUtils.currentTimeMillis();
+        for (Stream stream : message.getStreams()) {
+            final AlertWindow window = currentWindows.get(stream.getId());
+            if (window != null) {
+                window.add(message, now);
+            }
+        }
+    }
+
+    /**
+     * Sets up windows for the given alert conditions. Windows which are still sufficient are kept as they are, all
+     * other windows start from scratch.
+     */
+    public void updateAlertConditions(Collection<AlertCondition> alertConditions) {
+        if (!enabled) {
+            return;
+        }
+
+        final Map<String, Integer> minutesByStream = Maps.newHashMap();
+        final Map<String, Set<String>> fieldsByStream = Maps.newHashMap();
+        for (AlertCondition alertCondition : alertConditions) {
+            final String streamId = alertCondition.getStream().getId();
+            final int minutes;
+            if (alertCondition instanceof MessageCountAlertCondition) {
+                minutes = ((MessageCountAlertCondition) alertCondition).getTime();
+            } else if (alertCondition instanceof FieldValueAlertCondition) {
+                final FieldValueAlertCondition fieldValueCondition = (FieldValueAlertCondition) alertCondition;
+                minutes = fieldValueCondition.getTime();
+                Set<String> fields = fieldsByStream.get(streamId);
+                if (fields == null) {
+                    fields = Sets.newHashSet();
+                    fieldsByStream.put(streamId, fields);
+                }
+                fields.add(fieldValueCondition.getField());
+            } else {
+                continue;
+            }
+
+            final Integer previous = minutesByStream.get(streamId);
+            minutesByStream.put(streamId, previous == null ? minutes : Math.max(previous, minutes));
+        }
+
+        final long now = DateTimeUtils.currentTimeMillis();
+        final Map<String, AlertWindow> currentWindows = windows;
+        final ImmutableMap.Builder<String, AlertWindow> newWindows = ImmutableMap.builder();
+        for (Map.Entry<String, Integer> entry : minutesByStream.entrySet()) {
+            final String streamId = entry.getKey();
+            final int minutes = entry.getValue();
+            final Set<String> fields = fieldsByStream.containsKey(streamId) ? fieldsByStream.get(streamId) : Collections.<String>emptySet();
+
+            final AlertWindow window = currentWindows.get(streamId);
+            if (window != null && window.getMinutes() >= minutes && window.getFields().containsAll(fields)) {
+                newWindows.put(streamId, window);
+            } else {
+                LOG.debug("Tracking alert window of {} minutes with fields {} for stream <{}>.", minutes, fields, streamId);
+                newWindows.put(streamId, new AlertWindow(minutes, fields, now));
+            }
+        }
+
+        windows = newWindows.build();
+    }
+
+    /**
+     * Publishes the windows of this node so they can be merged by the node checking the alert conditions.
+     */
+    public void publish() {
+        if (!enabled) {
+            return;
+        }
+
+        final long now = DateTimeUtils.currentTimeMillis();
+        final BasicDBList streams = new BasicDBList();
+        for (Map.Entry<String, AlertWindow> entry : windows.entrySet()) {
+            final AlertWindow window = entry.getValue();
+            final BasicDBList fields = new BasicDBList();
+            fields.addAll(window.getFields());
+            streams.add(new BasicDBObject(FIELD_STREAM_ID, entry.getKey())
+                    .append(FIELD_MINUTES, window.getMinutes())
+                    .append(FIELD_TRACKING_SINCE, window.getTrackingSince())
+                    .append(FIELD_FIELDS, fields)
+                    .append(FIELD_BUCKETS, window.toDBObjects(now)));
+        }
+
+        final DBObject document = new BasicDBObject(FIELD_ID, nodeId.toString())
+                .append(FIELD_UPDATED_AT, now)
+                .append(FIELD_STREAMS, streams);
+        collection.update(new BasicDBObject(FIELD_ID, nodeId.toString()), document, true, false);
+    }
+
+    /**
+     * Returns the merged statistics of all nodes over the last {@code minutes} minutes for the given stream.
+     *
+     * @param field the numeric field to include, may be {@code null} if only the message count is needed
+     * @return the statistics or {@code null} if they are not available and Elasticsearch has to be queried instead
+     */
+    @Nullable
+    public WindowStatistics getStatistics(String streamId, int minutes, @Nullable String field) {
+        if (!enabled) {
+            return null;
+        }
+
+        final long now = DateTimeUtils.currentTimeMillis();
+        final AlertWindow window = windows.get(streamId);
+        if (window == null || !window.covers(minutes, field, now)) {
+            return null;
+        }
+
+        final WindowStatistics statistics = new WindowStatistics();
+        window.collect(statistics, minutes, now);
+
+        final Map<String, DBObject> remote;
+        try {
+            remote = remoteWindows.get();
+        } catch (MongoException e) {
+            LOG.warn("Couldn't load alert windows of other nodes.", e);
+            return null;
+        }
+
+        for (Map.Entry<String, DBObject> entry : remote.entrySet()) {
+            final DBObject document = entry.getValue();
+            if (document == null) {
+                LOG.debug("Node <{}> did not publish its alert windows yet.", entry.getKey());
+                return null;
+            }
+
+            final long updatedAt = ((Number) document.get(FIELD_UPDATED_AT)).longValue();
+            if (now - updatedAt > MAX_REMOTE_WINDOW_AGE_MILLIS) {
+                LOG.debug("Alert windows of node <{}> are outdated.", entry.getKey());
+                return null;
+            }
+
+            if (!collectRemote(statistics, document, streamId, minutes, field, now)) {
+                LOG.debug("Alert window of node <{}> for stream <{}> is incomplete.", entry.getKey(), streamId);
+                return null;
+            }
+        }
+
+        return statistics;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean collectRemote(WindowStatistics statistics, DBObject document, String streamId, int minutes, String field, long now) {
+        final List<DBObject> streams = (List<DBObject>) document.get(FIELD_STREAMS);
+        if (streams == null) {
+            return false;
+        }
+
+        for (DBObject stream : streams) {
+            if (!streamId.equals(stream.get(FIELD_STREAM_ID))) {
+                continue;
+            }
+
+            final int windowMinutes = ((Number) stream.get(FIELD_MINUTES)).intValue();
+            final long trackingSince = ((Number) stream.get(FIELD_TRACKING_SINCE)).longValue();
+            final List<String> fields = (List<String>) stream.get(FIELD_FIELDS);
+            if (windowMinutes < minutes
+                    || (field != null && (fields == null || !fields.contains(field)))
+                    || !AlertWindow.covers(trackingSince, minutes, now)) {
+                return false;
+            }
+
+            AlertWindow.collect(statistics, (List<DBObject>) stream.get(FIELD_BUCKETS), minutes, now);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the published windows of all other active nodes, {@code null} values for nodes without windows
+     */
+    private Map<String, DBObject> loadRemoteWindows() {
+        final Set<String> activeNodes = Sets.newHashSet(nodeService.allActive(Node.Type.SERVER).keySet());
+        activeNodes.remove(nodeId.toString());
+
+        final Map<String, DBObject> result = Maps.newHashMap();
+        for (String activeNode : activeNodes) {
+            result.put(activeNode, null);
+        }
+        if (activeNodes.isEmpty()) {
+            return result;
+        }
+
+        final BasicDBList ids = new BasicDBList();
+        ids.addAll(activeNodes);
+        final DBCursor cursor = collection.find(new BasicDBObject(FIELD_ID, new BasicDBObject("$in", ids)));
+        try {
+            for (DBObject document : cursor) {
+                result.put((String) document.get(FIELD_ID), document);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.alerts.streaming;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Message count and numeric field statistics of an alert window, merged from the buckets of all nodes.
+ * <p/>
+ * Instances are not thread safe.
+ */
+public class WindowStatistics {
+    private static final FieldStatistics EMPTY_FIELD = new FieldStatistics();
+
+    private final Map<String, FieldStatistics> fields = Maps.newHashMap();
+    private long count = 0L;
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the statistics of the given field, empty statistics if no message contained a numeric value for it
+     */
+    public FieldStatistics getField(String field) {
+        final FieldStatistics statistics = fields.get(field);
+        return statistics == null ? EMPTY_FIELD : statistics;
+    }
+
+    void addCount(long count) {
+        this.count += count;
+    }
+
+    void addField(String field, long count, double sum, double sumOfSquares, double min, double max) {
+        FieldStatistics statistics = fields.get(field);
+        if (statistics == null) {
+            statistics = new FieldStatistics();
+            fields.put(field, statistics);
+        }
+        statistics.merge(count, sum, sumOfSquares, min, max);
+    }
+
+    public static class FieldStatistics {
+        private long count = 0L;
+        private double sum = 0.0d;
+        private double sumOfSquares = 0.0d;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private void merge(long count, double sum, double sumOfSquares, double min, double max) {
+            this.count += count;
+            this.sum += sum;
+            this.sumOfSquares += sumOfSquares;
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        /**
+         * @return the population standard deviation, like the extended statistics of Elasticsearch
+         */
+        public double getStdDeviation() {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            final double mean = getMean();
+            return Math.sqrt(Math.max(0.0d, sumOfSquares / count - mean * mean));
+        }
+    }
+}
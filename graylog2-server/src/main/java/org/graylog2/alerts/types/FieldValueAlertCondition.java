@@ -20,10 +20,14 @@ import com.google.common.collect.Lists;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import org.graylog2.alerts.AbstractAlertCondition;
+import org.graylog2.alerts.streaming.StreamingAlertEvaluator;
+import org.graylog2.alerts.streaming.WindowStatistics;
 import org.graylog2.indexer.InvalidRangeFormatException;
 import org.graylog2.indexer.results.FieldStatsResult;
 import org.graylog2.indexer.results.ResultMessage;
+import org.graylog2.indexer.results.SearchResult;
 import org.graylog2.indexer.searches.Searches;
+import org.graylog2.indexer.searches.Sorting;
 import org.graylog2.indexer.searches.timeranges.InvalidRangeParametersException;
 import org.graylog2.indexer.searches.timeranges.RelativeRange;
 import org.graylog2.plugin.Message;
@@ -67,12 +71,14 @@ public class FieldValueAlertCondition extends AbstractAlertCondition {
     private final String field;
     private final DecimalFormat decimalFormat;
     private final Searches searches;
+    private final StreamingAlertEvaluator streamingAlertEvaluator;
     private List<Message> searchHits = Lists.newArrayList();
 
     @AssistedInject
-    public FieldValueAlertCondition(Searches searches, @Assisted Stream stream, @Nullable @Assisted String id, @Assisted DateTime createdAt, @Assisted("userid") String creatorUserId, @Assisted Map<String, Object> parameters) {
+    public FieldValueAlertCondition(Searches searches, StreamingAlertEvaluator streamingAlertEvaluator, @Assisted Stream stream, @Nullable @Assisted String id, @Assisted DateTime createdAt, @Assisted("userid") String creatorUserId, @Assisted Map<String, Object> parameters) {
         super(stream, id, Type.FIELD_VALUE, createdAt, creatorUserId, parameters);
         this.searches = searches;
+        this.streamingAlertEvaluator = streamingAlertEvaluator;
 
         this.decimalFormat = new DecimalFormat("#.###", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
 
@@ -85,6 +91,14 @@ public class FieldValueAlertCondition extends AbstractAlertCondition {
         checkArgument(!isNullOrEmpty(field), "\"field\" must not be empty.");
     }
 
+    public int getTime() {
+        return time;
+    }
+
+    public String getField() {
+        return field;
+    }
+
     @Override
     public String getDescription() {
         return "time: " + time
@@ -100,39 +114,34 @@ public class FieldValueAlertCondition extends AbstractAlertCondition {
     protected CheckResult runCheck() {
         try {
             final String filter = "streams:" + stream.getId();
-            // TODO we don't support cardinality yet
-            final FieldStatsResult fieldStatsResult = searches.fieldStats(field, "*", filter, new RelativeRange(time * 60), false, true, false);
-
-            if (fieldStatsResult.getCount() == 0) {
-                LOG.debug("Alert check <{}> did not match any messages. Returning not triggered.", type);
-                return new NegativeCheckResult(this);
-            }
+            final WindowStatistics statistics = streamingAlertEvaluator.getStatistics(stream.getId(), time, field);
 
+            final FieldStatsResult fieldStatsResult;
             final double result;
-            switch (type) {
-                case MEAN:
-                    result = fieldStatsResult.getMean();
-                    break;
-                case MIN:
-                    result = fieldStatsResult.getMin();
-                    break;
-                case MAX:
-                    result = fieldStatsResult.getMax();
-                    break;
-                case SUM:
-                    result = fieldStatsResult.getSum();
-                    break;
-                case STDDEV:
-                    result = fieldStatsResult.getStdDeviation();
-                    break;
-                default:
-                    LOG.error("No such field value check type: [{}]. Returning not triggered.", type);
+            if (statistics != null) {
+                fieldStatsResult = null;
+                final WindowStatistics.FieldStatistics fieldStatistics = statistics.getField(field);
+                if (fieldStatistics.getCount() == 0) {
+                    LOG.debug("Alert check <{}> did not match any messages. Returning not triggered.", type);
+                    return new NegativeCheckResult(this);
+                }
+                result = checkValue(fieldStatistics.getMean(), fieldStatistics.getMin(), fieldStatistics.getMax(),
+                        fieldStatistics.getSum(), fieldStatistics.getStdDeviation());
+            } else {
+                // TODO we don't support cardinality yet
+                fieldStatsResult = searches.fieldStats(field, "*", filter, new RelativeRange(time * 60), false, true, false);
+
+                if (fieldStatsResult.getCount() == 0) {
+                    LOG.debug("Alert check <{}> did not match any messages. Returning not triggered.", type);
                     return new NegativeCheckResult(this);
+                }
+                result = checkValue(fieldStatsResult.getMean(), fieldStatsResult.getMin(), fieldStatsResult.getMax(),
+                        fieldStatsResult.getSum(), fieldStatsResult.getStdDeviation());
             }
 
             LOG.debug("Alert check <{}> result: [{}]", id, result);
 
-            if (Double.isInfinite(result)) {
+            if (Double.isInfinite(result) || Double.isNaN(result)) {
                 // This happens when there are no ES results/docs.
                 LOG.debug("Infinite value. Returning not triggered.");
                 return new NegativeCheckResult(this);
@@ -158,7 +167,15 @@ public class FieldValueAlertCondition extends AbstractAlertCondition {
 
                 final List<MessageSummary> summaries;
                 if (getBacklog() > 0) {
-                    final List<ResultMessage> searchResult = fieldStatsResult.getSearchHits();
+                    final List<ResultMessage> searchResult;
+                    if (fieldStatsResult != null) {
+                        searchResult = fieldStatsResult.getSearchHits();
+                    } else {
+                        // the streaming statistics don't carry any messages, only fetch them now that the condition fired
+                        final SearchResult backlogResult = searches.search("*", filter, new RelativeRange(time * 60),
+                                getBacklog(), 0, new Sorting("timestamp", Sorting.Direction.DESC));
+                        searchResult = backlogResult.getResults();
+                    }
                     summaries = Lists.newArrayListWithCapacity(searchResult.size());
                     for (ResultMessage resultMessage : searchResult) {
                         final Message msg = new Message(resultMessage.getMessage());
@@ -187,6 +204,24 @@ public class FieldValueAlertCondition extends AbstractAlertCondition {
         }
     }
 
+    private double checkValue(double mean, double min, double max, double sum, double stdDeviation) {
+        switch (type) {
+            case MEAN:
+                return mean;
+            case MIN:
+                return min;
+            case MAX:
+                return max;
+            case SUM:
+                return sum;
+            case STDDEV:
+                return stdDeviation;
+            default:
+                LOG.error("No such field value check type: [{}]. Returning not triggered.", type);
+                return Double.NaN;
+        }
+    }
+
     @Override
     public List<Message> getSearchHits() {
         return Lists.newArrayList(searchHits);
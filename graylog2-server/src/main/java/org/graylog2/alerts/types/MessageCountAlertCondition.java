@@ -20,6 +20,8 @@ import com.google.common.collect.Lists;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import org.graylog2.alerts.AbstractAlertCondition;
+import org.graylog2.alerts.streaming.StreamingAlertEvaluator;
+import org.graylog2.alerts.streaming.WindowStatistics;
 import org.graylog2.indexer.InvalidRangeFormatException;
 import org.graylog2.indexer.results.CountResult;
 import org.graylog2.indexer.results.ResultMessage;
@@ -58,17 +60,23 @@ public class MessageCountAlertCondition extends AbstractAlertCondition {
     private final int threshold;
     private List<Message> searchHits = Collections.emptyList();
     private final Searches searches;
+    private final StreamingAlertEvaluator streamingAlertEvaluator;
 
     @AssistedInject
-    public MessageCountAlertCondition(Searches searches, @Assisted Stream stream, @Nullable @Assisted String id, @Assisted DateTime createdAt, @Assisted("userid") String creatorUserId, @Assisted Map<String, Object> parameters) {
+    public MessageCountAlertCondition(Searches searches, StreamingAlertEvaluator streamingAlertEvaluator, @Assisted Stream stream, @Nullable @Assisted String id, @Assisted DateTime createdAt, @Assisted("userid") String creatorUserId, @Assisted Map<String, Object> parameters) {
         super(stream, id, Type.MESSAGE_COUNT, createdAt, creatorUserId, parameters);
 
         this.searches = searches;
+        this.streamingAlertEvaluator = streamingAlertEvaluator;
         this.time = (Integer) parameters.get("time");
         this.thresholdType = ThresholdType.valueOf(((String) parameters.get("threshold_type")).toUpperCase(Locale.ENGLISH));
         this.threshold = (Integer) parameters.get("threshold");
     }
 
+    public int getTime() {
+        return time;
+    }
+
     @Override
     public String getDescription() {
         return "time: " + time
@@ -81,8 +89,14 @@ public class MessageCountAlertCondition extends AbstractAlertCondition {
     protected CheckResult runCheck() {
         try {
             final String filter = "streams:" + stream.getId();
-            final CountResult result = searches.count("*", new RelativeRange(time * 60), filter);
-            final long count = result.getCount();
+            final WindowStatistics statistics = streamingAlertEvaluator.getStatistics(stream.getId(), time, null);
+            final long count;
+            if (statistics != null) {
+                count = statistics.getCount();
+            } else {
+                final CountResult result = searches.count("*", new RelativeRange(time * 60), filter);
+                count = result.getCount();
+            }
 
             LOG.debug("Alert check <{}> result: [{}]", id, count);
 
@@ -16,6 +16,7 @@
  */
 package org.graylog2.bindings.providers;
 
+import org.graylog2.indexer.ReplayDeadLettersJob;
 import org.graylog2.indexer.healing.FixDeflectorByDeleteJob;
 import org.graylog2.indexer.healing.FixDeflectorByMoveJob;
 import org.graylog2.system.jobs.SystemJobFactory;
@@ -31,9 +32,10 @@ public class SystemJobFactoryProvider implements Provider<SystemJobFactory> {
 
     @Inject
     public SystemJobFactoryProvider(FixDeflectorByDeleteJob.Factory deleteJobFactory,
-                                    FixDeflectorByMoveJob.Factory moveJobFactory) {
+                                    FixDeflectorByMoveJob.Factory moveJobFactory,
+                                    ReplayDeadLettersJob.Factory replayDeadLettersJobFactory) {
         if (systemJobFactory == null)
-            systemJobFactory = new SystemJobFactory(moveJobFactory, deleteJobFactory);
+            systemJobFactory = new SystemJobFactory(moveJobFactory, deleteJobFactory, replayDeadLettersJobFactory);
     }
 
     @Override
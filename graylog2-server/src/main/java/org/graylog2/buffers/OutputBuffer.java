@@ -103,6 +103,7 @@ public class OutputBuffer extends Buffer {
     }
 
     public void insertBlocking(Message message) {
+        message.markStage();
         insert(message);
     }
 
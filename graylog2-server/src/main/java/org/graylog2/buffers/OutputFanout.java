@@ -0,0 +1,388 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.buffers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.graylog2.Configuration;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.graylog2.shared.buffers.LoggingExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.graylog2.shared.metrics.MetricUtils.safelyRegister;
+
+/**
+ * Gives every stream {@link MessageOutput} its own bounded ring buffer with a dedicated writer thread.
+ * <p/>
+ * Offering a message never blocks: if the queue of an output is full, the message is dropped for that output only.
+ * A slow output therefore only degrades its own queue instead of the shared output buffer processors.
+ * Every queue reports its lag, dropped messages and the latency from enqueueing to the finished write. The metrics are
+ * named after the output ID given to {@link #register(String, MessageOutput)}, or after the output class for outputs
+ * which have not been registered, and are removed once the queue has been stopped.
+ * <p/>
+ * Writes that fail or take longer than {@code output_module_timeout} count as faults of the output. An output which
+ * crossed {@code output_fault_count_threshold} faults is suspended for {@code output_fault_penalty_seconds}, its
+ * messages are dropped in the meantime.
+ */
+@Singleton
+public class OutputFanout {
+    private static final Logger LOG = LoggerFactory.getLogger(OutputFanout.class);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10L;
+    // the largest power of 2 which fits into an int
+    private static final int MAX_QUEUE_SIZE = 1 << 30;
+
+    private final MetricRegistry metricRegistry;
+    private final int queueSize;
+    private final long writeTimeoutNanos;
+    private final long faultCountThreshold;
+    private final long faultPenaltyNanos;
+    // outputs do not override equals(), so every output instance gets its own queue
+    private final ConcurrentMap<MessageOutput, OutputQueue> queues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MessageOutput, String> outputIds = new ConcurrentHashMap<>();
+
+    @Inject
+    public OutputFanout(Configuration configuration, MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+        final int configuredSize = configuration.getOutputBufferFanoutQueueSize();
+        this.queueSize = queueSize(configuredSize);
+        if (queueSize < configuredSize) {
+            LOG.warn("Output fan-out queue size {} is too large, using {} instead.", configuredSize, queueSize);
+        }
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getOutputModuleTimeout());
+        this.faultCountThreshold = configuration.getOutputFaultCountThreshold();
+        this.faultPenaltyNanos = TimeUnit.SECONDS.toNanos(configuration.getOutputFaultPenaltySeconds());
+    }
+
+    @VisibleForTesting
+    static int queueSize(int configuredSize) {
+        if (configuredSize >= MAX_QUEUE_SIZE) {
+            return MAX_QUEUE_SIZE;
+        }
+        // the ring buffer size has to be a power of 2
+        return Integer.bitCount(configuredSize) == 1 ? configuredSize : Integer.highestOneBit(configuredSize) << 1;
+    }
+
+    /**
+     * Sets the ID the queue metrics of the given output are named after. Has to be called before the first message
+     * is offered to the output.
+     */
+    public void register(String outputId, MessageOutput output) {
+        outputIds.put(output, outputId);
+    }
+
+    /**
+     * Queues the message for the given output.
+     *
+     * @return {@code false} if the output is not running, suspended because of too many faults or its queue is full
+     * and the message has been dropped
+     */
+    public boolean offer(MessageOutput output, Message message) {
+        final OutputQueue queue = getQueue(output);
+        return queue != null && queue.offer(message);
+    }
+
+    /**
+     * Stops the queue of the given output without waiting for the queued messages to be written. Has to be called
+     * before the output itself is stopped.
+     */
+    public void remove(MessageOutput output) {
+        outputIds.remove(output);
+        final OutputQueue queue = queues.remove(output);
+        if (queue != null) {
+            LOG.debug("Removing queue of output {}", queue.getName());
+            queue.halt();
+        }
+    }
+
+    public void stop() {
+        for (OutputQueue queue : queues.values()) {
+            queue.stop();
+        }
+        queues.clear();
+        outputIds.clear();
+    }
+
+    @VisibleForTesting
+    int getQueueCount() {
+        return queues.size();
+    }
+
+    private OutputQueue getQueue(MessageOutput output) {
+        final OutputQueue queue = queues.get(output);
+        if (queue != null) {
+            return queue;
+        }
+
+        synchronized (this) {
+            final OutputQueue existingQueue = queues.get(output);
+            if (existingQueue != null) {
+                return existingQueue;
+            }
+
+            removeStoppedQueues();
+
+            if (!output.isRunning()) {
+                return null;
+            }
+
+            final String outputId = outputIds.get(output);
+            final String name = name(OutputFanout.class, outputId == null ? output.getClass().getSimpleName() : outputId);
+            final OutputQueue newQueue = new OutputQueue(output, name, queueSize, writeTimeoutNanos, faultCountThreshold,
+                    faultPenaltyNanos, metricRegistry);
+            queues.put(output, newQueue);
+            return newQueue;
+        }
+    }
+
+    // outputs which have been stopped without being removed, e. g. by a failing plugin
+    private void removeStoppedQueues() {
+        final Iterator<Map.Entry<MessageOutput, OutputQueue>> iterator = queues.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<MessageOutput, OutputQueue> entry = iterator.next();
+            if (!entry.getKey().isRunning()) {
+                LOG.debug("Removing queue of stopped output {}", entry.getValue().getName());
+                entry.getValue().halt();
+                iterator.remove();
+                outputIds.remove(entry.getKey());
+            }
+        }
+    }
+
+    private static class OutputEvent {
+        private static final EventFactory<OutputEvent> EVENT_FACTORY = new EventFactory<OutputEvent>() {
+            @Override
+            public OutputEvent newInstance() {
+                return new OutputEvent();
+            }
+        };
+
+        private Message message;
+        private long enqueuedNanos;
+    }
+
+    private static class OutputQueue implements EventHandler<OutputEvent> {
+        private static final EventTranslatorOneArg<OutputEvent, Message> TRANSLATOR = new EventTranslatorOneArg<OutputEvent, Message>() {
+            @Override
+            public void translateTo(OutputEvent event, long sequence, Message message) {
+                event.message = message;
+                event.enqueuedNanos = System.nanoTime();
+            }
+        };
+
+        private final MessageOutput output;
+        private final String name;
+        private final long writeTimeoutNanos;
+        private final long faultCountThreshold;
+        private final long faultPenaltyNanos;
+        private final MetricRegistry metricRegistry;
+        private final ExecutorService executor;
+        private final Disruptor<OutputEvent> disruptor;
+        private final RingBuffer<OutputEvent> ringBuffer;
+        private final Meter droppedMessages;
+        private final Meter writtenMessages;
+        private final Meter faults;
+        private final Timer latency;
+
+        // only modified by the writer thread
+        private int faultCount = 0;
+        private long firstFaultNanos;
+        private volatile boolean suspended = false;
+        private volatile long suspendedSinceNanos;
+
+        private OutputQueue(MessageOutput output,
+                            String name,
+                            int queueSize,
+                            long writeTimeoutNanos,
+                            long faultCountThreshold,
+                            long faultPenaltyNanos,
+                            MetricRegistry metricRegistry) {
+            this.output = output;
+            this.name = name;
+            this.writeTimeoutNanos = writeTimeoutNanos;
+            this.faultCountThreshold = faultCountThreshold;
+            this.faultPenaltyNanos = faultPenaltyNanos;
+            this.metricRegistry = metricRegistry;
+
+            this.droppedMessages = metricRegistry.meter(name(name, "droppedMessages"));
+            this.writtenMessages = metricRegistry.meter(name(name, "writtenMessages"));
+            this.faults = metricRegistry.meter(name(name, "faults"));
+            this.latency = metricRegistry.timer(name(name, "latency"));
+
+            final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("outputfanout-" + output.getClass().getSimpleName() + "-%d")
+                    .setDaemon(true)
+                    .build();
+            this.executor = Executors.newSingleThreadExecutor(threadFactory);
+            this.disruptor = new Disruptor<>(
+                    OutputEvent.EVENT_FACTORY,
+                    queueSize,
+                    executor,
+                    ProducerType.MULTI,
+                    new BlockingWaitStrategy());
+            disruptor.handleExceptionsWith(new LoggingExceptionHandler(LOG));
+            disruptor.handleEventsWith(this);
+            this.ringBuffer = disruptor.start();
+
+            safelyRegister(metricRegistry, name(name, "lag"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+                }
+            });
+
+            LOG.debug("Started output queue {} with size {}", name, queueSize);
+        }
+
+        private boolean offer(Message message) {
+            if (!isSuspended() && ringBuffer.tryPublishEvent(TRANSLATOR, message)) {
+                return true;
+            }
+            droppedMessages.mark();
+            return false;
+        }
+
+        private boolean isSuspended() {
+            if (!suspended) {
+                return false;
+            }
+            if (System.nanoTime() - suspendedSinceNanos < faultPenaltyNanos) {
+                return true;
+            }
+
+            LOG.info("Resuming output queue {} after fault penalty.", name);
+            suspended = false;
+            return false;
+        }
+
+        @Override
+        public void onEvent(OutputEvent event, long sequence, boolean endOfBatch) throws Exception {
+            final Message message = event.message;
+            final long enqueuedNanos = event.enqueuedNanos;
+            // let the message be garbage collected as soon as possible
+            event.message = null;
+
+            if (message == null || !output.isRunning()) {
+                return;
+            }
+            if (isSuspended()) {
+                droppedMessages.mark();
+                return;
+            }
+
+            final long writeStartNanos = System.nanoTime();
+            try {
+                output.write(message);
+                writtenMessages.mark();
+
+                final long writeNanos = System.nanoTime() - writeStartNanos;
+                if (writeNanos > writeTimeoutNanos) {
+                    LOG.warn("Writing to output [{}] took {}ms, more than the output module timeout of {}ms.",
+                            output.getClass(), TimeUnit.NANOSECONDS.toMillis(writeNanos),
+                            TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos));
+                    recordFault();
+                }
+            } catch (Exception e) {
+                LOG.error("Error in output [" + output.getClass() + "].", e);
+                recordFault();
+            } finally {
+                latency.update(System.nanoTime() - enqueuedNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void recordFault() {
+            faults.mark();
+
+            final long now = System.nanoTime();
+            if (faultCount == 0 || now - firstFaultNanos > faultPenaltyNanos) {
+                firstFaultNanos = now;
+                faultCount = 0;
+            }
+
+            if (++faultCount >= faultCountThreshold) {
+                LOG.error("Output queue {} has crossed threshold of {} faults in {} seconds. Dropping its messages for {} seconds.",
+                        name, faultCountThreshold, TimeUnit.NANOSECONDS.toSeconds(faultPenaltyNanos),
+                        TimeUnit.NANOSECONDS.toSeconds(faultPenaltyNanos));
+                faultCount = 0;
+                suspendedSinceNanos = now;
+                suspended = true;
+            }
+        }
+
+        private String getName() {
+            return name;
+        }
+
+        private void stop() {
+            try {
+                // give the output a chance to write the queued messages
+                disruptor.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                LOG.warn("Output queue {} did not drain within {} seconds, dropping {} queued messages.",
+                        name, SHUTDOWN_TIMEOUT_SECONDS, ringBuffer.getBufferSize() - ringBuffer.remainingCapacity());
+                disruptor.halt();
+            }
+            shutdown();
+        }
+
+        private void halt() {
+            final long queued = ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+            if (queued > 0) {
+                LOG.debug("Dropping {} queued messages of output queue {}.", queued, name);
+            }
+            disruptor.halt();
+            shutdown();
+        }
+
+        private void shutdown() {
+            executor.shutdown();
+            metricRegistry.removeMatching(new MetricFilter() {
+                @Override
+                public boolean matches(String metricName, Metric metric) {
+                    return metricName.startsWith(name + ".");
+                }
+            });
+        }
+    }
+}
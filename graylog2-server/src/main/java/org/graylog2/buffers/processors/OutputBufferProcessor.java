@@ -26,10 +26,12 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.lmax.disruptor.WorkHandler;
 import org.graylog2.Configuration;
+import org.graylog2.buffers.OutputFanout;
 import org.graylog2.outputs.DefaultMessageOutput;
 import org.graylog2.outputs.OutputRouter;
 import org.graylog2.plugin.GlobalMetricNames;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageTrace;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.buffers.MessageEvent;
 import org.graylog2.plugin.outputs.MessageOutput;
@@ -37,7 +39,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import java.util.Set;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -66,23 +68,33 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
 
     private final OutputRouter outputRouter;
     private final MessageOutput defaultMessageOutput;
+    private final OutputFanout outputFanout;
+    private final boolean fanoutEnabled;
 
     @Inject
     public OutputBufferProcessor(Configuration configuration,
                                  MetricRegistry metricRegistry,
                                  ServerStatus serverStatus,
                                  OutputRouter outputRouter,
-                                 @DefaultMessageOutput MessageOutput defaultMessageOutput) {
+                                 @DefaultMessageOutput MessageOutput defaultMessageOutput,
+                                 OutputFanout outputFanout) {
         this.configuration = configuration;
         this.serverStatus = serverStatus;
         this.outputRouter = outputRouter;
         this.defaultMessageOutput = defaultMessageOutput;
+        this.outputFanout = outputFanout;
+        this.fanoutEnabled = configuration.isOutputBufferFanoutEnabled();
 
-        final String nameFormat = "outputbuffer-processor-executor-%d";
-        final int corePoolSize = configuration.getOutputBufferProcessorThreadsCorePoolSize();
-        final int maxPoolSize = configuration.getOutputBufferProcessorThreadsMaxPoolSize();
-        final int keepAliveTime = configuration.getOutputBufferProcessorKeepAliveTime();
-        this.executor = executorService(metricRegistry, nameFormat, corePoolSize, maxPoolSize, keepAliveTime);
+        if (fanoutEnabled) {
+            // stream outputs have their own writer threads, the default output is written by this processor
+            this.executor = null;
+        } else {
+            final String nameFormat = "outputbuffer-processor-executor-%d";
+            final int corePoolSize = configuration.getOutputBufferProcessorThreadsCorePoolSize();
+            final int maxPoolSize = configuration.getOutputBufferProcessorThreadsMaxPoolSize();
+            final int keepAliveTime = configuration.getOutputBufferProcessorKeepAliveTime();
+            this.executor = executorService(metricRegistry, nameFormat, corePoolSize, maxPoolSize, keepAliveTime);
+        }
 
         this.incomingMessages = metricRegistry.meter(INCOMING_MESSAGES_METRICNAME);
         this.outputThroughput = metricRegistry.counter(GlobalMetricNames.OUTPUT_THROUGHPUT);
@@ -114,6 +126,10 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
      * The default output, however, is allowed to block and is not subject to time limiting. This is important because it
      * can exert back pressure on the processing pipeline this way, making sure we don't run into excessive heap usage.
      * </p>
+     * <p>
+     * If the output fan-out is enabled, stream outputs are fed through their own bounded queues instead, see
+     * {@link OutputFanout}, and the default output is written directly from this thread.
+     * </p>
      *
      * @param event the message to write to outputs
      * @throws Exception
@@ -129,9 +145,18 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
         }
         LOG.debug("Processing message <{}> from OutputBuffer.", msg.getId());
 
-        final Set<MessageOutput> messageOutputs = outputRouter.getStreamOutputsForMessage(msg);
+        msg.recordStageSinceMark(MessageTrace.OUTPUT_QUEUE);
+        // the default output completes the trace once the message has been acknowledged
+        msg.markStage();
+
+        final List<MessageOutput> messageOutputs = outputRouter.getStreamOutputsForMessage(msg);
         msg.recordCounter(serverStatus, "matched-outputs", messageOutputs.size());
 
+        if (fanoutEnabled) {
+            fanOut(msg, messageOutputs);
+            return;
+        }
+
         final Future<?> defaultOutputCompletion = processMessage(msg, defaultMessageOutput);
 
         final CountDownLatch streamOutputsDoneSignal = new CountDownLatch(messageOutputs.size());
@@ -162,6 +187,33 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
         LOG.debug("Wrote message <{}> to all outputs. Finished handling.", msg.getId());
     }
 
+    private void fanOut(Message msg, List<MessageOutput> messageOutputs) {
+        for (MessageOutput output : messageOutputs) {
+            if (output.isRunning() && !outputFanout.offer(output, msg)) {
+                LOG.debug("Queue of output [{}] is full, dropping message <{}>.", output.getClass(), msg.getId());
+            }
+        }
+
+        // the default output is not queued, blocking here exerts the back pressure to the system
+        if (defaultMessageOutput.isRunning()) {
+            try (Timer.Context ignored = processTime.time()) {
+                defaultMessageOutput.write(msg);
+            } catch (Exception e) {
+                LOG.error("Error in output [" + defaultMessageOutput.getClass() + "].", e);
+            }
+        } else {
+            LOG.debug("Skipping stopped output {}", defaultMessageOutput.getClass().getName());
+        }
+
+        if (msg.hasRecordings()) {
+            LOG.debug("Message event trace: {}", msg.recordingsAsString());
+        }
+
+        outputThroughput.inc();
+
+        LOG.debug("Wrote message <{}> to all outputs. Finished handling.", msg.getId());
+    }
+
     private Future<?> processMessage(final Message msg, final MessageOutput defaultMessageOutput) {
         return processMessage(msg, defaultMessageOutput, new CountDownLatch(0));
     }
@@ -24,10 +24,13 @@ import com.google.common.collect.Ordering;
 import org.graylog2.Configuration;
 import org.graylog2.buffers.OutputBuffer;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageTrace;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.filters.MessageFilter;
 import org.graylog2.shared.buffers.processors.ProcessBufferProcessor;
 import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.metrics.MetricUtils;
+import org.graylog2.shared.tracing.PipelineTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +54,10 @@ public class ServerProcessBufferProcessor extends ProcessBufferProcessor {
     private final OutputBuffer outputBuffer;
     private final Meter filteredOutMessages;
     private final List<MessageFilter> filterRegistry;
+    private final String[] filterStages;
+    private final String[] filterTimerNames;
+    private final Timer[] filterTimers;
+    private final PipelineTracer pipelineTracer;
 
 
     @Inject
@@ -59,11 +66,13 @@ public class ServerProcessBufferProcessor extends ProcessBufferProcessor {
                                   Configuration configuration,
                                   ServerStatus serverStatus,
                                   OutputBuffer outputBuffer,
-                                  Journal journal) {
+                                  Journal journal,
+                                  PipelineTracer pipelineTracer) {
         super(metricRegistry);
         this.configuration = configuration;
         this.serverStatus = serverStatus;
         this.journal = journal;
+        this.pipelineTracer = pipelineTracer;
 
         // we need to keep this sorted properly, so that the filters run in the correct order
         this.filterRegistry = Ordering.from(new Comparator<MessageFilter>() {
@@ -76,6 +85,17 @@ public class ServerProcessBufferProcessor extends ProcessBufferProcessor {
             }
         }).immutableSortedCopy(filterRegistry);
 
+        // built once, the stage names and timers are needed for every message
+        this.filterStages = new String[this.filterRegistry.size()];
+        this.filterTimerNames = new String[filterStages.length];
+        this.filterTimers = new Timer[filterStages.length];
+        for (int i = 0; i < filterStages.length; i++) {
+            final Class<? extends MessageFilter> filterClass = this.filterRegistry.get(i).getClass();
+            filterStages[i] = MessageTrace.FILTER_PREFIX + filterClass.getSimpleName();
+            filterTimerNames[i] = name(filterClass, "executionTime");
+            filterTimers[i] = MetricUtils.lowOverheadTimer(metricRegistry, filterTimerNames[i]);
+        }
+
         this.outputBuffer = outputBuffer;
         this.filteredOutMessages = metricRegistry.meter(name(ProcessBufferProcessor.class, "filteredOutMessages"));
     }
@@ -86,25 +106,31 @@ public class ServerProcessBufferProcessor extends ProcessBufferProcessor {
         if (filterRegistry.size() == 0)
             throw new RuntimeException("Empty filter registry!");
 
-        for (final MessageFilter filter : filterRegistry) {
-            final String timerName = name(filter.getClass(), "executionTime");
-            final Timer timer = metricRegistry.timer(timerName);
-            final Timer.Context timerContext = timer.time();
+        for (int i = 0; i < filterRegistry.size(); i++) {
+            final MessageFilter filter = filterRegistry.get(i);
+            final Timer.Context timerContext = filterTimers[i].time();
+            boolean discard = false;
 
             try {
                 LOG.debug("Applying filter [{}] on message <{}>.", filter.getName(), msg.getId());
 
                 if (filter.filter(msg)) {
                     LOG.debug("Filter [{}] marked message <{}> to be discarded. Dropping message.", filter.getName(), msg.getId());
-                    filteredOutMessages.mark();
-                    journal.markJournalOffsetCommitted(msg.getJournalOffset());
-                    return;
+                    discard = true;
                 }
             } catch (Exception e) {
                 LOG.error("Could not apply filter [" + filter.getName() +"] on message <" + msg.getId() +">: ", e);
             } finally {
                 final long elapsedNanos = timerContext.stop();
-                msg.recordTiming(serverStatus, timerName, elapsedNanos);
+                msg.recordTiming(serverStatus, filterTimerNames[i], elapsedNanos);
+                msg.recordStage(filterStages[i], elapsedNanos);
+            }
+
+            if (discard) {
+                filteredOutMessages.mark();
+                journal.markJournalOffsetCommitted(msg.getJournalOffset());
+                pipelineTracer.discard(msg);
+                return;
             }
         }
 
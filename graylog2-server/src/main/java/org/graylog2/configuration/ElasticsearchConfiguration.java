@@ -118,6 +118,12 @@ public class ElasticsearchConfiguration {
     @Parameter(value = "index_optimization_max_num_segments", validator = PositiveIntegerValidator.class)
     private int indexOptimizationMaxNumSegments = 1;
 
+    @Parameter(value = "index_maintenance_concurrency", validator = PositiveIntegerValidator.class)
+    private int indexMaintenanceConcurrency = 2;
+
+    @Parameter(value = "index_optimization_window")
+    private String indexOptimizationWindow = null;
+
     @Parameter(value = "elasticsearch_request_timeout", validator = PositiveDurationValidator.class)
     private Duration requestTimeout = Duration.minutes(1L);
 
@@ -241,6 +247,14 @@ public class ElasticsearchConfiguration {
         return disableIndexOptimization;
     }
 
+    public int getIndexMaintenanceConcurrency() {
+        return indexMaintenanceConcurrency;
+    }
+
+    public String getIndexOptimizationWindow() {
+        return indexOptimizationWindow;
+    }
+
     public String getPathData() {
         return pathData;
     }
@@ -39,6 +39,7 @@ public class FieldChartWidget extends ChartWidget {
     private final String renderer;
     private final String interpolation;
     private final Searches searches;
+    private final IncrementalHistogram histogram = new IncrementalHistogram();
 
     public FieldChartWidget(MetricRegistry metricRegistry, Searches searches, String id, String description, WidgetCacheTime cacheTime, Map<String, Object> config, String query, TimeRange timeRange, String creatorUserId) throws InvalidWidgetConfigurationException {
         super(metricRegistry, Type.FIELD_CHART, id, timeRange, description, cacheTime, config, creatorUserId);
@@ -80,16 +81,20 @@ public class FieldChartWidget extends ChartWidget {
             filter = "streams:" + streamId;
         }
 
+        final String histogramFilter = filter;
         try {
-            final HistogramResult histogramResult = searches.fieldHistogram(
-                    query,
-                    field,
-                    Searches.DateHistogramInterval.valueOf(interval.toString().toUpperCase(Locale.ENGLISH)),
-                    filter,
-                    this.getTimeRange(),
-                    "cardinality".equalsIgnoreCase(statisticalFunction));
-
-            return new ComputationResult(histogramResult.getResults(), histogramResult.took().millis(), histogramResult.getHistogramBoundaries());
+            return histogram.compute(this.getTimeRange(), interval, new IncrementalHistogram.HistogramQuery<Searches.FieldTypeException>() {
+                @Override
+                public HistogramResult histogram(TimeRange range) throws Searches.FieldTypeException {
+                    return searches.fieldHistogram(
+                            query,
+                            field,
+                            Searches.DateHistogramInterval.valueOf(interval.toString().toUpperCase(Locale.ENGLISH)),
+                            histogramFilter,
+                            range,
+                            "cardinality".equalsIgnoreCase(statisticalFunction));
+                }
+            });
         } catch (Searches.FieldTypeException e) {
             String msg = "Could not calculate [" + this.getClass().getCanonicalName() + "] widget <" + getId() + ">. Not a numeric field? The field was [" + field + "]";
             LOG.error(msg, e);
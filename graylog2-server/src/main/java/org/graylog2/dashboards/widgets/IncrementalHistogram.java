@@ -0,0 +1,128 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.dashboards.widgets;
+
+import com.google.common.collect.Maps;
+import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.searches.Searches.DateHistogramInterval;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the histogram of a relative time range incrementally.
+ * <p/>
+ * Buckets which ended a while ago can't change anymore and are kept between computations. A refresh only queries the
+ * buckets which are still open and the partial bucket at the start of the time range, and merges them with the
+ * retained buckets. The whole histogram is recomputed periodically to pick up messages which arrived very late.
+ * <p/>
+ * Histograms of absolute and keyword time ranges are always computed completely.
+ */
+class IncrementalHistogram {
+    // buckets are considered closed once they ended this long ago
+    private static final long CLOSED_BUCKET_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(5L);
+    private static final long FULL_RECOMPUTATION_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(15L);
+
+    interface HistogramQuery<E extends Exception> {
+        HistogramResult histogram(TimeRange range) throws E;
+    }
+
+    private final SortedMap<Long, Object> closedBuckets = Maps.newTreeMap();
+    private DateHistogramInterval interval;
+    // start of the first open bucket in milliseconds, everything before has been retained
+    private long closedUntil;
+    private long lastFullComputation;
+
+    public synchronized <E extends Exception> ComputationResult compute(TimeRange timeRange,
+                                                                        DateHistogramInterval interval,
+                                                                        HistogramQuery<E> query) throws E {
+        if (!(timeRange instanceof RelativeRange)) {
+            final HistogramResult histogram = query.histogram(timeRange);
+            return new ComputationResult(histogram.getResults(), histogram.took().millis(), histogram.getHistogramBoundaries());
+        }
+
+        final DateTime now = Tools.iso8601();
+        final int range = ((RelativeRange) timeRange).getRange();
+        final DateTime from = range > 0 ? now.minusSeconds(range) : new DateTime(0L, DateTimeZone.UTC);
+
+        if (interval != this.interval || now.getMillis() - lastFullComputation >= FULL_RECOMPUTATION_INTERVAL_MILLIS) {
+            reset(interval, now);
+        }
+
+        final DateTime firstBucket = interval.bucketStart(from);
+        closedBuckets.headMap(toKey(firstBucket)).clear();
+
+        // the first bucket only contains the messages after the start of the range, which moves on every refresh
+        long tookMs = 0L;
+        if (from.isAfter(firstBucket) && firstBucket.getMillis() < closedUntil) {
+            final DateTime firstBucketEnd = firstBucket.plus(interval.getPeriod());
+            final DateTime headTo = new DateTime(Math.min(firstBucketEnd.getMillis(), closedUntil) - 1L, DateTimeZone.UTC);
+            final HistogramResult head = query.histogram(new AbsoluteRange(from, headTo));
+            final Object firstBucketResult = results(head).get(toKey(firstBucket));
+            if (firstBucketResult == null) {
+                closedBuckets.remove(toKey(firstBucket));
+            } else {
+                closedBuckets.put(toKey(firstBucket), firstBucketResult);
+            }
+            tookMs += head.took().millis();
+        }
+
+        final DateTime tailFrom = new DateTime(Math.max(closedUntil, from.getMillis()), DateTimeZone.UTC);
+        final HistogramResult tail = query.histogram(new AbsoluteRange(tailFrom, now));
+        tookMs += tail.took().millis();
+
+        final Map<Long, Object> results = Maps.newTreeMap(closedBuckets);
+        final long firstOpenBucket = interval.bucketStart(now.minus(CLOSED_BUCKET_GRACE_MILLIS)).getMillis();
+        for (Map.Entry<Long, Object> bucket : results(tail).entrySet()) {
+            final long key = bucket.getKey();
+            if (key < toKey(firstBucket)) {
+                continue;
+            }
+            results.put(key, bucket.getValue());
+            if (TimeUnit.SECONDS.toMillis(key) < firstOpenBucket) {
+                closedBuckets.put(key, bucket.getValue());
+            }
+        }
+        closedUntil = Math.max(closedUntil, firstOpenBucket);
+
+        return new ComputationResult(results, tookMs, new AbsoluteRange(from, now));
+    }
+
+    private void reset(DateHistogramInterval interval, DateTime now) {
+        this.interval = interval;
+        this.closedBuckets.clear();
+        this.closedUntil = 0L;
+        this.lastFullComputation = now.getMillis();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, Object> results(HistogramResult histogram) {
+        return (Map<Long, Object>) histogram.getResults();
+    }
+
+    // histogram results are keyed by the bucket start in seconds
+    private static long toKey(DateTime bucketStart) {
+        return TimeUnit.MILLISECONDS.toSeconds(bucketStart.getMillis());
+    }
+}
@@ -30,6 +30,7 @@ public class SearchResultChartWidget extends ChartWidget {
 
     private final String query;
     private final Searches searches;
+    private final IncrementalHistogram histogram = new IncrementalHistogram();
 
     public SearchResultChartWidget(MetricRegistry metricRegistry, Searches searches, String id, String description, WidgetCacheTime cacheTime, Map<String, Object> config, String query, TimeRange timeRange, String creatorUserId) {
         super(metricRegistry, Type.SEARCH_RESULT_CHART, id, timeRange, description, cacheTime, config, creatorUserId);
@@ -65,7 +66,12 @@ public class SearchResultChartWidget extends ChartWidget {
             filter = "streams:" + streamId;
         }
 
-        HistogramResult histogram = searches.histogram(query, interval, filter, this.getTimeRange());
-        return new ComputationResult(histogram.getResults(), histogram.took().millis(), histogram.getHistogramBoundaries());
+        final String histogramFilter = filter;
+        return histogram.compute(this.getTimeRange(), interval, new IncrementalHistogram.HistogramQuery<RuntimeException>() {
+            @Override
+            public HistogramResult histogram(TimeRange range) {
+                return searches.histogram(query, interval, histogramFilter, range);
+            }
+        });
     }
 }
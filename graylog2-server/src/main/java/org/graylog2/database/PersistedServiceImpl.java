@@ -184,11 +184,7 @@ public class PersistedServiceImpl implements PersistedService {
             throw new ValidationException(errors);
         }
 
-        BasicDBObject doc = new BasicDBObject(model.getFields());
-        doc.put("_id", new ObjectId(model.getId())); // ID was created in constructor or taken from original doc already.
-
-        // Do field transformations
-        fieldTransformations(doc);
+        final DBObject doc = toDBObject(model);
 
 		/*
          * We are running an upsert. This means that the existing
@@ -284,6 +280,16 @@ public class PersistedServiceImpl implements PersistedService {
         collection(model).update(qry, update);
     }
 
+    protected <T extends Persisted> DBObject toDBObject(T model) {
+        BasicDBObject doc = new BasicDBObject(model.getFields());
+        doc.put("_id", new ObjectId(model.getId())); // ID was created in constructor or taken from original doc already.
+
+        // Do field transformations
+        fieldTransformations(doc);
+
+        return doc;
+    }
+
     private void fieldTransformations(Map<String, Object> doc) {
         for (Map.Entry<String, Object> x : doc.entrySet()) {
 
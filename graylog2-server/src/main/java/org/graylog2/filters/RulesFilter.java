@@ -19,6 +19,7 @@ package org.graylog2.filters;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
+import org.graylog2.filters.blacklist.BlacklistEngine;
 import org.graylog2.filters.blacklist.FilterDescription;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.RulesEngine;
@@ -26,12 +27,16 @@ import org.graylog2.plugin.filters.MessageFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Strings.isNullOrEmpty;
+
 /**
  * @author Lennart Koopmann <lennart@socketfeed.com>
  */
@@ -42,23 +47,26 @@ public class RulesFilter implements MessageFilter {
     private final RulesEngine.RulesSession privateSession;
     private final Cache<String, Set<FilterDescription>> cache;
     private Set<FilterDescription> currentFilterSet;
+    private volatile BlacklistEngine blacklist = BlacklistEngine.empty();
 
     @Inject
-    public RulesFilter(RulesEngine rulesEngine, final FilterService filterService) {
+    public RulesFilter(RulesEngine rulesEngine,
+                       final FilterService filterService,
+                       @Named("rules_file") @Nullable String rulesFile) {
         this.filterService = filterService;
 
         currentFilterSet = Sets.newHashSet();
         cache = CacheBuilder.newBuilder()
                 .expireAfterWrite(1, TimeUnit.SECONDS)
                 .build();
-        privateSession = rulesEngine.createPrivateSession();
+        // the blacklist is evaluated natively, the rules engine is only needed for custom rules
+        privateSession = isNullOrEmpty(rulesFile) ? null : rulesEngine.createPrivateSession();
     }
 
     @Override
     public boolean filter(Message msg) {
-        final Set<FilterDescription> filters;
         try {
-            filters = cache.get("filters", new Callable<Set<FilterDescription>>() {
+            cache.get("filters", new Callable<Set<FilterDescription>>() {
                 @Override
                 public Set<FilterDescription> call() throws Exception {
                     // TODO this should be improved by computing the difference between the filter sets
@@ -72,29 +80,29 @@ public class RulesFilter implements MessageFilter {
                         return currentFilterSet;
                     }
 
-                    // something changed, we simply update everything, not trying to do the minimal changes yet
-                    // should this become too expensive we need to do something smarter
-                    LOG.debug("Updating rules engine, filter sets differ: {}", difference);
-                    // retract all current filter facts
-                    for (FilterDescription filterDescription : currentFilterSet) {
-                        privateSession.deleteFact(filterDescription);
-                    }
-                    // state all new filter facts
-                    for (FilterDescription filterDescription : newFilters) {
-                        privateSession.insertFact(filterDescription);
-                    }
+                    // something changed, we simply recompile the whole blacklist, not trying to do the minimal changes yet
+                    LOG.debug("Updating blacklist, filter sets differ: {}", difference);
+                    blacklist = BlacklistEngine.compile(newFilters);
                     currentFilterSet.clear();
                     // remember currently stated facts
                     currentFilterSet.addAll(newFilters);
                     return currentFilterSet;
                 }
             });
-        } catch (ExecutionException ignored) {
-            return false;
+        } catch (ExecutionException e) {
+            // keep filtering with the last blacklist that could be loaded instead of disabling it
+            LOG.warn("Unable to load blacklist rules, using the previously loaded rules.", e.getCause());
         }
 
-        // Always run the rules engine to make sure rules from the external rules file will be run.
-        privateSession.evaluate(msg, true);
+        if (blacklist.matches(msg)) {
+            msg.setFilterOut(true);
+            return true;
+        }
+
+        // Only run the rules engine if there are rules from an external rules file.
+        if (privateSession != null) {
+            privateSession.evaluate(msg, true);
+        }
 
         // false if not explicitly set to true in the rules.
         return msg.getFilterOut();
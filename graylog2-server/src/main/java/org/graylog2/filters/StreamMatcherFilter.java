@@ -16,10 +16,10 @@
  */
 package org.graylog2.filters;
 
+import org.graylog2.alerts.streaming.StreamingAlertEvaluator;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.filters.MessageFilter;
 import org.graylog2.plugin.streams.Stream;
-import org.graylog2.shared.stats.ThroughputStats;
 import org.graylog2.streams.StreamRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,23 +35,20 @@ public class StreamMatcherFilter implements MessageFilter {
     private static final Logger LOG = LoggerFactory.getLogger(StreamMatcherFilter.class);
 
     private final StreamRouter streamRouter;
-    private final ThroughputStats throughputStats;
+    private final StreamingAlertEvaluator streamingAlertEvaluator;
 
     @Inject
-    public StreamMatcherFilter(StreamRouter streamRouter,
-                               ThroughputStats throughputStats) {
+    public StreamMatcherFilter(StreamRouter streamRouter, StreamingAlertEvaluator streamingAlertEvaluator) {
         this.streamRouter = streamRouter;
-        this.throughputStats = throughputStats;
+        this.streamingAlertEvaluator = streamingAlertEvaluator;
     }
 
     @Override
     public boolean filter(Message msg) {
+        // the router engine counts the stream throughput already
         List<Stream> streams = streamRouter.route(msg);
-
-        for (Stream stream : streams) {
-            throughputStats.incrementStreamThroughput(stream.getId());
-        }
         msg.setStreams(streams);
+        streamingAlertEvaluator.process(msg);
 
         LOG.debug("Routed message <{}> to {} streams.", msg.getId(), streams.size());
 
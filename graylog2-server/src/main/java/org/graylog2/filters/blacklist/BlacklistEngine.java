@@ -0,0 +1,223 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.filters.blacklist;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.graylog2.plugin.Message;
+import org.graylog2.utilities.IpPrefixTrie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Evaluates the blacklist {@link FilterDescription filter descriptions} without going through the rules engine.
+ * <p/>
+ * Field equality conditions are compiled into one hash set per field, regex conditions into one combined pattern per
+ * field and IP conditions into an {@link IpPrefixTrie}. The semantics match the rules in {@code blacklist.drl}.
+ * <p/>
+ * Instances are immutable and can be shared between threads.
+ */
+public class BlacklistEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(BlacklistEngine.class);
+
+    // backreferences, comments mode, quoting and line breaks don't survive being combined into a single alternation,
+    // e.g. an unterminated \Q would quote all following patterns
+    private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\\\Q|\\(\\?[a-zA-Z]*x|[\\r\\n]");
+
+    private static final BlacklistEngine EMPTY = new BlacklistEngine(
+            Collections.<String, Set<String>>emptyMap(),
+            Collections.<String, MultiPatternMatcher>emptyMap(),
+            new IpPrefixTrie(),
+            Collections.<BlacklistIpMatcherCondition>emptyList());
+
+    private final Map<String, Set<String>> equalityValues;
+    private final Map<String, MultiPatternMatcher> patterns;
+    private final IpPrefixTrie networks;
+    private final List<BlacklistIpMatcherCondition> ipMatchers;
+
+    private BlacklistEngine(Map<String, Set<String>> equalityValues,
+                            Map<String, MultiPatternMatcher> patterns,
+                            IpPrefixTrie networks,
+                            List<BlacklistIpMatcherCondition> ipMatchers) {
+        this.equalityValues = equalityValues;
+        this.patterns = patterns;
+        this.networks = networks;
+        this.ipMatchers = ipMatchers;
+    }
+
+    public static BlacklistEngine empty() {
+        return EMPTY;
+    }
+
+    public static BlacklistEngine compile(Collection<FilterDescription> filterDescriptions) {
+        if (filterDescriptions == null || filterDescriptions.isEmpty()) {
+            return EMPTY;
+        }
+
+        final Map<String, Set<String>> equalityValues = Maps.newHashMap();
+        final Map<String, List<Pattern>> patternsByField = Maps.newHashMap();
+        final IpPrefixTrie networks = new IpPrefixTrie();
+        final List<BlacklistIpMatcherCondition> ipMatchers = Lists.newArrayList();
+
+        for (FilterDescription filterDescription : filterDescriptions) {
+            if (filterDescription.pattern == null) {
+                continue;
+            }
+
+            if (filterDescription instanceof BlacklistFieldEqualityCondition) {
+                Set<String> values = equalityValues.get(filterDescription.fieldName);
+                if (values == null) {
+                    values = Sets.newHashSet();
+                    equalityValues.put(filterDescription.fieldName, values);
+                }
+                values.add(normalize(filterDescription.pattern));
+            } else if (filterDescription instanceof BlacklistPatternCondition) {
+                List<Pattern> fieldPatterns = patternsByField.get(filterDescription.fieldName);
+                if (fieldPatterns == null) {
+                    fieldPatterns = Lists.newArrayList();
+                    patternsByField.put(filterDescription.fieldName, fieldPatterns);
+                }
+                try {
+                    fieldPatterns.add(Pattern.compile(filterDescription.pattern));
+                } catch (PatternSyntaxException e) {
+                    LOG.warn("Ignoring blacklist rule with invalid regular expression {}: {}",
+                            filterDescription.pattern, e.getDescription());
+                }
+            } else if (filterDescription instanceof BlacklistIpMatcherCondition) {
+                if (!networks.add(filterDescription.pattern)) {
+                    // host names and non-prefix wildcards still need the generic matcher
+                    ipMatchers.add((BlacklistIpMatcherCondition) filterDescription);
+                }
+            } else {
+                LOG.warn("Unknown blacklist filter type {}, ignoring it.", filterDescription.getClass().getSimpleName());
+            }
+        }
+
+        final Map<String, MultiPatternMatcher> patterns = Maps.newHashMap();
+        for (Map.Entry<String, List<Pattern>> entry : patternsByField.entrySet()) {
+            patterns.put(entry.getKey(), new MultiPatternMatcher(entry.getValue()));
+        }
+
+        return new BlacklistEngine(equalityValues, patterns, networks, ipMatchers);
+    }
+
+    public boolean isEmpty() {
+        return equalityValues.isEmpty() && patterns.isEmpty() && networks.isEmpty() && ipMatchers.isEmpty();
+    }
+
+    /**
+     * @return {@code true} if any blacklist condition matches the message
+     */
+    public boolean matches(Message message) {
+        for (Map.Entry<String, Set<String>> entry : equalityValues.entrySet()) {
+            final Object value = message.getField(entry.getKey());
+            if (value != null && entry.getValue().contains(normalize(String.valueOf(value)))) {
+                return true;
+            }
+        }
+
+        for (Map.Entry<String, MultiPatternMatcher> entry : patterns.entrySet()) {
+            // the rules engine always matched against String.valueOf(), i.e. missing fields are matched as "null"
+            if (entry.getValue().matches(String.valueOf(message.getField(entry.getKey())))) {
+                return true;
+            }
+        }
+
+        if (!networks.isEmpty() || !ipMatchers.isEmpty()) {
+            final InetAddress address = message.getInetAddress();
+            if (address != null) {
+                if (networks.contains(address)) {
+                    return true;
+                }
+                for (BlacklistIpMatcherCondition ipMatcher : ipMatchers) {
+                    if (ipMatcher.matchesInetAddress(address)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static String normalize(String value) {
+        return value.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Matches a string against a list of patterns. Patterns which can safely be combined are merged into a single
+     * alternation so the input is only scanned once.
+     */
+    private static class MultiPatternMatcher {
+        private final Pattern[] patterns;
+
+        private MultiPatternMatcher(List<Pattern> patterns) {
+            final List<Pattern> compiled = Lists.newArrayList();
+            final StringBuilder combined = new StringBuilder();
+            int combinedCount = 0;
+
+            for (Pattern pattern : patterns) {
+                if (NOT_COMBINABLE.matcher(pattern.pattern()).find()) {
+                    compiled.add(pattern);
+                    continue;
+                }
+                if (combinedCount > 0) {
+                    combined.append('|');
+                }
+                combined.append("(?:").append(pattern.pattern()).append(')');
+                combinedCount++;
+            }
+
+            if (combinedCount == 1) {
+                compiled.add(Pattern.compile(combined.toString()));
+            } else if (combinedCount > 1) {
+                try {
+                    compiled.add(Pattern.compile(combined.toString()));
+                } catch (PatternSyntaxException e) {
+                    LOG.debug("Unable to combine blacklist patterns, matching them one by one.", e);
+                    for (Pattern pattern : patterns) {
+                        if (!NOT_COMBINABLE.matcher(pattern.pattern()).find()) {
+                            compiled.add(pattern);
+                        }
+                    }
+                }
+            }
+
+            this.patterns = compiled.toArray(new Pattern[compiled.size()]);
+        }
+
+        private boolean matches(String value) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(value).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
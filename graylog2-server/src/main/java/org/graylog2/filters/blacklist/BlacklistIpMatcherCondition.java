@@ -18,6 +18,7 @@ package org.graylog2.filters.blacklist;
 
 import com.atlassian.ip.IPMatcher;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.graylog2.utilities.IpPrefixTrie;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +27,7 @@ import java.net.InetAddress;
 public class BlacklistIpMatcherCondition extends FilterDescription {
     private static final Logger LOG = LoggerFactory.getLogger(BlacklistIpMatcherCondition.class);
 
+    private IpPrefixTrie network;
     private IPMatcher ipMatcher;
 
     public BlacklistIpMatcherCondition() {
@@ -34,9 +36,21 @@ public class BlacklistIpMatcherCondition extends FilterDescription {
     @JsonProperty
     public void setPattern(String pattern) {
         this.pattern = pattern;
-        ipMatcher = IPMatcher.builder().addPatternOrHost(pattern).build();
+        final IpPrefixTrie trie = new IpPrefixTrie();
+        if (trie.add(pattern)) {
+            network = trie;
+            ipMatcher = null;
+        } else {
+            // host names and non-prefix wildcards need to go through the IPMatcher
+            network = null;
+            ipMatcher = IPMatcher.builder().addPatternOrHost(pattern).build();
+        }
     }
+
     public boolean matchesInetAddress(InetAddress otherSource) {
+        if (network != null) {
+            return network.contains(otherSource);
+        }
         try {
             return ipMatcher.matches(otherSource);
         } catch (IllegalArgumentException e) {
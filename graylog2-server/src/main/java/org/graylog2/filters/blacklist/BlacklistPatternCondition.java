@@ -17,10 +17,15 @@
 package org.graylog2.filters.blacklist;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Objects;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class BlacklistPatternCondition extends FilterDescription {
+    private static final Logger LOG = LoggerFactory.getLogger(BlacklistPatternCondition.class);
 
     private Pattern regex;
 
@@ -30,11 +35,24 @@ public class BlacklistPatternCondition extends FilterDescription {
     @JsonProperty
     public void setPattern(String pattern) {
         this.pattern = pattern;
-        this.regex = Pattern.compile(pattern);
+        try {
+            this.regex = Pattern.compile(pattern);
+        } catch (PatternSyntaxException e) {
+            // don't fail loading all other blacklist rules because of a single invalid one
+            LOG.warn("Invalid regular expression in blacklist rule: " + pattern, e);
+            this.regex = null;
+        }
+    }
+
+    /**
+     * @return {@code false} if the pattern isn't a valid regular expression
+     */
+    public boolean isValid() {
+        return regex != null;
     }
 
     public boolean matchesPattern(Object value) {
-        return regex.matcher(String.valueOf(value)).matches();
+        return regex != null && regex.matcher(String.valueOf(value)).matches();
     }
 
     @Override
@@ -44,12 +62,12 @@ public class BlacklistPatternCondition extends FilterDescription {
 
         BlacklistPatternCondition that = (BlacklistPatternCondition) o;
 
-        return regex.equals(that.regex);
+        return Objects.equals(pattern, that.pattern);
 
     }
 
     @Override
     public int hashCode() {
-        return regex.hashCode();
+        return Objects.hashCode(pattern);
     }
 }
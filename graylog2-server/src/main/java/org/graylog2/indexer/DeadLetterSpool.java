@@ -0,0 +1,268 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import org.graylog2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Append-only spool of failed indexing attempts on the local disk.
+ * <p/>
+ * The Elasticsearch output only appends the failures of a bulk request to the current segment file, they are moved
+ * to MongoDB in batches by the {@link org.graylog2.periodical.DeadLetterThread}. Segments are deleted once they have
+ * been persisted. The spool is bounded by {@code dead_letters_spool_max_size}, failures which don't fit anymore are
+ * dropped and counted.
+ * <p/>
+ * Records are stored as one JSON document per line, a partially written last record after a crash is skipped.
+ */
+@Singleton
+public class DeadLetterSpool {
+    private static final Logger LOG = LoggerFactory.getLogger(DeadLetterSpool.class);
+
+    private static final String SEGMENT_PREFIX = "dead-letters-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private final File directory;
+    private final long maxSize;
+    private final boolean includeMessages;
+    private final ObjectMapper objectMapper;
+    private final Meter spooled;
+    private final Meter dropped;
+
+    private long size = 0;
+    private int segments = 0;
+    private long nextSegment = 0;
+    private File currentSegment = null;
+    private OutputStream currentStream = null;
+    private long currentSize = 0;
+
+    @Inject
+    public DeadLetterSpool(Configuration configuration, ObjectMapper objectMapper, MetricRegistry metricRegistry) {
+        this(configuration.getDeadLettersSpoolDir(),
+                configuration.getDeadLettersSpoolMaxSize().toBytes(),
+                configuration.isDeadLettersEnabled(),
+                objectMapper,
+                metricRegistry);
+    }
+
+    @VisibleForTesting
+    DeadLetterSpool(File directory, long maxSize, boolean includeMessages, ObjectMapper objectMapper, MetricRegistry metricRegistry) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.includeMessages = includeMessages;
+        this.objectMapper = objectMapper;
+        this.spooled = metricRegistry.meter(name(DeadLetterSpool.class, "spooled"));
+        this.dropped = metricRegistry.meter(name(DeadLetterSpool.class, "dropped"));
+        metricRegistry.register(name(DeadLetterSpool.class, "size"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getSize();
+            }
+        });
+
+        // segments left over from the last run are persisted first
+        for (File segment : listSegments()) {
+            size += segment.length();
+            segments++;
+            nextSegment = Math.max(nextSegment, segmentNumber(segment) + 1);
+        }
+    }
+
+    /**
+     * Appends the given failures to the spool.
+     *
+     * @return {@code false} if the failures have been dropped because the spool is full or can't be written
+     */
+    public synchronized boolean append(List<DeadLetter> deadLetters) {
+        if (deadLetters.isEmpty()) {
+            return true;
+        }
+
+        try {
+            final List<byte[]> records = Lists.newArrayListWithCapacity(deadLetters.size());
+            long batchSize = 0;
+            for (DeadLetter deadLetter : deadLetters) {
+                final byte[] record = objectMapper.writeValueAsBytes(SpooledDeadLetter.create(deadLetter, includeMessages));
+                records.add(record);
+                batchSize += record.length + 1;
+            }
+
+            if (size + batchSize > maxSize) {
+                LOG.warn("Dead letter spool is full, dropping {} failed messages.", deadLetters.size());
+                dropped.mark(deadLetters.size());
+                return false;
+            }
+
+            final OutputStream stream = currentStream();
+            for (byte[] record : records) {
+                stream.write(record);
+                stream.write('\n');
+            }
+            stream.flush();
+
+            size += batchSize;
+            currentSize += batchSize;
+            spooled.mark(deadLetters.size());
+            if (currentSize >= SEGMENT_SIZE) {
+                closeCurrentSegment();
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.error("Couldn't write " + deadLetters.size() + " failed messages to the dead letter spool.", e);
+            dropped.mark(deadLetters.size());
+            return false;
+        }
+    }
+
+    /**
+     * Closes the segment currently being written to and returns all segments, oldest first.
+     */
+    public synchronized List<File> closeAndListSegments() {
+        if (currentSegment != null) {
+            try {
+                closeCurrentSegment();
+            } catch (IOException e) {
+                LOG.error("Couldn't close dead letter spool segment " + currentSegment, e);
+            }
+        }
+        return listSegments();
+    }
+
+    /**
+     * Reads all records of a closed segment.
+     */
+    public List<SpooledDeadLetter> read(File segment) throws IOException {
+        final List<SpooledDeadLetter> deadLetters = Lists.newArrayList();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(segment), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    deadLetters.add(objectMapper.readValue(line, SpooledDeadLetter.class));
+                } catch (JsonProcessingException e) {
+                    LOG.warn("Skipping unreadable record in dead letter spool segment " + segment, e);
+                }
+            }
+        }
+        return deadLetters;
+    }
+
+    public synchronized void delete(File segment) {
+        final long length = segment.length();
+        if (segment.delete()) {
+            size = Math.max(0, size - length);
+            segments = Math.max(0, segments - 1);
+        } else {
+            LOG.warn("Couldn't delete dead letter spool segment {}", segment);
+        }
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of segments which haven't been persisted yet, including the one currently being written to
+     */
+    public synchronized int getSegmentCount() {
+        return segments;
+    }
+
+    private OutputStream currentStream() throws IOException {
+        if (currentStream == null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Couldn't create dead letter spool directory " + directory);
+            }
+            currentSegment = new File(directory, String.format(Locale.ENGLISH, "%s%020d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+            currentStream = new BufferedOutputStream(new FileOutputStream(currentSegment, true));
+            currentSize = 0;
+            segments++;
+        }
+        return currentStream;
+    }
+
+    private void closeCurrentSegment() throws IOException {
+        try {
+            if (currentStream != null) {
+                currentStream.close();
+            }
+        } finally {
+            currentStream = null;
+            currentSegment = null;
+            currentSize = 0;
+        }
+    }
+
+    private List<File> listSegments() {
+        final File[] segments = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (segments == null) {
+            return Collections.emptyList();
+        }
+
+        // the fixed width segment numbers sort lexicographically
+        Arrays.sort(segments);
+        final List<File> result = Lists.newArrayList(segments);
+        if (currentSegment != null) {
+            result.remove(currentSegment);
+        }
+        return result;
+    }
+
+    private static long segmentNumber(File segment) {
+        final String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
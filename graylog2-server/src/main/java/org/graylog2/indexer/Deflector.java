@@ -16,6 +16,7 @@
  */
 package org.graylog2.indexer;
 
+import com.google.common.base.CharMatcher;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
@@ -23,6 +24,8 @@ import org.elasticsearch.action.admin.indices.stats.IndexStats;
 import org.elasticsearch.indices.InvalidAliasNameException;
 import org.graylog2.configuration.ElasticsearchConfiguration;
 import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.maintenance.IndexMaintenanceScheduler;
+import org.graylog2.indexer.maintenance.IndexOperation;
 import org.graylog2.indexer.ranges.CreateNewSingleIndexRangeJob;
 import org.graylog2.shared.system.activities.Activity;
 import org.graylog2.shared.system.activities.ActivityWriter;
@@ -55,28 +58,51 @@ public class Deflector { // extends Ablenkblech
     public static final String SEPARATOR = "_";
 
     private final SystemJobManager systemJobManager;
+    private final IndexMaintenanceScheduler indexMaintenanceScheduler;
     private final ActivityWriter activityWriter;
     private final CreateNewSingleIndexRangeJob.Factory createNewSingleIndexRangeJobFactory;
     private final String indexPrefix;
     private final String deflectorName;
+    private final int shards;
+    private final int replicas;
     private final Indices indices;
     private final SetIndexReadOnlyJob.Factory indexReadOnlyJobFactory;
 
     @Inject
     public Deflector(final SystemJobManager systemJobManager,
+                     final IndexMaintenanceScheduler indexMaintenanceScheduler,
                      final ElasticsearchConfiguration configuration,
                      final ActivityWriter activityWriter,
                      final SetIndexReadOnlyJob.Factory indexReadOnlyJobFactory,
                      final CreateNewSingleIndexRangeJob.Factory createNewSingleIndexRangeJobFactory,
                      final Indices indices) {
-        this.indexPrefix = configuration.getIndexPrefix();
+        this(systemJobManager, indexMaintenanceScheduler, configuration.getIndexPrefix(), configuration.getShards(),
+                configuration.getReplicas(), activityWriter, indexReadOnlyJobFactory, createNewSingleIndexRangeJobFactory, indices);
+    }
+
+    /**
+     * Creates a deflector for the index series with the given prefix, e.g. the series of an additional index set.
+     */
+    public Deflector(final SystemJobManager systemJobManager,
+                     final IndexMaintenanceScheduler indexMaintenanceScheduler,
+                     final String indexPrefix,
+                     final int shards,
+                     final int replicas,
+                     final ActivityWriter activityWriter,
+                     final SetIndexReadOnlyJob.Factory indexReadOnlyJobFactory,
+                     final CreateNewSingleIndexRangeJob.Factory createNewSingleIndexRangeJobFactory,
+                     final Indices indices) {
+        this.indexPrefix = indexPrefix;
+        this.shards = shards;
+        this.replicas = replicas;
 
         this.systemJobManager = systemJobManager;
+        this.indexMaintenanceScheduler = indexMaintenanceScheduler;
         this.activityWriter = activityWriter;
         this.indexReadOnlyJobFactory = indexReadOnlyJobFactory;
         this.createNewSingleIndexRangeJobFactory = createNewSingleIndexRangeJobFactory;
 
-        this.deflectorName = buildName(configuration.getIndexPrefix());
+        this.deflectorName = buildName(indexPrefix);
         this.indices = indices;
     }
 
@@ -131,7 +157,7 @@ public class Deflector { // extends Ablenkblech
 
         // Create new index.
         LOG.info("Creating index target <{}>...", newTarget);
-        if (!indices.create(newTarget)) {
+        if (!indices.create(newTarget, shards, replicas)) {
             LOG.error("Could not properly create new target <{}>", newTarget);
         }
 
@@ -159,11 +185,7 @@ public class Deflector { // extends Ablenkblech
             // setting the index to readOnly would result in ClusterBlockExceptions in the indexing request.
             // waiting 30 seconds to perform the background task should completely get rid of these errors.
             final SystemJob makeReadOnlyJob = indexReadOnlyJobFactory.create(oldTarget);
-            try {
-                systemJobManager.submitWithDelay(makeReadOnlyJob, 30, TimeUnit.SECONDS);
-            } catch (SystemJobConcurrencyException e) {
-                LOG.error("Cannot set index <" + oldTarget + "> to read only. It won't be optimized.", e);
-            }
+            indexMaintenanceScheduler.submit(IndexOperation.SET_READ_ONLY, oldTarget, makeReadOnlyJob, 30, TimeUnit.SECONDS);
             activity.setMessage("Cycled deflector from <" + oldTarget + "> to <" + newTarget + ">");
         }
 
@@ -274,6 +296,10 @@ public class Deflector { // extends Ablenkblech
         return deflectorName;
     }
 
+    public String getIndexPrefix() {
+        return indexPrefix;
+    }
+
     public String getDeflectorWildcard() {
         return indexPrefix + SEPARATOR + "*";
     }
@@ -283,6 +309,12 @@ public class Deflector { // extends Ablenkblech
     }
 
     public boolean isGraylog2Index(final String indexName) {
-        return !isNullOrEmpty(indexName) && !isDeflectorAlias(indexName) && indexName.startsWith(indexPrefix + SEPARATOR);
+        if (isNullOrEmpty(indexName) || isDeflectorAlias(indexName) || !indexName.startsWith(indexPrefix + SEPARATOR)) {
+            return false;
+        }
+
+        // Other index sets may use this prefix as well, e.g. "graylog2_audit_1", so only accept numbered indices.
+        final String number = indexName.substring(indexPrefix.length() + SEPARATOR.length());
+        return !number.isEmpty() && CharMatcher.DIGIT.matchesAllOf(number);
     }
 }
\ No newline at end of file
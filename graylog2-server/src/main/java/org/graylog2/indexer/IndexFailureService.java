@@ -30,4 +30,6 @@ public interface IndexFailureService extends PersistedService {
     long countSince(DateTime since);
 
     long totalCount();
+
+    void saveAll(List<IndexFailure> indexFailures);
 }
@@ -20,6 +20,7 @@ import com.google.common.collect.Lists;
 import javax.inject.Inject;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.DBObject;
 import org.bson.types.ObjectId;
 import org.graylog2.database.CollectionName;
@@ -73,4 +74,20 @@ public class IndexFailureServiceImpl extends PersistedServiceImpl implements Ind
     public long totalCount() {
         return collection(IndexFailureImpl.class).count();
     }
+
+    @Override
+    public void saveAll(List<IndexFailure> indexFailures) {
+        if (indexFailures.isEmpty()) {
+            return;
+        }
+
+        // Batches are written again if persisting them failed halfway, only insert unknown failures.
+        final BulkWriteOperation bulk = collection(IndexFailureImpl.class).initializeUnorderedBulkOperation();
+        for (IndexFailure indexFailure : indexFailures) {
+            bulk.find(new BasicDBObject("letter_id", indexFailure.getFields().get("letter_id")))
+                    .upsert()
+                    .updateOne(new BasicDBObject("$setOnInsert", toDBObject(indexFailure)));
+        }
+        bulk.execute();
+    }
 }
\ No newline at end of file
@@ -21,6 +21,8 @@ import com.google.common.collect.Sets;
 import org.elasticsearch.index.query.FilterBuilder;
 import org.elasticsearch.index.query.FilterBuilders;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.ranges.IndexRange;
 import org.graylog2.indexer.ranges.IndexRangeService;
 import org.graylog2.indexer.searches.timeranges.RelativeRange;
@@ -85,8 +87,12 @@ public class IndexHelper {
         return r;
     }
 
+    /**
+     * Searches all index sets: the index set a stream has been assigned to only holds the messages which have been
+     * written after the assignment, older messages of the stream stay in the index sets they have been written to.
+     */
     public static Set<String> determineAffectedIndices(IndexRangeService indexRangeService,
-                                                       Deflector deflector,
+                                                       IndexSetRegistry indexSetRegistry,
                                                        TimeRange range) {
         Set<String> indices = Sets.newHashSet();
 
@@ -94,36 +100,57 @@ public class IndexHelper {
             indices.add(indexRange.indexName());
         }
 
-        // Always include the most recent index in some cases.
-        final String targetIndex = deflector.getCurrentActualTargetIndex();
-        if (targetIndex != null && (indices.isEmpty() || range instanceof RelativeRange)) {
-            indices.add(targetIndex);
+        // Always include the most recent index of an index set in some cases.
+        for (IndexSet indexSet : indexSetRegistry.getAll()) {
+            if (range instanceof RelativeRange || !containsIndexOf(indexSet, indices)) {
+                final String targetIndex = indexSet.getDeflector().getCurrentActualTargetIndex();
+                if (targetIndex != null) {
+                    indices.add(targetIndex);
+                }
+            }
         }
 
         return indices;
     }
 
+    /**
+     * @see #determineAffectedIndices(IndexRangeService, IndexSetRegistry, TimeRange)
+     */
     public static Set<IndexRange> determineAffectedIndicesWithRanges(IndexRangeService indexRangeService,
-                                                                     Deflector deflector,
+                                                                     IndexSetRegistry indexSetRegistry,
                                                                      TimeRange range) {
         Set<IndexRange> indices = Sets.newTreeSet(IndexRange.COMPARATOR);
+        Set<String> indexNames = Sets.newHashSet();
 
         for (IndexRange indexRange : indexRangeService.find(range.getFrom(), range.getTo())) {
             indices.add(indexRange);
+            indexNames.add(indexRange.indexName());
         }
 
-        // Always include the most recent index in some cases.
-        final String targetIndex = deflector.getCurrentActualTargetIndex();
-        if (targetIndex != null && (indices.isEmpty() || range instanceof RelativeRange)) {
-            try {
-                final IndexRange deflectorIndexRange = indexRangeService.get(targetIndex);
-                indices.add(deflectorIndexRange);
-            } catch (NotFoundException e) {
-                LOG.warn("Couldn't find latest deflector target index", e);
+        // Always include the most recent index of an index set in some cases.
+        for (IndexSet indexSet : indexSetRegistry.getAll()) {
+            if (range instanceof RelativeRange || !containsIndexOf(indexSet, indexNames)) {
+                final String targetIndex = indexSet.getDeflector().getCurrentActualTargetIndex();
+                if (targetIndex != null) {
+                    try {
+                        final IndexRange deflectorIndexRange = indexRangeService.get(targetIndex);
+                        indices.add(deflectorIndexRange);
+                    } catch (NotFoundException e) {
+                        LOG.warn("Couldn't find latest deflector target index", e);
+                    }
+                }
             }
         }
 
         return indices;
     }
 
+    private static boolean containsIndexOf(IndexSet indexSet, Set<String> indexNames) {
+        for (String indexName : indexNames) {
+            if (indexSet.isManagedIndex(indexName)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
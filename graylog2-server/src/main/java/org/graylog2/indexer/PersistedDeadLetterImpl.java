@@ -33,6 +33,7 @@ public class PersistedDeadLetterImpl extends PersistedImpl implements PersistedD
     public static final String TIMESTAMP = "timestamp";
     public static final String LETTERID = "letter_id";
     public static final String MESSAGE = "message";
+    public static final String INDEX = "index";
 
     public PersistedDeadLetterImpl(Map<String, Object> fields) {
         super(fields);
@@ -19,6 +19,9 @@ package org.graylog2.indexer;
 import org.graylog2.plugin.database.PersistedService;
 import org.joda.time.DateTime;
 
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,5 +30,18 @@ import java.util.Map;
 public interface PersistedDeadLetterService extends PersistedService {
     PersistedDeadLetter create(String letterId, DateTime timestamp, Map<String, Object> message);
     PersistedDeadLetter create(String id, String letterId, DateTime timestamp, Map<String, Object> message);
+    PersistedDeadLetter create(String letterId, DateTime timestamp, String index, Map<String, Object> message);
+
+    /**
+     * Stores the given dead letters in one batch. Dead letters which have already been stored are skipped.
+     */
+    void saveAll(List<PersistedDeadLetter> deadLetters);
+
+    /**
+     * @param afterId only return dead letters stored after the one with this ID, {@code null} to start at the oldest
+     */
+    List<PersistedDeadLetter> loadBatch(@Nullable String afterId, int limit);
+
+    int deleteByLetterIds(Collection<String> letterIds);
     long count();
 }
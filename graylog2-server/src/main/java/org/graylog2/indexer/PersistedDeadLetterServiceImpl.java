@@ -18,13 +18,19 @@ package org.graylog2.indexer;
 
 import javax.inject.Inject;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBObject;
 import org.bson.types.ObjectId;
 import org.graylog2.database.MongoConnection;
 import org.graylog2.database.PersistedServiceImpl;
 import org.joda.time.DateTime;
 
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -51,6 +57,55 @@ public class PersistedDeadLetterServiceImpl extends PersistedServiceImpl impleme
         return new PersistedDeadLetterImpl(new ObjectId(id), doc);
     }
 
+    @Override
+    public PersistedDeadLetter create(String letterId, DateTime timestamp, String index, Map<String, Object> message) {
+        Map<String, Object> doc = Maps.newHashMap();
+        doc.put(PersistedDeadLetterImpl.LETTERID, letterId);
+        doc.put(PersistedDeadLetterImpl.TIMESTAMP, timestamp);
+        doc.put(PersistedDeadLetterImpl.INDEX, index);
+        doc.put(PersistedDeadLetterImpl.MESSAGE, message);
+
+        return new PersistedDeadLetterImpl(new ObjectId(), doc);
+    }
+
+    @Override
+    public void saveAll(List<PersistedDeadLetter> deadLetters) {
+        if (deadLetters.isEmpty()) {
+            return;
+        }
+
+        // Batches are written again if persisting them failed halfway, only insert unknown letters.
+        final BulkWriteOperation bulk = collection(PersistedDeadLetterImpl.class).initializeUnorderedBulkOperation();
+        for (PersistedDeadLetter deadLetter : deadLetters) {
+            bulk.find(new BasicDBObject(PersistedDeadLetterImpl.LETTERID, deadLetter.getFields().get(PersistedDeadLetterImpl.LETTERID)))
+                    .upsert()
+                    .updateOne(new BasicDBObject("$setOnInsert", toDBObject(deadLetter)));
+        }
+        bulk.execute();
+    }
+
+    @Override
+    public List<PersistedDeadLetter> loadBatch(@Nullable String afterId, int limit) {
+        final BasicDBObject query = new BasicDBObject();
+        if (afterId != null) {
+            query.put("_id", new BasicDBObject("$gt", new ObjectId(afterId)));
+        }
+
+        final List<PersistedDeadLetter> deadLetters = Lists.newArrayList();
+        for (DBObject o : query(PersistedDeadLetterImpl.class, query, new BasicDBObject("_id", 1), limit, 0)) {
+            deadLetters.add(new PersistedDeadLetterImpl((ObjectId) o.get("_id"), o.toMap()));
+        }
+        return deadLetters;
+    }
+
+    @Override
+    public int deleteByLetterIds(Collection<String> letterIds) {
+        if (letterIds.isEmpty()) {
+            return 0;
+        }
+        return destroyAll(PersistedDeadLetterImpl.class, new BasicDBObject(PersistedDeadLetterImpl.LETTERID, new BasicDBObject("$in", letterIds)));
+    }
+
     @Override
     public long count() {
         return count(PersistedDeadLetterImpl.class, new BasicDBObject());
@@ -0,0 +1,193 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.assistedinject.AssistedInject;
+import org.elasticsearch.action.WriteConsistencyLevel;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.graylog2.Configuration;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.plugin.Message;
+import org.graylog2.shared.system.activities.Activity;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.graylog2.system.jobs.SystemJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the dead letters stored in MongoDB to Elasticsearch again, e. g. after a mapping conflict has been resolved
+ * by rotating the index. Messages are written to the current write index of the index set they failed to be written
+ * to, at most {@code dead_letters_replay_rate} messages per second. Dead letters which have been indexed successfully
+ * are deleted, the others are kept.
+ */
+public class ReplayDeadLettersJob extends SystemJob {
+    public interface Factory {
+        ReplayDeadLettersJob create();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayDeadLettersJob.class);
+
+    private final Client client;
+    private final PersistedDeadLetterService persistedDeadLetterService;
+    private final IndexSetRegistry indexSetRegistry;
+    private final ActivityWriter activityWriter;
+    private final int batchSize;
+    private final int replayRate;
+
+    private volatile boolean cancelRequested = false;
+    private volatile long total = 0;
+    private volatile long processed = 0;
+
+    @AssistedInject
+    public ReplayDeadLettersJob(Client client,
+                                PersistedDeadLetterService persistedDeadLetterService,
+                                IndexSetRegistry indexSetRegistry,
+                                ActivityWriter activityWriter,
+                                Configuration configuration) {
+        this.client = client;
+        this.persistedDeadLetterService = persistedDeadLetterService;
+        this.indexSetRegistry = indexSetRegistry;
+        this.activityWriter = activityWriter;
+        this.batchSize = configuration.getDeadLettersBatchSize();
+        this.replayRate = configuration.getDeadLettersReplayRate();
+    }
+
+    @Override
+    public void execute() {
+        total = persistedDeadLetterService.count();
+        LOG.info("Replaying {} dead letters.", total);
+
+        final RateLimiter rateLimiter = RateLimiter.create(replayRate);
+        final long start = System.currentTimeMillis();
+        long replayed = 0;
+        String lastId = null;
+        while (!cancelRequested) {
+            final List<PersistedDeadLetter> batch = persistedDeadLetterService.loadBatch(lastId, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+
+            rateLimiter.acquire(batch.size());
+            replayed += replay(batch);
+            processed += batch.size();
+        }
+
+        final String msg = (cancelRequested ? "Cancelled replaying dead letters after " : "Replayed dead letters in ")
+                + (System.currentTimeMillis() - start) + "ms, " + replayed + " of " + processed + " messages have been indexed.";
+        activityWriter.write(new Activity(msg, ReplayDeadLettersJob.class));
+        LOG.info(msg);
+    }
+
+    private int replay(List<PersistedDeadLetter> batch) {
+        final BulkRequestBuilder bulk = client.prepareBulk().setConsistencyLevel(WriteConsistencyLevel.ONE);
+        final List<String> letterIds = Lists.newArrayListWithCapacity(batch.size());
+        for (PersistedDeadLetter deadLetter : batch) {
+            final Map<String, Object> fields = deadLetter.getFields();
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> message = (Map<String, Object>) fields.get(PersistedDeadLetterImpl.MESSAGE);
+            if (message == null) {
+                continue;
+            }
+
+            final Map<String, Object> source = Maps.newHashMap(message);
+            final Object id = source.remove(Message.FIELD_ID);
+            final String letterId = (String) fields.get(PersistedDeadLetterImpl.LETTERID);
+            bulk.add(new IndexRequest(targetFor((String) fields.get(PersistedDeadLetterImpl.INDEX)), IndexMapping.TYPE_MESSAGE)
+                    .id(id == null ? letterId : id.toString())
+                    .source(source));
+            letterIds.add(letterId);
+        }
+
+        if (letterIds.isEmpty()) {
+            return 0;
+        }
+
+        final BulkResponse response = bulk.get();
+        final List<String> indexed = Lists.newArrayListWithCapacity(letterIds.size());
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                LOG.debug("Couldn't replay dead letter <{}>: {}", letterIds.get(item.getItemId()), item.getFailureMessage());
+            } else {
+                indexed.add(letterIds.get(item.getItemId()));
+            }
+        }
+        persistedDeadLetterService.deleteByLetterIds(indexed);
+
+        return indexed.size();
+    }
+
+    private String targetFor(String failedIndex) {
+        final IndexSet indexSet = failedIndex == null ? null : indexSetRegistry.getForIndex(failedIndex);
+        return (indexSet == null ? indexSetRegistry.getDefault() : indexSet).getDeflector().getName();
+    }
+
+    @Override
+    public void requestCancel() {
+        cancelRequested = true;
+    }
+
+    @Override
+    public int getProgress() {
+        final long currentTotal = total;
+        if (currentTotal <= 0) {
+            return 0;
+        }
+        return (int) Math.min(100, processed * 100 / currentTotal);
+    }
+
+    @Override
+    public int maxConcurrency() {
+        return 1;
+    }
+
+    @Override
+    public boolean providesProgress() {
+        return true;
+    }
+
+    @Override
+    public boolean isCancelable() {
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Writes the stored dead letters to Elasticsearch again.";
+    }
+
+    @Override
+    public String getClassName() {
+        return this.getClass().getCanonicalName();
+    }
+
+    @Override
+    public String getInfo() {
+        return "Replayed " + processed + " of " + total + " dead letters.";
+    }
+}
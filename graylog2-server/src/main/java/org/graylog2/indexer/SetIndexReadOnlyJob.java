@@ -20,6 +20,9 @@ import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.indices.jobs.OptimizeIndexJob;
+import org.graylog2.indexer.maintenance.IndexMaintenanceScheduler;
+import org.graylog2.indexer.maintenance.IndexOperation;
+import org.graylog2.indexer.rollups.RollupIndexJob;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.shared.system.activities.Activity;
 import org.graylog2.shared.system.activities.ActivityWriter;
@@ -43,22 +46,31 @@ public class SetIndexReadOnlyJob extends SystemJob {
     private final boolean disableIndexOptimization;
     private final OptimizeIndexJob.Factory optimizeIndexJobFactory;
     private final SystemJobManager systemJobManager;
+    private final IndexMaintenanceScheduler indexMaintenanceScheduler;
     private final String index;
     private final ActivityWriter activityWriter;
+    private final boolean rollupsEnabled;
+    private final RollupIndexJob.Factory rollupIndexJobFactory;
 
     @AssistedInject
     public SetIndexReadOnlyJob(Indices indices,
                                @Named("disable_index_optimization") boolean disableIndexOptimization,
                                SystemJobManager systemJobManager,
+                               IndexMaintenanceScheduler indexMaintenanceScheduler,
                                OptimizeIndexJob.Factory optimizeIndexJobFactory,
                                ActivityWriter activityWriter,
+                               @Named("rollups_enabled") boolean rollupsEnabled,
+                               RollupIndexJob.Factory rollupIndexJobFactory,
                                @Assisted String index) {
         this.indices = indices;
         this.disableIndexOptimization = disableIndexOptimization;
         this.optimizeIndexJobFactory = optimizeIndexJobFactory;
         this.systemJobManager = systemJobManager;
+        this.indexMaintenanceScheduler = indexMaintenanceScheduler;
         this.index = index;
         this.activityWriter = activityWriter;
+        this.rollupsEnabled = rollupsEnabled;
+        this.rollupIndexJobFactory = rollupIndexJobFactory;
     }
 
     @Override
@@ -72,11 +84,14 @@ public class SetIndexReadOnlyJob extends SystemJob {
         activityWriter.write(new Activity("Flushed and set <" + index + "> to read-only.", SetIndexReadOnlyJob.class));
 
         if (!disableIndexOptimization) {
+            indexMaintenanceScheduler.submit(IndexOperation.OPTIMIZE, index, optimizeIndexJobFactory.create(index));
+        }
+
+        if (rollupsEnabled) {
             try {
-                systemJobManager.submit(optimizeIndexJobFactory.create(index));
+                systemJobManager.submit(rollupIndexJobFactory.create(index));
             } catch (SystemJobConcurrencyException e) {
-                // The concurrency limit is very high. This should never happen.
-                log.error("Cannot optimize index <" + index + ">.", e);
+                log.info("Rollups of another index are being calculated, rollups of index <{}> will be calculated later.", index);
             }
         }
     }
@@ -0,0 +1,80 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.joda.time.DateTime;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * A failed indexing attempt as written to the {@link DeadLetterSpool}.
+ */
+@JsonAutoDetect
+@AutoValue
+public abstract class SpooledDeadLetter {
+    @JsonProperty
+    public abstract String letterId();
+
+    @JsonProperty
+    public abstract DateTime timestamp();
+
+    @JsonProperty
+    @Nullable
+    public abstract String index();
+
+    @JsonProperty
+    @Nullable
+    public abstract String type();
+
+    @JsonProperty
+    @Nullable
+    public abstract String errorMessage();
+
+    /**
+     * @return the Elasticsearch document of the message or {@code null} if dead letters are disabled
+     */
+    @JsonProperty
+    @Nullable
+    public abstract Map<String, Object> message();
+
+    @JsonCreator
+    public static SpooledDeadLetter create(@JsonProperty("letter_id") String letterId,
+                                           @JsonProperty("timestamp") DateTime timestamp,
+                                           @JsonProperty("index") @Nullable String index,
+                                           @JsonProperty("type") @Nullable String type,
+                                           @JsonProperty("error_message") @Nullable String errorMessage,
+                                           @JsonProperty("message") @Nullable Map<String, Object> message) {
+        return new AutoValue_SpooledDeadLetter(letterId, timestamp, index, type, errorMessage, message);
+    }
+
+    public static SpooledDeadLetter create(DeadLetter deadLetter, boolean includeMessage) {
+        final BulkItemResponse.Failure failure = deadLetter.getFailure().getFailure();
+        return create(
+                deadLetter.getId(),
+                deadLetter.getTimestamp(),
+                failure == null ? deadLetter.getFailure().getIndex() : failure.getIndex(),
+                failure == null ? deadLetter.getFailure().getType() : failure.getType(),
+                failure == null ? null : failure.getMessage(),
+                includeMessage ? deadLetter.getMessage().toElasticSearchObject() : null);
+    }
+}
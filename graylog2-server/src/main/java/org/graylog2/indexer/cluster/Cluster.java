@@ -17,7 +17,10 @@
 package org.graylog2.indexer.cluster;
 
 import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
@@ -32,40 +35,79 @@ import org.graylog2.indexer.esplugin.ClusterStateMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Singleton
 public class Cluster {
     private static final Logger LOG = LoggerFactory.getLogger(Cluster.class);
 
+    // the health is also refreshed on every relevant cluster state change, this only catches what the events miss
+    private static final long HEALTH_REFRESH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5L);
+    // fall back to asking Elasticsearch directly if the background refresh got stuck
+    private static final long HEALTH_MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(30L);
+
     private final Client c;
     private final Deflector deflector;
-    private final ScheduledExecutorService scheduler;
+    // health requests block until Elasticsearch answers, so they don't run on the shared daemon scheduler
+    private final ScheduledExecutorService healthExecutor;
+    private final Ticker ticker;
     private final Duration requestTimeout;
     private final AtomicReference<Map<String, DiscoveryNode>> nodes = new AtomicReference<>();
+    private final AtomicReference<CachedHealth> cachedHealth = new AtomicReference<>();
+    private final AtomicBoolean healthRefreshPending = new AtomicBoolean(false);
+    private final Runnable healthRefresh = new Runnable() {
+        @Override
+        public void run() {
+            healthRefreshPending.set(false);
+            try {
+                refreshHealth();
+            } catch (Exception e) {
+                // to not cancel the schedule
+                LOG.debug("Couldn't refresh Elasticsearch health", e);
+            }
+        }
+    };
 
     @Inject
     public Cluster(Client client,
                    Deflector deflector,
-                   @Named("daemonScheduler") ScheduledExecutorService scheduler,
                    @Named("elasticsearch_request_timeout") Duration requestTimeout) {
-        this.scheduler = scheduler;
+        this(client, deflector, requestTimeout,
+                Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("cluster-health-%d").setDaemon(true).build()),
+                Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    Cluster(Client client,
+            Deflector deflector,
+            Duration requestTimeout,
+            ScheduledExecutorService healthExecutor,
+            Ticker ticker) {
+        this.healthExecutor = healthExecutor;
+        this.ticker = ticker;
         this.c = client;
         this.deflector = deflector;
         this.requestTimeout = requestTimeout;
         // unfortunately we can't use guice here, because elasticsearch and graylog2 use different injectors and we can't
         // get to the instance to bridge.
         ClusterStateMonitor.setCluster(this);
+
+        healthExecutor.scheduleWithFixedDelay(healthRefresh, 0L, HEALTH_REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     public ClusterHealthResponse health() {
@@ -139,27 +181,81 @@ public class Cluster {
     /**
      * Check if the cluster health status is not {@link ClusterHealthStatus#RED} and that the
      * {@link org.graylog2.indexer.Deflector#isUp() deflector is up}.
+     * <p/>
+     * The result is cached and kept current from cluster state changes and a background refresh, so this doesn't
+     * send a request to Elasticsearch unless the cached state is missing or outdated.
      *
      * @return {@code true} if the the cluster is healthy and the deflector is up, {@code false} otherwise
      */
     public boolean isHealthy() {
+        return currentHealth().isHealthy();
+    }
+
+    /**
+     * The cached health of the Graylog indices, see {@link #isHealthy()}. Use this instead of {@link #health()} for
+     * frequent checks, e. g. to throttle background work.
+     *
+     * @return the cached cluster health, or {@code null} if Elasticsearch couldn't be asked
+     */
+    @Nullable
+    public ClusterHealthResponse cachedHealth() {
+        return currentHealth().response;
+    }
+
+    /**
+     * @return the cached health status, {@link ClusterHealthStatus#RED} if Elasticsearch couldn't be asked
+     */
+    public ClusterHealthStatus cachedHealthStatus() {
+        final ClusterHealthResponse response = cachedHealth();
+        return response == null ? ClusterHealthStatus.RED : response.getStatus();
+    }
+
+    private CachedHealth currentHealth() {
+        final CachedHealth health = cachedHealth.get();
+        if (health == null || ticker.read() - health.updatedAt > HEALTH_MAX_AGE_NANOS) {
+            return refreshHealth();
+        }
+        return health;
+    }
+
+    /**
+     * Refreshes the cached health in the background, called on cluster state changes. Doesn't block the caller.
+     */
+    public void clusterStateChanged() {
+        if (healthRefreshPending.compareAndSet(false, true)) {
+            try {
+                healthExecutor.execute(healthRefresh);
+            } catch (RejectedExecutionException e) {
+                healthRefreshPending.set(false);
+                LOG.debug("Couldn't schedule Elasticsearch health refresh", e);
+            }
+        }
+    }
+
+    private CachedHealth refreshHealth() {
+        ClusterHealthResponse response = null;
+        boolean deflectorUp = false;
         try {
-            return health().getStatus() != ClusterHealthStatus.RED && deflector.isUp();
+            response = health();
+            deflectorUp = response.getStatus() != ClusterHealthStatus.RED && deflector.isUp();
         } catch (ElasticsearchException e) {
             LOG.trace("Couldn't determine Elasticsearch health properly", e);
-            return false;
         }
+
+        final CachedHealth health = new CachedHealth(response, deflectorUp, ticker.read());
+        cachedHealth.set(health);
+        return health;
     }
 
     public void waitForConnectedAndHealthy(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
         LOG.debug("Waiting until cluster connection comes back and cluster is healthy, checking once per second.");
 
         final CountDownLatch latch = new CountDownLatch(1);
-        final ScheduledFuture<?> scheduledFuture = scheduler.scheduleAtFixedRate(new Runnable() {
+        final ScheduledFuture<?> scheduledFuture = healthExecutor.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
                 try {
-                    if (isConnected() && isHealthy()) {
+                    if (isConnected() && refreshHealth().isHealthy()) {
                         LOG.debug("Cluster is healthy again, unblocking waiting threads.");
                         latch.countDown();
                     }
@@ -183,4 +279,20 @@ public class Cluster {
         LOG.debug("{} data nodes in cluster", nodes.size());
         this.nodes.set(nodes);
     }
+
+    private static class CachedHealth {
+        private final ClusterHealthResponse response;
+        private final boolean deflectorUp;
+        private final long updatedAt;
+
+        private CachedHealth(ClusterHealthResponse response, boolean deflectorUp, long updatedAt) {
+            this.response = response;
+            this.deflectorUp = deflectorUp;
+            this.updatedAt = updatedAt;
+        }
+
+        private boolean isHealthy() {
+            return response != null && response.getStatus() != ClusterHealthStatus.RED && deflectorUp;
+        }
+    }
 }
@@ -18,7 +18,7 @@ package org.graylog2.indexer.counts;
 
 import org.elasticsearch.action.count.CountRequest;
 import org.elasticsearch.client.Client;
-import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -26,16 +26,16 @@ import javax.inject.Singleton;
 @Singleton
 public class Counts {
     private final Client c;
-    private final Deflector deflector;
+    private final IndexSetRegistry indexSetRegistry;
 
     @Inject
-    public Counts(Client client, Deflector deflector) {
+    public Counts(Client client, IndexSetRegistry indexSetRegistry) {
         this.c = client;
-        this.deflector = deflector;
+        this.indexSetRegistry = indexSetRegistry;
     }
 
     public long total() {
-        return c.count(new CountRequest(deflector.getAllDeflectorIndexNames())).actionGet().getCount();
+        return c.count(new CountRequest(indexSetRegistry.getAllManagedIndexNames())).actionGet().getCount();
     }
 
 }
@@ -63,6 +63,10 @@ public class ClusterStateMonitor extends org.elasticsearch.common.component.Abst
         if (event.state().getNodes().masterAndDataNodes().isEmpty()) {
             log.warn("No Elasticsearch data nodes in cluster, cluster is completely offline.");
         }
+        if (cluster != null && (event.routingTableChanged() || event.metaDataChanged() || event.blocksChanged() || event.nodesChanged())) {
+            // shard allocation, index aliases or nodes might have changed the health or the deflector state
+            cluster.clusterStateChanged();
+        }
         if (!event.nodesChanged()) {
             // ignore events that don't contain node changes, we don't need to track this now
             return;
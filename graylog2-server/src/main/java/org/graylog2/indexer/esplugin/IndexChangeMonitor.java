@@ -22,11 +22,16 @@ import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.hppc.cursors.ObjectCursor;
 import org.elasticsearch.common.settings.Settings;
+import org.graylog2.indexer.IndexMapping;
 
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 import static org.elasticsearch.common.base.Preconditions.checkNotNull;
 
@@ -61,6 +66,35 @@ public class IndexChangeMonitor extends AbstractLifecycleComponent<IndexChangeMo
             if (!indicesDeleted.isEmpty()) {
                 eventBus.post(IndicesDeletedEvent.create(indicesDeleted));
             }
+
+            if (event.metaDataChanged()) {
+                postChangedFields(event);
+            }
+        }
+    }
+
+    private void postChangedFields(ClusterChangedEvent event) {
+        for (ObjectCursor<IndexMetaData> cursor : event.state().metaData().indices().values()) {
+            final IndexMetaData indexMetaData = cursor.value;
+            // unchanged index metadata is the same instance as in the previous cluster state, so this is cheap
+            if (!event.indexMetaDataChanged(indexMetaData)) {
+                continue;
+            }
+
+            final MappingMetaData mapping = indexMetaData.mapping(IndexMapping.TYPE_MESSAGE);
+            if (mapping == null) {
+                continue;
+            }
+
+            try {
+                @SuppressWarnings("unchecked")
+                final Map<String, Object> properties = (Map<String, Object>) mapping.getSourceAsMap().get("properties");
+                if (properties != null) {
+                    eventBus.post(IndexFieldsChangedEvent.create(indexMetaData.getIndex(), properties.keySet()));
+                }
+            } catch (Exception e) {
+                logger.debug("Couldn't read mapping of index <{}>", e, indexMetaData.getIndex());
+            }
         }
     }
 
@@ -0,0 +1,265 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.fieldcatalog;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import org.graylog2.Configuration;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.indexer.esplugin.IndexFieldsChangedEvent;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the message field names, for all messages and per stream, so they don't have to be collected from
+ * the mappings of all indices on every request.
+ * <p/>
+ * Field names are recorded while messages are indexed and when the mapping of an index changes. New field names are
+ * kept in memory and written to MongoDB in batches by {@link org.graylog2.periodical.FieldCatalogPeriodical}, which
+ * also picks up the field names the other nodes have seen.
+ */
+@Singleton
+public class FieldCatalog {
+    private static final Logger LOG = LoggerFactory.getLogger(FieldCatalog.class);
+
+    static final String COLLECTION_NAME = "field_catalog";
+    private static final String FIELD_FIELDS = "fields";
+
+    /**
+     * The pseudo stream ID of the field names of all messages.
+     */
+    public static final String ALL_MESSAGES = "*";
+
+    private final boolean enabled;
+    private final boolean perStream;
+    private final DBCollection collection;
+    private final IndexSetRegistry indexSetRegistry;
+    // stream -> known field names
+    private final ConcurrentMap<String, Set<String>> fields = new ConcurrentHashMap<>();
+    // stream -> field names which haven't been written to MongoDB yet
+    private final ConcurrentMap<String, Set<String>> pending = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    @Inject
+    public FieldCatalog(Configuration configuration,
+                        MongoConnection mongoConnection,
+                        IndexSetRegistry indexSetRegistry,
+                        EventBus serverEventBus) {
+        this.enabled = configuration.isFieldCatalogEnabled();
+        this.perStream = configuration.isFieldCatalogPerStream();
+        this.collection = mongoConnection.getDatabase().getCollection(COLLECTION_NAME);
+        this.indexSetRegistry = indexSetRegistry;
+
+        if (enabled) {
+            serverEventBus.register(this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return {@code true} once the catalog has been loaded from MongoDB and contains field names
+     */
+    public boolean isLoaded() {
+        return loaded && !getFields().isEmpty();
+    }
+
+    /**
+     * Records the field names of an indexed message. This is called for every message, known field names only cost a
+     * hash lookup.
+     */
+    public void record(Collection<String> fieldNames, List<Stream> streams) {
+        if (!enabled) {
+            return;
+        }
+
+        final Set<String> allFields = fieldsOf(ALL_MESSAGES);
+        for (String fieldName : fieldNames) {
+            if (!allFields.contains(fieldName)) {
+                add(ALL_MESSAGES, allFields, fieldName);
+            }
+        }
+
+        if (perStream) {
+            for (Stream stream : streams) {
+                final Set<String> streamFields = fieldsOf(stream.getId());
+                for (String fieldName : fieldNames) {
+                    if (!streamFields.contains(fieldName)) {
+                        add(stream.getId(), streamFields, fieldName);
+                    }
+                }
+            }
+        }
+    }
+
+    public Set<String> getFields() {
+        return getFields(ALL_MESSAGES);
+    }
+
+    public Set<String> getFields(String streamId) {
+        final Set<String> streamFields = fields.get(streamId);
+        return streamFields == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(streamFields);
+    }
+
+    /**
+     * Replaces the field names of all messages, e.g. with the field names of the current index mappings to forget the
+     * fields of deleted indices.
+     */
+    public void replace(Set<String> fieldNames) {
+        final Set<String> newFields = newFieldSet();
+        newFields.addAll(fieldNames);
+        newFields.remove(Message.FIELD_ID);
+
+        collection.update(new BasicDBObject("_id", ALL_MESSAGES),
+                new BasicDBObject("$set", new BasicDBObject(FIELD_FIELDS, ImmutableList.copyOf(newFields))),
+                true, false);
+        fields.put(ALL_MESSAGES, newFields);
+        loaded = true;
+    }
+
+    /**
+     * Writes the new field names to MongoDB.
+     */
+    public void flush() {
+        for (Map.Entry<String, Set<String>> entry : pending.entrySet()) {
+            final Set<String> pendingFields = entry.getValue();
+            if (pendingFields.isEmpty()) {
+                continue;
+            }
+
+            final List<String> batch = ImmutableList.copyOf(pendingFields);
+            pendingFields.removeAll(batch);
+            try {
+                collection.update(new BasicDBObject("_id", entry.getKey()),
+                        new BasicDBObject("$addToSet", new BasicDBObject(FIELD_FIELDS, new BasicDBObject("$each", batch))),
+                        true, false);
+            } catch (MongoException e) {
+                // try again next time
+                pendingFields.addAll(batch);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Replaces the known field names with the ones stored in MongoDB, including the ones the other nodes have seen,
+     * and the new field names which haven't been written yet. Field names which have been removed from MongoDB by
+     * {@link #replace(Set)} on the master node are forgotten.
+     */
+    public void load() {
+        final Map<String, Set<String>> storedFields = Maps.newHashMap();
+        final DBCursor cursor = collection.find();
+        try {
+            for (DBObject document : cursor) {
+                final Object documentFields = document.get(FIELD_FIELDS);
+                if (documentFields instanceof Collection) {
+                    final Set<String> streamFields = newFieldSet();
+                    for (Object field : (Collection<?>) documentFields) {
+                        streamFields.add(String.valueOf(field));
+                    }
+                    storedFields.put((String) document.get("_id"), streamFields);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (Map.Entry<String, Set<String>> entry : pending.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            Set<String> streamFields = storedFields.get(entry.getKey());
+            if (streamFields == null) {
+                streamFields = newFieldSet();
+                storedFields.put(entry.getKey(), streamFields);
+            }
+            streamFields.addAll(entry.getValue());
+        }
+
+        fields.putAll(storedFields);
+        fields.keySet().retainAll(storedFields.keySet());
+        loaded = true;
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handleIndexFieldsChanged(IndexFieldsChangedEvent event) {
+        if (!indexSetRegistry.isManagedIndex(event.index())) {
+            return;
+        }
+
+        LOG.debug("Mapping of index <{}> changed, recording its {} fields.", event.index(), event.fields().size());
+        record(event.fields(), Collections.<Stream>emptyList());
+    }
+
+    private void add(String stream, Set<String> knownFields, String fieldName) {
+        if (Message.FIELD_ID.equals(fieldName)) {
+            return;
+        }
+        if (knownFields.add(fieldName)) {
+            Set<String> pendingFields = pending.get(stream);
+            if (pendingFields == null) {
+                final Set<String> newPendingFields = newFieldSet();
+                pendingFields = pending.putIfAbsent(stream, newPendingFields);
+                if (pendingFields == null) {
+                    pendingFields = newPendingFields;
+                }
+            }
+            pendingFields.add(fieldName);
+        }
+    }
+
+    private Set<String> fieldsOf(String stream) {
+        Set<String> streamFields = fields.get(stream);
+        if (streamFields == null) {
+            final Set<String> newStreamFields = newFieldSet();
+            streamFields = fields.putIfAbsent(stream, newStreamFields);
+            if (streamFields == null) {
+                streamFields = newStreamFields;
+            }
+        }
+        return streamFields;
+    }
+
+    private static Set<String> newFieldSet() {
+        return Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+}
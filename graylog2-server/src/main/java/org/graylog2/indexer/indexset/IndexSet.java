@@ -0,0 +1,87 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.indexset;
+
+import org.graylog2.indexer.Deflector;
+import org.graylog2.plugin.indexer.rotation.RotationStrategy;
+
+import javax.inject.Provider;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A series of indices written through its own {@link Deflector} and rotated and cleaned up independently of the
+ * other index sets.
+ */
+public class IndexSet {
+    private final String title;
+    private final Deflector deflector;
+    private final Provider<RotationStrategy> rotationStrategyProvider;
+    private final String retentionStrategy;
+    private final int maxNumberOfIndices;
+    private final boolean isDefault;
+
+    public IndexSet(String title,
+                    Deflector deflector,
+                    Provider<RotationStrategy> rotationStrategyProvider,
+                    String retentionStrategy,
+                    int maxNumberOfIndices,
+                    boolean isDefault) {
+        this.title = checkNotNull(title);
+        this.deflector = checkNotNull(deflector);
+        this.rotationStrategyProvider = checkNotNull(rotationStrategyProvider);
+        this.retentionStrategy = checkNotNull(retentionStrategy);
+        this.maxNumberOfIndices = maxNumberOfIndices;
+        this.isDefault = isDefault;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Deflector getDeflector() {
+        return deflector;
+    }
+
+    public RotationStrategy getRotationStrategy() {
+        return rotationStrategyProvider.get();
+    }
+
+    public String getRetentionStrategy() {
+        return retentionStrategy;
+    }
+
+    public int getMaxNumberOfIndices() {
+        return maxNumberOfIndices;
+    }
+
+    /**
+     * @return {@code true} if this is the index set configured in the Graylog configuration file
+     */
+    public boolean isDefault() {
+        return isDefault;
+    }
+
+    public boolean isManagedIndex(String indexName) {
+        return deflector.isGraylog2Index(indexName);
+    }
+
+    @Override
+    public String toString() {
+        return title + " (" + deflector.getIndexPrefix() + ")";
+    }
+}
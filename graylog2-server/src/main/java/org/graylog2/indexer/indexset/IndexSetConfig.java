@@ -0,0 +1,94 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.indexset;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nullable;
+import java.util.Set;
+
+/**
+ * Settings of an additional index set, i.e. a separate series of indices with its own deflector, shard layout,
+ * rotation and retention. Messages of the assigned {@link #streams() streams} are written into this index set.
+ */
+@JsonAutoDetect
+@AutoValue
+public abstract class IndexSetConfig {
+    @JsonProperty
+    public abstract String title();
+
+    @JsonProperty
+    public abstract String indexPrefix();
+
+    @JsonProperty
+    public abstract int shards();
+
+    @JsonProperty
+    public abstract int replicas();
+
+    /**
+     * One of the rotation strategies of the default index set: {@code count}, {@code size} or {@code time}.
+     */
+    @JsonProperty
+    public abstract String rotationStrategy();
+
+    @JsonProperty
+    public abstract int maxDocsPerIndex();
+
+    @JsonProperty
+    public abstract long maxSizePerIndex();
+
+    /**
+     * The ISO-8601 period after which the indices of this index set are rotated, e.g. {@code P1D}.
+     */
+    @JsonProperty
+    @Nullable
+    public abstract String maxTimePerIndex();
+
+    /**
+     * One of the retention strategies of the default index set: {@code delete} or {@code close}.
+     */
+    @JsonProperty
+    public abstract String retentionStrategy();
+
+    @JsonProperty
+    public abstract int maxNumberOfIndices();
+
+    @JsonProperty
+    public abstract Set<String> streams();
+
+    @JsonCreator
+    public static IndexSetConfig create(@JsonProperty("title") String title,
+                                        @JsonProperty("index_prefix") String indexPrefix,
+                                        @JsonProperty("shards") int shards,
+                                        @JsonProperty("replicas") int replicas,
+                                        @JsonProperty("rotation_strategy") String rotationStrategy,
+                                        @JsonProperty("max_docs_per_index") int maxDocsPerIndex,
+                                        @JsonProperty("max_size_per_index") long maxSizePerIndex,
+                                        @JsonProperty("max_time_per_index") @Nullable String maxTimePerIndex,
+                                        @JsonProperty("retention_strategy") String retentionStrategy,
+                                        @JsonProperty("max_number_of_indices") int maxNumberOfIndices,
+                                        @JsonProperty("streams") @Nullable Set<String> streams) {
+        return new AutoValue_IndexSetConfig(title, indexPrefix, shards, replicas, rotationStrategy, maxDocsPerIndex,
+                maxSizePerIndex, maxTimePerIndex, retentionStrategy, maxNumberOfIndices,
+                streams == null ? ImmutableSet.<String>of() : ImmutableSet.copyOf(streams));
+    }
+}
@@ -0,0 +1,346 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.indexset;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.inject.util.Providers;
+import org.elasticsearch.action.admin.indices.stats.IndexStats;
+import org.graylog2.cluster.ClusterConfigChangedEvent;
+import org.graylog2.configuration.ElasticsearchConfiguration;
+import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.SetIndexReadOnlyJob;
+import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.maintenance.IndexMaintenanceScheduler;
+import org.graylog2.indexer.ranges.CreateNewSingleIndexRangeJob;
+import org.graylog2.indexer.rotation.MessageCountRotationStrategy;
+import org.graylog2.indexer.rotation.SizeBasedRotationStrategy;
+import org.graylog2.indexer.rotation.TimeBasedRotationStrategy;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.cluster.ClusterConfigService;
+import org.graylog2.plugin.indexer.rotation.RotationStrategy;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.graylog2.system.jobs.SystemJobManager;
+import org.joda.time.Period;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Keeps track of the index sets of the cluster: the default index set from the Graylog configuration file and the
+ * additional index sets stored in the cluster configuration.
+ * <p/>
+ * Every message is written into exactly one index set: the first configured index set which one of its streams has been
+ * assigned to, or the default index set if none of its streams has been assigned to an index set. Messages stay in
+ * their index set when streams are assigned to other index sets later, so searches always cover all index sets.
+ */
+@Singleton
+public class IndexSetRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexSetRegistry.class);
+
+    private static final Pattern INDEX_PREFIX = Pattern.compile("[a-z0-9][a-z0-9_]*");
+    private static final Set<String> ROTATION_STRATEGIES = ImmutableSet.of("count", "size", "time");
+    private static final Set<String> RETENTION_STRATEGIES = ImmutableSet.of("delete", "close");
+
+    private final IndexSet defaultIndexSet;
+    private final String defaultWriteTarget;
+    private final ClusterConfigService clusterConfigService;
+    private final Indices indices;
+    private final SystemJobManager systemJobManager;
+    private final IndexMaintenanceScheduler indexMaintenanceScheduler;
+    private final ActivityWriter activityWriter;
+    private final SetIndexReadOnlyJob.Factory indexReadOnlyJobFactory;
+    private final CreateNewSingleIndexRangeJob.Factory createNewSingleIndexRangeJobFactory;
+    private volatile State state;
+
+    @Inject
+    public IndexSetRegistry(ElasticsearchConfiguration configuration,
+                            Deflector deflector,
+                            Provider<RotationStrategy> rotationStrategyProvider,
+                            ClusterConfigService clusterConfigService,
+                            Indices indices,
+                            SystemJobManager systemJobManager,
+                            IndexMaintenanceScheduler indexMaintenanceScheduler,
+                            ActivityWriter activityWriter,
+                            SetIndexReadOnlyJob.Factory indexReadOnlyJobFactory,
+                            CreateNewSingleIndexRangeJob.Factory createNewSingleIndexRangeJobFactory,
+                            EventBus serverEventBus) {
+        this.defaultIndexSet = new IndexSet("Default index set", deflector, rotationStrategyProvider,
+                configuration.getRetentionStrategy(), configuration.getMaxNumberOfIndices(), true);
+        this.defaultWriteTarget = Deflector.buildName(configuration.getIndexPrefix());
+        this.clusterConfigService = clusterConfigService;
+        this.indices = indices;
+        this.systemJobManager = systemJobManager;
+        this.indexMaintenanceScheduler = indexMaintenanceScheduler;
+        this.activityWriter = activityWriter;
+        this.indexReadOnlyJobFactory = indexReadOnlyJobFactory;
+        this.createNewSingleIndexRangeJobFactory = createNewSingleIndexRangeJobFactory;
+        this.state = new State(defaultIndexSet, Collections.<IndexSetConfig, IndexSet>emptyMap());
+
+        reload();
+        serverEventBus.register(this);
+    }
+
+    public IndexSet getDefault() {
+        return defaultIndexSet;
+    }
+
+    /**
+     * @return all index sets, starting with the default index set
+     */
+    public List<IndexSet> getAll() {
+        return state.all;
+    }
+
+    public IndexSetsConfig getConfig() {
+        return clusterConfigService.getOrDefault(IndexSetsConfig.class, IndexSetsConfig.empty());
+    }
+
+    /**
+     * Stores the additional index sets in the cluster configuration, all nodes pick them up after that.
+     *
+     * @throws IllegalArgumentException if the index sets are invalid
+     */
+    public void saveConfig(IndexSetsConfig config) {
+        validate(config);
+
+        // set up the deflectors of new index sets before any node writes into them, writing into a missing alias
+        // would create an index with the name of the alias
+        final Map<IndexSetConfig, IndexSet> existing = state.indexSets;
+        for (IndexSetConfig indexSetConfig : config.indexSets()) {
+            if (!existing.containsKey(indexSetConfig)) {
+                buildIndexSet(indexSetConfig).getDeflector().setUp();
+            }
+        }
+
+        clusterConfigService.write(config);
+        reload();
+    }
+
+    /**
+     * Messages are only written once, so searches over all index sets don't find duplicates. If the streams of a
+     * message belong to several index sets, the index set configured first wins.
+     *
+     * @return the name of the deflector alias the message has to be written to
+     */
+    public String getWriteTarget(Message message) {
+        final State current = state;
+        if (current.positionsByStream.isEmpty()) {
+            return defaultWriteTarget;
+        }
+
+        int position = Integer.MAX_VALUE;
+        for (Stream stream : message.getStreams()) {
+            final Integer streamPosition = current.positionsByStream.get(stream.getId());
+            if (streamPosition != null && streamPosition < position) {
+                position = streamPosition;
+            }
+        }
+
+        return position == Integer.MAX_VALUE ? defaultWriteTarget : current.writeTargets.get(position);
+    }
+
+    public boolean hasAdditionalIndexSets() {
+        return state.all.size() > 1;
+    }
+
+    public boolean isManagedIndex(String indexName) {
+        return getForIndex(indexName) != null;
+    }
+
+    /**
+     * @return the index set the index belongs to, or {@code null} if the index isn't managed by Graylog
+     */
+    @Nullable
+    public IndexSet getForIndex(String indexName) {
+        for (IndexSet indexSet : state.all) {
+            if (indexSet.isManagedIndex(indexName)) {
+                return indexSet;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the names of the indices of all index sets
+     */
+    public String[] getAllManagedIndexNames() {
+        if (!hasAdditionalIndexSets()) {
+            return defaultIndexSet.getDeflector().getAllDeflectorIndexNames();
+        }
+
+        final Map<String, IndexStats> allIndices = indices.getAll();
+        final List<String> result = Lists.newArrayListWithExpectedSize(allIndices.size());
+        for (String indexName : allIndices.keySet()) {
+            if (isManagedIndex(indexName)) {
+                result.add(indexName);
+            }
+        }
+
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the index sets are invalid
+     */
+    public void validate(IndexSetsConfig config) {
+        final String defaultPrefix = defaultIndexSet.getDeflector().getIndexPrefix();
+        final Set<String> prefixes = Sets.newHashSet();
+        final Set<String> streams = Sets.newHashSet();
+
+        for (IndexSetConfig indexSet : config.indexSets()) {
+            if (isNullOrEmpty(indexSet.title())) {
+                throw new IllegalArgumentException("Index set without a title.");
+            }
+
+            final String prefix = indexSet.indexPrefix();
+            if (prefix == null || !INDEX_PREFIX.matcher(prefix).matches()) {
+                throw new IllegalArgumentException("Invalid index prefix <" + prefix + "> of index set " + indexSet.title());
+            }
+            if (prefix.equals(defaultPrefix) || !prefixes.add(prefix)) {
+                throw new IllegalArgumentException("Index prefix <" + prefix + "> is already in use.");
+            }
+            if (indexSet.shards() < 1 || indexSet.replicas() < 0) {
+                throw new IllegalArgumentException("Invalid number of shards or replicas in index set " + indexSet.title());
+            }
+            if (!ROTATION_STRATEGIES.contains(indexSet.rotationStrategy())) {
+                throw new IllegalArgumentException("Unknown rotation strategy <" + indexSet.rotationStrategy() + ">");
+            }
+            if (!RETENTION_STRATEGIES.contains(indexSet.retentionStrategy())) {
+                throw new IllegalArgumentException("Unknown retention strategy <" + indexSet.retentionStrategy() + ">");
+            }
+            if (indexSet.maxNumberOfIndices() < 1) {
+                throw new IllegalArgumentException("Index set " + indexSet.title() + " must keep at least one index.");
+            }
+            // fails for invalid rotation settings
+            buildRotationStrategy(indexSet);
+
+            for (String stream : indexSet.streams()) {
+                if (!streams.add(stream)) {
+                    throw new IllegalArgumentException("Stream <" + stream + "> is assigned to more than one index set.");
+                }
+            }
+        }
+    }
+
+    @Subscribe
+    public void handleClusterConfigChanged(ClusterConfigChangedEvent event) {
+        if (IndexSetsConfig.class.getCanonicalName().equals(event.type())) {
+            reload();
+        }
+    }
+
+    private synchronized void reload() {
+        final IndexSetsConfig config = getConfig();
+        final Map<IndexSetConfig, IndexSet> indexSets = Maps.newLinkedHashMap();
+        for (IndexSetConfig indexSetConfig : config.indexSets()) {
+            // keep the existing instances of unchanged index sets, the time based rotation strategy is stateful
+            final IndexSet existing = state.indexSets.get(indexSetConfig);
+            if (existing != null) {
+                indexSets.put(indexSetConfig, existing);
+                continue;
+            }
+
+            try {
+                indexSets.put(indexSetConfig, buildIndexSet(indexSetConfig));
+            } catch (IllegalArgumentException e) {
+                LOG.error("Ignoring invalid index set " + indexSetConfig.title(), e);
+            }
+        }
+
+        state = new State(defaultIndexSet, indexSets);
+        LOG.debug("Loaded index sets {}", state.all);
+    }
+
+    private IndexSet buildIndexSet(IndexSetConfig config) {
+        final Deflector deflector = new Deflector(systemJobManager, indexMaintenanceScheduler, config.indexPrefix(),
+                config.shards(), config.replicas(), activityWriter, indexReadOnlyJobFactory, createNewSingleIndexRangeJobFactory, indices);
+
+        return new IndexSet(config.title(), deflector, Providers.of(buildRotationStrategy(config)),
+                config.retentionStrategy(), config.maxNumberOfIndices(), false);
+    }
+
+    private RotationStrategy buildRotationStrategy(IndexSetConfig config) {
+        switch (config.rotationStrategy()) {
+            case "count":
+                if (config.maxDocsPerIndex() < 1) {
+                    throw new IllegalArgumentException("Invalid maximum number of messages per index: " + config.maxDocsPerIndex());
+                }
+                return new MessageCountRotationStrategy(config.maxDocsPerIndex(), indices);
+            case "size":
+                if (config.maxSizePerIndex() < 1L) {
+                    throw new IllegalArgumentException("Invalid maximum size per index: " + config.maxSizePerIndex());
+                }
+                return new SizeBasedRotationStrategy(config.maxSizePerIndex(), indices);
+            case "time":
+                if (isNullOrEmpty(config.maxTimePerIndex())) {
+                    throw new IllegalArgumentException("Missing rotation period of the time based rotation strategy.");
+                }
+                return new TimeBasedRotationStrategy(Period.parse(config.maxTimePerIndex()), indices);
+            default:
+                throw new IllegalArgumentException("Unknown rotation strategy <" + config.rotationStrategy() + ">");
+        }
+    }
+
+    private static class State {
+        private final Map<IndexSetConfig, IndexSet> indexSets;
+        private final List<IndexSet> all;
+        // position of the index set of a stream in all index sets
+        private final Map<String, Integer> positionsByStream;
+        // deflector alias of the index set at the same position in all index sets
+        private final List<String> writeTargets;
+
+        private State(IndexSet defaultIndexSet, Map<IndexSetConfig, IndexSet> indexSets) {
+            this.indexSets = ImmutableMap.copyOf(indexSets);
+            this.all = ImmutableList.<IndexSet>builder().add(defaultIndexSet).addAll(indexSets.values()).build();
+
+            final ImmutableList.Builder<String> writeTargets = ImmutableList.builder();
+            for (IndexSet indexSet : all) {
+                writeTargets.add(indexSet.getDeflector().getName());
+            }
+            this.writeTargets = writeTargets.build();
+
+            final Map<String, Integer> positionsByStream = Maps.newHashMap();
+            int position = 1;
+            for (IndexSetConfig indexSetConfig : indexSets.keySet()) {
+                for (String stream : indexSetConfig.streams()) {
+                    positionsByStream.put(stream, position);
+                }
+                position++;
+            }
+            this.positionsByStream = ImmutableMap.copyOf(positionsByStream);
+        }
+    }
+}
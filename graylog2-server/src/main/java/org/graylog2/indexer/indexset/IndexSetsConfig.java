@@ -0,0 +1,46 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.indexset;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The additional index sets of the cluster, stored in the cluster configuration.
+ */
+@JsonAutoDetect
+@AutoValue
+public abstract class IndexSetsConfig {
+    @JsonProperty
+    public abstract List<IndexSetConfig> indexSets();
+
+    @JsonCreator
+    public static IndexSetsConfig create(@JsonProperty("index_sets") @Nullable List<IndexSetConfig> indexSets) {
+        return new AutoValue_IndexSetsConfig(
+                indexSets == null ? ImmutableList.<IndexSetConfig>of() : ImmutableList.copyOf(indexSets));
+    }
+
+    public static IndexSetsConfig empty() {
+        return create(null);
+    }
+}
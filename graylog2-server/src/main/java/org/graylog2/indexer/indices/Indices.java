@@ -193,12 +193,16 @@ public class Indices implements IndexManagement {
     }
 
     public boolean create(String indexName) {
+        return create(indexName, configuration.getShards(), configuration.getReplicas());
+    }
+
+    public boolean create(String indexName, int shards, int replicas) {
         final Map<String, String> keywordLowercase = ImmutableMap.of(
                 "tokenizer", "keyword",
                 "filter", "lowercase");
         final Map<String, Object> settings = ImmutableMap.of(
-                "number_of_shards", configuration.getShards(),
-                "number_of_replicas", configuration.getReplicas(),
+                "number_of_shards", shards,
+                "number_of_replicas", replicas,
                 "index.analysis.analyzer.analyzer_keyword", keywordLowercase);
 
         final CreateIndexRequest cir = c.admin().indices().prepareCreate(indexName).setSettings(settings).request();
@@ -217,9 +221,13 @@ public class Indices implements IndexManagement {
     }
 
     public Set<String> getAllMessageFields() {
+        return getAllMessageFields(allIndicesAlias());
+    }
+
+    public Set<String> getAllMessageFields(String... indexWildcards) {
         Set<String> fields = Sets.newHashSet();
 
-        ClusterStateRequest csr = new ClusterStateRequest().blocks(true).nodes(true).indices(allIndicesAlias());
+        ClusterStateRequest csr = new ClusterStateRequest().blocks(true).nodes(true).indices(indexWildcards);
         ClusterState cs = c.admin().cluster().state(csr).actionGet().getState();
 
         for (ObjectObjectCursor<String, IndexMetaData> m : cs.getMetaData().indices()) {
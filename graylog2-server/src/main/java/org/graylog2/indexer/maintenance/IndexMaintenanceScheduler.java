@@ -0,0 +1,306 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.maintenance;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.graylog2.configuration.ElasticsearchConfiguration;
+import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.system.jobs.SystemJob;
+import org.graylog2.system.jobs.SystemJobConcurrencyException;
+import org.graylog2.system.jobs.SystemJobManager;
+import org.joda.time.LocalTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Runs index maintenance operations, i. e. deleting, closing, setting to read-only and optimizing indices, as
+ * {@link SystemJob system jobs} with at most {@code index_maintenance_concurrency} operations at once.
+ * <p/>
+ * Operations are queued and started as soon as a slot is free and the Elasticsearch cluster is in a state which
+ * allows them: all operations wait while the cluster is red or unreachable, {@link IndexOperation#isHeavy() heavy}
+ * operations additionally wait until the cluster is green without relocating or initializing shards and until the
+ * current time is within the optional {@code index_optimization_window}. If more than one slot is configured, heavy operations
+ * never take the last one, so long running optimizations don't hold up retention.
+ * <p/>
+ * Each index is only queued once per operation. Running operations are listed with their progress by the
+ * {@link SystemJobManager}.
+ */
+@Singleton
+public class IndexMaintenanceScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexMaintenanceScheduler.class);
+    private static final long DISPATCH_INTERVAL_SECONDS = 5L;
+
+    enum ClusterCondition {
+        UNAVAILABLE,
+        AVAILABLE,
+        SETTLED
+    }
+
+    // the cluster depends on the deflector which depends on this scheduler
+    private final Provider<Cluster> clusterProvider;
+    private final SystemJobManager systemJobManager;
+    private final ScheduledExecutorService scheduler;
+    private final int concurrency;
+    private final int heavyConcurrency;
+    private final TimeOfDayWindow heavyOperationWindow;
+
+    // guarded by this
+    private final List<Task> queue = Lists.newArrayList();
+    private final Set<String> pendingKeys = Sets.newHashSet();
+    private int running = 0;
+    private int runningHeavy = 0;
+    private long sequence = 0;
+
+    private final AtomicBoolean dispatchPending = new AtomicBoolean(false);
+    private final Runnable dispatch = new Runnable() {
+        @Override
+        public void run() {
+            dispatchPending.set(false);
+            try {
+                dispatch();
+            } catch (Exception e) {
+                LOG.error("Couldn't start index maintenance operations.", e);
+            }
+        }
+    };
+
+    @Inject
+    public IndexMaintenanceScheduler(Provider<Cluster> clusterProvider,
+                                     SystemJobManager systemJobManager,
+                                     ElasticsearchConfiguration configuration,
+                                     MetricRegistry metricRegistry,
+                                     @Named("daemonScheduler") ScheduledExecutorService scheduler) {
+        this(clusterProvider, systemJobManager, configuration.getIndexMaintenanceConcurrency(),
+                TimeOfDayWindow.parse(configuration.getIndexOptimizationWindow()), scheduler);
+
+        metricRegistry.register(name(IndexMaintenanceScheduler.class, "queued"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getQueueSize();
+            }
+        });
+        metricRegistry.register(name(IndexMaintenanceScheduler.class, "running"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getRunning();
+            }
+        });
+    }
+
+    @VisibleForTesting
+    IndexMaintenanceScheduler(Provider<Cluster> clusterProvider,
+                              SystemJobManager systemJobManager,
+                              int concurrency,
+                              TimeOfDayWindow heavyOperationWindow,
+                              ScheduledExecutorService scheduler) {
+        this.clusterProvider = clusterProvider;
+        this.systemJobManager = systemJobManager;
+        this.scheduler = scheduler;
+        this.concurrency = concurrency;
+        this.heavyConcurrency = concurrency > 1 ? concurrency - 1 : 1;
+        this.heavyOperationWindow = heavyOperationWindow;
+
+        scheduler.scheduleWithFixedDelay(dispatch, DISPATCH_INTERVAL_SECONDS, DISPATCH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public boolean submit(IndexOperation operation, String index, SystemJob job) {
+        return submit(operation, index, job, 0L, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues the job running the given operation on an index.
+     *
+     * @param delay the minimum time to wait before the job is started
+     * @return {@code false} if the operation is already queued or running for the index
+     */
+    public boolean submit(IndexOperation operation, String index, SystemJob job, long delay, TimeUnit unit) {
+        synchronized (this) {
+            if (!pendingKeys.add(key(operation, index))) {
+                LOG.debug("Operation {} on index <{}> is already pending.", operation, index);
+                return false;
+            }
+            queue.add(new Task(operation, index, job, System.currentTimeMillis() + unit.toMillis(delay), sequence++));
+        }
+
+        LOG.debug("Queued operation {} on index <{}>.", operation, index);
+        if (delay <= 0L) {
+            scheduleDispatch();
+        }
+        return true;
+    }
+
+    public synchronized boolean isPending(IndexOperation operation, String index) {
+        return pendingKeys.contains(key(operation, index));
+    }
+
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    @VisibleForTesting
+    void dispatch() {
+        synchronized (this) {
+            if (queue.isEmpty() || running >= concurrency) {
+                return;
+            }
+        }
+
+        final ClusterCondition condition = clusterCondition();
+        if (condition == ClusterCondition.UNAVAILABLE) {
+            LOG.debug("Elasticsearch cluster is not available, postponing index maintenance.");
+            return;
+        }
+        final boolean heavyAllowed = condition == ClusterCondition.SETTLED && heavyOperationWindow.contains(now());
+        final long now = System.currentTimeMillis();
+
+        final List<Task> tasks = Lists.newArrayList();
+        synchronized (this) {
+            Collections.sort(queue);
+            final Iterator<Task> iterator = queue.iterator();
+            while (iterator.hasNext() && running < concurrency) {
+                final Task task = iterator.next();
+                if (task.notBefore > now) {
+                    continue;
+                }
+                if (task.operation.isHeavy() && (!heavyAllowed || runningHeavy >= heavyConcurrency)) {
+                    continue;
+                }
+
+                iterator.remove();
+                started(task);
+                tasks.add(task);
+            }
+        }
+
+        for (final Task task : tasks) {
+            LOG.debug("Starting operation {} on index <{}>.", task.operation, task.index);
+            try {
+                systemJobManager.submit(task.job, new Runnable() {
+                    @Override
+                    public void run() {
+                        finished(task);
+                        scheduleDispatch();
+                    }
+                });
+            } catch (SystemJobConcurrencyException e) {
+                LOG.debug("Couldn't start operation " + task.operation + " on index <" + task.index + ">, trying again later.", e);
+                synchronized (this) {
+                    stopped(task);
+                    queue.add(task);
+                }
+            }
+        }
+    }
+
+    @VisibleForTesting
+    ClusterCondition clusterCondition() {
+        final ClusterHealthResponse health = clusterProvider.get().cachedHealth();
+        if (health == null || health.getStatus() == ClusterHealthStatus.RED) {
+            return ClusterCondition.UNAVAILABLE;
+        }
+        if (health.getStatus() == ClusterHealthStatus.GREEN && health.getRelocatingShards() == 0 && health.getInitializingShards() == 0) {
+            return ClusterCondition.SETTLED;
+        }
+        return ClusterCondition.AVAILABLE;
+    }
+
+    @VisibleForTesting
+    LocalTime now() {
+        return LocalTime.now();
+    }
+
+    private void started(Task task) {
+        running++;
+        if (task.operation.isHeavy()) {
+            runningHeavy++;
+        }
+    }
+
+    private void stopped(Task task) {
+        running--;
+        if (task.operation.isHeavy()) {
+            runningHeavy--;
+        }
+    }
+
+    private synchronized void finished(Task task) {
+        stopped(task);
+        pendingKeys.remove(key(task.operation, task.index));
+    }
+
+    private void scheduleDispatch() {
+        if (dispatchPending.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(dispatch);
+            } catch (RejectedExecutionException e) {
+                dispatchPending.set(false);
+                LOG.debug("Couldn't schedule index maintenance", e);
+            }
+        }
+    }
+
+    private static String key(IndexOperation operation, String index) {
+        return operation.name() + ":" + index;
+    }
+
+    private static class Task implements Comparable<Task> {
+        private final IndexOperation operation;
+        private final String index;
+        private final SystemJob job;
+        private final long notBefore;
+        private final long sequence;
+
+        private Task(IndexOperation operation, String index, SystemJob job, long notBefore, long sequence) {
+            this.operation = operation;
+            this.index = index;
+            this.job = job;
+            this.notBefore = notBefore;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            final int byOperation = operation.compareTo(other.operation);
+            return byOperation != 0 ? byOperation : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.maintenance;
+
+/**
+ * The kinds of index maintenance run by the {@link IndexMaintenanceScheduler}, in the order they are preferred.
+ */
+public enum IndexOperation {
+    // free disk space and heap first
+    DELETE(false),
+    CLOSE(false),
+    SET_READ_ONLY(false),
+    // merges all segments of an index, may run for hours on large indices
+    OPTIMIZE(true);
+
+    private final boolean heavy;
+
+    IndexOperation(boolean heavy) {
+        this.heavy = heavy;
+    }
+
+    /**
+     * @return {@code true} if the operation puts considerable load on the cluster and should only run when the
+     * cluster is green and settled and within the configured time window
+     */
+    public boolean isHeavy() {
+        return heavy;
+    }
+}
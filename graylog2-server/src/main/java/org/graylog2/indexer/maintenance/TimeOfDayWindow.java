@@ -0,0 +1,79 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.maintenance;
+
+import org.joda.time.LocalTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * A daily time window like {@code 22:00-06:00}. Windows ending before they start span midnight.
+ */
+public class TimeOfDayWindow {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormat.forPattern("HH:mm");
+    private static final TimeOfDayWindow ALWAYS = new TimeOfDayWindow(null, null);
+
+    private final LocalTime start;
+    private final LocalTime end;
+
+    private TimeOfDayWindow(LocalTime start, LocalTime end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @param window a window in the format {@code HH:mm-HH:mm}, {@code null} or an empty string for the whole day
+     * @throws IllegalArgumentException if the window can't be parsed
+     */
+    public static TimeOfDayWindow parse(@Nullable String window) {
+        if (isNullOrEmpty(window) || window.trim().isEmpty()) {
+            return ALWAYS;
+        }
+
+        final String[] parts = window.trim().split("\\s*-\\s*");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid time window <" + window + ">, expected HH:mm-HH:mm.");
+        }
+
+        final LocalTime start = FORMATTER.parseLocalTime(parts[0]);
+        final LocalTime end = FORMATTER.parseLocalTime(parts[1]);
+        if (start.equals(end)) {
+            return ALWAYS;
+        }
+        return new TimeOfDayWindow(start, end);
+    }
+
+    public boolean contains(LocalTime time) {
+        if (start == null) {
+            return true;
+        }
+        if (start.isBefore(end)) {
+            return !time.isBefore(start) && time.isBefore(end);
+        }
+        // spans midnight
+        return !time.isBefore(start) || time.isBefore(end);
+    }
+
+    @Override
+    public String toString() {
+        return start == null ? "always" : FORMATTER.print(start) + "-" + FORMATTER.print(end);
+    }
+}
@@ -40,10 +40,11 @@ import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.indices.IndexMissingException;
-import org.graylog2.configuration.ElasticsearchConfiguration;
 import org.graylog2.indexer.DeadLetter;
-import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.DeadLetterSpool;
 import org.graylog2.indexer.IndexMapping;
+import org.graylog2.indexer.fieldcatalog.FieldCatalog;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.results.ResultMessage;
 import org.graylog2.plugin.Message;
 import org.slf4j.Logger;
@@ -55,7 +56,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -75,18 +75,16 @@ public class Messages {
             .build();
 
     private final Client c;
-    private final String deflectorName;
-    private LinkedBlockingQueue<List<DeadLetter>> deadLetterQueue;
+    private final IndexSetRegistry indexSetRegistry;
+    private final FieldCatalog fieldCatalog;
+    private final DeadLetterSpool deadLetterSpool;
 
     @Inject
-    public Messages(Client client, ElasticsearchConfiguration configuration) {
+    public Messages(Client client, IndexSetRegistry indexSetRegistry, FieldCatalog fieldCatalog, DeadLetterSpool deadLetterSpool) {
         this.c = client;
-        this.deadLetterQueue = new LinkedBlockingQueue<>(1000);
-        this.deflectorName = Deflector.buildName(configuration.getIndexPrefix());
-    }
-
-    public LinkedBlockingQueue<List<DeadLetter>> getDeadLetterQueue() {
-        return deadLetterQueue;
+        this.indexSetRegistry = indexSetRegistry;
+        this.fieldCatalog = fieldCatalog;
+        this.deadLetterSpool = deadLetterSpool;
     }
 
     public ResultMessage get(String messageId, String index) throws IndexMissingException, DocumentNotFoundException {
@@ -121,7 +119,9 @@ public class Messages {
 
         final BulkRequestBuilder requestBuilder = c.prepareBulk().setConsistencyLevel(WriteConsistencyLevel.ONE);
         for (Message msg : messages) {
-            requestBuilder.add(buildIndexRequest(deflectorName, msg.toElasticSearchObject(), msg.getId()));
+            final Map<String, Object> source = msg.toElasticSearchObject();
+            fieldCatalog.record(source.keySet(), msg.getStreams());
+            requestBuilder.add(buildIndexRequest(indexSetRegistry.getWriteTarget(msg), source, msg.getId()));
         }
 
         final BulkResponse response = runBulkRequest(requestBuilder.request());
@@ -161,8 +161,8 @@ public class Messages {
         LOG.error("Failed to index [{}] messages. Please check the index error log in your web interface for the reason. Error: {}",
                 deadLetters.size(), errorMessage);
 
-        if (!deadLetterQueue.offer(deadLetters)) {
-            LOG.debug("Could not propagate failure to failure queue. Queue is full.");
+        if (!deadLetterSpool.append(deadLetters)) {
+            LOG.debug("Could not propagate failure to dead letter spool.");
         }
     }
 
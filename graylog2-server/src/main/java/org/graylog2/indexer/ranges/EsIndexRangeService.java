@@ -26,6 +26,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
@@ -51,10 +52,10 @@ import org.elasticsearch.search.aggregations.metrics.max.Max;
 import org.elasticsearch.search.aggregations.metrics.min.Min;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.events.ClusterEventBus;
-import org.graylog2.indexer.Deflector;
 import org.graylog2.indexer.IndexMapping;
 import org.graylog2.indexer.esplugin.IndexChangeMonitor;
 import org.graylog2.indexer.esplugin.IndicesDeletedEvent;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.searches.TimestampStats;
 import org.graylog2.metrics.CacheStatsSet;
@@ -70,6 +71,9 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.concurrent.ExecutionException;
@@ -83,22 +87,23 @@ public class EsIndexRangeService implements IndexRangeService {
     private final Client client;
     private final ObjectMapper objectMapper;
     private final Indices indices;
-    private final Deflector deflector;
+    private final IndexSetRegistry indexSetRegistry;
     private final EventBus clusterEventBus;
-
+    // lazily loaded, null until the first lookup or as long as some index ranges couldn't be loaded
+    private volatile IndexRangeIntervalTree intervalTree;
 
     @Inject
     public EsIndexRangeService(Client client,
                                ObjectMapper objectMapper,
                                Indices indices,
-                               Deflector deflector,
+                               IndexSetRegistry indexSetRegistry,
                                EventBus eventBus,
                                @ClusterEventBus EventBus clusterEventBus,
                                MetricRegistry metricRegistry) {
         this.client = client;
         this.objectMapper = objectMapper;
         this.indices = indices;
-        this.deflector = deflector;
+        this.indexSetRegistry = indexSetRegistry;
         this.clusterEventBus = clusterEventBus;
 
         final CacheLoader<String, IndexRange> cacheLoader = new CacheLoader<String, IndexRange>() {
@@ -186,20 +191,18 @@ public class EsIndexRangeService implements IndexRangeService {
 
     @Override
     public SortedSet<IndexRange> find(DateTime begin, DateTime end) {
-        final ImmutableSortedSet.Builder<IndexRange> indexRanges = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
-        for (IndexRange indexRange : findAll()) {
-            if (indexRange.begin().getMillis() <= end.getMillis() && indexRange.end().getMillis() >= begin.getMillis()) {
-                indexRanges.add(indexRange);
-            }
+        IndexRangeIntervalTree tree = intervalTree;
+        if (tree == null) {
+            tree = loadIntervalTree();
         }
 
-        return indexRanges.build();
+        return tree.find(begin.getMillis(), end.getMillis());
     }
 
     @Override
     public SortedSet<IndexRange> findAll() {
         final ImmutableSortedSet.Builder<IndexRange> indexRanges = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
-        for (String index : deflector.getAllDeflectorIndexNames()) {
+        for (String index : indexSetRegistry.getAllManagedIndexNames()) {
             try {
                 indexRanges.add(cache.get(index));
             } catch (ExecutionException e) {
@@ -210,6 +213,49 @@ public class EsIndexRangeService implements IndexRangeService {
         return indexRanges.build();
     }
 
+    private synchronized IndexRangeIntervalTree loadIntervalTree() {
+        if (intervalTree != null) {
+            return intervalTree;
+        }
+
+        final String[] indexNames = indexSetRegistry.getAllManagedIndexNames();
+        final List<IndexRange> indexRanges = Lists.newArrayListWithCapacity(indexNames.length);
+        boolean complete = true;
+        for (String index : indexNames) {
+            try {
+                indexRanges.add(cache.get(index));
+            } catch (ExecutionException e) {
+                LOG.warn("Couldn't load index range for index " + index);
+                complete = false;
+            }
+        }
+
+        final IndexRangeIntervalTree tree = new IndexRangeIntervalTree(indexRanges);
+        if (complete) {
+            // otherwise try again on the next lookup
+            intervalTree = tree;
+        }
+
+        return tree;
+    }
+
+    private synchronized void updateIntervalTree(String indexName) {
+        if (intervalTree == null || !indexSetRegistry.isManagedIndex(indexName)) {
+            return;
+        }
+
+        final IndexRange indexRange = cache.getIfPresent(indexName);
+        intervalTree = indexRange == null
+                ? intervalTree.without(Collections.singleton(indexName))
+                : intervalTree.with(indexRange);
+    }
+
+    private synchronized void removeFromIntervalTree(Collection<String> indexNames) {
+        if (intervalTree != null) {
+            intervalTree = intervalTree.without(indexNames);
+        }
+    }
+
     @Override
     public IndexRange calculateRange(String index) {
         final Stopwatch sw = Stopwatch.createStarted();
@@ -307,6 +353,7 @@ public class EsIndexRangeService implements IndexRangeService {
             }
 
             cache.put(indexName, indexRange);
+            updateIntervalTree(indexName);
             clusterEventBus.post(IndexRangeUpdatedEvent.create(indexName));
         }
     }
@@ -319,11 +366,13 @@ public class EsIndexRangeService implements IndexRangeService {
         }
 
         cache.cleanUp();
+        removeFromIntervalTree(event.indices());
     }
 
     @Subscribe
     @AllowConcurrentEvents
     public void handleIndexRangeUpdate(IndexRangeUpdatedEvent event) {
         cache.refresh(event.indexName());
+        updateIntervalTree(event.indexName());
     }
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * Immutable interval tree over {@link IndexRange index ranges}.
+ * <p/>
+ * The ranges are sorted by their begin and form an implicit balanced binary tree in which every node knows the
+ * latest end in its subtree. Finding the ranges overlapping a time range takes {@code O(log n + m)} for {@code m}
+ * matching ranges. Updates create a new tree.
+ */
+class IndexRangeIntervalTree {
+    private static final Comparator<IndexRange> BEGIN_COMPARATOR = new Comparator<IndexRange>() {
+        @Override
+        public int compare(IndexRange o1, IndexRange o2) {
+            final int result = Long.compare(o1.begin().getMillis(), o2.begin().getMillis());
+            return result == 0 ? o1.indexName().compareTo(o2.indexName()) : result;
+        }
+    };
+
+    private final Map<String, IndexRange> byIndexName;
+    private final IndexRange[] ranges;
+    private final long[] begins;
+    private final long[] ends;
+    private final long[] maxEnds;
+
+    IndexRangeIntervalTree(Collection<IndexRange> indexRanges) {
+        this.byIndexName = Maps.newHashMapWithExpectedSize(indexRanges.size());
+        for (IndexRange indexRange : indexRanges) {
+            byIndexName.put(indexRange.indexName(), indexRange);
+        }
+
+        this.ranges = byIndexName.values().toArray(new IndexRange[byIndexName.size()]);
+        Arrays.sort(ranges, BEGIN_COMPARATOR);
+
+        this.begins = new long[ranges.length];
+        this.ends = new long[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            begins[i] = ranges[i].begin().getMillis();
+            ends[i] = ranges[i].end().getMillis();
+        }
+
+        this.maxEnds = new long[ranges.length];
+        buildMaxEnds(0, ranges.length);
+    }
+
+    private long buildMaxEnds(int from, int to) {
+        if (from >= to) {
+            return Long.MIN_VALUE;
+        }
+        final int mid = (from + to) >>> 1;
+        final long left = buildMaxEnds(from, mid);
+        final long right = buildMaxEnds(mid + 1, to);
+        maxEnds[mid] = Math.max(ends[mid], Math.max(left, right));
+        return maxEnds[mid];
+    }
+
+    /**
+     * @return all index ranges which overlap the time range between {@code begin} and {@code end} (inclusive)
+     */
+    SortedSet<IndexRange> find(long begin, long end) {
+        final ImmutableSortedSet.Builder<IndexRange> result = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
+        collect(0, ranges.length, begin, end, result);
+        return result.build();
+    }
+
+    private void collect(int from, int to, long begin, long end, ImmutableSortedSet.Builder<IndexRange> result) {
+        if (from >= to) {
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+        if (maxEnds[mid] < begin) {
+            // every range in this subtree ended before the time range
+            return;
+        }
+
+        collect(from, mid, begin, end, result);
+
+        if (begins[mid] > end) {
+            // this range and every range in the right subtree begin after the time range
+            return;
+        }
+        if (ends[mid] >= begin) {
+            result.add(ranges[mid]);
+        }
+
+        collect(mid + 1, to, begin, end, result);
+    }
+
+    IndexRangeIntervalTree with(IndexRange indexRange) {
+        final Map<String, IndexRange> updated = Maps.newHashMap(byIndexName);
+        updated.put(indexRange.indexName(), indexRange);
+        return new IndexRangeIntervalTree(updated.values());
+    }
+
+    IndexRangeIntervalTree without(Collection<String> indexNames) {
+        final Map<String, IndexRange> updated = Maps.newHashMap(byIndexName);
+        updated.keySet().removeAll(indexNames);
+        return new IndexRangeIntervalTree(updated.values());
+    }
+
+    int size() {
+        return ranges.length;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableSet;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.plugin.Tools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Stores the progress of a running {@link RebuildIndexRangesJob} in MongoDB, so that an interrupted rebuild can be
+ * resumed after a restart without recalculating the ranges of the indices which are already done.
+ */
+@Singleton
+public class IndexRangeRebuildCheckpoint {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexRangeRebuildCheckpoint.class);
+
+    static final String COLLECTION_NAME = "index_range_rebuild";
+    private static final String DOCUMENT_ID = "rebuild";
+    private static final String FIELD_STARTED_AT = "started_at";
+    private static final String FIELD_COMPLETED = "completed_indices";
+
+    private final DBCollection collection;
+
+    @Inject
+    public IndexRangeRebuildCheckpoint(MongoConnection mongoConnection) {
+        this.collection = mongoConnection.getDatabase().getCollection(COLLECTION_NAME);
+    }
+
+    /**
+     * @return {@code true} if a rebuild has been started but not finished
+     */
+    public boolean isPending() {
+        try {
+            return collection.count(new BasicDBObject("_id", DOCUMENT_ID)) > 0L;
+        } catch (MongoException e) {
+            LOG.warn("Couldn't read index range rebuild checkpoint.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Starts a new rebuild or resumes the pending one.
+     *
+     * @return the indices which have already been processed by the pending rebuild
+     */
+    public Set<String> startOrResume() {
+        final DBObject document = collection.findAndModify(
+                new BasicDBObject("_id", DOCUMENT_ID),
+                null,
+                null,
+                false,
+                new BasicDBObject("$setOnInsert", new BasicDBObject(FIELD_STARTED_AT, Tools.iso8601().toDate())),
+                true,
+                true);
+        return completedIndices(document);
+    }
+
+    public void markCompleted(String indexName) {
+        try {
+            collection.update(
+                    new BasicDBObject("_id", DOCUMENT_ID),
+                    new BasicDBObject("$addToSet", new BasicDBObject(FIELD_COMPLETED, indexName)));
+        } catch (MongoException e) {
+            // not fatal, the index will just be calculated again if the rebuild is resumed
+            LOG.warn("Couldn't update index range rebuild checkpoint.", e);
+        }
+    }
+
+    public void finish() {
+        try {
+            collection.remove(new BasicDBObject("_id", DOCUMENT_ID));
+        } catch (MongoException e) {
+            LOG.warn("Couldn't remove index range rebuild checkpoint.", e);
+        }
+    }
+
+    private static Set<String> completedIndices(@Nullable DBObject document) {
+        if (document == null) {
+            return ImmutableSet.of();
+        }
+
+        final Object completed = document.get(FIELD_COMPLETED);
+        if (!(completed instanceof Collection)) {
+            return ImmutableSet.of();
+        }
+
+        final ImmutableSet.Builder<String> indexNames = ImmutableSet.builder();
+        for (Object indexName : (Collection<?>) completed) {
+            indexNames.add(String.valueOf(indexName));
+        }
+        return indexNames.build();
+    }
+}
@@ -16,17 +16,32 @@
  */
 package org.graylog2.indexer.ranges;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import com.mongodb.MongoException;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
 import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.shared.system.activities.Activity;
 import org.graylog2.shared.system.activities.ActivityWriter;
 import org.graylog2.system.jobs.SystemJob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RebuildIndexRangesJob extends SystemJob {
     public interface Factory {
@@ -35,22 +50,58 @@ public class RebuildIndexRangesJob extends SystemJob {
 
     private static final Logger LOG = LoggerFactory.getLogger(RebuildIndexRangesJob.class);
     private static final int MAX_CONCURRENCY = 1;
+    private static final long THROTTLE_PAUSE_MILLIS = TimeUnit.SECONDS.toMillis(5L);
 
     private volatile boolean cancelRequested = false;
     private volatile int indicesToCalculate = 0;
-    private volatile int indicesCalculated = 0;
+    private final AtomicInteger indicesCalculated = new AtomicInteger();
 
     protected final Deflector deflector;
+    private final IndexSetRegistry indexSetRegistry;
     private final ActivityWriter activityWriter;
     protected final IndexRangeService indexRangeService;
+    private final IndexRangeRebuildCheckpoint checkpoint;
+    private final Cluster cluster;
+    private final IndexRangeRebuildExecutor executor;
+    private final long throttlePauseMillis;
 
     @AssistedInject
     public RebuildIndexRangesJob(@Assisted Deflector deflector,
+                                 IndexSetRegistry indexSetRegistry,
                                  ActivityWriter activityWriter,
-                                 IndexRangeService indexRangeService) {
+                                 IndexRangeService indexRangeService,
+                                 IndexRangeRebuildCheckpoint checkpoint,
+                                 Cluster cluster,
+                                 IndexRangeRebuildExecutor executor) {
+        this(deflector, indexSetRegistry, activityWriter, indexRangeService, checkpoint, cluster, executor, THROTTLE_PAUSE_MILLIS);
+    }
+
+    /**
+     * For jobs which only calculate the range of a single index and override {@link #execute()}.
+     */
+    protected RebuildIndexRangesJob(Deflector deflector,
+                                    ActivityWriter activityWriter,
+                                    IndexRangeService indexRangeService) {
+        this(deflector, null, activityWriter, indexRangeService, null, null, null, THROTTLE_PAUSE_MILLIS);
+    }
+
+    @VisibleForTesting
+    RebuildIndexRangesJob(Deflector deflector,
+                          IndexSetRegistry indexSetRegistry,
+                          ActivityWriter activityWriter,
+                          IndexRangeService indexRangeService,
+                          IndexRangeRebuildCheckpoint checkpoint,
+                          Cluster cluster,
+                          IndexRangeRebuildExecutor executor,
+                          long throttlePauseMillis) {
         this.deflector = deflector;
+        this.indexSetRegistry = indexSetRegistry;
         this.activityWriter = activityWriter;
         this.indexRangeService = indexRangeService;
+        this.checkpoint = checkpoint;
+        this.cluster = cluster;
+        this.executor = executor;
+        this.throttlePauseMillis = throttlePauseMillis;
     }
 
     @Override
@@ -65,7 +116,7 @@ public class RebuildIndexRangesJob extends SystemJob {
         }
 
         // lolwtfbbqcasting
-        return (int) Math.floor(((float) indicesCalculated / (float) indicesToCalculate) * 100);
+        return (int) Math.floor(((float) indicesCalculated.get() / (float) indicesToCalculate) * 100);
     }
 
     @Override
@@ -77,33 +128,135 @@ public class RebuildIndexRangesJob extends SystemJob {
     public void execute() {
         info("Re-calculating index ranges.");
 
-        String[] indices = deflector.getAllDeflectorIndexNames();
+        // the ranges of all index sets share one checkpoint, so rebuild them all at once
+        String[] indices = indexSetRegistry.getAllManagedIndexNames();
         if (indices == null || indices.length == 0) {
             info("No indices, nothing to calculate.");
+            checkpoint.finish();
             return;
         }
         indicesToCalculate = indices.length;
 
-        Stopwatch sw = Stopwatch.createStarted();
+        Set<String> completed;
+        try {
+            completed = checkpoint.startOrResume();
+        } catch (MongoException e) {
+            LOG.warn("Couldn't load index range rebuild checkpoint, calculating all index ranges.", e);
+            completed = Collections.emptySet();
+        }
+
+        final Queue<String> pending = new ConcurrentLinkedQueue<>();
         for (String index : indices) {
-            if (cancelRequested) {
-                info("Stop requested. Not calculating next index range, not updating ranges.");
-                sw.stop();
+            if (!completed.contains(index)) {
+                pending.add(index);
+            }
+        }
+        indicesCalculated.set(indices.length - pending.size());
+        if (indicesCalculated.get() > 0) {
+            info("Resuming interrupted index range calculation, " + indicesCalculated.get() + " of " + indices.length + " indices are already done.");
+        }
+
+        final Stopwatch sw = Stopwatch.createStarted();
+        final int workers = Math.max(1, Math.min(executor.getConcurrency(), pending.size()));
+        final List<Future<?>> futures = Lists.newArrayListWithCapacity(workers);
+        for (int i = 0; i < workers; i++) {
+            final int worker = i;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    calculateRanges(worker, pending);
+                }
+            }));
+        }
+
+        try {
+            awaitWorkers(futures);
+        } catch (InterruptedException e) {
+            // keep the checkpoint, the rebuild will be resumed after the restart
+            LOG.info("Interrupted while calculating index ranges.");
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (!cancelRequested && !pending.isEmpty()) {
+            // keep the checkpoint, the remaining indices are calculated when the rebuild is resumed
+            LOG.warn("Index range calculation workers stopped unexpectedly, {} indices have not been calculated.", pending.size());
+            return;
+        }
+
+        checkpoint.finish();
+        if (cancelRequested) {
+            info("Stop requested. Not calculating next index range, not updating ranges.");
+            return;
+        }
+
+        info("Done calculating index ranges for " + indices.length + " indices. Took " + sw.stop().elapsed(TimeUnit.MILLISECONDS) + "ms.");
+    }
+
+    private void calculateRanges(int worker, Queue<String> pending) {
+        while (awaitClusterCapacity(worker, pending)) {
+            final String index = pending.poll();
+            if (index == null) {
                 return;
             }
 
             try {
                 final IndexRange indexRange = indexRangeService.calculateRange(index);
                 indexRangeService.save(indexRange);
+                // only stored ranges count as done, a resumed rebuild tries failed indices again
+                checkpoint.markCompleted(index);
                 LOG.debug("Created ranges for index {}: {}", index, indexRange);
             } catch (Exception e) {
                 LOG.info("Could not calculate range of index [" + index + "]. Skipping.", e);
             } finally {
-                indicesCalculated++;
+                indicesCalculated.incrementAndGet();
             }
         }
+    }
 
-        info("Done calculating index ranges for " + indices.length + " indices. Took " + sw.stop().elapsed(TimeUnit.MILLISECONDS) + "ms.");
+    private void awaitWorkers(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get(1L, TimeUnit.MINUTES);
+                    break;
+                } catch (TimeoutException e) {
+                    LOG.debug("Calculated {} of {} index ranges so far.", indicesCalculated.get(), indicesToCalculate);
+                } catch (ExecutionException e) {
+                    LOG.error("Index range calculation worker failed.", e.getCause());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the cluster can take the load of another calculation. A red cluster pauses all workers, a yellow
+     * cluster only keeps the first worker running.
+     *
+     * @return {@code false} if the job has been cancelled or interrupted or all indices have been taken by other
+     * workers while waiting
+     */
+    private boolean awaitClusterCapacity(int worker, Queue<String> pending) {
+        while (!cancelRequested && !Thread.currentThread().isInterrupted() && !pending.isEmpty()) {
+            // the cached health doesn't send a request to Elasticsearch for every check of every worker
+            final ClusterHealthStatus status = cluster.cachedHealthStatus();
+            if (status == ClusterHealthStatus.GREEN || (status == ClusterHealthStatus.YELLOW && worker == 0)) {
+                return true;
+            }
+
+            LOG.debug("Elasticsearch cluster is {}, pausing index range calculation worker {}.", status, worker);
+            try {
+                Thread.sleep(throttlePauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
     }
 
     protected void info(String what) {
@@ -0,0 +1,67 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.results;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.graylog2.indexer.searches.Searches;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+
+import java.util.Map;
+
+/**
+ * A histogram which has been assembled from several partial results, e. g. from rollups and Elasticsearch
+ * aggregations. The built query is the one of the first Elasticsearch request it is based on.
+ */
+public class CombinedHistogramResult extends HistogramResult {
+    private final Map<Long, ?> results;
+    private final String builtQuery;
+    private final Searches.DateHistogramInterval interval;
+    private final AbsoluteRange boundaries;
+
+    public CombinedHistogramResult(Map<Long, ?> results,
+                                   String originalQuery,
+                                   String builtQuery,
+                                   Searches.DateHistogramInterval interval,
+                                   AbsoluteRange boundaries,
+                                   TimeValue took) {
+        super(originalQuery, null, took);
+        this.results = results;
+        this.builtQuery = builtQuery;
+        this.interval = interval;
+        this.boundaries = boundaries;
+    }
+
+    @Override
+    public String getBuiltQuery() {
+        return builtQuery;
+    }
+
+    @Override
+    public Searches.DateHistogramInterval getInterval() {
+        return interval;
+    }
+
+    @Override
+    public Map<Long, ?> getResults() {
+        return results;
+    }
+
+    @Override
+    public AbsoluteRange getHistogramBoundaries() {
+        return boundaries;
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.results;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scrolls through several slices of a search, e.g. one per index, at the same time and returns their chunks as one
+ * stream. The order of the messages is undefined, just as with a single scan scroll.
+ * <p/>
+ * The workers block as soon as a few chunks are waiting to be consumed, so a slow client slows down the scrolls
+ * instead of piling up the results in memory. A worker gives up if a chunk isn't consumed within the keep alive of
+ * the scrolls, Elasticsearch has discarded the scroll by then anyway. The scroll of a slice is always cleared if it
+ * hasn't been read completely, also if the export is cancelled while the scroll of the slice is being started.
+ */
+public class ParallelScrollResult extends ScrollResult {
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelScrollResult.class);
+
+    // marks the end of the stream in the chunk queue
+    private static final List<ResultMessage> END = Collections.emptyList();
+
+    private final Queue<Callable<ScrollResult>> slices;
+    private final BlockingQueue<List<ResultMessage>> chunks;
+    private final long keepAliveMillis;
+    private final AtomicInteger runningWorkers;
+    private final List<Future<?>> workers;
+
+    private volatile boolean cancelled = false;
+    private volatile RuntimeException failure;
+    private boolean exhausted = false;
+    private int chunkId = 0;
+
+    /**
+     * @param slices          starts the scroll of a slice, slices are only started when a worker is ready to consume them
+     * @param concurrency     the number of slices which are scrolled at the same time
+     * @param executor        runs the workers, usually shared by all exports
+     * @param keepAliveMillis how long Elasticsearch keeps the scroll of a slice open between two requests
+     */
+    public ParallelScrollResult(String originalQuery,
+                                long totalHits,
+                                List<String> fields,
+                                List<Callable<ScrollResult>> slices,
+                                int concurrency,
+                                ExecutorService executor,
+                                long keepAliveMillis) {
+        super(originalQuery, null, totalHits, fields);
+        this.slices = new ConcurrentLinkedQueue<>(slices);
+        this.keepAliveMillis = keepAliveMillis;
+
+        final int workers = Math.max(1, Math.min(concurrency, slices.size()));
+        this.chunks = new ArrayBlockingQueue<>(2 * workers);
+        this.runningWorkers = new AtomicInteger(workers);
+        this.workers = Lists.newArrayListWithCapacity(workers);
+
+        LOG.debug("[{}] Starting parallel scroll with {} slices and {} workers for query {}",
+                getQueryHash(), slices.size(), workers, getOriginalQuery());
+        for (int i = 0; i < workers; i++) {
+            this.workers.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    scrollSlices();
+                }
+            }));
+        }
+    }
+
+    private void scrollSlices() {
+        try {
+            Callable<ScrollResult> slice;
+            while (!cancelled && (slice = slices.poll()) != null) {
+                scrollSlice(slice.call());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (!cancelled) {
+                LOG.error("[" + getQueryHash() + "] Error while scrolling through slice of query " + getOriginalQuery(), e);
+                failure = e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+                cancelled = true;
+            }
+        } finally {
+            if (runningWorkers.decrementAndGet() == 0 || failure != null) {
+                end();
+            }
+        }
+    }
+
+    private void end() {
+        try {
+            if (failure == null && chunks.offer(END, keepAliveMillis, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            // cancelled, nobody is waiting for the end anymore
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (failure == null) {
+            failure = notConsumed();
+        }
+        // the export has failed, drop the pending chunks to make room for the end. The other workers have been
+        // cancelled and add at most one more chunk each, which always leaves room in the queue.
+        chunks.clear();
+        chunks.offer(END);
+    }
+
+    private IllegalStateException notConsumed() {
+        return new IllegalStateException("Search results haven't been consumed within " + keepAliveMillis + " ms.");
+    }
+
+    private void scrollSlice(ScrollResult scroll) throws InterruptedException {
+        boolean complete = false;
+        try {
+            ScrollChunk chunk;
+            while (!cancelled && (chunk = scroll.nextChunk()) != null) {
+                if (!chunks.offer(chunk.getMessages(), keepAliveMillis, TimeUnit.MILLISECONDS)) {
+                    // the scroll has expired by now
+                    throw notConsumed();
+                }
+            }
+            complete = !cancelled;
+        } finally {
+            if (!complete) {
+                clear(scroll);
+            }
+        }
+    }
+
+    private void clear(ScrollResult scroll) {
+        // the worker is interrupted when the export is cancelled, clearing the scroll has to wait for its response
+        final boolean interrupted = Thread.interrupted();
+        try {
+            scroll.cancel();
+        } catch (Exception e) {
+            LOG.debug("[" + getQueryHash() + "] Couldn't clear scroll of slice.", e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public ScrollChunk nextChunk() {
+        if (exhausted) {
+            return null;
+        }
+
+        final List<ResultMessage> messages;
+        try {
+            messages = chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            return null;
+        }
+
+        if (messages == END) {
+            exhausted = true;
+            if (failure != null) {
+                cancel();
+                throw failure;
+            }
+            LOG.debug("[{}] Reached end of parallel scroll results.", getQueryHash());
+            return null;
+        }
+
+        return new ScrollChunk(messages, getFields(), chunkId++);
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        for (Future<?> worker : workers) {
+            worker.cancel(true);
+        }
+        chunks.clear();
+    }
+}
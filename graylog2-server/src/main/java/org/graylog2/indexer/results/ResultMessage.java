@@ -25,6 +25,7 @@ import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHitField;
 import org.elasticsearch.search.highlight.HighlightField;
+import org.graylog2.plugin.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,18 +49,23 @@ public class ResultMessage {
 	
 	public static ResultMessage parseFromSource(SearchHit hit) {
 		ResultMessage m = new ResultMessage();
+        // If source filtering is used for the request, only the requested fields have been fetched and get decoded.
         // There is no _source field if addFields is used for the request. Just use the returned fields in that case.
-        if (hit.getSource() != null) {
-            m.setMessage(hit.getSource());
+        final Map<String, Object> source = hit.getSource();
+        final Map<String, Object> map;
+        if (source != null) {
+            map = source;
         } else {
-            Map<String, Object> map = Maps.newHashMap();
+            map = Maps.newHashMap();
 
             for (Map.Entry<String, SearchHitField> o : hit.fields().entrySet()) {
                 map.put(o.getKey(), o.getValue().getValue());
             }
-            m.setMessage(map);
-
         }
+        if (!map.containsKey(Message.FIELD_ID)) {
+            map.put(Message.FIELD_ID, hit.getId());
+        }
+        m.setMessage(map);
 		m.setIndex(hit.getIndex());
         m.setHighlightRanges(hit.getHighlightFields());
 		return m;
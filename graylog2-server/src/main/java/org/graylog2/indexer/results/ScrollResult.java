@@ -35,6 +35,7 @@ public class ScrollResult extends IndexQueryResult {
     private final List<String> fields;
     private final String queryHash; // used in log output only
     private final long totalHits;
+    private final TimeValue keepAlive;
 
     private String scrollId;
     private int chunkId = 0;
@@ -43,9 +44,19 @@ public class ScrollResult extends IndexQueryResult {
                         String originalQuery,
                         BytesReference builtQuery,
                         SearchResponse response, List<String> fields) {
+        this(client, originalQuery, builtQuery, response, fields, TimeValue.timeValueMinutes(1));
+    }
+
+    public ScrollResult(Client client,
+                        String originalQuery,
+                        BytesReference builtQuery,
+                        SearchResponse response,
+                        List<String> fields,
+                        TimeValue keepAlive) {
         super(originalQuery, builtQuery, response.getTook());
         this.client = client;
         this.fields = fields;
+        this.keepAlive = keepAlive;
         totalHits = response.getHits().totalHits();
         scrollId = response.getScrollId();
 
@@ -55,9 +66,23 @@ public class ScrollResult extends IndexQueryResult {
         LOG.debug("[{}] Starting scroll request for query {}", queryHash, getOriginalQuery());
     }
 
+    /**
+     * For results which are combined from other scroll results and override {@link #nextChunk()} and {@link #cancel()}.
+     */
+    protected ScrollResult(String originalQuery, BytesReference builtQuery, long totalHits, List<String> fields) {
+        super(originalQuery, builtQuery, TimeValue.timeValueMillis(0L));
+        this.client = null;
+        this.fields = fields;
+        this.keepAlive = null;
+        this.totalHits = totalHits;
+
+        final Md5Hash md5Hash = new Md5Hash(getOriginalQuery());
+        queryHash = md5Hash.toHex();
+    }
+
     public ScrollChunk nextChunk() {
         final SearchResponse search = client.prepareSearchScroll(scrollId)
-                .setScroll(TimeValue.timeValueMinutes(1))
+                .setScroll(keepAlive)
                 .execute()
                 .actionGet();
 
@@ -81,6 +106,10 @@ public class ScrollResult extends IndexQueryResult {
         return totalHits;
     }
 
+    protected List<String> getFields() {
+        return fields;
+    }
+
     public void cancel() {
         final ClearScrollResponse clearScrollResponse = client.prepareClearScroll().addScrollId(scrollId).execute().actionGet();
         LOG.debug("[{}] clearScroll for query successful: {}", queryHash, clearScrollResponse.isSucceeded());
@@ -93,9 +122,13 @@ public class ScrollResult extends IndexQueryResult {
         private int chunkNumber;
 
         public ScrollChunk(SearchHits hits, List<String> fields, int chunkId) {
+            this(buildResults(hits), fields, chunkId);
+        }
+
+        public ScrollChunk(List<ResultMessage> resultMessages, List<String> fields, int chunkId) {
             this.fields = fields;
             this.chunkNumber = chunkId;
-            resultMessages = buildResults(hits);
+            this.resultMessages = resultMessages;
         }
 
         public List<String> getFields() {
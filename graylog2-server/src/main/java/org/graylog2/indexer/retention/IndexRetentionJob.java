@@ -0,0 +1,102 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.retention;
+
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
+import org.graylog2.plugin.indexer.retention.RetentionStrategy;
+import org.graylog2.shared.system.activities.Activity;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.graylog2.system.jobs.SystemJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a retention strategy against a single index.
+ */
+public class IndexRetentionJob extends SystemJob {
+    public interface Factory {
+        IndexRetentionJob create(RetentionStrategy strategy, String index);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexRetentionJob.class);
+
+    private final ActivityWriter activityWriter;
+    private final RetentionStrategy strategy;
+    private final String index;
+
+    @AssistedInject
+    public IndexRetentionJob(ActivityWriter activityWriter,
+                             @Assisted RetentionStrategy strategy,
+                             @Assisted String index) {
+        this.activityWriter = activityWriter;
+        this.strategy = strategy;
+        this.index = index;
+    }
+
+    @Override
+    public void execute() {
+        final String msg = "Running retention strategy [" + strategy.getClass().getCanonicalName() + "] " +
+                "for index <" + index + ">";
+        LOG.info(msg);
+        activityWriter.write(new Activity(msg, IndexRetentionJob.class));
+
+        // Sorry if this should ever go mad. Run retention strategy!
+        strategy.runStrategy(index);
+    }
+
+    @Override
+    public void requestCancel() {
+        // not possible, ignore
+    }
+
+    @Override
+    public int getProgress() {
+        return 0;
+    }
+
+    @Override
+    public int maxConcurrency() {
+        // bounded by the index maintenance scheduler
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean providesProgress() {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelable() {
+        return false;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Deletes or closes an old index.";
+    }
+
+    @Override
+    public String getClassName() {
+        return this.getClass().getCanonicalName();
+    }
+
+    @Override
+    public String getInfo() {
+        return "Running retention for index " + index + ".";
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.rollups;
+
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Message count and field statistics of one rollup bucket. Buckets of the same time span can be merged, e. g. the
+ * buckets of several indices or all minutes of an hour.
+ */
+public class RollupBucket {
+    private long count;
+    private final Map<String, FieldStats> fields = Maps.newHashMap();
+
+    public long getCount() {
+        return count;
+    }
+
+    public Map<String, FieldStats> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    public void addCount(long count) {
+        this.count += count;
+    }
+
+    public void addFieldStats(String field, long count, double sum, double min, double max) {
+        if (count <= 0L) {
+            return;
+        }
+
+        FieldStats stats = fields.get(field);
+        if (stats == null) {
+            stats = new FieldStats();
+            fields.put(field, stats);
+        }
+        stats.add(count, sum, min, max);
+    }
+
+    public void merge(RollupBucket other) {
+        addCount(other.count);
+        for (Map.Entry<String, FieldStats> entry : other.fields.entrySet()) {
+            final FieldStats stats = entry.getValue();
+            addFieldStats(entry.getKey(), stats.count, stats.sum, stats.min, stats.max);
+        }
+    }
+
+    public static class FieldStats {
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private void add(long count, double sum, double min, double max) {
+            this.count += count;
+            this.sum += sum;
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return sum / count;
+        }
+    }
+}
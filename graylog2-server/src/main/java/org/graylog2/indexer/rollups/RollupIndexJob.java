@@ -0,0 +1,234 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.rollups;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
+import com.mongodb.MongoException;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.stats.Stats;
+import org.graylog2.shared.system.activities.Activity;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.graylog2.system.jobs.SystemJob;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates the per-minute rollups of all messages and of every stream of an index. The index must not receive any
+ * new messages anymore.
+ */
+public class RollupIndexJob extends SystemJob {
+    public interface Factory {
+        RollupIndexJob create(String index);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(RollupIndexJob.class);
+
+    private static final String AGG_STREAMS = "gl2_rollup_streams";
+    private static final String AGG_HISTOGRAM = "gl2_rollup_histogram";
+    private static final String AGG_STATS_PREFIX = "gl2_rollup_stats_";
+
+    private final Client client;
+    private final Rollups rollups;
+    private final ActivityWriter activityWriter;
+    private final String index;
+
+    private volatile boolean cancelRequested = false;
+    private volatile int streamsTotal = 0;
+    private volatile int streamsDone = 0;
+
+    @AssistedInject
+    public RollupIndexJob(Client client,
+                          Rollups rollups,
+                          ActivityWriter activityWriter,
+                          @Assisted String index) {
+        this.client = client;
+        this.rollups = rollups;
+        this.activityWriter = activityWriter;
+        this.index = index;
+    }
+
+    @Override
+    public void execute() {
+        LOG.info("Calculating rollups of index <{}>.", index);
+        final long start = System.currentTimeMillis();
+
+        try {
+            final List<String> streams = Lists.newArrayList(Rollups.ALL_MESSAGES);
+            streams.addAll(findStreams());
+            streamsTotal = streams.size();
+
+            List<String> fields = ImmutableList.copyOf(rollups.getFields());
+            rollups.delete(index);
+            for (String stream : streams) {
+                if (cancelRequested) {
+                    LOG.info("Cancelled calculating rollups of index <{}>, they will be calculated again later.", index);
+                    rollups.delete(index);
+                    return;
+                }
+
+                Map<DateTime, RollupBucket> buckets;
+                try {
+                    buckets = rollup(stream, fields);
+                } catch (SearchPhaseExecutionException e) {
+                    fields = numericFields(fields);
+                    buckets = rollup(stream, fields);
+                }
+                rollups.save(index, stream, buckets);
+                streamsDone++;
+            }
+            rollups.markRolledUp(index, fields);
+        } catch (Exception e) {
+            LOG.error("Couldn't calculate rollups of index <" + index + ">.", e);
+            try {
+                rollups.delete(index);
+                rollups.recordFailure(index, e);
+            } catch (MongoException mongoException) {
+                LOG.warn("Couldn't record failed rollups of index <" + index + ">.", mongoException);
+            }
+            return;
+        }
+
+        final String msg = "Calculated rollups of index <" + index + "> in " + (System.currentTimeMillis() - start) + "ms.";
+        activityWriter.write(new Activity(msg, RollupIndexJob.class));
+        LOG.info(msg);
+    }
+
+    private List<String> findStreams() {
+        final SearchResponse response = client.prepareSearch(index)
+                .setSearchType(SearchType.COUNT)
+                .setQuery(QueryBuilders.matchAllQuery())
+                .addAggregation(AggregationBuilders.terms(AGG_STREAMS).field("streams").size(0))
+                .get();
+
+        final Terms terms = response.getAggregations().get(AGG_STREAMS);
+        final List<String> streams = Lists.newArrayListWithCapacity(terms.getBuckets().size());
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            streams.add(bucket.getKey());
+        }
+        return streams;
+    }
+
+    private Map<DateTime, RollupBucket> rollup(String stream, List<String> fields) {
+        final DateHistogramBuilder histogram = AggregationBuilders.dateHistogram(AGG_HISTOGRAM)
+                .field("timestamp")
+                .interval(DateHistogram.Interval.MINUTE);
+        for (int i = 0; i < fields.size(); i++) {
+            histogram.subAggregation(AggregationBuilders.stats(AGG_STATS_PREFIX + i).field(fields.get(i)));
+        }
+
+        final SearchRequestBuilder srb = client.prepareSearch(index)
+                .setSearchType(SearchType.COUNT)
+                .addAggregation(histogram);
+        if (Rollups.ALL_MESSAGES.equals(stream)) {
+            srb.setQuery(QueryBuilders.matchAllQuery());
+        } else {
+            srb.setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), FilterBuilders.termFilter("streams", stream)));
+        }
+
+        final DateHistogram result = srb.get().getAggregations().get(AGG_HISTOGRAM);
+        final Map<DateTime, RollupBucket> buckets = Maps.newHashMapWithExpectedSize(result.getBuckets().size());
+        for (DateHistogram.Bucket histogramBucket : result.getBuckets()) {
+            final RollupBucket bucket = new RollupBucket();
+            bucket.addCount(histogramBucket.getDocCount());
+            for (int i = 0; i < fields.size(); i++) {
+                final Stats stats = histogramBucket.getAggregations().get(AGG_STATS_PREFIX + i);
+                bucket.addFieldStats(fields.get(i), stats.getCount(), stats.getSum(), stats.getMin(), stats.getMax());
+            }
+            buckets.put(histogramBucket.getKeyAsDate().withZone(DateTimeZone.UTC), bucket);
+        }
+        return buckets;
+    }
+
+    private List<String> numericFields(List<String> fields) {
+        final List<String> numericFields = Lists.newArrayListWithCapacity(fields.size());
+        for (String field : fields) {
+            try {
+                client.prepareSearch(index)
+                        .setSearchType(SearchType.COUNT)
+                        .addAggregation(AggregationBuilders.stats(AGG_STATS_PREFIX + "0").field(field))
+                        .get();
+                numericFields.add(field);
+            } catch (SearchPhaseExecutionException e) {
+                LOG.warn("Field <{}> isn't numeric in index <{}>, not calculating its rollups.", field, index);
+            }
+        }
+        return numericFields;
+    }
+
+    @Override
+    public void requestCancel() {
+        this.cancelRequested = true;
+    }
+
+    @Override
+    public int getProgress() {
+        if (streamsTotal <= 0) {
+            return 0;
+        }
+        return (int) Math.floor((float) streamsDone / streamsTotal * 100);
+    }
+
+    @Override
+    public int maxConcurrency() {
+        // rollups aggregate complete indices, don't run several of them at once
+        return 1;
+    }
+
+    @Override
+    public boolean providesProgress() {
+        return true;
+    }
+
+    @Override
+    public boolean isCancelable() {
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Calculates the per-minute and per-hour rollups of an index.";
+    }
+
+    @Override
+    public String getClassName() {
+        return this.getClass().getCanonicalName();
+    }
+
+    @Override
+    public String getInfo() {
+        return "Calculating rollups of index " + index + ".";
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.rollups;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describes how an aggregation over a time range is split between the rollups and Elasticsearch.
+ * <p/>
+ * The whole rollup buckets between {@link #from()} (inclusive) and {@link #to()} (exclusive) of the
+ * {@link #rolledUpIndices() rolled up indices} are read from the rollups. Elasticsearch aggregates the
+ * {@link #otherIndices() other indices} over the complete {@link #range() time range} and the rolled up indices over
+ * the {@link #edges() partial buckets} at the start and the end of the time range.
+ */
+@AutoValue
+public abstract class RollupPlan {
+    public abstract String stream();
+
+    public abstract Rollups.Resolution resolution();
+
+    public abstract Set<String> rolledUpIndices();
+
+    public abstract Set<String> otherIndices();
+
+    public abstract DateTime from();
+
+    public abstract DateTime to();
+
+    public abstract AbsoluteRange range();
+
+    public List<AbsoluteRange> edges() {
+        final ImmutableList.Builder<AbsoluteRange> edges = ImmutableList.builder();
+        if (range().getFrom().isBefore(from())) {
+            edges.add(new AbsoluteRange(range().getFrom(), from().minusMillis(1)));
+        }
+        if (!to().isAfter(range().getTo())) {
+            edges.add(new AbsoluteRange(to(), range().getTo()));
+        }
+        return edges.build();
+    }
+
+    static RollupPlan create(String stream,
+                             Rollups.Resolution resolution,
+                             Set<String> rolledUpIndices,
+                             Set<String> otherIndices,
+                             DateTime from,
+                             DateTime to,
+                             AbsoluteRange range) {
+        return new AutoValue_RollupPlan(stream, resolution, ImmutableSet.copyOf(rolledUpIndices),
+                ImmutableSet.copyOf(otherIndices), from, to, range);
+    }
+}
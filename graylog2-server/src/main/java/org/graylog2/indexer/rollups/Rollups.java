@@ -0,0 +1,412 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.rollups;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import org.graylog2.Configuration;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.indexer.esplugin.IndicesDeletedEvent;
+import org.graylog2.indexer.searches.Searches.DateHistogramInterval;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores per-minute and per-hour rollups of the message counts and field statistics of rotated indices in MongoDB,
+ * for all messages and per stream, and decides which aggregations can be answered from them.
+ * <p/>
+ * The rollups are kept in MongoDB instead of Elasticsearch because every index with the configured index prefix is
+ * treated as a message index.
+ */
+@Singleton
+public class Rollups {
+    private static final Logger LOG = LoggerFactory.getLogger(Rollups.class);
+
+    static final String COLLECTION_NAME = "rollups";
+    static final String INDICES_COLLECTION_NAME = "rollup_indices";
+    static final String FAILURES_COLLECTION_NAME = "rollup_failures";
+
+    /**
+     * The stream key of the rollups of all messages.
+     */
+    public static final String ALL_MESSAGES = "*";
+
+    private static final String FIELD_INDEX = "index";
+    private static final String FIELD_STREAM = "stream";
+    private static final String FIELD_RESOLUTION = "resolution";
+    private static final String FIELD_TIMESTAMP = "timestamp";
+    private static final String FIELD_COUNT = "count";
+    private static final String FIELD_FIELDS = "fields";
+    private static final String FIELD_NAME = "name";
+    private static final String FIELD_SUM = "sum";
+    private static final String FIELD_MIN = "min";
+    private static final String FIELD_MAX = "max";
+    private static final String FIELD_CALCULATED_AT = "calculated_at";
+    private static final String FIELD_FAILURES = "failures";
+    private static final String FIELD_FAILED_AT = "failed_at";
+    private static final String FIELD_REASON = "reason";
+
+    private static final Pattern STREAM_FILTER = Pattern.compile("streams:([0-9a-fA-F]{24})");
+    private static final int BATCH_SIZE = 1000;
+    private static final long FAILURE_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5L);
+    private static final long MAX_FAILURE_BACKOFF_MILLIS = TimeUnit.DAYS.toMillis(1L);
+
+    public enum Resolution {
+        MINUTE, HOUR;
+
+        public DateTime floor(DateTime timestamp) {
+            final DateTime utc = timestamp.withZone(DateTimeZone.UTC);
+            return this == MINUTE ? utc.minuteOfHour().roundFloorCopy() : utc.hourOfDay().roundFloorCopy();
+        }
+
+        public DateTime ceiling(DateTime timestamp) {
+            final DateTime utc = timestamp.withZone(DateTimeZone.UTC);
+            return this == MINUTE ? utc.minuteOfHour().roundCeilingCopy() : utc.hourOfDay().roundCeilingCopy();
+        }
+
+        private String key() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private final boolean enabled;
+    private final Set<String> fields;
+    private final long minTimeRangeMillis;
+    private final DBCollection collection;
+    private final DBCollection indicesCollection;
+    private final DBCollection failuresCollection;
+    // rolled up index -> fields which have been rolled up, other nodes calculate rollups as well so refresh it now and then
+    private final Supplier<Map<String, Set<String>>> rolledUpIndices;
+
+    @Inject
+    public Rollups(Configuration configuration, MongoConnection mongoConnection, EventBus serverEventBus) {
+        this.enabled = configuration.isRollupsEnabled();
+        this.fields = ImmutableSet.copyOf(configuration.getRollupsFields());
+        this.minTimeRangeMillis = configuration.getRollupsMinTimeRange().toMilliseconds();
+        this.collection = mongoConnection.getDatabase().getCollection(COLLECTION_NAME);
+        this.indicesCollection = mongoConnection.getDatabase().getCollection(INDICES_COLLECTION_NAME);
+        this.failuresCollection = mongoConnection.getDatabase().getCollection(FAILURES_COLLECTION_NAME);
+        this.rolledUpIndices = Suppliers.memoizeWithExpiration(new Supplier<Map<String, Set<String>>>() {
+            @Override
+            public Map<String, Set<String>> get() {
+                return loadRolledUpIndices();
+            }
+        }, 1L, TimeUnit.MINUTES);
+
+        if (enabled) {
+            collection.createIndex(new BasicDBObject(FIELD_STREAM, 1)
+                    .append(FIELD_RESOLUTION, 1)
+                    .append(FIELD_TIMESTAMP, 1));
+            collection.createIndex(new BasicDBObject(FIELD_INDEX, 1));
+            serverEventBus.register(this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    public boolean isRolledUp(String index) {
+        return indicesCollection.count(new BasicDBObject("_id", index)) > 0L;
+    }
+
+    /**
+     * Records a failed calculation of the rollups of an index. The index is skipped for a back-off period which
+     * doubles with every consecutive failure, up to one day.
+     */
+    public void recordFailure(String index, Throwable cause) {
+        failuresCollection.update(new BasicDBObject("_id", index),
+                new BasicDBObject("$inc", new BasicDBObject(FIELD_FAILURES, 1))
+                        .append("$set", new BasicDBObject(FIELD_FAILED_AT, Tools.iso8601().toDate())
+                                .append(FIELD_REASON, String.valueOf(cause.getMessage()))),
+                true, false);
+    }
+
+    /**
+     * @return {@code true} if the last calculation of the rollups of the index failed and its back-off period hasn't
+     * expired yet
+     */
+    public boolean isBackingOff(String index) {
+        final DBObject failure = failuresCollection.findOne(new BasicDBObject("_id", index));
+        if (failure == null) {
+            return false;
+        }
+
+        final int failures = ((Number) failure.get(FIELD_FAILURES)).intValue();
+        final long backoffMillis = failureBackoffMillis(failures);
+        final DateTime failedAt = new DateTime(failure.get(FIELD_FAILED_AT), DateTimeZone.UTC);
+        return Tools.iso8601().isBefore(failedAt.plus(backoffMillis));
+    }
+
+    static long failureBackoffMillis(int failures) {
+        final int doublings = Math.max(0, Math.min(failures - 1, 16));
+        return Math.min(FAILURE_BACKOFF_MILLIS << doublings, MAX_FAILURE_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Decides whether an aggregation can be answered from the rollups. Only aggregations over all messages or the
+     * messages of a single stream, covering at least the configured minimum time range, are eligible.
+     *
+     * @param field the field whose statistics are aggregated, or {@code null} if only messages are counted
+     * @return the plan to answer the aggregation with, or {@code null} if Elasticsearch has to answer it alone
+     */
+    @Nullable
+    public RollupPlan plan(String query,
+                           @Nullable String filter,
+                           TimeRange range,
+                           DateHistogramInterval interval,
+                           Set<String> indices,
+                           @Nullable String field) {
+        if (!enabled || !isMatchAll(query) || (field != null && !fields.contains(field))) {
+            return null;
+        }
+
+        final String stream;
+        if (filter == null) {
+            stream = ALL_MESSAGES;
+        } else {
+            final Matcher matcher = STREAM_FILTER.matcher(filter.trim());
+            if (!matcher.matches()) {
+                return null;
+            }
+            stream = matcher.group(1);
+        }
+
+        final AbsoluteRange absoluteRange = new AbsoluteRange(range.getFrom(), range.getTo());
+        final DateTime from = absoluteRange.getFrom();
+        final DateTime to = absoluteRange.getTo();
+        if (to.getMillis() - from.getMillis() < minTimeRangeMillis) {
+            return null;
+        }
+
+        // the rollup buckets must not span several histogram buckets
+        final Resolution resolution = interval == DateHistogramInterval.MINUTE ? Resolution.MINUTE : Resolution.HOUR;
+        final DateTime alignedFrom = resolution.ceiling(from);
+        final DateTime alignedTo = resolution.floor(to.plusMillis(1));
+        if (!alignedFrom.isBefore(alignedTo)) {
+            return null;
+        }
+
+        final Map<String, Set<String>> rolledUp = rolledUpIndices.get();
+        final Set<String> rolledUpIndices = Sets.newHashSet();
+        final Set<String> otherIndices = Sets.newHashSet();
+        for (String index : indices) {
+            final Set<String> rolledUpFields = rolledUp.get(index);
+            if (rolledUpFields != null && (field == null || rolledUpFields.contains(field))) {
+                rolledUpIndices.add(index);
+            } else {
+                otherIndices.add(index);
+            }
+        }
+        if (rolledUpIndices.isEmpty()) {
+            return null;
+        }
+
+        return RollupPlan.create(stream, resolution, rolledUpIndices, otherIndices, alignedFrom, alignedTo, absoluteRange);
+    }
+
+    /**
+     * @return the sums of the rollup buckets of the rolled up indices of the plan, keyed by the bucket start
+     */
+    public SortedMap<DateTime, RollupBucket> find(RollupPlan plan) {
+        final DBObject query = new BasicDBObject(FIELD_INDEX, new BasicDBObject("$in", Lists.newArrayList(plan.rolledUpIndices())))
+                .append(FIELD_STREAM, plan.stream())
+                .append(FIELD_RESOLUTION, plan.resolution().key())
+                .append(FIELD_TIMESTAMP, new BasicDBObject("$gte", plan.from().toDate()).append("$lt", plan.to().toDate()));
+
+        final SortedMap<DateTime, RollupBucket> buckets = Maps.newTreeMap();
+        final DBCursor cursor = collection.find(query);
+        try {
+            for (DBObject document : cursor) {
+                final DateTime timestamp = new DateTime(document.get(FIELD_TIMESTAMP), DateTimeZone.UTC);
+                RollupBucket bucket = buckets.get(timestamp);
+                if (bucket == null) {
+                    bucket = new RollupBucket();
+                    buckets.put(timestamp, bucket);
+                }
+                bucket.merge(toBucket(document));
+            }
+        } finally {
+            cursor.close();
+        }
+        return buckets;
+    }
+
+    /**
+     * Stores the per-minute rollups of one stream of an index and the per-hour rollups derived from them.
+     */
+    public void save(String index, String stream, Map<DateTime, RollupBucket> minuteBuckets) {
+        final SortedMap<DateTime, RollupBucket> hourBuckets = Maps.newTreeMap();
+        for (Map.Entry<DateTime, RollupBucket> entry : minuteBuckets.entrySet()) {
+            final DateTime hour = Resolution.HOUR.floor(entry.getKey());
+            RollupBucket hourBucket = hourBuckets.get(hour);
+            if (hourBucket == null) {
+                hourBucket = new RollupBucket();
+                hourBuckets.put(hour, hourBucket);
+            }
+            hourBucket.merge(entry.getValue());
+        }
+
+        insert(index, stream, Resolution.MINUTE, minuteBuckets);
+        insert(index, stream, Resolution.HOUR, hourBuckets);
+    }
+
+    /**
+     * Marks the rollups of the index as complete. Only complete rollups are used to answer aggregations.
+     */
+    public void markRolledUp(String index, Collection<String> rolledUpFields) {
+        indicesCollection.save(new BasicDBObject("_id", index)
+                .append(FIELD_FIELDS, Lists.newArrayList(rolledUpFields))
+                .append(FIELD_CALCULATED_AT, Tools.iso8601().toDate()));
+        failuresCollection.remove(new BasicDBObject("_id", index));
+    }
+
+    public void delete(String index) {
+        indicesCollection.remove(new BasicDBObject("_id", index));
+        collection.remove(new BasicDBObject(FIELD_INDEX, index));
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handleIndexDeletion(IndicesDeletedEvent event) {
+        for (String index : event.indices()) {
+            try {
+                delete(index);
+                failuresCollection.remove(new BasicDBObject("_id", index));
+            } catch (MongoException e) {
+                LOG.warn("Couldn't delete rollups of index <" + index + ">.", e);
+            }
+        }
+    }
+
+    private void insert(String index, String stream, Resolution resolution, Map<DateTime, RollupBucket> buckets) {
+        final List<DBObject> documents = Lists.newArrayListWithCapacity(Math.min(buckets.size(), BATCH_SIZE));
+        for (Map.Entry<DateTime, RollupBucket> entry : buckets.entrySet()) {
+            documents.add(toDocument(index, stream, resolution, entry.getKey(), entry.getValue()));
+            if (documents.size() >= BATCH_SIZE) {
+                collection.insert(documents);
+                documents.clear();
+            }
+        }
+        if (!documents.isEmpty()) {
+            collection.insert(documents);
+        }
+    }
+
+    private Map<String, Set<String>> loadRolledUpIndices() {
+        final ImmutableMap.Builder<String, Set<String>> result = ImmutableMap.builder();
+        try {
+            final DBCursor cursor = indicesCollection.find();
+            try {
+                for (DBObject document : cursor) {
+                    final Object rolledUpFields = document.get(FIELD_FIELDS);
+                    final ImmutableSet.Builder<String> fieldNames = ImmutableSet.builder();
+                    if (rolledUpFields instanceof Collection) {
+                        for (Object fieldName : (Collection<?>) rolledUpFields) {
+                            fieldNames.add(String.valueOf(fieldName));
+                        }
+                    }
+                    result.put(String.valueOf(document.get("_id")), fieldNames.build());
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (MongoException e) {
+            LOG.warn("Couldn't load rolled up indices, answering all aggregations with Elasticsearch.", e);
+            return Collections.emptyMap();
+        }
+        return result.build();
+    }
+
+    private static boolean isMatchAll(String query) {
+        return query == null || query.trim().isEmpty() || "*".equals(query.trim());
+    }
+
+    private static DBObject toDocument(String index, String stream, Resolution resolution, DateTime timestamp, RollupBucket bucket) {
+        final List<DBObject> fieldStats = Lists.newArrayListWithCapacity(bucket.getFields().size());
+        // field names may contain dots, so they can't be used as keys
+        for (Map.Entry<String, RollupBucket.FieldStats> entry : bucket.getFields().entrySet()) {
+            final RollupBucket.FieldStats stats = entry.getValue();
+            fieldStats.add(new BasicDBObject(FIELD_NAME, entry.getKey())
+                    .append(FIELD_COUNT, stats.getCount())
+                    .append(FIELD_SUM, stats.getSum())
+                    .append(FIELD_MIN, stats.getMin())
+                    .append(FIELD_MAX, stats.getMax()));
+        }
+
+        return new BasicDBObject(FIELD_INDEX, index)
+                .append(FIELD_STREAM, stream)
+                .append(FIELD_RESOLUTION, resolution.key())
+                .append(FIELD_TIMESTAMP, timestamp.toDate())
+                .append(FIELD_COUNT, bucket.getCount())
+                .append(FIELD_FIELDS, fieldStats);
+    }
+
+    private static RollupBucket toBucket(DBObject document) {
+        final RollupBucket bucket = new RollupBucket();
+        bucket.addCount(((Number) document.get(FIELD_COUNT)).longValue());
+
+        final Object fieldStats = document.get(FIELD_FIELDS);
+        if (fieldStats instanceof Collection) {
+            for (Object o : (Collection<?>) fieldStats) {
+                final DBObject stats = (DBObject) o;
+                bucket.addFieldStats(String.valueOf(stats.get(FIELD_NAME)),
+                        ((Number) stats.get(FIELD_COUNT)).longValue(),
+                        ((Number) stats.get(FIELD_SUM)).doubleValue(),
+                        ((Number) stats.get(FIELD_MIN)).doubleValue(),
+                        ((Number) stats.get(FIELD_MAX)).doubleValue());
+            }
+        }
+        return bucket;
+    }
+}
@@ -35,8 +35,12 @@ public class MessageCountRotationStrategy implements RotationStrategy {
 
     @Inject
     public MessageCountRotationStrategy(ElasticsearchConfiguration configuration, Indices indices) {
+        this(configuration.getMaxDocsPerIndex(), indices);
+    }
+
+    public MessageCountRotationStrategy(int maxDocsPerIndex, Indices indices) {
         this.indices = indices;
-        maxDocsPerIndex = configuration.getMaxDocsPerIndex();
+        this.maxDocsPerIndex = maxDocsPerIndex;
     }
 
     @Override
@@ -35,8 +35,12 @@ public class SizeBasedRotationStrategy implements RotationStrategy {
 
     @Inject
     public SizeBasedRotationStrategy(ElasticsearchConfiguration configuration, Indices indices) {
+        this(configuration.getMaxSizePerIndex(), indices);
+    }
+
+    public SizeBasedRotationStrategy(long maxSize, Indices indices) {
         this.indices = indices;
-        maxSize = configuration.getMaxSizePerIndex();
+        this.maxSize = maxSize;
     }
 
     @Nullable
@@ -0,0 +1,63 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.searches;
+
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * The worker threads shared by all {@link org.graylog2.indexer.results.ParallelScrollResult parallel exports}, so
+ * concurrent exports don't start any number of threads. Idle threads are released after a minute.
+ */
+@Singleton
+public class SearchExportExecutor {
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private final ExecutorService executor;
+
+    @Inject
+    public SearchExportExecutor(@Named("search_export_threads") int threads, MetricRegistry metricRegistry) {
+        this.executor = executorService(threads, metricRegistry);
+    }
+
+    private ExecutorService executorService(int threads, MetricRegistry metricRegistry) {
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("search-export-%d")
+                .setDaemon(true)
+                .build();
+        final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return new InstrumentedExecutorService(threadPoolExecutor, metricRegistry, name(this.getClass(), "executor-service"));
+    }
+
+    public ExecutorService getExecutorService() {
+        return executor;
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.searches;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.graylog2.indexer.esplugin.IndicesDeletedEvent;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.indexer.ranges.IndexRangeUpdatedEvent;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.graylog2.shared.metrics.MetricUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Shares the results of identical aggregation queries (counts, terms, statistics and histograms) between callers.
+ * <p/>
+ * Concurrent requests for the same key are coalesced into a single Elasticsearch request. Results which include
+ * the index currently written to by the deflector of any index set are kept for {@code search_cache_ttl}, results over older indices
+ * are kept until the affected indices are deleted or their ranges are recalculated. Relative time ranges are aligned
+ * to {@code search_cache_ttl}, so results are at most that old.
+ */
+@Singleton
+public class SearchResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SearchResultCache.class);
+
+    private static final long IMMUTABLE_RESULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1L);
+    private static final long WRITE_INDICES_REFRESH_MILLIS = TimeUnit.SECONDS.toMillis(1L);
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final Cache<Key, Entry> cache;
+    // null if the write index of an index set is unknown
+    private final Supplier<Set<String>> writeIndices;
+    private final Meter hits;
+    private final Meter misses;
+
+    @Inject
+    public SearchResultCache(@Named("search_cache_enabled") boolean enabled,
+                             @Named("search_cache_max_size") int maximumSize,
+                             @Named("search_cache_ttl") Duration ttl,
+                             final IndexSetRegistry indexSetRegistry,
+                             MetricRegistry metricRegistry,
+                             EventBus serverEventBus) {
+        this.enabled = enabled;
+        this.ttlMillis = ttl.toMilliseconds();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(IMMUTABLE_RESULT_TTL_MILLIS, TimeUnit.MILLISECONDS)
+                .build();
+        this.writeIndices = Suppliers.memoizeWithExpiration(new Supplier<Set<String>>() {
+            @Override
+            public Set<String> get() {
+                final ImmutableSet.Builder<String> result = ImmutableSet.builder();
+                for (IndexSet indexSet : indexSetRegistry.getAll()) {
+                    final String writeIndex = indexSet.getDeflector().getCurrentActualTargetIndex();
+                    if (writeIndex == null) {
+                        return null;
+                    }
+                    result.add(writeIndex);
+                }
+                return result.build();
+            }
+        }, WRITE_INDICES_REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+
+        this.hits = metricRegistry.meter(name(SearchResultCache.class, "hits"));
+        this.misses = metricRegistry.meter(name(SearchResultCache.class, "misses"));
+        MetricUtils.safelyRegister(metricRegistry, name(SearchResultCache.class, "size"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cache.size();
+            }
+        });
+
+        if (enabled) {
+            serverEventBus.register(this);
+        }
+    }
+
+    /**
+     * Creates the cache key of a query.
+     *
+     * @param operation  the kind of query, e.g. {@code "count"}
+     * @param indices    the indices the query will run on
+     * @param parameters all other parameters which influence the result
+     */
+    public Key key(String operation, String query, @Nullable String filter, TimeRange range, Set<String> indices, Object... parameters) {
+        final Object alignedRange;
+        if (range instanceof AbsoluteRange) {
+            alignedRange = range;
+        } else {
+            // relative and keyword ranges move with the current time
+            alignedRange = ImmutableList.of(range, System.currentTimeMillis() / ttlMillis);
+        }
+        return new Key(operation, normalizeQuery(query), normalizeFilter(filter), alignedRange, indices, parameters);
+    }
+
+    /**
+     * Returns the cached result for the given key or loads it. Only one caller loads the result of a key at a time,
+     * all other callers wait for its result.
+     *
+     * @throws ExecutionException if the loader threw a checked exception, unchecked exceptions are rethrown as is
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Key key, final Callable<T> loader) throws ExecutionException {
+        if (!enabled) {
+            try {
+                return loader.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        final Entry cached = cache.getIfPresent(key);
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                hits.mark();
+                return (T) cached.result;
+            }
+            cache.asMap().remove(key, cached);
+        }
+
+        try {
+            return (T) cache.get(key, new Callable<Entry>() {
+                @Override
+                public Entry call() throws Exception {
+                    misses.mark();
+                    return new Entry(loader.call(), expiresAt(key));
+                }
+            }).result;
+        } catch (UncheckedExecutionException | ExecutionError e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private long expiresAt(Key key) {
+        final Set<String> currentWriteIndices = writeIndices.get();
+        final boolean mutable = currentWriteIndices == null || containsAny(key.indices, currentWriteIndices);
+        return System.currentTimeMillis() + (mutable ? ttlMillis : IMMUTABLE_RESULT_TTL_MILLIS);
+    }
+
+    private static boolean containsAny(Set<String> indices, Set<String> writeIndices) {
+        for (String writeIndex : writeIndices) {
+            if (indices.contains(writeIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void invalidate(Collection<String> indices) {
+        for (Key key : cache.asMap().keySet()) {
+            for (String index : indices) {
+                if (key.indices.contains(index)) {
+                    cache.invalidate(key);
+                    break;
+                }
+            }
+        }
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handleIndexDeletion(IndicesDeletedEvent event) {
+        LOG.debug("Invalidating cached search results of deleted indices {}", event.indices());
+        invalidate(event.indices());
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handleIndexRangeUpdate(IndexRangeUpdatedEvent event) {
+        LOG.debug("Invalidating cached search results of index {}", event.indexName());
+        invalidate(ImmutableList.of(event.indexName()));
+    }
+
+    private static String normalizeQuery(String query) {
+        return isNullOrEmpty(query) || query.trim().isEmpty() ? "*" : query.trim();
+    }
+
+    private static String normalizeFilter(String filter) {
+        // no filter and a "*" filter create the same request
+        return isNullOrEmpty(filter) || filter.trim().equals("*") ? null : filter.trim();
+    }
+
+    private static class Entry {
+        private final Object result;
+        private final long expiresAt;
+
+        private Entry(Object result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
+    public static class Key {
+        private final String operation;
+        private final String query;
+        private final String filter;
+        private final Object range;
+        private final Set<String> indices;
+        private final List<Object> parameters;
+        private final int hashCode;
+
+        private Key(String operation, String query, String filter, Object range, Set<String> indices, Object[] parameters) {
+            this.operation = operation;
+            this.query = query;
+            this.filter = filter;
+            this.range = range;
+            this.indices = ImmutableSortedSet.copyOf(indices);
+            this.parameters = Arrays.asList(parameters);
+            this.hashCode = Objects.hash(operation, query, filter, range, this.indices, this.parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && operation.equals(key.operation)
+                    && query.equals(key.query)
+                    && Objects.equals(filter, key.filter)
+                    && range.equals(key.range)
+                    && indices.equals(key.indices)
+                    && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return operation + "{query=" + query + ", filter=" + filter + ", range=" + range + ", indices=" + indices
+                    + ", parameters=" + parameters + "}";
+        }
+    }
+}
@@ -17,8 +17,12 @@
 package org.graylog2.indexer.searches;
 
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
@@ -46,21 +50,30 @@ import org.elasticsearch.search.aggregations.metrics.stats.extended.ExtendedStat
 import org.elasticsearch.search.aggregations.metrics.valuecount.ValueCount;
 import org.elasticsearch.search.sort.SortOrder;
 import org.graylog2.Configuration;
-import org.graylog2.indexer.Deflector;
 import org.graylog2.indexer.IndexHelper;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.ranges.IndexRange;
 import org.graylog2.indexer.ranges.IndexRangeService;
+import org.graylog2.indexer.results.CombinedHistogramResult;
 import org.graylog2.indexer.results.CountResult;
 import org.graylog2.indexer.results.DateHistogramResult;
 import org.graylog2.indexer.results.FieldHistogramResult;
 import org.graylog2.indexer.results.FieldStatsResult;
 import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.results.ParallelScrollResult;
 import org.graylog2.indexer.results.ScrollResult;
 import org.graylog2.indexer.results.SearchResult;
 import org.graylog2.indexer.results.TermsResult;
 import org.graylog2.indexer.results.TermsStatsResult;
+import org.graylog2.indexer.rollups.RollupBucket;
+import org.graylog2.indexer.rollups.RollupPlan;
+import org.graylog2.indexer.rollups.Rollups;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
 import org.graylog2.indexer.searches.timeranges.TimeRange;
 import org.graylog2.indexer.searches.timeranges.TimeRanges;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.Period;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,8 +82,12 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -126,6 +143,30 @@ public class Searches {
             return period;
         }
 
+        /**
+         * @return the start of the histogram bucket containing the given timestamp, buckets are aligned in UTC
+         */
+        public DateTime bucketStart(DateTime timestamp) {
+            final DateTime utc = timestamp.withZone(DateTimeZone.UTC);
+            switch (this) {
+                case YEAR:
+                    return utc.year().roundFloorCopy();
+                case QUARTER:
+                    final DateTime month = utc.monthOfYear().roundFloorCopy();
+                    return month.minusMonths((month.getMonthOfYear() - 1) % 3);
+                case MONTH:
+                    return utc.monthOfYear().roundFloorCopy();
+                case WEEK:
+                    return utc.weekOfWeekyear().roundFloorCopy();
+                case DAY:
+                    return utc.dayOfMonth().roundFloorCopy();
+                case HOUR:
+                    return utc.hourOfDay().roundFloorCopy();
+                default:
+                    return utc.minuteOfHour().roundFloorCopy();
+            }
+        }
+
         public DateHistogram.Interval toESInterval() {
             switch (this.name()) {
                 case "MINUTE":
@@ -148,36 +189,56 @@ public class Searches {
 
 
     private final Configuration configuration;
-    private final Deflector deflector;
+    private final IndexSetRegistry indexSetRegistry;
     private final IndexRangeService indexRangeService;
     private final Client c;
     private final MetricRegistry metricRegistry;
     private final Timer esRequestTimer;
     private final Histogram esTimeRangeHistogram;
+    private final SearchResultCache resultCache;
+    private final Rollups rollups;
+    private final SearchExportExecutor exportExecutor;
+    private final Meter rollupRequests;
 
     @Inject
     public Searches(Configuration configuration,
-                    Deflector deflector,
+                    IndexSetRegistry indexSetRegistry,
                     IndexRangeService indexRangeService,
                     Client client,
-                    MetricRegistry metricRegistry) {
+                    MetricRegistry metricRegistry,
+                    SearchResultCache resultCache,
+                    Rollups rollups,
+                    SearchExportExecutor exportExecutor) {
         this.configuration = checkNotNull(configuration);
-        this.deflector = checkNotNull(deflector);
+        this.indexSetRegistry = checkNotNull(indexSetRegistry);
         this.indexRangeService = checkNotNull(indexRangeService);
         this.c = checkNotNull(client);
         this.metricRegistry = checkNotNull(metricRegistry);
+        this.resultCache = checkNotNull(resultCache);
+        this.rollups = checkNotNull(rollups);
+        this.exportExecutor = checkNotNull(exportExecutor);
 
         this.esRequestTimer = metricRegistry.timer(name(Searches.class, "elasticsearch", "requests"));
         this.esTimeRangeHistogram = metricRegistry.histogram(name(Searches.class, "elasticsearch", "ranges"));
+        this.rollupRequests = metricRegistry.meter(name(Searches.class, "rollups", "requests"));
     }
 
     public CountResult count(String query, TimeRange range) {
         return count(query, range, null);
     }
 
-    public CountResult count(String query, TimeRange range, String filter) {
-        Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, deflector, range);
+    public CountResult count(final String query, final TimeRange range, final String filter) {
+        final Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, indexSetRegistry, range);
 
+        return cached(resultCache.key("count", query, filter, range, indices), new Callable<CountResult>() {
+            @Override
+            public CountResult call() {
+                return count(query, range, filter, indices);
+            }
+        });
+    }
+
+    private CountResult count(String query, TimeRange range, String filter, Set<String> indices) {
         SearchRequest request;
         if (filter == null) {
             request = standardSearchRequest(query, indices, range).request();
@@ -192,22 +253,28 @@ public class Searches {
     }
 
     public ScrollResult scroll(String query, TimeRange range, int limit, int offset, List<String> fields, String filter) {
-        final Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, deflector, range);
+        final Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, indexSetRegistry, range);
+        final int concurrency = configuration.getSearchExportConcurrency();
+
+        // an offset can't be applied to the slices independently
+        if (concurrency <= 1 || offset > 0 || indices.isEmpty()) {
+            return scroll(query, range, limit, offset, fields, filter, indices);
+        }
+
+        return parallelScroll(query, range, limit, fields, filter, indices, concurrency);
+    }
+
+    private ScrollResult scroll(String query, TimeRange range, int limit, int offset, List<String> fields, String filter, Set<String> indices) {
         final SearchRequestBuilder srb = standardSearchRequest(query, indices, limit, offset, range, filter, null, false);
 
         // only request the fields we asked for otherwise we can't figure out which fields will be in the result set
         // until we've scrolled through the entire set.
-        // TODO: Check if we can get away without loading the _source field.
-        // http://www.elasticsearch.org/guide/en/elasticsearch/reference/current/search-request-fields.html#search-request-fields
-        // "For backwards compatibility, if the fields parameter specifies fields which are not stored , it will
-        // load the _source and extract it from it. This functionality has been replaced by the source filtering
-        // parameter." -- So we should look at the source filtering parameter once we switched to ES 1.x.
-        srb.addFields(fields.toArray(new String[fields.size()]));
-        srb.addField("_source"); // always request the _source field because otherwise we can't access non-stored values
+        projectFields(srb, fields);
 
+        final TimeValue keepAlive = TimeValue.timeValueMillis(configuration.getSearchExportKeepAlive().toMilliseconds());
         final SearchRequest request = srb.setSearchType(SearchType.SCAN)
-                .setScroll(new TimeValue(1, TimeUnit.MINUTES))
-                .setSize(500).request(); // TODO magic numbers
+                .setScroll(keepAlive)
+                .setSize(configuration.getSearchExportPageSize()).request();
         if (LOG.isDebugEnabled()) {
             try {
                 LOG.debug("ElasticSearch scroll query: {}", XContentHelper.convertToJson(request.source(), false));
@@ -217,7 +284,59 @@ public class Searches {
         final SearchResponse r = c.search(request).actionGet();
         recordEsMetrics(r, range);
 
-        return new ScrollResult(c, query, request.source(), r, fields);
+        return new ScrollResult(c, query, request.source(), r, fields, keepAlive);
+    }
+
+    /**
+     * Splits the scroll into one slice per index. If there are fewer indices than workers, the time range is split
+     * into slices instead, so that a large export from a single index is parallelized as well.
+     */
+    private ScrollResult parallelScroll(final String query,
+                                        TimeRange range,
+                                        final int limit,
+                                        final List<String> fields,
+                                        final String filter,
+                                        final Set<String> indices,
+                                        int concurrency) {
+        final List<Callable<ScrollResult>> slices = Lists.newArrayList();
+        if (indices.size() >= concurrency) {
+            for (String index : indices) {
+                final Set<String> sliceIndices = Collections.singleton(index);
+                slices.add(scrollSlice(query, range, limit, fields, filter, sliceIndices));
+            }
+        } else {
+            final long from = range.getFrom().getMillis();
+            final long to = range.getTo().getMillis();
+            final long sliceLength = Math.max(1L, (to - from + 1L) / concurrency);
+            for (long sliceFrom = from; sliceFrom <= to; sliceFrom += sliceLength) {
+                // time ranges include both ends, make sure that the slices don't overlap
+                final long sliceTo = to - sliceFrom + 1L < 2 * sliceLength ? to : sliceFrom + sliceLength - 1L;
+                final TimeRange sliceRange = new AbsoluteRange(
+                        new DateTime(sliceFrom, DateTimeZone.UTC), new DateTime(sliceTo, DateTimeZone.UTC));
+                slices.add(scrollSlice(query, sliceRange, limit, fields, filter, indices));
+                if (sliceTo == to) {
+                    break;
+                }
+            }
+        }
+
+        final long totalHits = count(query, range, filter).getCount();
+        return new ParallelScrollResult(query, totalHits, fields, slices, concurrency,
+                exportExecutor.getExecutorService(), configuration.getSearchExportKeepAlive().toMilliseconds());
+    }
+
+    private Callable<ScrollResult> scrollSlice(final String query,
+                                               final TimeRange range,
+                                               final int limit,
+                                               final List<String> fields,
+                                               final String filter,
+                                               final Set<String> indices) {
+        return new Callable<ScrollResult>() {
+            @Override
+            public ScrollResult call() {
+                return scroll(query, range, limit, 0, fields, filter, indices);
+            }
+        };
     }
 
     public SearchResult search(String query, TimeRange range, int limit, int offset, Sorting sorting) {
@@ -239,7 +358,7 @@ public class Searches {
 
     public SearchResult search(SearchesConfig config) {
         Set<IndexRange> indices = IndexHelper.determineAffectedIndicesWithRanges(indexRangeService,
-                                                                                 deflector,
+                                                                                 indexSetRegistry,
                                                                                  config.range());
 
         Set<String> indexNames = Sets.newHashSet();
@@ -255,16 +374,24 @@ public class Searches {
         return new SearchResult(r.getHits(), indices, config.query(), request.source(), r.getTook());
     }
 
-    public TermsResult terms(String field, int size, String query, String filter, TimeRange range) {
-        if (size == 0) {
-            size = 50;
-        }
+    public TermsResult terms(final String field, int size, final String query, final String filter, final TimeRange range) {
+        final int termsSize = size == 0 ? 50 : size;
+        final Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, indexSetRegistry, range);
+
+        return cached(resultCache.key("terms", query, filter, range, indices, field, termsSize), new Callable<TermsResult>() {
+            @Override
+            public TermsResult call() {
+                return terms(field, termsSize, query, filter, range, indices);
+            }
+        });
+    }
 
+    private TermsResult terms(String field, int size, String query, String filter, TimeRange range, Set<String> indices) {
         SearchRequestBuilder srb;
         if (filter == null) {
-            srb = standardSearchRequest(query, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = standardSearchRequest(query, indices, range);
         } else {
-            srb = filteredSearchRequest(query, filter, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = filteredSearchRequest(query, filter, indices, range);
         }
 
         FilterAggregationBuilder builder = AggregationBuilders.filter(AGG_FILTER)
@@ -298,16 +425,24 @@ public class Searches {
         return terms(field, size, query, null, range);
     }
 
-    public TermsStatsResult termsStats(String keyField, String valueField, TermsStatsOrder order, int size, String query, String filter, TimeRange range) {
-        if (size == 0) {
-            size = 50;
-        }
+    public TermsStatsResult termsStats(final String keyField, final String valueField, final TermsStatsOrder order, int size, final String query, final String filter, final TimeRange range) {
+        final int termsSize = size == 0 ? 50 : size;
+        final Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, indexSetRegistry, range);
 
+        return cached(resultCache.key("terms_stats", query, filter, range, indices, keyField, valueField, order, termsSize), new Callable<TermsStatsResult>() {
+            @Override
+            public TermsStatsResult call() {
+                return termsStats(keyField, valueField, order, termsSize, query, filter, range, indices);
+            }
+        });
+    }
+
+    private TermsStatsResult termsStats(String keyField, String valueField, TermsStatsOrder order, int size, String query, String filter, TimeRange range, Set<String> indices) {
         SearchRequestBuilder srb;
         if (filter == null) {
-            srb = standardSearchRequest(query, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = standardSearchRequest(query, indices, range);
         } else {
-            srb = filteredSearchRequest(query, filter, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = filteredSearchRequest(query, filter, indices, range);
         }
 
 
@@ -390,20 +525,41 @@ public class Searches {
         return fieldStats(field, query, filter, range, true, true, true);
     }
 
-    public FieldStatsResult fieldStats(String field,
-                                       String query,
-                                       String filter,
-                                       TimeRange range,
-                                       boolean includeCardinality,
-                                       boolean includeStats,
-                                       boolean includeCount)
+    public FieldStatsResult fieldStats(final String field,
+                                       final String query,
+                                       final String filter,
+                                       final TimeRange range,
+                                       final boolean includeCardinality,
+                                       final boolean includeStats,
+                                       final boolean includeCount)
+            throws FieldTypeException {
+        final Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, indexSetRegistry, range);
+        final SearchResultCache.Key key = resultCache.key("field_stats", query, filter, range, indices,
+                field, includeCardinality, includeStats, includeCount);
+
+        return cachedFieldQuery(key, new Callable<FieldStatsResult>() {
+            @Override
+            public FieldStatsResult call() throws FieldTypeException {
+                return fieldStats(field, query, filter, range, includeCardinality, includeStats, includeCount, indices);
+            }
+        });
+    }
+
+    private FieldStatsResult fieldStats(String field,
+                                        String query,
+                                        String filter,
+                                        TimeRange range,
+                                        boolean includeCardinality,
+                                        boolean includeStats,
+                                        boolean includeCount,
+                                        Set<String> indices)
             throws FieldTypeException {
         SearchRequestBuilder srb;
 
         if (filter == null) {
-            srb = standardSearchRequest(query, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = standardSearchRequest(query, indices, range);
         } else {
-            srb = filteredSearchRequest(query, filter, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = filteredSearchRequest(query, filter, indices, range);
         }
 
         FilterAggregationBuilder builder = AggregationBuilders.filter(AGG_FILTER)
@@ -446,7 +602,22 @@ public class Searches {
         return histogram(query, interval, null, range);
     }
 
-    public HistogramResult histogram(String query, DateHistogramInterval interval, String filter, TimeRange range) {
+    public HistogramResult histogram(final String query, final DateHistogramInterval interval, final String filter, final TimeRange range) {
+        final Set<String> affectedIndices = IndexHelper.determineAffectedIndices(indexRangeService, indexSetRegistry, range);
+
+        return cached(resultCache.key("histogram", query, filter, range, affectedIndices, interval), new Callable<HistogramResult>() {
+            @Override
+            public HistogramResult call() {
+                final RollupPlan plan = rollups.plan(query, filter, range, interval, affectedIndices, null);
+                if (plan != null) {
+                    return rollupHistogram(query, interval, filter, plan);
+                }
+                return histogram(query, interval, filter, range, affectedIndices);
+            }
+        });
+    }
+
+    private DateHistogramResult histogram(String query, DateHistogramInterval interval, String filter, TimeRange range, Set<String> affectedIndices) {
         FilterAggregationBuilder builder = AggregationBuilders.filter(AGG_FILTER)
                 .subAggregation(
                         AggregationBuilders.dateHistogram(AGG_HISTOGRAM)
@@ -458,7 +629,6 @@ public class Searches {
         qs.allowLeadingWildcard(configuration.isAllowLeadingWildcardSearches());
 
         SearchRequestBuilder srb = c.prepareSearch();
-        final Set<String> affectedIndices = IndexHelper.determineAffectedIndices(indexRangeService, deflector, range);
         srb.setIndices(affectedIndices.toArray(new String[affectedIndices.size()]));
         srb.setQuery(qs);
         srb.addAggregation(builder);
@@ -476,12 +646,36 @@ public class Searches {
                 r.getTook());
     }
 
-    public HistogramResult fieldHistogram(String query,
-                                          String field,
-                                          DateHistogramInterval interval,
-                                          String filter,
-                                          TimeRange range,
-                                          boolean includeCardinality) throws FieldTypeException {
+    public HistogramResult fieldHistogram(final String query,
+                                          final String field,
+                                          final DateHistogramInterval interval,
+                                          final String filter,
+                                          final TimeRange range,
+                                          final boolean includeCardinality) throws FieldTypeException {
+        final Set<String> affectedIndices = IndexHelper.determineAffectedIndices(indexRangeService, indexSetRegistry, range);
+        final SearchResultCache.Key key = resultCache.key("field_histogram", query, filter, range, affectedIndices,
+                field, interval, includeCardinality);
+
+        return cachedFieldQuery(key, new Callable<HistogramResult>() {
+            @Override
+            public HistogramResult call() throws FieldTypeException {
+                // the cardinality can't be calculated from the rollups
+                final RollupPlan plan = includeCardinality ? null : rollups.plan(query, filter, range, interval, affectedIndices, field);
+                if (plan != null) {
+                    return rollupFieldHistogram(query, field, interval, filter, plan);
+                }
+                return fieldHistogram(query, field, interval, filter, range, includeCardinality, affectedIndices);
+            }
+        });
+    }
+
+    private FieldHistogramResult fieldHistogram(String query,
+                                                String field,
+                                                DateHistogramInterval interval,
+                                                String filter,
+                                                TimeRange range,
+                                                boolean includeCardinality,
+                                                Set<String> affectedIndices) throws FieldTypeException {
         final DateHistogramBuilder dateHistogramBuilder = AggregationBuilders.dateHistogram(AGG_HISTOGRAM)
                 .field("timestamp")
                 .subAggregation(AggregationBuilders.stats(AGG_STATS).field(field))
@@ -499,7 +693,6 @@ public class Searches {
         qs.allowLeadingWildcard(configuration.isAllowLeadingWildcardSearches());
 
         SearchRequestBuilder srb = c.prepareSearch();
-        final Set<String> affectedIndices = IndexHelper.determineAffectedIndices(indexRangeService, deflector, range);
         srb.setIndices(affectedIndices.toArray(new String[affectedIndices.size()]));
         srb.setQuery(qs);
         srb.addAggregation(builder);
@@ -522,6 +715,144 @@ public class Searches {
                 r.getTook());
     }
 
+    /**
+     * Answers a histogram from the whole rollup buckets of the rolled up indices. Elasticsearch only aggregates the
+     * other indices and the partial rollup buckets at the edges of the time range.
+     */
+    private HistogramResult rollupHistogram(String query, DateHistogramInterval interval, String filter, RollupPlan plan) {
+        rollupRequests.mark();
+
+        final Map<Long, Long> results = Maps.newTreeMap();
+        for (Map.Entry<DateTime, RollupBucket> bucket : rollups.find(plan).entrySet()) {
+            addCount(results, histogramKey(interval, bucket.getKey()), bucket.getValue().getCount());
+        }
+
+        final List<DateHistogramResult> partials = Lists.newArrayList();
+        if (!plan.otherIndices().isEmpty()) {
+            partials.add(histogram(query, interval, filter, plan.range(), plan.otherIndices()));
+        }
+        for (AbsoluteRange edge : plan.edges()) {
+            partials.add(histogram(query, interval, filter, edge, plan.rolledUpIndices()));
+        }
+
+        long tookMs = 0L;
+        for (DateHistogramResult partial : partials) {
+            for (Map.Entry<Long, Long> bucket : partial.getResults().entrySet()) {
+                addCount(results, bucket.getKey(), bucket.getValue());
+            }
+            tookMs += partial.took().millis();
+        }
+
+        final String builtQuery = partials.isEmpty() ? "{}" : partials.get(0).getBuiltQuery();
+        return new CombinedHistogramResult(results, query, builtQuery, interval, plan.range(), TimeValue.timeValueMillis(tookMs));
+    }
+
+    /**
+     * Like {@link #rollupHistogram(String, DateHistogramInterval, String, RollupPlan)} for the statistics of a field.
+     */
+    private HistogramResult rollupFieldHistogram(String query,
+                                                 String field,
+                                                 DateHistogramInterval interval,
+                                                 String filter,
+                                                 RollupPlan plan) throws FieldTypeException {
+        rollupRequests.mark();
+
+        final Map<Long, RollupBucket> buckets = Maps.newTreeMap();
+        for (Map.Entry<DateTime, RollupBucket> bucket : rollups.find(plan).entrySet()) {
+            histogramBucket(buckets, histogramKey(interval, bucket.getKey())).merge(bucket.getValue());
+        }
+
+        final List<FieldHistogramResult> partials = Lists.newArrayList();
+        if (!plan.otherIndices().isEmpty()) {
+            partials.add(fieldHistogram(query, field, interval, filter, plan.range(), false, plan.otherIndices()));
+        }
+        for (AbsoluteRange edge : plan.edges()) {
+            partials.add(fieldHistogram(query, field, interval, filter, edge, false, plan.rolledUpIndices()));
+        }
+
+        long tookMs = 0L;
+        for (FieldHistogramResult partial : partials) {
+            for (Map.Entry<Long, Map<String, Number>> entry : partial.getResults().entrySet()) {
+                final Map<String, Number> stats = entry.getValue();
+                final long totalCount = stats.get("total_count").longValue();
+                if (totalCount == 0L) {
+                    // empty buckets which have been synthesized to fill gaps
+                    continue;
+                }
+
+                final RollupBucket bucket = histogramBucket(buckets, entry.getKey());
+                bucket.addCount(totalCount);
+                bucket.addFieldStats(field,
+                        stats.get("count").longValue(),
+                        stats.get("total").doubleValue(),
+                        stats.get("min").doubleValue(),
+                        stats.get("max").doubleValue());
+            }
+            tookMs += partial.took().millis();
+        }
+
+        final Map<Long, Map<String, Number>> results = Maps.newTreeMap();
+        for (Map.Entry<Long, RollupBucket> entry : buckets.entrySet()) {
+            final RollupBucket bucket = entry.getValue();
+            final RollupBucket.FieldStats stats = bucket.getFields().get(field);
+            if (stats == null) {
+                // buckets without any values of the field have no statistics, don't report infinite minima and maxima
+                continue;
+            }
+            results.put(entry.getKey(), ImmutableMap.<String, Number>builder()
+                    .put("total_count", bucket.getCount())
+                    .put("count", stats.getCount())
+                    .put("min", stats.getMin())
+                    .put("max", stats.getMax())
+                    .put("total", stats.getSum())
+                    .put("mean", stats.getMean())
+                    .put("cardinality", 0)
+                    .build());
+        }
+
+        final String builtQuery = partials.isEmpty() ? "{}" : partials.get(0).getBuiltQuery();
+        return new CombinedHistogramResult(results, query, builtQuery, interval, plan.range(), TimeValue.timeValueMillis(tookMs));
+    }
+
+    private static long histogramKey(DateHistogramInterval interval, DateTime timestamp) {
+        // histogram results are keyed by the bucket start in seconds
+        return interval.bucketStart(timestamp).getMillis() / 1000L;
+    }
+
+    private static void addCount(Map<Long, Long> results, long key, long count) {
+        final Long current = results.get(key);
+        results.put(key, current == null ? count : current + count);
+    }
+
+    private static RollupBucket histogramBucket(Map<Long, RollupBucket> buckets, long key) {
+        RollupBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new RollupBucket();
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    private <T> T cached(SearchResultCache.Key key, Callable<T> loader) {
+        try {
+            return resultCache.get(key, loader);
+        } catch (ExecutionException e) {
+            // the loaders don't throw any checked exceptions
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private <T> T cachedFieldQuery(SearchResultCache.Key key, Callable<T> loader) throws FieldTypeException {
+        try {
+            return resultCache.get(key, loader);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FieldTypeException) {
+                throw (FieldTypeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     private SearchRequestBuilder searchRequest(SearchesConfig config, Set<String> indices) {
         final SearchRequestBuilder request;
 
@@ -532,17 +863,23 @@ public class Searches {
         }
 
         if (config.fields() != null) {
-            // http://www.elasticsearch.org/guide/en/elasticsearch/reference/current/search-request-fields.html#search-request-fields
-            // "For backwards compatibility, if the fields parameter specifies fields which are not stored , it will
-            // load the _source and extract it from it. This functionality has been replaced by the source filtering
-            // parameter."
-            // TODO: Look at the source filtering parameter once we switched to ES 1.x.
-            request.addFields(config.fields().toArray(new String[config.fields().size()]));
+            projectFields(request, config.fields());
         }
 
         return request;
     }
 
+    /**
+     * Restricts the returned documents to the given fields using source filtering, so that Elasticsearch neither
+     * loads stored fields nor ships the complete {@code _source} of every hit. The message ID is always included
+     * because it is needed to link to the full message.
+     */
+    private void projectFields(SearchRequestBuilder request, List<String> fields) {
+        final Set<String> includes = Sets.newLinkedHashSet(fields);
+        includes.add(Message.FIELD_ID);
+        request.setFetchSource(includes.toArray(new String[includes.size()]), null);
+    }
+
     private SearchRequestBuilder standardSearchRequest(String query, Set<String> indices) {
         return standardSearchRequest(query, indices, 0, 0, null, null);
     }
@@ -19,9 +19,8 @@ package org.graylog2.initializers;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.util.concurrent.AbstractIdleService;
 import org.graylog2.Configuration;
-import org.graylog2.database.MongoConnection;
+import org.graylog2.metrics.MetricsHistoryStore;
 import org.graylog2.metrics.MongoDbMetricsReporter;
-import org.graylog2.plugin.ServerStatus;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -34,26 +33,23 @@ import java.util.concurrent.TimeUnit;
 public class MetricsReporterService extends AbstractIdleService {
     private final Configuration configuration;
     private final MetricRegistry metricRegistry;
-    private final MongoConnection mongoConnection;
-    private final ServerStatus serverStatus;
+    private final MetricsHistoryStore historyStore;
     private MongoDbMetricsReporter metricsReporter = null;
 
     @Inject
     public MetricsReporterService(Configuration configuration,
                                   MetricRegistry metricRegistry,
-                                  MongoConnection mongoConnection,
-                                  ServerStatus serverStatus) {
+                                  MetricsHistoryStore historyStore) {
         this.configuration = configuration;
         this.metricRegistry = metricRegistry;
-        this.mongoConnection = mongoConnection;
-        this.serverStatus = serverStatus;
+        this.historyStore = historyStore;
     }
 
     @Override
     protected void startUp() throws Exception {
         if (!configuration.isMetricsCollectionEnabled())
             return;
-        metricsReporter = MongoDbMetricsReporter.forRegistry(metricRegistry, mongoConnection, serverStatus).build();
+        metricsReporter = MongoDbMetricsReporter.forRegistry(metricRegistry, historyStore).build();
         metricsReporter.start(1, TimeUnit.SECONDS);
     }
 
@@ -20,6 +20,7 @@ import com.codahale.metrics.InstrumentedExecutorService;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog2.buffers.OutputFanout;
 import org.graylog2.outputs.OutputRegistry;
 import org.graylog2.plugin.outputs.MessageOutput;
 import org.slf4j.Logger;
@@ -38,12 +39,15 @@ public class OutputSetupService extends AbstractIdleService {
     private static final Logger LOG = LoggerFactory.getLogger(OutputSetupService.class);
 
     private final OutputRegistry outputRegistry;
+    private final OutputFanout outputFanout;
 
     @Inject
     public OutputSetupService(final OutputRegistry outputRegistry,
+                              final OutputFanout outputFanout,
                               final BufferSynchronizerService bufferSynchronizerService,
                               final MetricRegistry metricRegistry) {
         this.outputRegistry = outputRegistry;
+        this.outputFanout = outputFanout;
 
         // Shutdown after the BufferSynchronizerService has stopped to avoid shutting down outputs too early.
         bufferSynchronizerService.addListener(new Listener() {
@@ -63,6 +67,9 @@ public class OutputSetupService extends AbstractIdleService {
     }
 
     private void shutDownRunningOutputs() {
+        // drain the stream output queues before their outputs are stopped
+        outputFanout.stop();
+
         for (MessageOutput output : outputRegistry.getMessageOutputs()) {
             try {
                 // TODO: change to debug
@@ -0,0 +1,59 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.metrics;
+
+import com.google.common.collect.Lists;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The recorded values of a single metric, ordered by time. The values of each point are in the order of
+ * {@link MetricType#getFields()}.
+ */
+public class MetricHistory {
+    private MetricType type;
+    private final List<Long> timestamps = Lists.newArrayList();
+    private final List<double[]> values = Lists.newArrayList();
+
+    void add(MetricType type, long timestamp, double[] values) {
+        if (this.type == null) {
+            this.type = type;
+        } else if (this.type != type) {
+            // the metric has been registered with a different type, don't mix them
+            return;
+        }
+        this.timestamps.add(timestamp);
+        this.values.add(values);
+    }
+
+    /**
+     * @return the type of the metric or {@code null} if there are no values
+     */
+    @Nullable
+    public MetricType getType() {
+        return type;
+    }
+
+    public List<Long> getTimestamps() {
+        return timestamps;
+    }
+
+    public List<double[]> getValues() {
+        return values;
+    }
+}
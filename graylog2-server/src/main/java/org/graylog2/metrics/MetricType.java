@@ -0,0 +1,95 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.metrics;
+
+import java.util.Locale;
+
+/**
+ * The metric types recorded in the metrics history and the values stored for each of them. Durations are stored in
+ * milliseconds, rates in events per second.
+ */
+public enum MetricType {
+    GAUGE("value"),
+    COUNTER("count"),
+    HISTOGRAM("count", "75-percentile", "95-percentile", "98-percentile", "99-percentile", "999-percentile",
+            "max", "min", "mean", "median", "std_dev"),
+    METER("count", "1-minute-rate", "5-minute-rate", "15-minute-rate", "mean-rate"),
+    TIMER("count", "1-minute-rate", "5-minute-rate", "15-minute-rate", "mean-rate",
+            "75-percentile", "95-percentile", "98-percentile", "99-percentile", "999-percentile",
+            "max", "min", "mean", "median", "stddev");
+
+    /**
+     * How the values of a field are aggregated when they are downsampled.
+     */
+    public enum Aggregation {
+        /**
+         * Keep the last value, for cumulative values like counts.
+         */
+        LAST,
+        MIN,
+        MAX,
+        /**
+         * Average the values. Averaged percentiles and standard deviations are only approximations of the values over
+         * the whole interval, the underlying reservoirs can't be merged.
+         */
+        AVERAGE
+    }
+
+    private static final String COUNT = "count";
+    private static final String MIN = "min";
+    private static final String MAX = "max";
+
+    private final String[] fields;
+
+    MetricType(String... fields) {
+        this.fields = fields;
+    }
+
+    public String[] getFields() {
+        return fields;
+    }
+
+    /**
+     * Cumulative fields keep their last value when they are downsampled.
+     */
+    public boolean isCumulative(int field) {
+        return COUNT.equals(fields[field]);
+    }
+
+    public Aggregation getAggregation(int field) {
+        if (isCumulative(field)) {
+            return Aggregation.LAST;
+        }
+        switch (fields[field]) {
+            case MIN:
+                return Aggregation.MIN;
+            case MAX:
+                return Aggregation.MAX;
+            default:
+                return Aggregation.AVERAGE;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+
+    public static MetricType fromString(String type) {
+        return valueOf(type.toUpperCase(Locale.ENGLISH));
+    }
+}
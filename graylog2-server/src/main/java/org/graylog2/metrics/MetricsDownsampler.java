@@ -0,0 +1,109 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.metrics;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Aggregates consecutive samples into one sample per fixed time bucket. Each value is aggregated as defined by
+ * {@link MetricType#getAggregation(int)}: cumulative values keep the last value of the bucket, minimums and maximums
+ * keep the smallest and largest value, all other values are averaged. Averaged percentiles are approximations. Not
+ * thread safe.
+ */
+class MetricsDownsampler {
+    private final long stepMillis;
+
+    private long bucketStart = -1;
+    private final Map<String, MetricType> types = Maps.newLinkedHashMap();
+    private final Map<String, double[]> aggregates = Maps.newHashMap();
+    private final Map<String, int[]> counts = Maps.newHashMap();
+
+    MetricsDownsampler(long stepMillis) {
+        this.stepMillis = stepMillis;
+    }
+
+    /**
+     * @return the aggregated sample of the previous bucket if {@code sample} starts a new one, {@code null} otherwise
+     */
+    MetricsSample add(MetricsSample sample) {
+        final long bucket = sample.getTimestamp() - sample.getTimestamp() % stepMillis;
+        final MetricsSample completed = bucket != bucketStart ? complete() : null;
+        bucketStart = bucket;
+
+        for (String name : sample.getNames()) {
+            final MetricType type = sample.getType(name);
+            final double[] values = sample.getValues(name);
+
+            double[] aggregate = aggregates.get(name);
+            if (aggregate == null || types.get(name) != type) {
+                types.put(name, type);
+                aggregates.put(name, values.clone());
+                counts.put(name, new int[]{1});
+                continue;
+            }
+            for (int i = 0; i < values.length; i++) {
+                aggregate[i] = aggregate(type.getAggregation(i), aggregate[i], values[i]);
+            }
+            counts.get(name)[0]++;
+        }
+
+        return completed;
+    }
+
+    /**
+     * @return the aggregated sample of the current bucket or {@code null} if nothing has been added since the last call
+     */
+    MetricsSample complete() {
+        if (types.isEmpty()) {
+            return null;
+        }
+
+        final MetricsSample aggregated = new MetricsSample(bucketStart);
+        for (Map.Entry<String, MetricType> entry : types.entrySet()) {
+            final MetricType type = entry.getValue();
+            final double[] aggregate = aggregates.get(entry.getKey());
+            final int count = counts.get(entry.getKey())[0];
+
+            final double[] values = new double[aggregate.length];
+            for (int i = 0; i < aggregate.length; i++) {
+                values[i] = type.getAggregation(i) == MetricType.Aggregation.AVERAGE ? aggregate[i] / count : aggregate[i];
+            }
+            aggregated.add(entry.getKey(), type, values);
+        }
+
+        types.clear();
+        aggregates.clear();
+        counts.clear();
+        return aggregated;
+    }
+
+    private static double aggregate(MetricType.Aggregation aggregation, double aggregate, double value) {
+        switch (aggregation) {
+            case LAST:
+                return value;
+            case MIN:
+                return Math.min(aggregate, value);
+            case MAX:
+                return Math.max(aggregate, value);
+            default:
+                // the sum, divided by the number of values when the bucket is complete
+                return aggregate + value;
+        }
+    }
+}
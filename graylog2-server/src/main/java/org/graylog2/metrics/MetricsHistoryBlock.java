@@ -0,0 +1,364 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.metrics;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The downsampled values of all metrics of one node for one block of time, e.g. the 1-minute values of one hour.
+ * <p/>
+ * A block is stored as one MongoDB document per {@link #METRICS_PER_DOCUMENT} metrics, so the documents of nodes with
+ * many metrics stay well below the document size limit of MongoDB: a metric takes at most about 12 KB per block, 60
+ * points with 20 values of up to 10 bytes. The metric names and types are stored once per document, the values of each metric field are stored as a
+ * time series of zig-zag encoded variable length deltas in one packed binary field.
+ * Since the values of consecutive points mostly differ by little, most deltas take one or two bytes. The points in
+ * which a metric has values are stored as runs in front of its values.
+ * <p/>
+ * Values are stored as fixed point numbers with {@link #SCALE} decimal places. Points in which a metric is missing,
+ * e.g. while the node was down, stay missing and are skipped by {@link #collect(String, long, MetricHistory)}. Not
+ * thread safe.
+ */
+class MetricsHistoryBlock {
+    static final String FIELD_NODE = "node";
+    static final String FIELD_RESOLUTION = "resolution";
+    static final String FIELD_START = "start";
+    static final String FIELD_STEP = "step_millis";
+    static final String FIELD_POINTS = "points";
+    static final String FIELD_NAMES = "names";
+    static final String FIELD_TYPES = "types";
+    static final String FIELD_DATA = "data";
+    static final String FIELD_EXPIRE_AT = "expire_at";
+    static final String FIELD_CHUNK = "chunk";
+
+    static final int METRICS_PER_DOCUMENT = 500;
+
+    // three decimal places
+    private static final double SCALE = 1000d;
+
+    private final String nodeId;
+    private final MetricsHistoryStore.Resolution resolution;
+    private final long start;
+    private final Map<String, Series> series = Maps.newLinkedHashMap();
+    private int points = 0;
+
+    MetricsHistoryBlock(String nodeId, MetricsHistoryStore.Resolution resolution, long start) {
+        this.nodeId = nodeId;
+        this.resolution = resolution;
+        this.start = start;
+    }
+
+    static String id(String nodeId, MetricsHistoryStore.Resolution resolution, long start) {
+        return String.format(Locale.ENGLISH, "%s:%s:%d", nodeId, resolution, start);
+    }
+
+    String getId() {
+        return id(nodeId, resolution, start);
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    int getPoints() {
+        return points;
+    }
+
+    boolean covers(long timestamp) {
+        return timestamp >= start && timestamp < start + resolution.getBlockMillis();
+    }
+
+    /**
+     * Appends a point to the block. Points which are older than the last point of the block are ignored.
+     */
+    void append(MetricsSample point) {
+        if (!covers(point.getTimestamp())) {
+            throw new IllegalArgumentException("Point at " + point.getTimestamp() + " is not part of block " + getId());
+        }
+        final int index = (int) ((point.getTimestamp() - start) / resolution.getStepMillis());
+        if (index < points) {
+            return;
+        }
+
+        for (String name : point.getNames()) {
+            final MetricType type = point.getType(name);
+            final double[] values = point.getValues(name);
+
+            Series metric = series.get(name);
+            if (metric == null) {
+                metric = new Series(type, index);
+                series.put(name, metric);
+            } else if (metric.type != type) {
+                continue;
+            }
+
+            final long[] scaled = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                scaled[i] = toFixedPoint(values[i]);
+            }
+            metric.set(index, scaled);
+        }
+        points = index + 1;
+    }
+
+    /**
+     * Adds the points of the given metric which are newer than {@code after} to the history.
+     */
+    void collect(String name, long after, MetricHistory history) {
+        final Series metric = series.get(name);
+        if (metric == null) {
+            return;
+        }
+        for (int index = metric.firstPoint; index < points; index++) {
+            final long timestamp = start + index * resolution.getStepMillis();
+            if (timestamp <= after) {
+                continue;
+            }
+            final long[] scaled = metric.get(index);
+            if (scaled == null) {
+                continue;
+            }
+            final double[] values = new double[scaled.length];
+            for (int i = 0; i < scaled.length; i++) {
+                values[i] = scaled[i] / SCALE;
+            }
+            history.add(metric.type, timestamp, values);
+        }
+    }
+
+    /**
+     * @return the documents of this block, the metrics are split into chunks in the order they have been added
+     */
+    List<DBObject> toDBObjects() {
+        final List<DBObject> documents = Lists.newArrayList();
+        final List<Map.Entry<String, Series>> entries = Lists.newArrayList(series.entrySet());
+        for (List<Map.Entry<String, Series>> chunk : Lists.partition(entries, METRICS_PER_DOCUMENT)) {
+            documents.add(toDBObject(documents.size(), chunk));
+        }
+        return documents;
+    }
+
+    private DBObject toDBObject(int chunk, List<Map.Entry<String, Series>> entries) {
+        final List<String> names = Lists.newArrayListWithCapacity(entries.size());
+        final List<String> types = Lists.newArrayListWithCapacity(entries.size());
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        for (Map.Entry<String, Series> entry : entries) {
+            final Series metric = entry.getValue();
+            names.add(entry.getKey());
+            types.add(metric.type.toString());
+
+            writeVarLong(data, metric.firstPoint);
+            writeRuns(data, metric);
+            for (int field = 0; field < metric.type.getFields().length; field++) {
+                long previous = 0;
+                for (int index = metric.firstPoint; index < points; index++) {
+                    final long[] point = metric.get(index);
+                    if (point == null) {
+                        continue;
+                    }
+                    writeVarLong(data, zigZag(point[field] - previous));
+                    previous = point[field];
+                }
+            }
+        }
+
+        final BasicDBObject document = new BasicDBObject("_id", getId() + ":" + chunk);
+        document.put(FIELD_NODE, nodeId);
+        document.put(FIELD_RESOLUTION, resolution.toString());
+        document.put(FIELD_START, new Date(start));
+        document.put(FIELD_CHUNK, chunk);
+        document.put(FIELD_STEP, resolution.getStepMillis());
+        document.put(FIELD_POINTS, points);
+        document.put(FIELD_NAMES, names);
+        document.put(FIELD_TYPES, types);
+        document.put(FIELD_DATA, data.toByteArray());
+        document.put(FIELD_EXPIRE_AT, new Date(start + resolution.getBlockMillis() + resolution.getRetentionMillis()));
+        return document;
+    }
+
+    /**
+     * @return the block with the metrics of a single document of a block
+     */
+    static MetricsHistoryBlock fromDBObject(DBObject document) {
+        final MetricsHistoryBlock block = new MetricsHistoryBlock(
+                (String) document.get(FIELD_NODE),
+                MetricsHistoryStore.Resolution.fromString((String) document.get(FIELD_RESOLUTION)),
+                ((Date) document.get(FIELD_START)).getTime());
+        block.read(document);
+        return block;
+    }
+
+    /**
+     * Adds the metrics of a document of this block, e.g. to continue a block from all of its documents.
+     */
+    void read(DBObject document) {
+        points = Math.max(points, ((Number) document.get(FIELD_POINTS)).intValue());
+
+        @SuppressWarnings("unchecked")
+        final List<String> names = (List<String>) document.get(FIELD_NAMES);
+        @SuppressWarnings("unchecked")
+        final List<String> types = (List<String>) document.get(FIELD_TYPES);
+        final ByteBuffer data = ByteBuffer.wrap((byte[]) document.get(FIELD_DATA));
+
+        for (int i = 0; i < names.size(); i++) {
+            final MetricType type = MetricType.fromString(types.get(i));
+            final int fields = type.getFields().length;
+            final Series metric = new Series(type, (int) readVarLong(data));
+
+            final int[] indices = readRuns(data, metric.firstPoint);
+            final long[][] values = new long[indices.length][fields];
+            for (int field = 0; field < fields; field++) {
+                long previous = 0;
+                for (int point = 0; point < indices.length; point++) {
+                    previous += unZigZag(readVarLong(data));
+                    values[point][field] = previous;
+                }
+            }
+            for (int point = 0; point < indices.length; point++) {
+                metric.set(indices[point], values[point]);
+            }
+            series.put(names.get(i), metric);
+        }
+    }
+
+    /**
+     * Writes the points which have values as the number of runs followed by the number of missing points before each
+     * run and its length.
+     */
+    private void writeRuns(ByteArrayOutputStream out, Series metric) {
+        final List<int[]> runs = Lists.newArrayList();
+        int missing = 0;
+        int length = 0;
+        for (int index = metric.firstPoint; index < points; index++) {
+            if (metric.get(index) != null) {
+                length++;
+            } else if (length > 0) {
+                runs.add(new int[]{missing, length});
+                missing = 1;
+                length = 0;
+            } else {
+                missing++;
+            }
+        }
+        if (length > 0) {
+            runs.add(new int[]{missing, length});
+        }
+
+        writeVarLong(out, runs.size());
+        for (int[] run : runs) {
+            writeVarLong(out, run[0]);
+            writeVarLong(out, run[1]);
+        }
+    }
+
+    /**
+     * @return the indices of the points which have values
+     */
+    private static int[] readRuns(ByteBuffer in, int firstPoint) {
+        final int runs = (int) readVarLong(in);
+        final int[][] lengths = new int[runs][2];
+        int total = 0;
+        for (int run = 0; run < runs; run++) {
+            lengths[run][0] = (int) readVarLong(in);
+            lengths[run][1] = (int) readVarLong(in);
+            total += lengths[run][1];
+        }
+
+        final int[] indices = new int[total];
+        int index = firstPoint;
+        int point = 0;
+        for (int[] run : lengths) {
+            index += run[0];
+            for (int i = 0; i < run[1]; i++) {
+                indices[point++] = index++;
+            }
+        }
+        return indices;
+    }
+
+    private static long toFixedPoint(double value) {
+        if (Double.isNaN(value)) {
+            return 0;
+        }
+        // Math.round() saturates at Long.MIN_VALUE and Long.MAX_VALUE
+        return Math.round(value * SCALE);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static class Series {
+        private final MetricType type;
+        private final int firstPoint;
+        private final List<long[]> values = Lists.newArrayList();
+
+        private Series(MetricType type, int firstPoint) {
+            this.type = type;
+            this.firstPoint = firstPoint;
+        }
+
+        private void set(int index, long[] point) {
+            // points in which the metric was missing have no values
+            while (firstPoint + values.size() < index) {
+                values.add(null);
+            }
+            values.add(point);
+        }
+
+        @Nullable
+        private long[] get(int index) {
+            final int offset = index - firstPoint;
+            return offset < values.size() ? values.get(offset) : null;
+        }
+    }
+}
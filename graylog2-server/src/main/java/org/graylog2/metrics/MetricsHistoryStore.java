@@ -0,0 +1,238 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.metrics;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.plugin.ServerStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the history of the metrics of this node.
+ * <p/>
+ * The most recent samples are kept in memory, at most {@link #RECENT_SAMPLES} samples with {@link #RECENT_VALUES}
+ * values in total. With one sample per second that's 5 minutes of raw samples, nodes with more than
+ * {@code RECENT_VALUES / RECENT_SAMPLES} metric values per sample keep a correspondingly shorter raw history. Samples are downsampled to 1-minute
+ * and 1-hour values which are written to MongoDB as {@link MetricsHistoryBlock blocks}, one block per node and hour
+ * for the 1-minute values and one per node and day for the 1-hour values. The documents of a block are rewritten
+ * whenever a point has been added to it, i.e. once per minute and once per hour. Expired blocks are removed by MongoDB.
+ */
+@Singleton
+public class MetricsHistoryStore {
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsHistoryStore.class);
+
+    static final String COLLECTION_NAME = "graylog2_metrics_history";
+    static final int RECENT_SAMPLES = 300;
+    // about 2 MB of raw values
+    static final int RECENT_VALUES = 250000;
+
+    public enum Resolution {
+        RAW(0, 0, 0),
+        MINUTE(TimeUnit.MINUTES.toMillis(1), TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1)),
+        HOUR(TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(30));
+
+        private final long stepMillis;
+        private final long blockMillis;
+        private final long retentionMillis;
+
+        Resolution(long stepMillis, long blockMillis, long retentionMillis) {
+            this.stepMillis = stepMillis;
+            this.blockMillis = blockMillis;
+            this.retentionMillis = retentionMillis;
+        }
+
+        public long getStepMillis() {
+            return stepMillis;
+        }
+
+        public long getBlockMillis() {
+            return blockMillis;
+        }
+
+        public long getRetentionMillis() {
+            return retentionMillis;
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+
+        public static Resolution fromString(String resolution) {
+            return valueOf(resolution.toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private final String nodeId;
+    private final Supplier<DBCollection> collection;
+    private final int maxRecentValues;
+
+    // guarded by this
+    private final ArrayDeque<MetricsSample> recentSamples = new ArrayDeque<>();
+    private int recentValues = 0;
+    private final MetricsDownsampler minutes = new MetricsDownsampler(Resolution.MINUTE.getStepMillis());
+    private final MetricsDownsampler hours = new MetricsDownsampler(Resolution.HOUR.getStepMillis());
+    private MetricsHistoryBlock minuteBlock;
+    private MetricsHistoryBlock hourBlock;
+
+    @Inject
+    public MetricsHistoryStore(final MongoConnection mongoConnection, ServerStatus serverStatus) {
+        // the collection is only prepared once the first block is written, metrics collection is disabled by default
+        this(serverStatus.getNodeId().toString(), Suppliers.memoize(new Supplier<DBCollection>() {
+            @Override
+            public DBCollection get() {
+                return prepareCollection(mongoConnection);
+            }
+        }), RECENT_VALUES);
+    }
+
+    MetricsHistoryStore(String nodeId, Supplier<DBCollection> collection, int maxRecentValues) {
+        this.nodeId = nodeId;
+        this.collection = collection;
+        this.maxRecentValues = maxRecentValues;
+    }
+
+    static DBCollection prepareCollection(MongoConnection mongoConnection) {
+        final DBCollection collection = mongoConnection.getDatabase().getCollection(COLLECTION_NAME);
+        collection.createIndex(new BasicDBObject(MetricsHistoryBlock.FIELD_NODE, 1)
+                .append(MetricsHistoryBlock.FIELD_RESOLUTION, 1)
+                .append(MetricsHistoryBlock.FIELD_START, 1));
+        collection.createIndex(new BasicDBObject(MetricsHistoryBlock.FIELD_EXPIRE_AT, 1),
+                new BasicDBObject("expireAfterSeconds", 0));
+        return collection;
+    }
+
+    public void record(MetricsSample sample) {
+        final List<DBObject> blocks = Lists.newArrayList();
+        synchronized (this) {
+            addRecentSample(sample);
+
+            final MetricsSample minute = minutes.add(sample);
+            if (minute == null) {
+                return;
+            }
+            minuteBlock = append(minuteBlock, Resolution.MINUTE, minute);
+            blocks.addAll(minuteBlock.toDBObjects());
+
+            final MetricsSample hour = hours.add(minute);
+            if (hour != null) {
+                hourBlock = append(hourBlock, Resolution.HOUR, hour);
+                blocks.addAll(hourBlock.toDBObjects());
+            }
+        }
+
+        try {
+            for (DBObject block : blocks) {
+                collection.get().save(block, WriteConcern.ACKNOWLEDGED);
+            }
+        } catch (Exception e) {
+            LOG.warn("Unable to write graylog2 metrics history to mongodb. Ignoring this error.", e);
+        }
+    }
+
+    // guarded by this
+    private void addRecentSample(MetricsSample sample) {
+        recentSamples.addLast(sample);
+        recentValues += sample.size();
+        // always keep the latest sample, even if it is larger than the limit
+        while (recentSamples.size() > 1 && (recentSamples.size() > RECENT_SAMPLES || recentValues > maxRecentValues)) {
+            recentValues -= recentSamples.removeFirst().size();
+        }
+    }
+
+    private MetricsHistoryBlock append(MetricsHistoryBlock block, Resolution resolution, MetricsSample point) {
+        MetricsHistoryBlock current = block;
+        if (current == null || !current.covers(point.getTimestamp())) {
+            current = loadBlock(resolution, point.getTimestamp() - point.getTimestamp() % resolution.getBlockMillis());
+        }
+        current.append(point);
+        return current;
+    }
+
+    private MetricsHistoryBlock loadBlock(Resolution resolution, long start) {
+        final MetricsHistoryBlock block = new MetricsHistoryBlock(nodeId, resolution, start);
+        final BasicDBObject query = new BasicDBObject(MetricsHistoryBlock.FIELD_NODE, nodeId)
+                .append(MetricsHistoryBlock.FIELD_RESOLUTION, resolution.toString())
+                .append(MetricsHistoryBlock.FIELD_START, new Date(start));
+        // continue the block written before a restart, the points missed while the node was down stay empty
+        try (DBCursor cursor = collection.get().find(query).sort(new BasicDBObject(MetricsHistoryBlock.FIELD_CHUNK, 1))) {
+            for (DBObject document : cursor) {
+                block.read(document);
+            }
+        } catch (Exception e) {
+            LOG.warn("Unable to load metrics history block " + block.getId() + ", starting a new one.", e);
+            return new MetricsHistoryBlock(nodeId, resolution, start);
+        }
+        return block;
+    }
+
+    /**
+     * @param after only return values recorded after this timestamp (milliseconds since epoch)
+     */
+    public MetricHistory getHistory(String metricName, Resolution resolution, long after) {
+        final MetricHistory history = new MetricHistory();
+
+        if (resolution == Resolution.RAW) {
+            final List<MetricsSample> samples;
+            synchronized (this) {
+                samples = Lists.newArrayList(recentSamples);
+            }
+            for (MetricsSample sample : samples) {
+                final MetricType type = sample.getType(metricName);
+                if (type != null && sample.getTimestamp() > after) {
+                    history.add(type, sample.getTimestamp(), sample.getValues(metricName));
+                }
+            }
+            return history;
+        }
+
+        final BasicDBObject query = new BasicDBObject(MetricsHistoryBlock.FIELD_NODE, nodeId)
+                .append(MetricsHistoryBlock.FIELD_RESOLUTION, resolution.toString())
+                .append(MetricsHistoryBlock.FIELD_NAMES, metricName);
+        if (after > 0) {
+            query.append(MetricsHistoryBlock.FIELD_START,
+                    new BasicDBObject("$gt", new Date(after - resolution.getBlockMillis())));
+        }
+
+        try (DBCursor cursor = collection.get().find(query).sort(new BasicDBObject(MetricsHistoryBlock.FIELD_START, 1))) {
+            for (DBObject document : cursor) {
+                MetricsHistoryBlock.fromDBObject(document).collect(metricName, after, history);
+            }
+        }
+        return history;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.metrics;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The values of all metrics of one node at one point in time. Samples are filled by a single thread and must not be
+ * modified after they have been handed to the {@link MetricsHistoryStore}.
+ */
+public class MetricsSample {
+    private final long timestamp;
+    private final Map<String, MetricType> types = Maps.newLinkedHashMap();
+    private final Map<String, double[]> values = Maps.newHashMap();
+    private int size = 0;
+
+    public MetricsSample(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public void add(String name, MetricType type, double... values) {
+        checkArgument(values.length == type.getFields().length, "Expected %s values for a %s", type.getFields().length, type);
+        this.types.put(name, type);
+        final double[] previous = this.values.put(name, values);
+        size += values.length - (previous == null ? 0 : previous.length);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Set<String> getNames() {
+        return types.keySet();
+    }
+
+    public MetricType getType(String name) {
+        return types.get(name);
+    }
+
+    public double[] getValues(String name) {
+        return values.get(name);
+    }
+
+    /**
+     * @return the number of values of all metrics in this sample
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return types.isEmpty();
+    }
+}
@@ -33,6 +33,7 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.tracing.PipelineTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,9 +63,10 @@ public class BatchedElasticSearchOutput extends ElasticSearchOutput {
                                       Cluster cluster,
                                       org.graylog2.Configuration serverConfiguration,
                                       Journal journal,
+                                      PipelineTracer pipelineTracer,
                                       @Assisted Stream stream,
                                       @Assisted Configuration configuration) {
-        this(metricRegistry, messages, cluster, serverConfiguration, journal);
+        this(metricRegistry, messages, cluster, serverConfiguration, journal, pipelineTracer);
     }
 
     @Inject
@@ -72,8 +74,9 @@ public class BatchedElasticSearchOutput extends ElasticSearchOutput {
                                       Messages messages,
                                       Cluster cluster,
                                       org.graylog2.Configuration serverConfiguration,
-                                      Journal journal) {
-        super(metricRegistry, messages, journal);
+                                      Journal journal,
+                                      PipelineTracer pipelineTracer) {
+        super(metricRegistry, messages, journal, pipelineTracer);
         this.cluster = cluster;
         this.maxBufferSize = serverConfiguration.getOutputBatchSize();
         this.buffer = Lists.newArrayListWithCapacity(maxBufferSize);
@@ -29,6 +29,7 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.tracing.PipelineTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,9 +64,10 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
                                    Cluster cluster,
                                    org.graylog2.Configuration serverConfiguration,
                                    Journal journal,
+                                   PipelineTracer pipelineTracer,
                                    @Assisted Stream stream,
                                    @Assisted Configuration configuration) {
-        this(metricRegistry, messages, cluster, serverConfiguration, journal);
+        this(metricRegistry, messages, cluster, serverConfiguration, journal, pipelineTracer);
     }
 
     @Inject
@@ -73,8 +75,9 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
                                    Messages messages,
                                    Cluster cluster,
                                    org.graylog2.Configuration serverConfiguration,
-                                   Journal journal) {
-        super(metricRegistry, messages, journal);
+                                   Journal journal,
+                                   PipelineTracer pipelineTracer) {
+        super(metricRegistry, messages, journal, pipelineTracer);
         this.cluster = cluster;
         this.maxBufferSize = serverConfiguration.getOutputBatchSize();
         outputFlushInterval = serverConfiguration.getOutputFlushInterval();
@@ -26,11 +26,13 @@ import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import org.graylog2.indexer.messages.Messages;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageTrace;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
 import org.graylog2.plugin.outputs.MessageOutput;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.tracing.PipelineTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,23 +54,27 @@ public class ElasticSearchOutput implements MessageOutput {
     private final Timer processTime;
     private final Messages messages;
     private final Journal journal;
+    private final PipelineTracer pipelineTracer;
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
 
     @AssistedInject
     public ElasticSearchOutput(MetricRegistry metricRegistry,
                                Messages messages,
                                Journal journal,
+                               PipelineTracer pipelineTracer,
                                @Assisted Stream stream,
                                @Assisted Configuration configuration) {
-        this(metricRegistry, messages, journal);
+        this(metricRegistry, messages, journal, pipelineTracer);
     }
 
     @Inject
     public ElasticSearchOutput(MetricRegistry metricRegistry,
                                Messages messages,
-                               Journal journal) {
+                               Journal journal,
+                               PipelineTracer pipelineTracer) {
         this.messages = messages;
         this.journal = journal;
+        this.pipelineTracer = pipelineTracer;
         // Only constructing metrics here. write() get's another Core reference. (because this technically is a plugin)
         this.writes = metricRegistry.meter(WRITES_METRICNAME);
         this.processTime = metricRegistry.timer(PROCESS_TIME_METRICNAME);
@@ -99,6 +105,8 @@ public class ElasticSearchOutput implements MessageOutput {
         }
         for (final Message message : messageList) {
             journal.markJournalOffsetCommitted(message.getJournalOffset());
+            message.recordStageSinceMark(MessageTrace.BULK_INDEX);
+            pipelineTracer.complete(message);
         }
     }
 
@@ -24,6 +24,7 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.graylog2.buffers.OutputFanout;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.notifications.Notification;
 import org.graylog2.notifications.NotificationService;
@@ -46,6 +47,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Singleton
 public class OutputRegistry {
@@ -57,9 +59,11 @@ public class OutputRegistry {
     private final NotificationService notificationService;
     private final NodeId nodeId;
     private final MessageOutputFactory messageOutputFactory;
+    private final OutputFanout outputFanout;
     private final LoadingCache<String, AtomicInteger> faultCounters;
     private final long faultCountThreshold;
     private final long faultPenaltySeconds;
+    private final AtomicLong generation = new AtomicLong(0L);
 
     @Inject
     public OutputRegistry(@DefaultMessageOutput MessageOutput defaultMessageOutput,
@@ -67,6 +71,7 @@ public class OutputRegistry {
                           MessageOutputFactory messageOutputFactory,
                           NotificationService notificationService,
                           NodeId nodeId,
+                          OutputFanout outputFanout,
                           @Named("output_fault_count_threshold") long faultCountThreshold,
                           @Named("output_fault_penalty_seconds") long faultPenaltySeconds) {
         this.defaultMessageOutput = defaultMessageOutput;
@@ -74,6 +79,7 @@ public class OutputRegistry {
         this.notificationService = notificationService;
         this.nodeId = nodeId;
         this.messageOutputFactory = messageOutputFactory;
+        this.outputFanout = outputFanout;
         this.runningMessageOutputs = CacheBuilder.newBuilder().build();
         this.faultCountThreshold = faultCountThreshold;
         this.faultPenaltySeconds = faultPenaltySeconds;
@@ -134,7 +140,9 @@ public class OutputRegistry {
             @Override
             public MessageOutput call() throws Exception {
                 final Output output = outputService.load(id);
-                return launchOutput(output, stream);
+                final MessageOutput messageOutput = launchOutput(output, stream);
+                outputFanout.register(id, messageOutput);
+                return messageOutput;
             }
         };
     }
@@ -165,10 +173,20 @@ public class OutputRegistry {
     public void removeOutput(Output output) {
         final MessageOutput messageOutput = runningMessageOutputs.getIfPresent(output.getId());
         if (messageOutput != null) {
+            // the queued messages cannot be written anymore once the output has been stopped
+            outputFanout.remove(messageOutput);
             messageOutput.stop();
         }
 
         runningMessageOutputs.invalidate(output.getId());
         faultCounters.invalidate(output.getId());
+        generation.incrementAndGet();
+    }
+
+    /**
+     * The generation changes whenever a running output is removed, so callers caching outputs know when to reload.
+     */
+    public long getGeneration() {
+        return generation.get();
     }
 }
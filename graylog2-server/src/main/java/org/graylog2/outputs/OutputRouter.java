@@ -16,6 +16,10 @@
  */
 package org.graylog2.outputs;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.outputs.MessageOutput;
 import org.graylog2.plugin.streams.Output;
@@ -24,18 +28,43 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Selects the outputs a message has to be written to.
+ * <p/>
+ * The outputs are resolved once per stream and kept in a routing table keyed by stream ID. A route remembers the IDs
+ * of the outputs it has been resolved for and is resolved again as soon as the outputs of the stream differ. Messages
+ * in several streams are routed by the set of stream indices in the routing table, the most recently used
+ * combinations are cached. The table is rebuilt when outputs are removed from the {@link OutputRegistry}.
+ */
+@Singleton
 public class OutputRouter {
+    private static final Logger LOG = LoggerFactory.getLogger(OutputRouter.class);
+
+    // upper bound for the stream indices, a stream gets a new index whenever its outputs change
+    private static final int MAX_ROUTED_STREAMS = 4096;
+    private static final int MAX_COMBINED_ROUTES = 1024;
+
     private final MessageOutput defaultMessageOutput;
     private final OutputRegistry outputRegistry;
 
+    private volatile RoutingTable routingTable;
+
     @Inject
     public OutputRouter(@DefaultMessageOutput MessageOutput defaultMessageOutput,
                         OutputRegistry outputRegistry) {
         this.defaultMessageOutput = defaultMessageOutput;
         this.outputRegistry = outputRegistry;
+        this.routingTable = new RoutingTable(outputRegistry.getGeneration());
     }
 
     protected Set<MessageOutput> getMessageOutputsForStream(Stream stream) {
@@ -51,19 +80,129 @@ public class OutputRouter {
     }
 
     public Set<MessageOutput> getOutputsForMessage(final Message msg) {
-        final Set<MessageOutput> result = getStreamOutputsForMessage(msg);
-        result.add(defaultMessageOutput);
+        return ImmutableSet.<MessageOutput>builder()
+                .addAll(getStreamOutputsForMessage(msg))
+                .add(defaultMessageOutput)
+                .build();
+    }
 
-        return result;
+    /**
+     * Returns the stream outputs for the given message.
+     *
+     * @param msg the message to route
+     * @return the distinct outputs of all streams of the message, the returned list is immutable
+     */
+    public List<MessageOutput> getStreamOutputsForMessage(final Message msg) {
+        final List<Stream> streams = msg.getStreams();
+        if (streams == null || streams.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        final RoutingTable table = currentRoutingTable();
+        if (streams.size() == 1) {
+            return getRoute(table, streams.get(0)).outputs;
+        }
+
+        final BitSet key = new BitSet();
+        boolean cacheable = true;
+        for (Stream stream : streams) {
+            final Route route = getRoute(table, stream);
+            if (route.index < 0) {
+                cacheable = false;
+                break;
+            }
+            key.set(route.index);
+        }
+
+        if (cacheable) {
+            final List<MessageOutput> outputs = table.combinedRoutes.getIfPresent(key);
+            if (outputs != null) {
+                return outputs;
+            }
+        }
+
+        final Set<MessageOutput> combined = new LinkedHashSet<>();
+        for (Stream stream : streams) {
+            combined.addAll(getRoute(table, stream).outputs);
+        }
+        final List<MessageOutput> outputs = ImmutableList.copyOf(combined);
+        if (cacheable) {
+            table.combinedRoutes.put(key, outputs);
+        }
+
+        return outputs;
     }
 
-    public Set<MessageOutput> getStreamOutputsForMessage(final Message msg) {
-        final Set<MessageOutput> result = new HashSet<>();
+    private RoutingTable currentRoutingTable() {
+        final RoutingTable table = routingTable;
+        final long generation = outputRegistry.getGeneration();
+        if (table.generation == generation && table.nextIndex.get() < MAX_ROUTED_STREAMS) {
+            return table;
+        }
+
+        LOG.debug("Rebuilding output routing table for output registry generation {}", generation);
+        final RoutingTable newTable = new RoutingTable(generation);
+        routingTable = newTable;
+        return newTable;
+    }
 
-        for (Stream stream : msg.getStreams()) {
-            result.addAll(getMessageOutputsForStream(stream));
+    private Route getRoute(RoutingTable table, Stream stream) {
+        final Route route = table.routes.get(stream.getId());
+        if (route != null && route.isResolvedFor(stream.getOutputs())) {
+            return route;
         }
 
-        return result;
+        final Set<MessageOutput> messageOutputs = getMessageOutputsForStream(stream);
+        final List<MessageOutput> outputs = ImmutableList.copyOf(messageOutputs);
+        if (messageOutputs.size() < stream.getOutputs().size()) {
+            // some outputs could not be resolved, retry with the next message like before
+            return new Route(-1, ImmutableSet.<String>of(), outputs);
+        }
+
+        final ImmutableSet.Builder<String> outputIds = ImmutableSet.builder();
+        for (Output output : stream.getOutputs()) {
+            outputIds.add(output.getId());
+        }
+        // the outputs of the stream changed or it is a new stream, in both cases it gets a new index
+        final Route newRoute = new Route(table.nextIndex.getAndIncrement(), outputIds.build(), outputs);
+        table.routes.put(stream.getId(), newRoute);
+        return newRoute;
+    }
+
+    private static class RoutingTable {
+        private final long generation;
+        private final AtomicInteger nextIndex = new AtomicInteger(0);
+        private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+        private final Cache<BitSet, List<MessageOutput>> combinedRoutes = CacheBuilder.newBuilder()
+                .maximumSize(MAX_COMBINED_ROUTES)
+                .build();
+
+        private RoutingTable(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    private static class Route {
+        private final int index;
+        private final Set<String> outputIds;
+        private final List<MessageOutput> outputs;
+
+        private Route(int index, Set<String> outputIds, List<MessageOutput> outputs) {
+            this.index = index;
+            this.outputIds = outputIds;
+            this.outputs = outputs;
+        }
+
+        private boolean isResolvedFor(Set<Output> streamOutputs) {
+            if (streamOutputs.size() != outputIds.size()) {
+                return false;
+            }
+            for (Output output : streamOutputs) {
+                if (!outputIds.contains(output.getId())) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 }
@@ -16,56 +16,65 @@
  */
 package org.graylog2.periodical;
 
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import org.graylog2.Configuration;
-import org.graylog2.alarmcallbacks.AlarmCallbackConfiguration;
-import org.graylog2.alarmcallbacks.AlarmCallbackConfigurationService;
-import org.graylog2.alarmcallbacks.AlarmCallbackFactory;
-import org.graylog2.alarmcallbacks.AlarmCallbackHistory;
-import org.graylog2.alarmcallbacks.AlarmCallbackHistoryService;
-import org.graylog2.alarmcallbacks.EmailAlarmCallback;
-import org.graylog2.alerts.Alert;
-import org.graylog2.alerts.AlertService;
+import org.graylog2.alerts.AlertScheduler;
 import org.graylog2.initializers.IndexerSetupService;
 import org.graylog2.plugin.alarms.AlertCondition;
-import org.graylog2.plugin.alarms.callbacks.AlarmCallback;
 import org.graylog2.plugin.periodical.Periodical;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.streams.StreamService;
+import org.graylog2.streams.StreamsChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Hands the alert conditions of all active streams to the {@link AlertScheduler}.
+ * <p/>
+ * The streams and their alert conditions are cached and only reloaded every {@code alert_check_interval} seconds
+ * or as soon as the streams or their alert conditions have been changed.
+ */
 public class AlertScannerThread extends Periodical {
     private static final Logger LOG = LoggerFactory.getLogger(AlertScannerThread.class);
 
+    // the scheduler decides which conditions are due, this only limits the granularity of per-condition intervals
+    private static final int MAX_SCHEDULING_PERIOD_SECONDS = 10;
+
     private final StreamService streamService;
-    private final AlarmCallbackConfigurationService alarmCallbackConfigurationService;
-    private final AlarmCallbackFactory alarmCallbackFactory;
-    private final EmailAlarmCallback emailAlarmCallback;
     private final IndexerSetupService indexerSetupService;
-    private final AlertService alertService;
+    private final AlertScheduler alertScheduler;
     private final Configuration configuration;
-    private final AlarmCallbackHistoryService alarmCallbackHistoryService;
+    private final AtomicBoolean reloadRequested = new AtomicBoolean(true);
+
+    private Map<Stream, List<AlertCondition>> alertConditions = Collections.emptyMap();
+    private long lastReload = 0L;
 
     @Inject
-    public AlertScannerThread(final AlertService alertService,
-                              final StreamService streamService,
-                              final AlarmCallbackConfigurationService alarmCallbackConfigurationService,
-                              final AlarmCallbackFactory alarmCallbackFactory,
-                              final EmailAlarmCallback emailAlarmCallback,
+    public AlertScannerThread(final StreamService streamService,
                               final IndexerSetupService indexerSetupService,
+                              final AlertScheduler alertScheduler,
                               final Configuration configuration,
-                              final AlarmCallbackHistoryService alarmCallbackHistoryService) {
-        this.alertService = alertService;
+                              final EventBus serverEventBus) {
         this.streamService = streamService;
-        this.alarmCallbackConfigurationService = alarmCallbackConfigurationService;
-        this.alarmCallbackFactory = alarmCallbackFactory;
-        this.emailAlarmCallback = emailAlarmCallback;
         this.indexerSetupService = indexerSetupService;
+        this.alertScheduler = alertScheduler;
         this.configuration = configuration;
-        this.alarmCallbackHistoryService = alarmCallbackHistoryService;
+
+        serverEventBus.register(this);
+    }
+
+    @Subscribe
+    public void handleStreamsChanged(StreamsChangedEvent event) {
+        reloadRequested.set(true);
     }
 
     @Override
@@ -75,74 +84,38 @@ public class AlertScannerThread extends Periodical {
             return;
         }
 
+        final long now = System.currentTimeMillis();
+        if (reloadRequested.getAndSet(false)
+                || now - lastReload >= TimeUnit.SECONDS.toMillis(configuration.getAlertCheckInterval())) {
+            alertConditions = loadAlertConditions();
+            lastReload = now;
+        }
+
         LOG.debug("Running alert checks.");
+        // Check if a threshold is reached.
+        alertScheduler.schedule(alertConditions);
+    }
+
+    private Map<Stream, List<AlertCondition>> loadAlertConditions() {
         final List<Stream> alertedStreams = streamService.loadAllWithConfiguredAlertConditions();
 
-        LOG.debug("There are {} streams with configured alert conditions.", alertedStreams.size());
+        LOG.debug("There are {} streams with configured alert conditions.", alertedStreams.size());
 
         // Load all streams that have configured alert conditions.
+        final Map<Stream, List<AlertCondition>> result = Maps.newLinkedHashMap();
         for (Stream stream : alertedStreams) {
-            LOG.debug("Stream [{}] has [{}] configured alert conditions.", stream, streamService.getAlertConditions(stream).size());
+            final List<AlertCondition> streamAlertConditions = streamService.getAlertConditions(stream);
+            LOG.debug("Stream [{}] has [{}] configured alert conditions.", stream, streamAlertConditions.size());
 
             if(stream.isPaused()) {
                 LOG.debug("Stream [{}] has been paused. Skipping alert check.", stream);
                 continue;
             }
 
-            // Check if a threshold is reached.
-            for (AlertCondition alertCondition : streamService.getAlertConditions(stream)) {
-                try {
-                    final AlertCondition.CheckResult result = alertService.triggered(alertCondition);
-                    if (result.isTriggered()) {
-                        // Alert is triggered!
-                        LOG.debug("Alert condition [{}] is triggered. Sending alerts.", alertCondition);
-
-                        // Persist alert.
-                        final Alert alert = alertService.factory(result);
-                        alertService.save(alert);
-
-                        final List<AlarmCallbackConfiguration> callConfigurations = alarmCallbackConfigurationService.getForStream(stream);
-
-                        // Checking if alarm callbacks have been defined
-                        if (callConfigurations.size() > 0)
-                            for (AlarmCallbackConfiguration configuration : callConfigurations) {
-                                AlarmCallbackHistory alarmCallbackHistory;
-                                AlarmCallback alarmCallback = null;
-                                try {
-                                    alarmCallback = alarmCallbackFactory.create(configuration);
-                                    alarmCallback.call(stream, result);
-                                    alarmCallbackHistory = alarmCallbackHistoryService.success(configuration, alert, alertCondition);
-                                } catch (Exception e) {
-                                    if (alarmCallback != null) {
-                                        LOG.warn("Alarm callback <" + alarmCallback.getName() + "> failed. Skipping.", e);
-                                    } else {
-                                        LOG.warn("Alarm callback with id " + configuration.getId() + " failed. Skipping.", e);
-                                    }
-                                    alarmCallbackHistory = alarmCallbackHistoryService.error(configuration, alert, alertCondition, e.getMessage());
-                                }
-
-                                try {
-                                    alarmCallbackHistoryService.save(alarmCallbackHistory);
-                                } catch (Exception e) {
-                                    LOG.warn("Unable to save history of alarm callback run: ", e);
-                                }
-                            }
-                        else {
-                            /* Using e-mail alarm callback per default if there are no alarm callbacks configured explicitly.
-                               This way we are supporting users who have upgraded from an old version where alarm callbacks
-                               were non-existent. It also helps for users who forgot to set up alarm callbacks for newly
-                               created alert conditions. */
-                            emailAlarmCallback.call(stream, result);
-                        }
-                    } else {
-                        // Alert not triggered.
-                        LOG.debug("Alert condition [{}] is not triggered.", alertCondition);
-                    }
-                } catch(Exception e) {
-                    LOG.error("Skipping alert check that threw an exception.", e);
-                }
-            }
+            result.put(stream, streamAlertConditions);
         }
+
+        return result;
     }
 
     @Override
@@ -182,6 +155,6 @@ public class AlertScannerThread extends Periodical {
 
     @Override
     public int getPeriodSeconds() {
-        return configuration.getAlertCheckInterval();
+        return Math.min(configuration.getAlertCheckInterval(), MAX_SCHEDULING_PERIOD_SECONDS);
     }
 }
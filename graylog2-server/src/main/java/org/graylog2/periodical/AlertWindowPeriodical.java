@@ -0,0 +1,146 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.graylog2.alerts.streaming.StreamingAlertEvaluator;
+import org.graylog2.plugin.alarms.AlertCondition;
+import org.graylog2.plugin.periodical.Periodical;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.graylog2.streams.StreamsChangedEvent;
+import org.joda.time.DateTimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the alert windows of the {@link StreamingAlertEvaluator} in sync with the configured alert conditions and
+ * publishes the windows of this node to the cluster.
+ * <p/>
+ * Every node tracks the messages it processes itself, so this runs on all nodes. The alert conditions are only
+ * reloaded after the streams have been changed, or every {@link #RELOAD_INTERVAL_MILLIS} milliseconds in case a
+ * {@link StreamsChangedEvent} got lost.
+ */
+public class AlertWindowPeriodical extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(AlertWindowPeriodical.class);
+
+    @VisibleForTesting
+    static final long RELOAD_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5L);
+
+    private final StreamingAlertEvaluator streamingAlertEvaluator;
+    private final StreamService streamService;
+    private final AtomicBoolean reloadRequested = new AtomicBoolean(true);
+
+    private long lastReload = 0L;
+
+    @Inject
+    public AlertWindowPeriodical(StreamingAlertEvaluator streamingAlertEvaluator,
+                                 StreamService streamService,
+                                 EventBus serverEventBus) {
+        this.streamingAlertEvaluator = streamingAlertEvaluator;
+        this.streamService = streamService;
+
+        serverEventBus.register(this);
+    }
+
+    @Subscribe
+    public void handleStreamsChanged(StreamsChangedEvent event) {
+        reloadRequested.set(true);
+    }
+
+    @Override
+    public void doRun() {
+        final long now = DateTimeUtils.currentTimeMillis();
+        if (reloadRequested.getAndSet(false) || now - lastReload >= RELOAD_INTERVAL_MILLIS) {
+            if (updateAlertConditions()) {
+                lastReload = now;
+            } else {
+                reloadRequested.set(true);
+            }
+        }
+
+        try {
+            streamingAlertEvaluator.publish();
+        } catch (Exception e) {
+            LOG.error("Couldn't publish alert windows.", e);
+        }
+    }
+
+    private boolean updateAlertConditions() {
+        try {
+            final List<AlertCondition> alertConditions = Lists.newArrayList();
+            for (Stream stream : streamService.loadAllWithConfiguredAlertConditions()) {
+                if (!stream.isPaused()) {
+                    alertConditions.addAll(streamService.getAlertConditions(stream));
+                }
+            }
+            streamingAlertEvaluator.updateAlertConditions(alertConditions);
+            return true;
+        } catch (Exception e) {
+            LOG.error("Couldn't update alert windows.", e);
+            return false;
+        }
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean masterOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return streamingAlertEvaluator.isEnabled();
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 0;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(StreamingAlertEvaluator.PUBLISH_INTERVAL_MILLIS);
+    }
+}
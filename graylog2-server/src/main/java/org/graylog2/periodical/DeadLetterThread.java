@@ -18,26 +18,27 @@ package org.graylog2.periodical;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import javax.inject.Inject;
 import com.mongodb.BasicDBObject;
-import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.graylog2.Configuration;
 import org.graylog2.database.CollectionName;
 import org.graylog2.database.MongoConnection;
 import org.graylog2.indexer.*;
-import org.graylog2.indexer.messages.Messages;
-import org.graylog2.plugin.Message;
-import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.database.Persisted;
 import org.graylog2.plugin.periodical.Periodical;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Moves the failed indexing attempts from the {@link DeadLetterSpool} to MongoDB in batches.
+ *
  * @author Lennart Koopmann <lennart@torch.sh>
  */
 public class DeadLetterThread extends Periodical {
@@ -46,71 +47,95 @@ public class DeadLetterThread extends Periodical {
 
     private final PersistedDeadLetterService persistedDeadLetterService;
     private final IndexFailureService indexFailureService;
-    private final Messages messages;
+    private final DeadLetterSpool deadLetterSpool;
     private final Configuration configuration;
     private final MongoConnection mongoConnection;
-    private final MetricRegistry metricRegistry;
+
+    // Number of records of a segment which have already been persisted before a failure.
+    private File partiallyPersistedSegment = null;
+    private int persistedRecords = 0;
 
     @Inject
     public DeadLetterThread(PersistedDeadLetterService persistedDeadLetterService,
                             IndexFailureService indexFailureService,
-                            Messages messages,
+                            final DeadLetterSpool deadLetterSpool,
                             Configuration configuration,
                             MongoConnection mongoConnection,
                             MetricRegistry metricRegistry) {
         this.persistedDeadLetterService = persistedDeadLetterService;
         this.indexFailureService = indexFailureService;
-        this.messages = messages;
+        this.deadLetterSpool = deadLetterSpool;
         this.configuration = configuration;
         this.mongoConnection = mongoConnection;
-        this.metricRegistry = metricRegistry;
+
+        // The metric used to count the batches in the former in-memory queue, now it counts the spool segments which
+        // are waiting to be persisted.
+        metricRegistry.register(MetricRegistry.name(DeadLetterThread.class, "queueSize"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return deadLetterSpool.getSegmentCount();
+            }
+        });
     }
 
     @Override
     public void doRun() {
-        verifyIndices();
-
-        // Poll queue forever.
-        while(true) {
-            List<DeadLetter> items;
+        for (File segment : deadLetterSpool.closeAndListSegments()) {
+            final List<SpooledDeadLetter> deadLetters;
             try {
-                items = messages.getDeadLetterQueue().take();
-            } catch (InterruptedException ignored) { continue; /* daemon thread */ }
-
-            for (DeadLetter item : items) {
-                boolean written = false;
-
-                // Try to write the failed message to MongoDB if enabled.
-                if (configuration.isDeadLettersEnabled()) {
-                    try {
-                        Message message = item.getMessage();
-                        PersistedDeadLetter persistedDeadLetter = persistedDeadLetterService.create(item.getId(), Tools.iso8601(), message.toElasticSearchObject());
-                        persistedDeadLetterService.saveWithoutValidation(persistedDeadLetter);
-                        written = true;
-                    } catch(Exception e) {
-                        LOG.error("Could not write message to dead letter queue.", e);
-                    }
+                deadLetters = deadLetterSpool.read(segment);
+            } catch (IOException e) {
+                LOG.error("Could not read dead letter spool segment " + segment + ", trying again later.", e);
+                continue;
+            }
+
+            int skip = segment.equals(partiallyPersistedSegment) ? persistedRecords : 0;
+            int persisted = 0;
+            for (List<SpooledDeadLetter> batch : Lists.partition(deadLetters, configuration.getDeadLettersBatchSize())) {
+                if (skip >= persisted + batch.size()) {
+                    persisted += batch.size();
+                    continue;
                 }
 
-                // Write failure to index_failures.
                 try {
-                    BulkItemResponse.Failure f = item.getFailure().getFailure();
-
-                    Map<String, Object> doc = Maps.newHashMap();
-                    doc.put("letter_id", item.getId());
-                    doc.put("index", f.getIndex());
-                    doc.put("type", f.getType());
-                    doc.put("message", f.getMessage());
-                    doc.put("timestamp", item.getTimestamp());
-                    doc.put("written", written);
-
-                    IndexFailure indexFailure = new IndexFailureImpl(doc);
-                    indexFailureService.saveWithoutValidation(indexFailure);
-                } catch(Exception e) {
-                    LOG.error("Could not persist index failure.", e);
+                    persist(batch);
+                } catch (Exception e) {
+                    LOG.error("Could not persist dead letters, trying again later.", e);
+                    partiallyPersistedSegment = segment;
+                    persistedRecords = persisted;
+                    return;
                 }
+                persisted += batch.size();
+            }
+
+            deadLetterSpool.delete(segment);
+            partiallyPersistedSegment = null;
+            persistedRecords = 0;
+        }
+    }
+
+    private void persist(List<SpooledDeadLetter> batch) {
+        final List<PersistedDeadLetter> persistedDeadLetters = Lists.newArrayListWithCapacity(batch.size());
+        final List<IndexFailure> indexFailures = Lists.newArrayListWithCapacity(batch.size());
+        for (SpooledDeadLetter item : batch) {
+            final boolean written = configuration.isDeadLettersEnabled() && item.message() != null;
+            if (written) {
+                persistedDeadLetters.add(persistedDeadLetterService.create(item.letterId(), item.timestamp(), item.index(), item.message()));
             }
+
+            Map<String, Object> doc = Maps.newHashMap();
+            doc.put("letter_id", item.letterId());
+            doc.put("index", item.index());
+            doc.put("type", item.type());
+            doc.put("message", item.errorMessage());
+            doc.put("timestamp", item.timestamp());
+            doc.put("written", written);
+            indexFailures.add(new IndexFailureImpl(doc));
         }
+
+        // Write the dead letters first, the index failures refer to them.
+        persistedDeadLetterService.saveAll(persistedDeadLetters);
+        indexFailureService.saveAll(indexFailures);
     }
 
     @Override
@@ -133,7 +158,7 @@ public class DeadLetterThread extends Periodical {
 
     @Override
     public boolean runsForever() {
-        return true;
+        return false;
     }
 
     @Override
@@ -163,17 +188,12 @@ public class DeadLetterThread extends Periodical {
 
     @Override
     public int getPeriodSeconds() {
-        return 0;
+        return 1;
     }
 
     @Override
     public void initialize() {
-        metricRegistry.register(MetricRegistry.name(DeadLetterThread.class, "queueSize"), new Gauge<Integer>() {
-            @Override
-            public Integer getValue() {
-                return messages.getDeadLetterQueue().size();
-            }
-        });
+        verifyIndices();
     }
 
 }
@@ -0,0 +1,129 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import org.graylog2.Configuration;
+import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.fieldcatalog.FieldCatalog;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.indexer.indices.Indices;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.periodical.Periodical;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.List;
+
+/**
+ * Writes the field names recorded by the {@link FieldCatalog} to MongoDB and reloads the catalog, including the ones
+ * recorded by the other nodes. The master node additionally replaces the catalog with the fields of the index mappings
+ * from time to time, so fields of deleted indices eventually disappear on all nodes.
+ */
+public class FieldCatalogPeriodical extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(FieldCatalogPeriodical.class);
+
+    private final FieldCatalog fieldCatalog;
+    private final Configuration configuration;
+    private final IndexSetRegistry indexSetRegistry;
+    private final Indices indices;
+    private final Cluster cluster;
+
+    private DateTime lastResync = null;
+
+    @Inject
+    public FieldCatalogPeriodical(FieldCatalog fieldCatalog,
+                                  Configuration configuration,
+                                  IndexSetRegistry indexSetRegistry,
+                                  Indices indices,
+                                  Cluster cluster) {
+        this.fieldCatalog = fieldCatalog;
+        this.configuration = configuration;
+        this.indexSetRegistry = indexSetRegistry;
+        this.indices = indices;
+        this.cluster = cluster;
+    }
+
+    @Override
+    public void doRun() {
+        if (configuration.isMaster() && isResyncDue() && cluster.isConnected()) {
+            resync();
+        }
+
+        fieldCatalog.flush();
+        fieldCatalog.load();
+    }
+
+    private boolean isResyncDue() {
+        return lastResync == null ||
+                lastResync.plus(configuration.getFieldCatalogResyncInterval().toMilliseconds()).isBefore(Tools.iso8601());
+    }
+
+    private void resync() {
+        final List<IndexSet> indexSets = indexSetRegistry.getAll();
+        final String[] indexWildcards = new String[indexSets.size()];
+        for (int i = 0; i < indexWildcards.length; i++) {
+            indexWildcards[i] = indexSets.get(i).getDeflector().getIndexPrefix() + "_*";
+        }
+
+        fieldCatalog.replace(indices.getAllMessageFields(indexWildcards));
+        lastResync = Tools.iso8601();
+        LOG.debug("Replaced field catalog with the fields of the index mappings.");
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean masterOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return fieldCatalog.isEnabled();
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 0;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return 30;
+    }
+}
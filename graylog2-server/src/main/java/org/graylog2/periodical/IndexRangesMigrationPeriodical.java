@@ -23,11 +23,15 @@ import com.google.common.util.concurrent.Uninterruptibles;
 import org.graylog2.indexer.Deflector;
 import org.graylog2.indexer.cluster.Cluster;
 import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.indexer.ranges.IndexRangeRebuildCheckpoint;
 import org.graylog2.indexer.ranges.IndexRangeService;
 import org.graylog2.indexer.ranges.MongoIndexRangeService;
+import org.graylog2.indexer.ranges.RebuildIndexRangesJob;
 import org.graylog2.notifications.Notification;
 import org.graylog2.notifications.NotificationService;
 import org.graylog2.plugin.periodical.Periodical;
+import org.graylog2.system.jobs.SystemJobConcurrencyException;
+import org.graylog2.system.jobs.SystemJobManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,18 +56,27 @@ public class IndexRangesMigrationPeriodical extends Periodical {
     private final IndexRangeService indexRangeService;
     private final NotificationService notificationService;
     private final MongoIndexRangeService mongoIndexRangeService;
+    private final IndexRangeRebuildCheckpoint rebuildCheckpoint;
+    private final RebuildIndexRangesJob.Factory rebuildIndexRangesJobFactory;
+    private final SystemJobManager systemJobManager;
 
     @Inject
     public IndexRangesMigrationPeriodical(final Cluster cluster,
                                           final Deflector deflector,
                                           final IndexRangeService indexRangeService,
                                           final NotificationService notificationService,
-                                          final MongoIndexRangeService mongoIndexRangeService) {
+                                          final MongoIndexRangeService mongoIndexRangeService,
+                                          final IndexRangeRebuildCheckpoint rebuildCheckpoint,
+                                          final RebuildIndexRangesJob.Factory rebuildIndexRangesJobFactory,
+                                          final SystemJobManager systemJobManager) {
         this.cluster = checkNotNull(cluster);
         this.deflector = checkNotNull(deflector);
         this.indexRangeService = checkNotNull(indexRangeService);
         this.notificationService = checkNotNull(notificationService);
         this.mongoIndexRangeService = checkNotNull(mongoIndexRangeService);
+        this.rebuildCheckpoint = checkNotNull(rebuildCheckpoint);
+        this.rebuildIndexRangesJobFactory = checkNotNull(rebuildIndexRangesJobFactory);
+        this.systemJobManager = checkNotNull(systemJobManager);
     }
 
     @Override
@@ -72,6 +85,17 @@ public class IndexRangesMigrationPeriodical extends Periodical {
             Uninterruptibles.sleepUninterruptibly(5, TimeUnit.SECONDS);
         }
 
+        // Resume an index range rebuild which has been interrupted by a restart
+        if (rebuildCheckpoint.isPending()) {
+            LOG.info("Resuming interrupted index range rebuild.");
+            try {
+                systemJobManager.submit(rebuildIndexRangesJobFactory.create(deflector));
+                return;
+            } catch (SystemJobConcurrencyException e) {
+                LOG.warn("Couldn't resume index range rebuild: {}", e.getMessage());
+            }
+        }
+
         // Migrate old MongoDB index ranges
         final Set<String> indexNames = ImmutableSet.copyOf(deflector.getAllDeflectorIndexNames());
         final SortedSet<IndexRange> indexRanges = indexRangeService.findAll();
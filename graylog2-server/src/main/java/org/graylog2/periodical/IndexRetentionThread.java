@@ -22,7 +22,12 @@ import org.graylog2.indexer.Deflector;
 import org.graylog2.indexer.IndexHelper;
 import org.graylog2.indexer.NoTargetIndexException;
 import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.maintenance.IndexMaintenanceScheduler;
+import org.graylog2.indexer.maintenance.IndexOperation;
+import org.graylog2.indexer.retention.IndexRetentionJob;
 import org.graylog2.indexer.retention.RetentionStrategyFactory;
 import org.graylog2.plugin.indexer.retention.RetentionStrategy;
 import org.graylog2.plugin.periodical.Periodical;
@@ -40,22 +45,28 @@ public class IndexRetentionThread extends Periodical {
     private static final Logger LOG = LoggerFactory.getLogger(IndexRetentionThread.class);
 
     private final ElasticsearchConfiguration configuration;
-    private final Deflector deflector;
+    private final IndexSetRegistry indexSetRegistry;
     private final Cluster cluster;
     private final ActivityWriter activityWriter;
     private final Indices indices;
+    private final IndexMaintenanceScheduler indexMaintenanceScheduler;
+    private final IndexRetentionJob.Factory indexRetentionJobFactory;
 
     @Inject
     public IndexRetentionThread(ElasticsearchConfiguration configuration,
-                                Deflector deflector,
+                                IndexSetRegistry indexSetRegistry,
                                 Indices indices,
                                 Cluster cluster,
-                                ActivityWriter activityWriter) {
+                                ActivityWriter activityWriter,
+                                IndexMaintenanceScheduler indexMaintenanceScheduler,
+                                IndexRetentionJob.Factory indexRetentionJobFactory) {
         this.configuration = configuration;
-        this.deflector = deflector;
+        this.indexSetRegistry = indexSetRegistry;
         this.indices = indices;
         this.cluster = cluster;
         this.activityWriter = activityWriter;
+        this.indexMaintenanceScheduler = indexMaintenanceScheduler;
+        this.indexRetentionJobFactory = indexRetentionJobFactory;
     }
 
     @Override
@@ -65,27 +76,36 @@ public class IndexRetentionThread extends Periodical {
             return;
         }
 
+        for (IndexSet indexSet : indexSetRegistry.getAll()) {
+            checkForRetention(indexSet);
+        }
+    }
+
+    private void checkForRetention(IndexSet indexSet) {
+        final Deflector deflector = indexSet.getDeflector();
         final Map<String, IndexStats> deflectorIndices = deflector.getAllDeflectorIndices();
         final int indexCount = deflectorIndices.size();
-        final int maxIndices = configuration.getMaxNumberOfIndices();
+        final int maxIndices = indexSet.getMaxNumberOfIndices();
 
         // Do we have more indices than the configured maximum?
         if (indexCount <= maxIndices) {
-            LOG.debug("Number of indices ({}) lower than limit ({}). Not performing any retention actions.",
-                    indexCount, maxIndices);
+            LOG.debug("Number of indices ({}) of index set {} lower than limit ({}). Not performing any retention actions.",
+                    indexCount, indexSet, maxIndices);
             return;
         }
 
         // We have more indices than the configured maximum! Remove as many as needed.
         final int removeCount = indexCount - maxIndices;
-        final String msg = "Number of indices (" + indexCount + ") higher than limit (" + maxIndices + "). " +
+        final String msg = "Number of indices (" + indexCount + ") of index set " + indexSet + " higher than limit (" + maxIndices + "). " +
                 "Running retention for " + removeCount + " indices.";
         LOG.info(msg);
         activityWriter.write(new Activity(msg, IndexRetentionThread.class));
 
         try {
             runRetention(
-                    RetentionStrategyFactory.fromString(configuration.getRetentionStrategy(), indices),
+                    RetentionStrategyFactory.fromString(indexSet.getRetentionStrategy(), indices),
+                    "close".equals(indexSet.getRetentionStrategy()) ? IndexOperation.CLOSE : IndexOperation.DELETE,
+                    deflector,
                     deflectorIndices,
                     removeCount
             );
@@ -101,7 +121,15 @@ public class IndexRetentionThread extends Periodical {
         return LOG;
     }
 
-    public void runRetention(RetentionStrategy strategy, Map<String, IndexStats> deflectorIndices, int removeCount) throws NoTargetIndexException {
+    /**
+     * Queues the retention of the oldest indices in the {@link IndexMaintenanceScheduler}. Indices whose retention is
+     * still pending from an earlier run are skipped by the scheduler.
+     */
+    public void runRetention(RetentionStrategy strategy,
+                             IndexOperation operation,
+                             Deflector deflector,
+                             Map<String, IndexStats> deflectorIndices,
+                             int removeCount) throws NoTargetIndexException {
         for (String indexName : IndexHelper.getOldestIndices(deflectorIndices.keySet(), removeCount)) {
             // Never run against the current deflector target.
             if (indexName.equals(deflector.getCurrentActualTargetIndex())) {
@@ -118,13 +146,9 @@ public class IndexRetentionThread extends Periodical {
                 continue;
             }
 
-            final String msg = "Running retention strategy [" + strategy.getClass().getCanonicalName() + "] " +
-                    "for index <" + indexName + ">";
-            LOG.info(msg);
-            activityWriter.write(new Activity(msg, IndexRetentionThread.class));
-
-            // Sorry if this should ever go mad. Run retention strategy!
-            strategy.runStrategy(indexName);
+            if (indexMaintenanceScheduler.submit(operation, indexName, indexRetentionJobFactory.create(strategy, indexName))) {
+                LOG.info("Queued retention strategy [{}] for index <{}>.", strategy.getClass().getCanonicalName(), indexName);
+            }
         }
     }
 
@@ -0,0 +1,173 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import com.google.common.primitives.Ints;
+import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.rollups.RollupIndexJob;
+import org.graylog2.indexer.rollups.Rollups;
+import org.graylog2.plugin.periodical.Periodical;
+import org.graylog2.system.jobs.SystemJobConcurrencyException;
+import org.graylog2.system.jobs.SystemJobManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Calculates the rollups of rotated, read-only indices which don't have any yet, e. g. indices which existed before
+ * rollups were enabled or whose calculation failed. The index sets are checked in order, newer indices of an index set
+ * are rolled up first, indices whose calculation failed recently are skipped.
+ */
+public class IndexRollupPeriodical extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexRollupPeriodical.class);
+
+    private final Rollups rollups;
+    private final IndexSetRegistry indexSetRegistry;
+    private final Indices indices;
+    private final Cluster cluster;
+    private final SystemJobManager systemJobManager;
+    private final RollupIndexJob.Factory rollupIndexJobFactory;
+
+    @Inject
+    public IndexRollupPeriodical(Rollups rollups,
+                                 IndexSetRegistry indexSetRegistry,
+                                 Indices indices,
+                                 Cluster cluster,
+                                 SystemJobManager systemJobManager,
+                                 RollupIndexJob.Factory rollupIndexJobFactory) {
+        this.rollups = rollups;
+        this.indexSetRegistry = indexSetRegistry;
+        this.indices = indices;
+        this.cluster = cluster;
+        this.systemJobManager = systemJobManager;
+        this.rollupIndexJobFactory = rollupIndexJobFactory;
+    }
+
+    @Override
+    public void doRun() {
+        if (!cluster.isConnected() || systemJobManager.concurrentJobs(RollupIndexJob.class) > 0) {
+            return;
+        }
+
+        for (IndexSet indexSet : indexSetRegistry.getAll()) {
+            final String index = nextIndex(indexSet.getDeflector());
+            if (index == null) {
+                continue;
+            }
+
+            try {
+                systemJobManager.submit(rollupIndexJobFactory.create(index));
+            } catch (SystemJobConcurrencyException e) {
+                LOG.debug("Rollups are already being calculated, trying again later.", e);
+            }
+            return;
+        }
+    }
+
+    /**
+     * @return the newest index of the deflector which needs rollups or {@code null}
+     */
+    @Nullable
+    private String nextIndex(Deflector deflector) {
+        final String writeIndex = deflector.getCurrentActualTargetIndex();
+        final String[] indexNames = deflector.getAllDeflectorIndexNames();
+        Arrays.sort(indexNames, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return Ints.compare(indexNumber(o2), indexNumber(o1));
+            }
+        });
+
+        for (String index : indexNames) {
+            if (index.equals(writeIndex) || rollups.isRolledUp(index) || rollups.isBackingOff(index)) {
+                continue;
+            }
+            // indices which still receive messages would end up with incomplete rollups
+            if (!isReadOnly(index)) {
+                LOG.debug("Index <{}> isn't read-only yet, not calculating its rollups.", index);
+                continue;
+            }
+            return index;
+        }
+        return null;
+    }
+
+    private boolean isReadOnly(String index) {
+        try {
+            return indices.isReadOnly(index);
+        } catch (Exception e) {
+            LOG.debug("Couldn't check whether index <" + index + "> is read-only.", e);
+            return false;
+        }
+    }
+
+    private static int indexNumber(String index) {
+        try {
+            return Deflector.extractIndexNumber(index);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean masterOnly() {
+        return true;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return rollups.isEnabled();
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 60;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return 300;
+    }
+}
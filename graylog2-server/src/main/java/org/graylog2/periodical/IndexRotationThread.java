@@ -20,6 +20,8 @@ import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
 import org.graylog2.indexer.Deflector;
 import org.graylog2.indexer.NoTargetIndexException;
 import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.notifications.Notification;
 import org.graylog2.notifications.NotificationService;
@@ -31,42 +33,40 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import javax.inject.Provider;
 
 public class IndexRotationThread extends Periodical {
     private static final Logger LOG = LoggerFactory.getLogger(IndexRotationThread.class);
 
     private NotificationService notificationService;
-    private final Deflector deflector;
+    private final IndexSetRegistry indexSetRegistry;
     private final Cluster cluster;
     private final ActivityWriter activityWriter;
     private final Indices indices;
-    private final Provider<RotationStrategy> rotationStrategyProvider;
 
     @Inject
     public IndexRotationThread(NotificationService notificationService,
                                Indices indices,
-                               Deflector deflector,
+                               IndexSetRegistry indexSetRegistry,
                                Cluster cluster,
-                               ActivityWriter activityWriter,
-                               Provider<RotationStrategy> rotationStrategyProvider) {
+                               ActivityWriter activityWriter) {
         this.notificationService = notificationService;
-        this.deflector = deflector;
+        this.indexSetRegistry = indexSetRegistry;
         this.cluster = cluster;
         this.activityWriter = activityWriter;
         this.indices = indices;
-        this.rotationStrategyProvider = rotationStrategyProvider;
     }
 
     @Override
     public void doRun() {
         // Point deflector to a new index if required.
         if (cluster.isConnected()) {
-            try {
-                checkAndRepair();
-                checkForRotation();
-            } catch (Exception e) {
-                LOG.error("Couldn't point deflector to a new index", e);
+            for (IndexSet indexSet : indexSetRegistry.getAll()) {
+                try {
+                    checkAndRepair(indexSet);
+                    checkForRotation(indexSet);
+                } catch (Exception e) {
+                    LOG.error("Couldn't point deflector of index set " + indexSet + " to a new index", e);
+                }
             }
         } else {
             LOG.debug("Elasticsearch cluster isn't healthy. Skipping index rotation.");
@@ -78,8 +78,9 @@ public class IndexRotationThread extends Periodical {
         return LOG;
     }
 
-    protected void checkForRotation() {
-        final RotationStrategy rotationStrategy = rotationStrategyProvider.get();
+    protected void checkForRotation(IndexSet indexSet) {
+        final Deflector deflector = indexSet.getDeflector();
+        final RotationStrategy rotationStrategy = indexSet.getRotationStrategy();
 
         String currentTarget;
         try {
@@ -102,7 +103,8 @@ public class IndexRotationThread extends Periodical {
         }
     }
 
-    protected void checkAndRepair() {
+    protected void checkAndRepair(IndexSet indexSet) {
+        final Deflector deflector = indexSet.getDeflector();
         if (!deflector.isUp()) {
             if (indices.exists(deflector.getName())) {
                 // Publish a notification if there is an *index* called graylog2_deflector
@@ -294,6 +294,22 @@ public abstract class SearchResource extends RestResource {
         }
     }
 
+    private static void closeQuietly(ChunkedOutput<?> output) {
+        try {
+            output.close();
+        } catch (IOException e) {
+            LOG.debug("Could not close chunked output stream.", e);
+        }
+    }
+
+    private static void cancelQuietly(ScrollResult scroll) {
+        try {
+            scroll.cancel();
+        } catch (RuntimeException e) {
+            LOG.debug("[" + scroll.getQueryHash() + "] Could not clear scroll.", e);
+        }
+    }
+
     protected Runnable createScrollChunkProducer(final ScrollResult scroll,
                                                  final ChunkedOutput<ScrollResult.ScrollChunk> output,
                                                  final int limit) {
@@ -302,6 +318,8 @@ public abstract class SearchResource extends RestResource {
 
             @Override
             public void run() {
+                // the scroll keeps its search contexts open on the cluster until it has been exhausted or cleared
+                boolean scrollFinished = false;
                 try {
                     ScrollResult.ScrollChunk chunk = scroll.nextChunk();
                     while (chunk != null) {
@@ -311,22 +329,26 @@ public abstract class SearchResource extends RestResource {
                         if (output.isClosed()) {
                             LOG.debug("[{}] Client connection is closed, client disconnected. Aborting scroll.",
                                     scroll.getQueryHash());
-                            scroll.cancel();
                             return;
                         }
                         output.write(chunk);
                         collectedHits += chunk.getMessages().size();
                         if (limit != 0 && collectedHits >= limit) {
-                            scroll.cancel();
-                            output.close();
                             return;
                         }
                         chunk = scroll.nextChunk();
                     }
+                    scrollFinished = true;
                     LOG.debug("[{}] Reached end of scroll result.", scroll.getQueryHash());
-                    output.close();
                 } catch (IOException e) {
-                    LOG.warn("[{}] Could not close chunked output stream for query scroll.", scroll.getQueryHash());
+                    LOG.warn("[{}] Could not write to chunked output stream for query scroll, aborting.", scroll.getQueryHash());
+                } catch (RuntimeException e) {
+                    LOG.error("[" + scroll.getQueryHash() + "] Error while scrolling through search results, aborting.", e);
+                } finally {
+                    closeQuietly(output);
+                    if (!scrollFinished) {
+                        cancelQuietly(scroll);
+                    }
                 }
             }
         };
@@ -29,7 +29,6 @@ import com.wordnik.swagger.annotations.ApiResponses;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 import org.bson.types.ObjectId;
-import org.cliffc.high_scale_lib.Counter;
 import org.graylog2.alarmcallbacks.AlarmCallbackConfiguration;
 import org.graylog2.alarmcallbacks.AlarmCallbackConfigurationService;
 import org.graylog2.rest.models.alarmcallbacks.requests.CreateAlarmCallbackRequest;
@@ -76,7 +75,6 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
@@ -385,11 +383,11 @@ public class StreamResource extends RestResource {
         final Map<String, Long> result = Maps.newHashMap();
         result.put("throughput", 0L);
 
-        final HashMap<String, Counter> currentStreamThroughput = throughputStats.getCurrentStreamThroughput();
+        final Map<String, Long> currentStreamThroughput = throughputStats.getCurrentStreamThroughput();
         if (currentStreamThroughput != null) {
-            final Counter counter = currentStreamThroughput.get(streamId);
-            if (counter != null && isPermitted(RestPermissions.STREAMS_READ, streamId))
-                result.put("throughput", counter.get());
+            final Long count = currentStreamThroughput.get(streamId);
+            if (count != null && isPermitted(RestPermissions.STREAMS_READ, streamId))
+                result.put("throughput", count);
         }
 
         return result;
@@ -403,11 +401,11 @@ public class StreamResource extends RestResource {
     public Map<String, Map<String, Long>> streamThroughput() {
         final Map<String, Long> perStream = Maps.newHashMap();
 
-        final Map<String, Counter> currentStreamThroughput = throughputStats.getCurrentStreamThroughput();
+        final Map<String, Long> currentStreamThroughput = throughputStats.getCurrentStreamThroughput();
         if (currentStreamThroughput != null) {
-            for (Map.Entry<String, Counter> entry : currentStreamThroughput.entrySet()) {
+            for (Map.Entry<String, Long> entry : currentStreamThroughput.entrySet()) {
                 if (entry.getValue() != null && isPermitted(RestPermissions.STREAMS_READ, entry.getKey())) {
-                    perStream.put(entry.getKey(), entry.getValue().get());
+                    perStream.put(entry.getKey(), entry.getValue());
                 }
             }
         }
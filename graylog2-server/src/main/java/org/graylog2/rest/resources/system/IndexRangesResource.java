@@ -27,6 +27,8 @@ import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.ranges.CreateNewSingleIndexRangeJob;
 import org.graylog2.indexer.ranges.IndexRange;
 import org.graylog2.indexer.ranges.IndexRangeService;
@@ -65,6 +67,7 @@ public class IndexRangesResource extends RestResource {
     private final RebuildIndexRangesJob.Factory rebuildIndexRangesJobFactory;
     private final CreateNewSingleIndexRangeJob.Factory singleIndexRangeJobFactory;
     private final Deflector deflector;
+    private final IndexSetRegistry indexSetRegistry;
     private final SystemJobManager systemJobManager;
 
     @Inject
@@ -72,11 +75,13 @@ public class IndexRangesResource extends RestResource {
                                RebuildIndexRangesJob.Factory rebuildIndexRangesJobFactory,
                                CreateNewSingleIndexRangeJob.Factory singleIndexRangeJobFactory,
                                Deflector deflector,
+                               IndexSetRegistry indexSetRegistry,
                                SystemJobManager systemJobManager) {
         this.indexRangeService = indexRangeService;
         this.rebuildIndexRangesJobFactory = rebuildIndexRangesJobFactory;
         this.singleIndexRangeJobFactory = singleIndexRangeJobFactory;
         this.deflector = deflector;
+        this.indexSetRegistry = indexSetRegistry;
         this.systemJobManager = systemJobManager;
     }
 
@@ -112,7 +117,7 @@ public class IndexRangesResource extends RestResource {
     public IndexRangeSummary show(
             @ApiParam(name = "index", value = "The name of the Graylog-managed Elasticsearch index", required = true)
             @PathParam("index") @NotEmpty String index) throws NotFoundException {
-        if (!deflector.isGraylog2Index(index)) {
+        if (!indexSetRegistry.isManagedIndex(index)) {
             throw new BadRequestException(index + " is not a Graylog-managed Elasticsearch index.");
         }
         checkPermission(RestPermissions.INDEXRANGES_READ, index);
@@ -165,12 +170,13 @@ public class IndexRangesResource extends RestResource {
     public Response rebuildIndex(
             @ApiParam(name = "index", value = "The name of the Graylog-managed Elasticsearch index", required = true)
             @PathParam("index") @NotEmpty String index) {
-        if (!deflector.isGraylog2Index(index)) {
+        final IndexSet indexSet = indexSetRegistry.getForIndex(index);
+        if (indexSet == null) {
             throw new BadRequestException(index + " is not a Graylog-managed Elasticsearch index.");
         }
         checkPermission(RestPermissions.INDEXRANGES_REBUILD, index);
 
-        final SystemJob rebuildJob = singleIndexRangeJobFactory.create(deflector, index);
+        final SystemJob rebuildJob = singleIndexRangeJobFactory.create(indexSet.getDeflector(), index);
         try {
             this.systemJobManager.submit(rebuildJob);
         } catch (SystemJobConcurrencyException e) {
@@ -0,0 +1,55 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest.resources.system;
+
+import com.codahale.metrics.annotation.Timed;
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import org.apache.shiro.authz.annotation.RequiresAuthentication;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.graylog2.rest.models.system.traces.responses.MessageTraceList;
+import org.graylog2.shared.rest.resources.RestResource;
+import org.graylog2.shared.security.RestPermissions;
+import org.graylog2.shared.tracing.PipelineTracer;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@RequiresAuthentication
+@Api(value = "System/Traces", description = "Sampled latency traces of messages processed by this node")
+@Path("/system/traces")
+@Produces(MediaType.APPLICATION_JSON)
+public class MessageTracesResource extends RestResource {
+    private final PipelineTracer pipelineTracer;
+
+    @Inject
+    public MessageTracesResource(PipelineTracer pipelineTracer) {
+        this.pipelineTracer = pipelineTracer;
+    }
+
+    @GET
+    @Timed
+    @ApiOperation(value = "Get the most recently sampled message traces, oldest first.",
+            notes = "Contains the time every sampled message spent in each stage of the processing pipeline, in microseconds.")
+    @RequiresPermissions(RestPermissions.METRICS_READ)
+    public MessageTraceList traces() {
+        return MessageTraceList.create(pipelineTracer.getSampleRate(), pipelineTracer.getSampledTraces());
+    }
+}
@@ -19,18 +19,18 @@ package org.graylog2.rest.resources.system;
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBCursor;
-import com.mongodb.DBObject;
 import com.wordnik.swagger.annotations.Api;
 import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiParam;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
-import org.graylog2.database.MongoConnection;
+import org.graylog2.metrics.MetricHistory;
+import org.graylog2.metrics.MetricType;
+import org.graylog2.metrics.MetricsHistoryStore;
 import org.graylog2.shared.rest.resources.RestResource;
 import org.graylog2.shared.security.RestPermissions;
 
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -38,10 +38,8 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 @RequiresAuthentication
@@ -49,108 +47,65 @@ import java.util.Map;
 @Path("/system/metrics/{metricName}/history")
 @Produces(MediaType.APPLICATION_JSON)
 public class MetricsHistoryResource extends RestResource {
-    private final MongoConnection mongoConnection;
+    private final MetricsHistoryStore historyStore;
 
     @Inject
-    public MetricsHistoryResource(MongoConnection mongoConnection) {
-        this.mongoConnection = mongoConnection;
-    }
-
-    enum MetricType {
-        GAUGE,
-        COUNTER,
-        HISTOGRAM,
-        METER,
-        TIMER
+    public MetricsHistoryResource(MetricsHistoryStore historyStore) {
+        this.historyStore = historyStore;
     }
 
     @GET
     @Timed
-    @ApiOperation(value = "Get history of a single metric", notes = "The maximum retention time is currently only 5 minutes.")
+    @ApiOperation(value = "Get history of a single metric of this node",
+            notes = "Raw values are kept in memory for up to 5 minutes, nodes with many metrics keep them for a shorter " +
+                    "time. 1-minute values are kept for 1 day and 1-hour values for 30 days.")
     public Map<String, Object> historicSingleMetric(
             @ApiParam(name = "metricName", required = true)
             @PathParam("metricName") String metricName,
             @ApiParam(name = "after", value = "Only values for after this UTC timestamp (1970 epoch)")
-            @QueryParam("after") @DefaultValue("-1") long after
+            @QueryParam("after") @DefaultValue("-1") long after,
+            @ApiParam(name = "resolution", value = "The resolution of the values: raw, minute or hour")
+            @QueryParam("resolution") @DefaultValue("raw") String resolution
     ) {
         checkPermission(RestPermissions.METRICS_READHISTORY, metricName);
 
-        BasicDBObject andQuery = new BasicDBObject();
-
-        final List<BasicDBObject> obj = new ArrayList<BasicDBObject>();
-        obj.add(new BasicDBObject("name", metricName));
-        if (after != -1) {
-            obj.add(new BasicDBObject("$gt", new BasicDBObject("$gt", new Date(after))));
+        final MetricsHistoryStore.Resolution historyResolution;
+        try {
+            historyResolution = MetricsHistoryStore.Resolution.fromString(resolution);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid resolution " + resolution, e);
         }
-        andQuery.put("$and", obj);
 
-        final DBCursor cursor = mongoConnection.getDatabase().getCollection("graylog2_metrics")
-                .find(andQuery).sort(new BasicDBObject("timestamp", 1));
+        final MetricHistory history = historyStore.getHistory(metricName, historyResolution, after);
 
         final Map<String, Object> metricsData = Maps.newHashMap();
         metricsData.put("name", metricName);
+        metricsData.put("node", historyStore.getNodeId());
+        metricsData.put("resolution", historyResolution.toString());
         final List<Object> values = Lists.newArrayList();
         metricsData.put("values", values);
 
-        while (cursor.hasNext()) {
-            final DBObject value = cursor.next();
-            metricsData.put("node", value.get("node"));
-
-            final MetricType metricType = MetricType.valueOf(((String) value.get("type")).toUpperCase(Locale.ENGLISH));
-            Map<String, Object> dataPoint = Maps.newHashMap();
-            values.add(dataPoint);
+        final MetricType metricType = history.getType();
+        if (metricType == null) {
+            return metricsData;
+        }
+        metricsData.put("type", metricType.toString());
 
-            dataPoint.put("timestamp", value.get("timestamp"));
-            metricsData.put("type", metricType.toString().toLowerCase(Locale.ENGLISH));
+        final String[] fields = metricType.getFields();
+        for (int i = 0; i < history.getTimestamps().size(); i++) {
+            final double[] pointValues = history.getValues().get(i);
 
-            switch (metricType) {
-                case GAUGE:
-                    final Object gaugeValue = value.get("value");
-                    dataPoint.put("value", gaugeValue);
-                    break;
-                case COUNTER:
-                    dataPoint.put("count", value.get("count"));
-                    break;
-                case HISTOGRAM:
-                    dataPoint.put("75-percentile", value.get("75-percentile"));
-                    dataPoint.put("95-percentile", value.get("95-percentile"));
-                    dataPoint.put("98-percentile", value.get("98-percentile"));
-                    dataPoint.put("99-percentile", value.get("99-percentile"));
-                    dataPoint.put("999-percentile", value.get("999-percentile"));
-                    dataPoint.put("max", value.get("max"));
-                    dataPoint.put("min", value.get("min"));
-                    dataPoint.put("mean", value.get("mean"));
-                    dataPoint.put("median", value.get("median"));
-                    dataPoint.put("std_dev", value.get("std_dev"));
-                    break;
-                case METER:
-                    dataPoint.put("count", value.get("count"));
-                    dataPoint.put("1-minute-rate", value.get("1-minute-rate"));
-                    dataPoint.put("5-minute-rate", value.get("5-minute-rate"));
-                    dataPoint.put("15-minute-rate", value.get("15-minute-rate"));
-                    dataPoint.put("mean-rate", value.get("mean-rate"));
-                    break;
-                case TIMER:
-                    dataPoint.put("count", value.get("count"));
-                    dataPoint.put("rate-unit", value.get("rate-unit"));
-                    dataPoint.put("1-minute-rate", value.get("1-minute-rate"));
-                    dataPoint.put("5-minute-rate", value.get("5-minute-rate"));
-                    dataPoint.put("15-minute-rate", value.get("15-minute-rate"));
-                    dataPoint.put("mean-rate", value.get("mean-rate"));
-                    dataPoint.put("duration-unit", value.get("duration-unit"));
-                    dataPoint.put("75-percentile", value.get("75-percentile"));
-                    dataPoint.put("95-percentile", value.get("95-percentile"));
-                    dataPoint.put("98-percentile", value.get("98-percentile"));
-                    dataPoint.put("99-percentile", value.get("99-percentile"));
-                    dataPoint.put("999-percentile", value.get("999-percentile"));
-                    dataPoint.put("max", value.get("max"));
-                    dataPoint.put("min", value.get("min"));
-                    dataPoint.put("mean", value.get("mean"));
-                    dataPoint.put("median", value.get("median"));
-                    dataPoint.put("stddev", value.get("stddev"));
-                    break;
+            final Map<String, Object> dataPoint = Maps.newHashMap();
+            dataPoint.put("timestamp", new Date(history.getTimestamps().get(i)));
+            for (int field = 0; field < fields.length; field++) {
+                dataPoint.put(fields[field], pointValues[field]);
             }
-
+            if (metricType == MetricType.TIMER) {
+                // the units the reporter converts to, see MongoDbMetricsReporter
+                dataPoint.put("rate-unit", "second");
+                dataPoint.put("duration-unit", "milliseconds");
+            }
+            values.add(dataPoint);
         }
 
         return metricsData;
@@ -24,6 +24,7 @@ import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiParam;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.graylog2.indexer.fieldcatalog.FieldCatalog;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.shared.rest.resources.RestResource;
 import org.graylog2.shared.security.RestPermissions;
@@ -43,30 +44,38 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 @Path("/system/fields")
 public class SystemFieldsResource extends RestResource {
     private final Indices indices;
+    private final FieldCatalog fieldCatalog;
 
     @Inject
-    public SystemFieldsResource(Indices indices) {
+    public SystemFieldsResource(Indices indices, FieldCatalog fieldCatalog) {
         this.indices = indices;
+        this.fieldCatalog = fieldCatalog;
     }
 
     @GET
     @Timed
     @ApiOperation(value = "Get list of message fields that exist",
-            notes = "This operation is comparably fast because it reads directly from the indexer mapping.")
+            notes = "This operation is comparably fast because it reads from the field catalog or directly from the indexer mapping.")
     @RequiresPermissions(RestPermissions.FIELDNAMES_READ)
     @Produces(APPLICATION_JSON)
     public Map<String, Set<String>> fields(@ApiParam(name = "limit", value = "Maximum number of fields to return. Set to 0 for all fields.", required = false)
-                                           @QueryParam("limit") int limit) {
+                                           @QueryParam("limit") int limit,
+                                           @ApiParam(name = "stream", value = "Only return fields of messages in this stream.", required = false)
+                                           @QueryParam("stream") String streamId) {
         boolean unlimited = limit <= 0;
+        if (streamId != null) {
+            checkPermission(RestPermissions.STREAMS_READ, streamId);
+        }
+        final Set<String> allFields = getAllFields(streamId);
 
         final Set<String> fields;
         if (unlimited) {
-            fields = indices.getAllMessageFields();
+            fields = allFields;
         } else {
             fields = Sets.newHashSet();
             addStandardFields(fields);
             int i = 0;
-            for (String field : indices.getAllMessageFields()) {
+            for (String field : allFields) {
                 if (i == limit) {
                     break;
                 }
@@ -78,6 +87,20 @@ public class SystemFieldsResource extends RestResource {
         return ImmutableMap.of("fields", fields);
     }
 
+    private Set<String> getAllFields(String streamId) {
+        if (!fieldCatalog.isEnabled() || !fieldCatalog.isLoaded()) {
+            return indices.getAllMessageFields();
+        }
+
+        if (streamId == null) {
+            return fieldCatalog.getFields();
+        }
+
+        final Set<String> streamFields = fieldCatalog.getFields(streamId);
+        // streams without recorded fields, e. g. because per-stream tracking is disabled, fall back to all fields
+        return streamFields.isEmpty() ? fieldCatalog.getFields() : streamFields;
+    }
+
     private void addStandardFields(Set<String> fields) {
         fields.add("source");
         fields.add("message");
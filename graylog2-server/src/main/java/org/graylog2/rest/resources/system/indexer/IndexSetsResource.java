@@ -0,0 +1,91 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest.resources.system.indexer;
+
+import com.codahale.metrics.annotation.Timed;
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiParam;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+import org.apache.shiro.authz.annotation.RequiresAuthentication;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.indexer.indexset.IndexSetsConfig;
+import org.graylog2.shared.rest.resources.RestResource;
+import org.graylog2.shared.security.RestPermissions;
+import org.graylog2.shared.system.activities.Activity;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@RequiresAuthentication
+@Api(value = "Indexer/IndexSets", description = "Index sets and the streams written into them")
+@Path("/system/indexer/index_sets")
+public class IndexSetsResource extends RestResource {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexSetsResource.class);
+
+    private final IndexSetRegistry indexSetRegistry;
+    private final ActivityWriter activityWriter;
+
+    @Inject
+    public IndexSetsResource(IndexSetRegistry indexSetRegistry, ActivityWriter activityWriter) {
+        this.indexSetRegistry = indexSetRegistry;
+        this.activityWriter = activityWriter;
+    }
+
+    @GET
+    @Timed
+    @ApiOperation(value = "Get the additional index sets")
+    @RequiresPermissions(RestPermissions.INDICES_READ)
+    @Produces(MediaType.APPLICATION_JSON)
+    public IndexSetsConfig get() {
+        return indexSetRegistry.getConfig();
+    }
+
+    @PUT
+    @Timed
+    @ApiOperation(value = "Replace the additional index sets",
+            notes = "Messages of the assigned streams are written into the index set from now on. " +
+                    "Existing messages are not moved.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "Invalid index sets.")
+    })
+    @RequiresPermissions(RestPermissions.INDICES_CHANGESTATE)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void update(@ApiParam(name = "JSON body", required = true) @NotNull IndexSetsConfig config) {
+        try {
+            indexSetRegistry.saveConfig(config);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+
+        final String msg = "Updated index sets. Reason: REST request.";
+        LOG.info(msg);
+        activityWriter.write(new Activity(msg, IndexSetsResource.class));
+    }
+}
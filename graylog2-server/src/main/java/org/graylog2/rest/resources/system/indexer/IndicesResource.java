@@ -27,8 +27,9 @@ import com.wordnik.swagger.annotations.ApiResponse;
 import com.wordnik.swagger.annotations.ApiResponses;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.elasticsearch.action.admin.indices.stats.CommonStats;
-import org.graylog2.indexer.Deflector;
 import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.indices.IndexStatistics;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.ranges.RebuildIndexRangesJob;
@@ -72,7 +73,7 @@ public class IndicesResource extends RestResource {
     @Inject
     private Cluster cluster;
     @Inject
-    private Deflector deflector;
+    private IndexSetRegistry indexSetRegistry;
     @Inject
     private SystemJobManager systemJobManager;
 
@@ -84,7 +85,7 @@ public class IndicesResource extends RestResource {
     public IndexInfo single(@ApiParam(name = "index") @PathParam("index") String index) {
         checkPermission(RestPermissions.INDICES_READ, index);
 
-        if (!deflector.isGraylog2Index(index)) {
+        if (!indexSetRegistry.isManagedIndex(index)) {
             final String msg = "Index [" + index + "] doesn't look like an index managed by Graylog.";
             LOG.info(msg);
             throw new NotFoundException(msg);
@@ -158,7 +159,8 @@ public class IndicesResource extends RestResource {
     public void reopen(@ApiParam(name = "index") @PathParam("index") String index) {
         checkPermission(RestPermissions.INDICES_CHANGESTATE, index);
 
-        if (!deflector.isGraylog2Index(index)) {
+        final IndexSet indexSet = indexSetRegistry.getForIndex(index);
+        if (indexSet == null) {
             LOG.info("Index [{}] doesn't look like an index managed by Graylog.", index);
             throw new NotFoundException();
         }
@@ -166,7 +168,7 @@ public class IndicesResource extends RestResource {
         indices.reopenIndex(index);
 
         // Trigger index ranges rebuild job.
-        final SystemJob rebuildJob = rebuildIndexRangesJobFactory.create(deflector);
+        final SystemJob rebuildJob = rebuildIndexRangesJobFactory.create(indexSet.getDeflector());
         try {
             systemJobManager.submit(rebuildJob);
         } catch (SystemJobConcurrencyException e) {
@@ -187,12 +189,13 @@ public class IndicesResource extends RestResource {
     public void close(@ApiParam(name = "index") @PathParam("index") @NotNull String index) {
         checkPermission(RestPermissions.INDICES_CHANGESTATE, index);
 
-        if (!deflector.isGraylog2Index(index)) {
+        final IndexSet indexSet = indexSetRegistry.getForIndex(index);
+        if (indexSet == null) {
             LOG.info("Index [{}] doesn't look like an index managed by Graylog.", index);
             throw new NotFoundException();
         }
 
-        if (index.equals(deflector.getCurrentActualTargetIndex())) {
+        if (index.equals(indexSet.getDeflector().getCurrentActualTargetIndex())) {
             throw new ForbiddenException();
         }
 
@@ -200,7 +203,7 @@ public class IndicesResource extends RestResource {
         indices.close(index);
 
         // Trigger index ranges rebuild job.
-        final SystemJob rebuildJob = rebuildIndexRangesJobFactory.create(deflector);
+        final SystemJob rebuildJob = rebuildIndexRangesJobFactory.create(indexSet.getDeflector());
         try {
             systemJobManager.submit(rebuildJob);
         } catch (SystemJobConcurrencyException e) {
@@ -221,13 +224,14 @@ public class IndicesResource extends RestResource {
     public void delete(@ApiParam(name = "index") @PathParam("index") @NotNull String index) {
         checkPermission(RestPermissions.INDICES_DELETE, index);
 
-        if (!deflector.isGraylog2Index(index)) {
+        final IndexSet indexSet = indexSetRegistry.getForIndex(index);
+        if (indexSet == null) {
             final String msg = "Index [" + index + "] doesn't look like an index managed by Graylog.";
             LOG.info(msg);
             throw new NotFoundException(msg);
         }
 
-        if (index.equals(deflector.getCurrentActualTargetIndex())) {
+        if (index.equals(indexSet.getDeflector().getCurrentActualTargetIndex())) {
             throw new ForbiddenException();
         }
 
@@ -235,7 +239,7 @@ public class IndicesResource extends RestResource {
         indices.delete(index);
 
         // Trigger index ranges rebuild job.
-        final SystemJob rebuildJob = rebuildIndexRangesJobFactory.create(deflector);
+        final SystemJob rebuildJob = rebuildIndexRangesJobFactory.create(indexSet.getDeflector());
         try {
             systemJobManager.submit(rebuildJob);
         } catch (SystemJobConcurrencyException e) {
@@ -47,13 +47,16 @@ public class OutputServiceImpl implements OutputService {
     private final DBCollection dbCollection;
     private final StreamService streamService;
     private final OutputRegistry outputRegistry;
+    private final StreamVersionService streamVersionService;
 
     @Inject
     public OutputServiceImpl(MongoConnection mongoConnection,
                              MongoJackObjectMapperProvider mapperProvider,
                              StreamService streamService,
-                             OutputRegistry outputRegistry) {
+                             OutputRegistry outputRegistry,
+                             StreamVersionService streamVersionService) {
         this.streamService = streamService;
+        this.streamVersionService = streamVersionService;
         final String collectionName = OutputImpl.class.getAnnotation(CollectionName.class).value();
         this.dbCollection = mongoConnection.getDatabase().getCollection(collectionName);
         this.coll = JacksonDBCollection.wrap(dbCollection, OutputImpl.class, String.class, mapperProvider.get());
@@ -109,7 +112,10 @@ public class OutputServiceImpl implements OutputService {
         for (Map.Entry<String, Object> fields : deltas.entrySet())
             update = update.set(fields.getKey(), fields.getValue());
 
-        return coll.findAndModify(DBQuery.is("_id", id), update);
+        final Output output = coll.findAndModify(DBQuery.is("_id", id), update);
+        streamVersionService.streamsChanged();
+
+        return output;
     }
 
     @Override
@@ -20,22 +20,33 @@ package org.graylog2.streams;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import com.google.common.collect.Maps;
 import javax.inject.Inject;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.shared.metrics.MetricHandles;
+import org.graylog2.shared.metrics.MetricLayout;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Stream metrics are used from all processing threads concurrently. Hot paths should resolve the metrics once,
+ * e.g. when the {@link StreamRouterEngine} is created, instead of looking them up per message.
+ */
 public class StreamMetrics {
-    private final MetricRegistry metricRegistry;
+    private static final MetricLayout STREAM_METRICS = new MetricLayout();
+    private static final int INCOMING_MESSAGES = STREAM_METRICS.meter("incomingMessages");
+    private static final int MATCHING_EXCEPTIONS = STREAM_METRICS.meter("matchingExceptions");
+    private static final int RULE_TIMEOUTS = STREAM_METRICS.meter("ruleTimeouts");
+    private static final int FAULTS_EXCEEDED = STREAM_METRICS.meter("faultsExceeded");
+
+    private static final MetricLayout STREAM_RULE_METRICS = new MetricLayout();
+    private static final int EXECUTION_TIME = STREAM_RULE_METRICS.timer("executionTime");
 
-    private final Map<String, Meter> streamIncomingMeters = Maps.newHashMap();
-    private final Map<String, Timer> streamExecutionTimers = Maps.newHashMap();
-    private final Map<String, Meter> streamExceptionMeters = Maps.newHashMap();
-    private final Map<String, Meter> streamRuleTimeoutMeters = Maps.newHashMap();
-    private final Map<String, Meter> streamFaultsExceededMeters = Maps.newHashMap();
+    private final MetricRegistry metricRegistry;
 
+    private final ConcurrentMap<String, MetricHandles> streamMetrics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, MetricHandles> streamRuleMetrics = new ConcurrentHashMap<>();
 
     @Inject
     public StreamMetrics(final MetricRegistry metricRegistry) {
@@ -47,65 +58,37 @@ public class StreamMetrics {
     }
 
     public Timer getExecutionTimer(String streamRuleId) {
-        Timer timer = this.streamExecutionTimers.get(streamRuleId);
-        if (timer == null) {
-            timer = metricRegistry.timer(MetricRegistry.name(StreamRule.class, streamRuleId, "executionTime"));
-            this.streamExecutionTimers.put(streamRuleId, timer);
-        }
-
-        return timer;
+        return resolve(streamRuleMetrics, STREAM_RULE_METRICS, StreamRule.class, streamRuleId).timer(EXECUTION_TIME);
     }
 
-
     public void markExceptionMeter(String streamId) {
-        getExceptionMeter(streamId).mark();
+        getMeter(streamId, MATCHING_EXCEPTIONS).mark();
     }
 
     public void markStreamRuleTimeout(String streamId) {
-        getStreamRuleTimeoutMeter(streamId).mark();
+        getMeter(streamId, RULE_TIMEOUTS).mark();
     }
 
     public void markStreamFaultsExceeded(String streamId) {
-        getStreamFaultsExceededMeter(streamId).mark();
+        getMeter(streamId, FAULTS_EXCEEDED).mark();
     }
 
-    private Meter getIncomingMeter(String streamId) {
-        Meter meter = this.streamIncomingMeters.get(streamId);
-        if (meter == null) {
-            meter = metricRegistry.meter(MetricRegistry.name(Stream.class, streamId, "incomingMessages"));
-            this.streamIncomingMeters.put(streamId, meter);
-        }
-
-        return meter;
-    }
-
-    private Meter getExceptionMeter(String streamId) {
-        Meter meter = this.streamExceptionMeters.get(streamId);
-        if (meter == null) {
-            meter = metricRegistry.meter(MetricRegistry.name(Stream.class, streamId, "matchingExceptions"));
-            this.streamExceptionMeters.put(streamId, meter);
-        }
-
-        return meter;
+    public Meter getIncomingMeter(String streamId) {
+        return getMeter(streamId, INCOMING_MESSAGES);
     }
 
-    private Meter getStreamRuleTimeoutMeter(final String streamId) {
-        Meter meter = this.streamRuleTimeoutMeters.get(streamId);
-        if (meter == null) {
-            meter = metricRegistry.meter(MetricRegistry.name(Stream.class, streamId, "ruleTimeouts"));
-            this.streamRuleTimeoutMeters.put(streamId, meter);
-        }
-
-        return meter;
+    private Meter getMeter(String streamId, int slot) {
+        return resolve(streamMetrics, STREAM_METRICS, Stream.class, streamId).meter(slot);
     }
 
-    private Meter getStreamFaultsExceededMeter(final String streamId) {
-        Meter meter = this.streamFaultsExceededMeters.get(streamId);
-        if (meter == null) {
-            meter = metricRegistry.meter(MetricRegistry.name(Stream.class, streamId, "faultsExceeded"));
-            this.streamFaultsExceededMeters.put(streamId, meter);
+    private MetricHandles resolve(ConcurrentMap<String, MetricHandles> cache, MetricLayout layout, Class<?> klass, String id) {
+        MetricHandles handles = cache.get(id);
+        if (handles == null) {
+            // the registry returns the same instances for concurrent callers, no need to synchronize here
+            handles = layout.resolve(metricRegistry, MetricRegistry.name(klass, id));
+            cache.putIfAbsent(id, handles);
         }
 
-        return meter;
+        return handles;
     }
 }
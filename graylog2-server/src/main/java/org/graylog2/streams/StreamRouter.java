@@ -16,11 +16,17 @@
  */
 package org.graylog2.streams;
 
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import javax.inject.Named;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.stats.ThroughputStats;
+import org.graylog2.shared.tracing.PipelineTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +37,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -43,18 +50,36 @@ public class StreamRouter {
 
     protected final StreamService streamService;
     private final ServerStatus serverStatus;
+    private final ThroughputStats throughputStats;
+    private final PipelineTracer pipelineTracer;
 
     private final AtomicReference<StreamRouterEngine> routerEngine = new AtomicReference<>(null);
+    private final AtomicBoolean updateRequested = new AtomicBoolean(false);
 
     @Inject
     public StreamRouter(StreamService streamService,
                         ServerStatus serverStatus,
                         StreamRouterEngine.Factory routerEngineFactory,
-                        @Named("daemonScheduler") ScheduledExecutorService scheduler) {
+                        @Named("daemonScheduler") ScheduledExecutorService scheduler,
+                        StreamVersionService streamVersionService,
+                        EventBus serverEventBus,
+                        @Named("stream_router_incremental_updates") boolean incrementalUpdates,
+                        @Named("stream_router_version_check_interval") Duration versionCheckInterval,
+                        ThroughputStats throughputStats,
+                        PipelineTracer pipelineTracer) {
         this.streamService = streamService;
         this.serverStatus = serverStatus;
-
-        final StreamRouterEngineUpdater streamRouterEngineUpdater = new StreamRouterEngineUpdater(routerEngine, routerEngineFactory, streamService, executorService());
+        this.throughputStats = throughputStats;
+        this.pipelineTracer = pipelineTracer;
+
+        final StreamRouterEngineUpdater streamRouterEngineUpdater;
+        if (incrementalUpdates) {
+            streamRouterEngineUpdater = new IncrementalStreamRouterEngineUpdater(routerEngine, routerEngineFactory,
+                    streamService, executorService(), streamVersionService, TimeUnit.MILLISECONDS.toNanos(versionCheckInterval.toMilliseconds()));
+            serverEventBus.register(this);
+        } else {
+            streamRouterEngineUpdater = new StreamRouterEngineUpdater(routerEngine, routerEngineFactory, streamService, executorService());
+        }
         this.routerEngine.set(streamRouterEngineUpdater.getNewEngine());
         scheduler.scheduleAtFixedRate(streamRouterEngineUpdater, 0, ENGINE_UPDATE_INTERVAL, TimeUnit.SECONDS);
     }
@@ -75,6 +100,12 @@ public class StreamRouter {
         return engine.match(msg);
     }
 
+    @Subscribe
+    public void handleStreamsChanged(StreamsChangedEvent event) {
+        LOG.debug("Streams have been changed (version={}), scheduling stream router engine update.", event.version());
+        updateRequested.set(true);
+    }
+
     private class StreamRouterEngineUpdater implements Runnable {
         private final AtomicReference<StreamRouterEngine> routerEngine;
         private final StreamRouterEngine.Factory engineFactory;
@@ -94,22 +125,94 @@ public class StreamRouter {
         @Override
         public void run() {
             try {
-                final StreamRouterEngine engine = getNewEngine();
-
-                if (engine.getFingerprint().equals(routerEngine.get().getFingerprint())) {
-                    LOG.debug("Not updating router engine, streams did not change (fingerprint={})", engine.getFingerprint());
-                } else {
-                    LOG.debug("Updating to new stream router engine. (old-fingerprint={} new-fingerprint={}",
-                            routerEngine.get().getFingerprint(), engine.getFingerprint());
-                    routerEngine.set(engine);
-                }
+                updateEngine();
             } catch (Exception e) {
                 LOG.error("Stream router engine update failed!", e);
             }
         }
 
-        private StreamRouterEngine getNewEngine() {
+        protected void updateEngine() {
+            final StreamRouterEngine engine = getNewEngine();
+
+            if (engine.getFingerprint().equals(routerEngine.get().getFingerprint())) {
+                LOG.debug("Not updating router engine, streams did not change (fingerprint={})", engine.getFingerprint());
+            } else {
+                LOG.debug("Updating to new stream router engine. (old-fingerprint={} new-fingerprint={}",
+                        routerEngine.get().getFingerprint(), engine.getFingerprint());
+                routerEngine.set(engine);
+                retainStreamMetrics(engine);
+            }
+        }
+
+        private void retainStreamMetrics(StreamRouterEngine engine) {
+            // drops the counters and latency histograms of deleted and disabled streams
+            final List<String> streamIds = Lists.newArrayListWithCapacity(engine.getStreams().size());
+            for (Stream stream : engine.getStreams()) {
+                streamIds.add(stream.getId());
+            }
+            throughputStats.retainStreams(streamIds);
+            pipelineTracer.retainStreams(streamIds);
+        }
+
+        protected StreamRouterEngine getNewEngine() {
             return engineFactory.create(streamService.loadAllEnabled(), executorService);
         }
     }
+
+    /**
+     * Only reloads the streams after a {@link StreamsChangedEvent} has been received or the stream version counter
+     * differs from the one the current engine has been built for.
+     */
+    private class IncrementalStreamRouterEngineUpdater extends StreamRouterEngineUpdater {
+        private final StreamVersionService streamVersionService;
+        private final long versionCheckIntervalNanos;
+
+        private long engineVersion = -1L;
+        private long lastVersionCheck;
+
+        public IncrementalStreamRouterEngineUpdater(AtomicReference<StreamRouterEngine> routerEngine,
+                                                    StreamRouterEngine.Factory engineFactory,
+                                                    StreamService streamService,
+                                                    ExecutorService executorService,
+                                                    StreamVersionService streamVersionService,
+                                                    long versionCheckIntervalNanos) {
+            super(routerEngine, engineFactory, streamService, executorService);
+            this.streamVersionService = streamVersionService;
+            this.versionCheckIntervalNanos = versionCheckIntervalNanos;
+            this.lastVersionCheck = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            boolean update = updateRequested.getAndSet(false);
+
+            final long now = System.nanoTime();
+            if (!update && now - lastVersionCheck >= versionCheckIntervalNanos) {
+                lastVersionCheck = now;
+                // a failed read returns -1 and forces a reload, which is what the periodic updater would have done
+                final long version = streamVersionService.currentVersion();
+                update = version < 0L || version != engineVersion;
+            }
+
+            if (!update) {
+                return;
+            }
+
+            try {
+                updateEngine();
+            } catch (Exception e) {
+                LOG.error("Stream router engine update failed!", e);
+                updateRequested.set(true);
+            }
+        }
+
+        @Override
+        protected StreamRouterEngine getNewEngine() {
+            // read the version before the streams so that concurrent changes trigger another update
+            final long version = streamVersionService.currentVersion();
+            final StreamRouterEngine engine = super.getNewEngine();
+            engineVersion = version;
+            return engine;
+        }
+    }
 }
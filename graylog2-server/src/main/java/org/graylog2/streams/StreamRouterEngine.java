@@ -17,11 +17,11 @@
 
 package org.graylog2.streams;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.SimpleTimeLimiter;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.common.util.concurrent.UncheckedTimeoutException;
@@ -30,6 +30,7 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.shared.stats.ThroughputStats;
 import org.graylog2.streams.matchers.StreamRuleMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,10 +39,10 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Stream routing engine to select matching streams for a message.
@@ -60,6 +61,10 @@ public class StreamRouterEngine {
 
     private final List<Rule> rulesList;
 
+    // indexed by the position of the stream in the streams list
+    private final Meter[] incomingMeters;
+    private final LongAdder[] throughputCounters;
+
     public interface Factory {
         StreamRouterEngine create(List<Stream> streams, ExecutorService executorService);
     }
@@ -68,7 +73,8 @@ public class StreamRouterEngine {
     public StreamRouterEngine(@Assisted List<Stream> streams,
                               @Assisted ExecutorService executorService,
                               StreamFaultManager streamFaultManager,
-                              StreamMetrics streamMetrics) {
+                              StreamMetrics streamMetrics,
+                              ThroughputStats throughputStats) {
         this.streams = streams;
         this.streamFaultManager = streamFaultManager;
         this.streamMetrics = streamMetrics;
@@ -76,17 +82,28 @@ public class StreamRouterEngine {
         this.streamProcessingTimeout = streamFaultManager.getStreamProcessingTimeout();
         this.fingerprint = new StreamListFingerprint(streams).getFingerprint();
 
+        final List<String> streamIds = Lists.newArrayListWithCapacity(streams.size());
+        this.incomingMeters = new Meter[streams.size()];
+        for (int i = 0; i < streams.size(); i++) {
+            final String streamId = streams.get(i).getId();
+            streamIds.add(streamId);
+            incomingMeters[i] = streamMetrics.getIncomingMeter(streamId);
+        }
+        this.throughputCounters = throughputStats.getStreamThroughputCounters(streamIds);
+
         final List<Rule> presenceRules = Lists.newArrayList();
         final List<Rule> exactRules = Lists.newArrayList();
         final List<Rule> greaterRules = Lists.newArrayList();
         final List<Rule> smallerRules = Lists.newArrayList();
+        final List<Rule> cidrRules = Lists.newArrayList();
         final List<Rule> regexRules = Lists.newArrayList();
 
-        for (Stream stream : streams) {
+        for (int streamIndex = 0; streamIndex < streams.size(); streamIndex++) {
+            final Stream stream = streams.get(streamIndex);
             for (StreamRule streamRule : stream.getStreamRules()) {
                 final Rule rule;
                 try {
-                    rule = new Rule(stream, streamRule, stream.getMatchingType());
+                    rule = new Rule(stream, streamIndex, streamRule, stream.getMatchingType());
                 } catch (InvalidStreamRuleTypeException e) {
                     LOG.warn("Invalid stream rule type. Skipping matching for this rule. " + e.getMessage(), e);
                     continue;
@@ -104,6 +121,9 @@ public class StreamRouterEngine {
                     case SMALLER:
                         smallerRules.add(rule);
                         break;
+                    case CIDR:
+                        cidrRules.add(rule);
+                        break;
                     case REGEX:
                         regexRules.add(rule);
                         break;
@@ -111,12 +131,13 @@ public class StreamRouterEngine {
             }
         }
 
-        final int size = presenceRules.size() + exactRules.size() + greaterRules.size() + smallerRules.size() + regexRules.size();
+        final int size = presenceRules.size() + exactRules.size() + greaterRules.size() + smallerRules.size() + cidrRules.size() + regexRules.size();
         this.rulesList = Lists.newArrayListWithCapacity(size);
         this.rulesList.addAll(presenceRules);
         this.rulesList.addAll(exactRules);
         this.rulesList.addAll(greaterRules);
         this.rulesList.addAll(smallerRules);
+        this.rulesList.addAll(cidrRules);
         this.rulesList.addAll(regexRules);
     }
 
@@ -145,11 +166,13 @@ public class StreamRouterEngine {
      * @return the list of matching streams
      */
     public List<Stream> match(Message message) {
-        final Set<Stream> result = Sets.newHashSet();
-        final Set<Stream> blackList = Sets.newHashSet();
+        // tracked by stream index, hashing the streams for every message is too expensive
+        final boolean[] result = new boolean[streams.size()];
+        final boolean[] blackList = new boolean[streams.size()];
 
         for (final Rule rule : rulesList) {
-            if (blackList.contains(rule.getStream())) {
+            final int streamIndex = rule.getStreamIndex();
+            if (blackList[streamIndex]) {
                 continue;
             }
 
@@ -158,9 +181,9 @@ public class StreamRouterEngine {
             final Stream.MatchingType matchingType = rule.getMatchingType();
             if (streamRuleType != StreamRuleType.PRESENCE && !message.hasField(streamRule.getField())) {
                 if (matchingType == Stream.MatchingType.AND) {
-                    result.remove(rule.getStream());
+                    result[streamIndex] = false;
                     // blacklist stream because it can't match anymore
-                    blackList.add(rule.getStream());
+                    blackList[streamIndex] = true;
                 }
 
                 continue;
@@ -175,24 +198,29 @@ public class StreamRouterEngine {
 
             if (stream == null) {
                 if (matchingType == Stream.MatchingType.AND) {
-                    result.remove(rule.getStream());
+                    result[streamIndex] = false;
                     // blacklist stream because it can't match anymore
-                    blackList.add(rule.getStream());
+                    blackList[streamIndex] = true;
                 }
             } else {
-                result.add(stream);
+                result[streamIndex] = true;
                 if (matchingType == Stream.MatchingType.OR) {
                     // blacklist stream because it is already matched
-                    blackList.add(rule.getStream());
+                    blackList[streamIndex] = true;
                 }
             }
         }
 
-        for (Stream stream : result) {
-            streamMetrics.markIncomingMeter(stream.getId());
+        final ImmutableList.Builder<Stream> matchedStreams = ImmutableList.builder();
+        for (int i = 0; i < result.length; i++) {
+            if (result[i]) {
+                matchedStreams.add(streams.get(i));
+                incomingMeters[i].mark();
+                throughputCounters[i].increment();
+            }
         }
 
-        return ImmutableList.copyOf(result);
+        return matchedStreams.build();
     }
 
     /**
@@ -209,7 +237,7 @@ public class StreamRouterEngine {
 
             for (final StreamRule streamRule : stream.getStreamRules()) {
                 try {
-                    final Rule rule = new Rule(stream, streamRule, stream.getMatchingType());
+                    final Rule rule = new Rule(stream, -1, streamRule, stream.getMatchingType());
                     match.addRule(rule);
                 } catch (InvalidStreamRuleTypeException e) {
                     LOG.warn("Invalid stream rule type. Skipping matching for this rule. " + e.getMessage(), e);
@@ -226,15 +254,19 @@ public class StreamRouterEngine {
 
     private class Rule {
         private final Stream stream;
+        private final int streamIndex;
         private final StreamRule rule;
         private final StreamRuleMatcher matcher;
         private final Stream.MatchingType matchingType;
+        private final Timer executionTimer;
 
-        public Rule(Stream stream, StreamRule rule, Stream.MatchingType matchingType) throws InvalidStreamRuleTypeException {
+        public Rule(Stream stream, int streamIndex, StreamRule rule, Stream.MatchingType matchingType) throws InvalidStreamRuleTypeException {
             this.stream = stream;
+            this.streamIndex = streamIndex;
             this.rule = rule;
             this.matchingType = matchingType;
             this.matcher = StreamRuleMatcherFactory.build(rule.getType());
+            this.executionTimer = streamMetrics.getExecutionTimer(rule.getId());
         }
 
         public Stream.MatchingType getMatchingType() {
@@ -244,7 +276,7 @@ public class StreamRouterEngine {
         @Nullable
         public Stream match(Message message) {
             // TODO Add missing message recordings!
-            try (final Timer.Context ignored = streamMetrics.getExecutionTimer(rule.getId()).time()) {
+            try (final Timer.Context ignored = executionTimer.time()) {
                 if (matcher.match(message, rule)) {
                     return stream;
                 } else {
@@ -262,7 +294,7 @@ public class StreamRouterEngine {
         @Nullable
         private Stream matchWithTimeOut(final Message message, long timeout, TimeUnit unit) {
             Stream matchedStream = null;
-            try (final Timer.Context ignored = streamMetrics.getExecutionTimer(rule.getId()).time()) {
+            try (final Timer.Context ignored = executionTimer.time()) {
                 matchedStream = timeLimiter.callWithTimeout(new Callable<Stream>() {
                     @Override
                     @Nullable
@@ -287,6 +319,10 @@ public class StreamRouterEngine {
         public Stream getStream() {
             return stream;
         }
+
+        public int getStreamIndex() {
+            return streamIndex;
+        }
     }
 
     /**
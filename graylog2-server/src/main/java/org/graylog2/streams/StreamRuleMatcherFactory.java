@@ -43,6 +43,9 @@ public class StreamRuleMatcherFactory {
             case PRESENCE:
                 matcher = new FieldPresenceMatcher();
                 break;
+            case CIDR:
+                matcher = new CidrMatcher();
+                break;
             default:
                 throw new InvalidStreamRuleTypeException();
         }
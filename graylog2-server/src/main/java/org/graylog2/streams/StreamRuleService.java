@@ -22,6 +22,7 @@ import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.rest.resources.streams.rules.requests.CreateStreamRuleRequest;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -36,6 +37,12 @@ public interface StreamRuleService extends PersistedService {
 
     List<StreamRule> loadForStreamId(String streamId) throws NotFoundException;
 
+    /**
+     * @param streamIds the stream IDs
+     * @return the stream rules of the specified streams grouped by stream ID, streams without rules are omitted
+     */
+    Map<String, List<StreamRule>> loadForStreamIds(Collection<String> streamIds);
+
     /**
      * @return the total number of stream rules
      */
@@ -24,20 +24,26 @@ import org.bson.types.ObjectId;
 import org.graylog2.database.MongoConnection;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.database.PersistedServiceImpl;
+import org.graylog2.plugin.database.Persisted;
+import org.graylog2.plugin.database.ValidationException;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.rest.resources.streams.rules.requests.CreateStreamRuleRequest;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class StreamRuleServiceImpl extends PersistedServiceImpl implements StreamRuleService {
+    private final StreamVersionService streamVersionService;
+
     @Inject
-    public StreamRuleServiceImpl(MongoConnection mongoConnection) {
+    public StreamRuleServiceImpl(MongoConnection mongoConnection, StreamVersionService streamVersionService) {
         super(mongoConnection);
+        this.streamVersionService = streamVersionService;
     }
 
     @Override
@@ -82,12 +88,51 @@ public class StreamRuleServiceImpl extends PersistedServiceImpl implements Strea
         );
 
         for (DBObject streamRule : respStreamRules) {
-            streamRules.add(load(streamRule.get("_id").toString()));
+            streamRules.add(new StreamRuleImpl((ObjectId) streamRule.get("_id"), streamRule.toMap()));
         }
 
         return streamRules;
     }
 
+    @Override
+    public Map<String, List<StreamRule>> loadForStreamIds(Collection<String> streamIds) {
+        final List<ObjectId> ids = new ArrayList<>(streamIds.size());
+        for (String streamId : streamIds) {
+            ids.add(new ObjectId(streamId));
+        }
+
+        final List<DBObject> respStreamRules = query(StreamRuleImpl.class,
+                new BasicDBObject(StreamRuleImpl.FIELD_STREAM_ID, new BasicDBObject("$in", ids))
+        );
+
+        final Map<String, List<StreamRule>> streamRules = new HashMap<>(streamIds.size());
+        for (DBObject streamRule : respStreamRules) {
+            final String streamId = streamRule.get(StreamRuleImpl.FIELD_STREAM_ID).toString();
+            List<StreamRule> rules = streamRules.get(streamId);
+            if (rules == null) {
+                rules = new ArrayList<>();
+                streamRules.put(streamId, rules);
+            }
+            rules.add(new StreamRuleImpl((ObjectId) streamRule.get("_id"), streamRule.toMap()));
+        }
+
+        return streamRules;
+    }
+
+    @Override
+    public <T extends Persisted> String save(T model) throws ValidationException {
+        final String id = super.save(model);
+        streamVersionService.streamsChanged();
+        return id;
+    }
+
+    @Override
+    public <T extends Persisted> int destroy(T model) {
+        final int removed = super.destroy(model);
+        streamVersionService.streamsChanged();
+        return removed;
+    }
+
     @Override
     public long totalStreamRuleCount() {
         return totalCount(StreamRuleImpl.class);
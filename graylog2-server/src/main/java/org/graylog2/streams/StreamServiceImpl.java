@@ -31,6 +31,7 @@ import org.graylog2.notifications.NotificationService;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.alarms.AlertCondition;
 import org.graylog2.plugin.database.EmbeddedPersistable;
+import org.graylog2.plugin.database.Persisted;
 import org.graylog2.plugin.database.ValidationException;
 import org.graylog2.plugin.streams.Output;
 import org.graylog2.plugin.streams.Stream;
@@ -40,11 +41,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public class StreamServiceImpl extends PersistedServiceImpl implements StreamService {
@@ -53,18 +56,21 @@ public class StreamServiceImpl extends PersistedServiceImpl implements StreamSer
     private final AlertService alertService;
     private final OutputService outputService;
     private final NotificationService notificationService;
+    private final StreamVersionService streamVersionService;
 
     @Inject
     public StreamServiceImpl(MongoConnection mongoConnection,
                              StreamRuleService streamRuleService,
                              AlertService alertService,
                              OutputService outputService,
-                             NotificationService notificationService) {
+                             NotificationService notificationService,
+                             StreamVersionService streamVersionService) {
         super(mongoConnection);
         this.streamRuleService = streamRuleService;
         this.alertService = alertService;
         this.outputService = outputService;
         this.notificationService = notificationService;
+        this.streamVersionService = streamVersionService;
     }
 
     @SuppressWarnings("unchecked")
@@ -137,19 +143,22 @@ public class StreamServiceImpl extends PersistedServiceImpl implements StreamSer
             query.put(o.getKey(), o.getValue());
         }
 
-        List<DBObject> results = query(StreamImpl.class, query);
+        final List<DBObject> results = query(StreamImpl.class, query);
+        final List<String> streamIds = Lists.newArrayListWithCapacity(results.size());
         for (DBObject o : results) {
-            String id = o.get("_id").toString();
-            List<StreamRule> streamRules = null;
-            try {
-                streamRules = streamRuleService.loadForStreamId(id);
-            } catch (NotFoundException e) {
-                LOG.info("Exception while loading stream rules: " + e);
-            }
+            streamIds.add(o.get("_id").toString());
+        }
 
-            final Set<Output> outputs = loadOutputsForRawStream(o);
+        // Load the rules of all streams with a single query instead of one query per stream.
+        final Map<String, List<StreamRule>> streamRules = streamRuleService.loadForStreamIds(streamIds);
+        final Map<String, Output> outputCache = Maps.newHashMap();
+
+        for (DBObject o : results) {
+            final String id = o.get("_id").toString();
+            final List<StreamRule> rules = streamRules.containsKey(id) ? streamRules.get(id) : Collections.<StreamRule>emptyList();
+            final Set<Output> outputs = loadOutputsForRawStream(o, outputCache);
 
-            streams.add(new StreamImpl((ObjectId) o.get("_id"), o.toMap(), streamRules, outputs));
+            streams.add(new StreamImpl((ObjectId) o.get("_id"), o.toMap(), rules, outputs));
         }
 
         return streams;
@@ -165,16 +174,31 @@ public class StreamServiceImpl extends PersistedServiceImpl implements StreamSer
     }
 
     protected Set<Output> loadOutputsForRawStream(DBObject stream) {
+        return loadOutputsForRawStream(stream, new HashMap<String, Output>());
+    }
+
+    /**
+     * @param outputCache outputs which have already been loaded, shared between the streams of a single load
+     */
+    protected Set<Output> loadOutputsForRawStream(DBObject stream, Map<String, Output> outputCache) {
         List<ObjectId> outputIds = (List<ObjectId>) stream.get(StreamImpl.FIELD_OUTPUTS);
 
         Set<Output> result = new HashSet<>();
         if (outputIds != null)
-            for (ObjectId outputId : outputIds)
-                try {
-                    result.add(outputService.load(outputId.toHexString()));
-                } catch (NotFoundException e) {
-                    LOG.warn("Non-existing output <{}> referenced from stream <{}>!", outputId.toHexString(), stream.get("_id"));
+            for (ObjectId outputId : outputIds) {
+                final String id = outputId.toHexString();
+                Output output = outputCache.get(id);
+                if (output == null) {
+                    try {
+                        output = outputService.load(id);
+                        outputCache.put(id, output);
+                    } catch (NotFoundException e) {
+                        LOG.warn("Non-existing output <{}> referenced from stream <{}>!", id, stream.get("_id"));
+                        continue;
+                    }
                 }
+                result.add(output);
+            }
 
         return result;
     }
@@ -197,6 +221,48 @@ public class StreamServiceImpl extends PersistedServiceImpl implements StreamSer
             }
         }
         super.destroy(stream);
+        streamVersionService.streamsChanged();
+    }
+
+    @Override
+    public <T extends Persisted> String save(T model) throws ValidationException {
+        final boolean routingChanged = isRoutingChanged(model);
+        final String id = super.save(model);
+        if (routingChanged) {
+            streamVersionService.streamsChanged();
+        }
+        return id;
+    }
+
+    /**
+     * Only new streams and changes of the outputs, the matching type or the disabled flag affect the stream router.
+     * Stream rules are stored separately, see {@link StreamRuleServiceImpl}.
+     */
+    private boolean isRoutingChanged(Persisted model) {
+        if (!(model instanceof Stream)) {
+            return true;
+        }
+
+        final DBObject persisted = get(StreamImpl.class, model.getId());
+        if (persisted == null) {
+            return true;
+        }
+
+        final Map<String, Object> fields = model.getFields();
+        // loadAllEnabled() only matches streams with an explicit "disabled: false", so a missing flag differs as well
+        return !Objects.equals(persisted.get(StreamImpl.FIELD_DISABLED), fields.get(StreamImpl.FIELD_DISABLED))
+                || !outputIds(persisted.get(StreamImpl.FIELD_OUTPUTS)).equals(outputIds(fields.get(StreamImpl.FIELD_OUTPUTS)))
+                || !String.valueOf(persisted.get(StreamImpl.FIELD_MATCHING_TYPE)).equals(String.valueOf(fields.get(StreamImpl.FIELD_MATCHING_TYPE)));
+    }
+
+    private static Set<String> outputIds(Object outputs) {
+        final Set<String> result = new HashSet<>();
+        if (outputs instanceof Collection) {
+            for (Object outputId : (Collection<?>) outputs) {
+                result.add(String.valueOf(outputId));
+            }
+        }
+        return result;
     }
 
     public void update(Stream stream, String title, String description) throws ValidationException {
@@ -273,16 +339,20 @@ public class StreamServiceImpl extends PersistedServiceImpl implements StreamSer
     @Override
     public void addAlertCondition(Stream stream, AlertCondition condition) throws ValidationException {
         embed(stream, StreamImpl.EMBEDDED_ALERT_CONDITIONS, (EmbeddedPersistable) condition);
+        // the alert checks cache the alert conditions until the streams change
+        streamVersionService.streamsChanged();
     }
 
     @Override
     public void updateAlertCondition(Stream stream, AlertCondition condition) throws ValidationException {
-        removeAlertCondition(stream, condition.getId());
-        addAlertCondition(stream, condition);
+        removeEmbedded(stream, StreamImpl.EMBEDDED_ALERT_CONDITIONS, condition.getId());
+        embed(stream, StreamImpl.EMBEDDED_ALERT_CONDITIONS, (EmbeddedPersistable) condition);
+        streamVersionService.streamsChanged();
     }
 
     public void removeAlertCondition(Stream stream, String conditionId) {
         removeEmbedded(stream, StreamImpl.EMBEDDED_ALERT_CONDITIONS, conditionId);
+        streamVersionService.streamsChanged();
     }
 
     @Override
@@ -307,6 +377,7 @@ public class StreamServiceImpl extends PersistedServiceImpl implements StreamSer
                 new BasicDBObject("_id", new ObjectId(stream.getId())),
                 new BasicDBObject("$addToSet", new BasicDBObject(StreamImpl.FIELD_OUTPUTS, new ObjectId(output.getId())))
         );
+        streamVersionService.streamsChanged();
     }
 
     @Override
@@ -315,6 +386,7 @@ public class StreamServiceImpl extends PersistedServiceImpl implements StreamSer
                 new BasicDBObject("_id", new ObjectId(stream.getId())),
                 new BasicDBObject("$pull", new BasicDBObject(StreamImpl.FIELD_OUTPUTS, new ObjectId(output.getId())))
         );
+        streamVersionService.streamsChanged();
     }
 
     @Override
@@ -326,5 +398,6 @@ public class StreamServiceImpl extends PersistedServiceImpl implements StreamSer
         collection(StreamImpl.class).update(
                 match, modify, false, true
         );
+        streamVersionService.streamsChanged();
     }
 }
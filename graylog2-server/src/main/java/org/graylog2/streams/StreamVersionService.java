@@ -0,0 +1,104 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams;
+
+import com.google.common.eventbus.EventBus;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.events.ClusterEventBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Keeps a cluster-wide version counter for the routing relevant stream configuration (streams, stream rules and
+ * outputs) and the alert conditions. Every modification bumps the counter and publishes a {@link StreamsChangedEvent},
+ * so that the {@link StreamRouter} and the alert checks only have to reload the streams if something actually changed.
+ */
+@Singleton
+public class StreamVersionService {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamVersionService.class);
+
+    static final String COLLECTION_NAME = "stream_versions";
+    private static final String DOCUMENT_ID = "streams";
+    private static final String FIELD_VERSION = "version";
+
+    private final DBCollection collection;
+    private final EventBus serverEventBus;
+    private final EventBus clusterEventBus;
+
+    @Inject
+    public StreamVersionService(MongoConnection mongoConnection,
+                                EventBus serverEventBus,
+                                @ClusterEventBus EventBus clusterEventBus) {
+        this.collection = mongoConnection.getDatabase().getCollection(COLLECTION_NAME);
+        this.serverEventBus = serverEventBus;
+        this.clusterEventBus = clusterEventBus;
+    }
+
+    /**
+     * @return the current version of the stream configuration, {@code -1} if it couldn't be read
+     */
+    public long currentVersion() {
+        try {
+            final DBObject document = collection.findOne(
+                    new BasicDBObject("_id", DOCUMENT_ID), new BasicDBObject(FIELD_VERSION, 1));
+            return versionOf(document);
+        } catch (MongoException e) {
+            LOG.warn("Couldn't read stream configuration version.", e);
+            return -1L;
+        }
+    }
+
+    /**
+     * Bumps the version counter and notifies all nodes about the change.
+     */
+    public void streamsChanged() {
+        long version = -1L;
+        try {
+            final DBObject document = collection.findAndModify(
+                    new BasicDBObject("_id", DOCUMENT_ID),
+                    new BasicDBObject(FIELD_VERSION, 1),
+                    null,
+                    false,
+                    new BasicDBObject("$inc", new BasicDBObject(FIELD_VERSION, 1L)),
+                    true,
+                    true);
+            version = versionOf(document);
+        } catch (MongoException e) {
+            LOG.warn("Couldn't update stream configuration version.", e);
+        }
+
+        final StreamsChangedEvent event = StreamsChangedEvent.create(version);
+        // the cluster event bus only delivers events to the other nodes
+        serverEventBus.post(event);
+        clusterEventBus.post(event);
+    }
+
+    private static long versionOf(DBObject document) {
+        if (document == null) {
+            return 0L;
+        }
+        final Object version = document.get(FIELD_VERSION);
+        return version instanceof Number ? ((Number) version).longValue() : 0L;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+
+/**
+ * Published whenever streams, stream rules or outputs which are relevant for message routing, or alert conditions
+ * have been modified.
+ */
+@JsonAutoDetect
+@AutoValue
+public abstract class StreamsChangedEvent {
+    private static final String FIELD_VERSION = "version";
+
+    /**
+     * @return the value of the stream version counter after the change
+     */
+    @JsonProperty(FIELD_VERSION)
+    public abstract long version();
+
+    @JsonCreator
+    public static StreamsChangedEvent create(@JsonProperty(FIELD_VERSION) long version) {
+        return new AutoValue_StreamsChangedEvent(version);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams.matchers;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.net.InetAddresses;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.utilities.IpPrefixTrie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Matches if the field value is an IP address contained in one of the networks of the rule value. The rule value is
+ * a list of networks in CIDR notation separated by commas or whitespace, e.g. {@code 10.0.0.0/8, 2001:db8::/32}.
+ */
+public class CidrMatcher implements StreamRuleMatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(CidrMatcher.class);
+
+    private static final Splitter NETWORK_SPLITTER = Splitter.onPattern("[,\\s]+").omitEmptyStrings().trimResults();
+
+    private static final long CACHESIZE = 1000;
+    private static final LoadingCache<String, IpPrefixTrie> networkCache = CacheBuilder.newBuilder().maximumSize(CACHESIZE).build(new CacheLoader<String, IpPrefixTrie>() {
+        @Override
+        public IpPrefixTrie load(String key) throws Exception {
+            final IpPrefixTrie trie = new IpPrefixTrie();
+            for (String network : NETWORK_SPLITTER.split(key)) {
+                if (!trie.add(network)) {
+                    LOG.warn("Ignoring invalid network <{}> in stream rule.", network);
+                }
+            }
+            return trie;
+        }
+    });
+
+    @Override
+    public boolean match(Message msg, StreamRule rule) {
+        final Object value = msg.getField(rule.getField());
+        if (value == null) {
+            return false;
+        }
+
+        final InetAddress address;
+        if (value instanceof InetAddress) {
+            address = (InetAddress) value;
+        } else {
+            final String ipAddress = value.toString().trim();
+            if (!InetAddresses.isInetAddress(ipAddress)) {
+                return false;
+            }
+            address = InetAddresses.forString(ipAddress);
+        }
+
+        try {
+            return rule.getInverted() ^ networkCache.get(rule.getValue()).contains(address);
+        } catch (ExecutionException e) {
+            LOG.error("Unable to get networks from cache: ", e);
+        }
+
+        return false;
+    }
+}
@@ -26,7 +26,8 @@ public abstract class SystemJob {
     // Known types that can be resolved in the SystemJobFactory.
     public enum Type {
         FIX_DEFLECTOR_DELETE_INDEX,
-        FIX_DEFLECTOR_MOVE_INDEX
+        FIX_DEFLECTOR_MOVE_INDEX,
+        REPLAY_DEAD_LETTERS
     }
 
     public abstract void execute();
@@ -16,6 +16,7 @@
  */
 package org.graylog2.system.jobs;
 
+import org.graylog2.indexer.ReplayDeadLettersJob;
 import org.graylog2.indexer.healing.FixDeflectorByDeleteJob;
 import org.graylog2.indexer.healing.FixDeflectorByMoveJob;
 
@@ -28,12 +29,15 @@ import java.util.Locale;
 public class SystemJobFactory {
     private final FixDeflectorByMoveJob.Factory fixDeflectorByMoveJobFactory;
     private final FixDeflectorByDeleteJob.Factory fixDeflectorByDeleteJobFactory;
+    private final ReplayDeadLettersJob.Factory replayDeadLettersJobFactory;
 
     @Inject
     public SystemJobFactory(FixDeflectorByMoveJob.Factory fixDeflectorByMoveJobFactory,
-                            FixDeflectorByDeleteJob.Factory fixDeflectorByDeleteJobFactory) {
+                            FixDeflectorByDeleteJob.Factory fixDeflectorByDeleteJobFactory,
+                            ReplayDeadLettersJob.Factory replayDeadLettersJobFactory) {
         this.fixDeflectorByMoveJobFactory = fixDeflectorByMoveJobFactory;
         this.fixDeflectorByDeleteJobFactory = fixDeflectorByDeleteJobFactory;
+        this.replayDeadLettersJobFactory = replayDeadLettersJobFactory;
     }
 
     public SystemJob build(String jobName) throws NoSuchJobException {
@@ -42,6 +46,8 @@ public class SystemJobFactory {
                 return fixDeflectorByDeleteJobFactory.create();
             case FIX_DEFLECTOR_MOVE_INDEX:
                 return fixDeflectorByMoveJobFactory.create();
+            case REPLAY_DEAD_LETTERS:
+                return replayDeadLettersJobFactory.create();
         }
 
         throw new NoSuchJobException();
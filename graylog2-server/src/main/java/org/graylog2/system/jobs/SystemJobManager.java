@@ -26,6 +26,7 @@ import org.graylog2.shared.system.activities.ActivityWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -64,6 +65,20 @@ public class SystemJobManager {
     }
 
     public String submitWithDelay(final SystemJob job, final long delay, TimeUnit timeUnit) throws SystemJobConcurrencyException {
+        return submitWithDelay(job, delay, timeUnit, null);
+    }
+
+    /**
+     * Submits the given job and runs the callback once it has finished or failed to start.
+     */
+    public String submit(final SystemJob job, final Runnable completionCallback) throws SystemJobConcurrencyException {
+        return submitWithDelay(job, 0, TimeUnit.SECONDS, completionCallback);
+    }
+
+    private String submitWithDelay(final SystemJob job,
+                                   final long delay,
+                                   TimeUnit timeUnit,
+                                   @Nullable final Runnable completionCallback) throws SystemJobConcurrencyException {
         // for immediate jobs, check allowed concurrency right now
         if (delay == 0) {
             checkAllowedConcurrency(job);
@@ -95,6 +110,9 @@ public class SystemJobManager {
                 } catch (SystemJobConcurrencyException ignored) {
                 } finally {
                     jobs.remove(job.getId());
+                    if (completionCallback != null) {
+                        completionCallback.run();
+                    }
                 }
             }
         }, delay, timeUnit);
@@ -0,0 +1,257 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.utilities;
+
+import com.google.common.base.Splitter;
+import com.google.common.net.InetAddresses;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * Path-compressed radix trie over IPv4 and IPv6 networks. Networks are added in CIDR notation, as plain addresses or
+ * as IPv4 patterns with trailing wildcards (e.g. {@code 10.1.*.*}). Lookups visit at most one node per distinct
+ * branching point, independent of the number of networks stored, so the trie can hold tens of thousands of networks.
+ * <p/>
+ * The trie is not thread safe while being built; publish it safely before sharing it between threads.
+ */
+public class IpPrefixTrie {
+    private final Node ipv4Root = new Node(new byte[4], 0);
+    private final Node ipv6Root = new Node(new byte[16], 0);
+
+    /**
+     * Adds the given network to the trie.
+     *
+     * @param pattern a CIDR network, a plain IP address or an IPv4 pattern with trailing wildcards
+     * @return {@code false} if the pattern cannot be expressed as a single network prefix, e.g. host names
+     */
+    public boolean add(String pattern) {
+        if (pattern == null) {
+            return false;
+        }
+        final String trimmed = pattern.trim();
+
+        final int slash = trimmed.indexOf('/');
+        if (slash >= 0) {
+            final String address = trimmed.substring(0, slash);
+            if (!InetAddresses.isInetAddress(address)) {
+                return false;
+            }
+            final int prefixLength;
+            try {
+                prefixLength = Integer.parseInt(trimmed.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return add(InetAddresses.forString(address), prefixLength);
+        }
+
+        if (trimmed.indexOf('*') >= 0) {
+            return addWildcard(trimmed);
+        }
+
+        if (!InetAddresses.isInetAddress(trimmed)) {
+            return false;
+        }
+        final InetAddress address = InetAddresses.forString(trimmed);
+        return add(address, address.getAddress().length * 8);
+    }
+
+    /**
+     * Adds the network defined by the first {@code prefixLength} bits of the given address.
+     */
+    public boolean add(InetAddress address, int prefixLength) {
+        return add(rootFor(address), address.getAddress(), prefixLength);
+    }
+
+    private boolean add(Node root, byte[] bytes, int prefixLength) {
+        if (prefixLength < 0 || prefixLength > bytes.length * 8) {
+            return false;
+        }
+
+        Node node = root;
+        while (true) {
+            if (node.terminal) {
+                // a shorter prefix already covers this network
+                return true;
+            }
+            if (node.bits == prefixLength) {
+                node.makeTerminal();
+                return true;
+            }
+
+            final boolean branch = isSet(bytes, node.bits);
+            final Node child = node.child(branch);
+            if (child == null) {
+                node.setChild(branch, Node.terminal(bytes, prefixLength));
+                return true;
+            }
+
+            final int common = commonPrefixLength(child.key, bytes, node.bits, Math.min(child.bits, prefixLength));
+            if (common == child.bits) {
+                node = child;
+                continue;
+            }
+
+            // the new network diverges inside the compressed path of the child, split it
+            final Node split = new Node(bytes, common);
+            node.setChild(branch, split);
+            if (common == prefixLength) {
+                // the new network covers the whole child
+                split.terminal = true;
+            } else {
+                split.setChild(isSet(child.key, common), child);
+                split.setChild(isSet(bytes, common), Node.terminal(bytes, prefixLength));
+            }
+            return true;
+        }
+    }
+
+    public boolean contains(InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        final byte[] bytes = address.getAddress();
+        final int bits = bytes.length * 8;
+
+        Node node = rootFor(address);
+        while (node != null) {
+            if (!node.prefixMatches(bytes)) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+            if (node.bits == bits) {
+                return false;
+            }
+            node = node.child(isSet(bytes, node.bits));
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return ipv4Root.isEmpty() && ipv6Root.isEmpty();
+    }
+
+    private boolean addWildcard(String pattern) {
+        final List<String> octets = Splitter.on('.').splitToList(pattern);
+        if (octets.size() > 4) {
+            return false;
+        }
+        final byte[] bytes = new byte[4];
+        int prefixLength = 0;
+        boolean wildcardSeen = false;
+        for (int i = 0; i < octets.size(); i++) {
+            final String octet = octets.get(i);
+            if ("*".equals(octet)) {
+                wildcardSeen = true;
+                continue;
+            }
+            if (wildcardSeen) {
+                // only trailing wildcards describe a single prefix
+                return false;
+            }
+            try {
+                final int value = Integer.parseInt(octet);
+                if (value < 0 || value > 255) {
+                    return false;
+                }
+                bytes[i] = (byte) value;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            prefixLength += 8;
+        }
+        return add(ipv4Root, bytes, prefixLength);
+    }
+
+    private Node rootFor(InetAddress address) {
+        return address instanceof Inet4Address ? ipv4Root : ipv6Root;
+    }
+
+    private static int commonPrefixLength(byte[] a, byte[] b, int from, int to) {
+        int bit = from;
+        while (bit < to && isSet(a, bit) == isSet(b, bit)) {
+            bit++;
+        }
+        return bit;
+    }
+
+    private static boolean isSet(byte[] bytes, int bit) {
+        return (bytes[bit >>> 3] & (0x80 >>> (bit & 7))) != 0;
+    }
+
+    private static class Node {
+        // the address bits of this node, only the first "bits" bits are significant
+        private final byte[] key;
+        private final int bits;
+        private Node zero;
+        private Node one;
+        private boolean terminal;
+
+        private Node(byte[] address, int bits) {
+            this.key = address.clone();
+            this.bits = bits;
+        }
+
+        private static Node terminal(byte[] address, int bits) {
+            final Node node = new Node(address, bits);
+            node.terminal = true;
+            return node;
+        }
+
+        private Node child(boolean set) {
+            return set ? one : zero;
+        }
+
+        private void setChild(boolean set, Node child) {
+            if (set) {
+                one = child;
+            } else {
+                zero = child;
+            }
+        }
+
+        private void makeTerminal() {
+            terminal = true;
+            // everything below is covered by this prefix now
+            zero = null;
+            one = null;
+        }
+
+        private boolean isEmpty() {
+            return !terminal && zero == null && one == null;
+        }
+
+        private boolean prefixMatches(byte[] address) {
+            final int fullBytes = bits >>> 3;
+            for (int i = 0; i < fullBytes; i++) {
+                if (key[i] != address[i]) {
+                    return false;
+                }
+            }
+            final int remainingBits = bits & 7;
+            if (remainingBits == 0) {
+                return true;
+            }
+            final int mask = (0xFF00 >>> remainingBits) & 0xFF;
+            return (key[fullBytes] & mask) == (address[fullBytes] & mask);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.alarmcallbacks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import org.graylog2.alerts.Alert;
+import org.graylog2.plugin.alarms.AlertCondition;
+import org.graylog2.plugin.alarms.callbacks.AlarmCallback;
+import org.graylog2.plugin.alarms.callbacks.AlarmCallbackException;
+import org.graylog2.plugin.streams.Stream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AlarmCallbackDispatcherTest {
+    private static final int RETRIES = 2;
+
+    @Mock
+    private AlarmCallbackConfigurationService alarmCallbackConfigurationService;
+    @Mock
+    private AlarmCallbackFactory alarmCallbackFactory;
+    @Mock
+    private EmailAlarmCallback emailAlarmCallback;
+    @Mock
+    private AlarmCallbackHistoryService alarmCallbackHistoryService;
+    @Mock
+    private AlarmCallbackConfiguration configuration;
+    @Mock
+    private AlarmCallback alarmCallback;
+    @Mock
+    private Stream stream;
+    @Mock
+    private AlertCondition alertCondition;
+    @Mock
+    private AlertCondition.CheckResult result;
+    @Mock
+    private Alert alert;
+
+    private MetricRegistry metricRegistry;
+    private AlarmCallbackDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        metricRegistry = new MetricRegistry();
+        dispatcher = new AlarmCallbackDispatcher(alarmCallbackConfigurationService, alarmCallbackFactory,
+                emailAlarmCallback, alarmCallbackHistoryService, metricRegistry, 1, RETRIES, Duration.milliseconds(1L));
+        when(alarmCallbackFactory.create(configuration)).thenReturn(alarmCallback);
+    }
+
+    @Test
+    public void testCallsConfiguredAlarmCallbacks() throws Exception {
+        when(alarmCallbackConfigurationService.getForStream(stream)).thenReturn(Collections.singletonList(configuration));
+
+        dispatcher.dispatch(stream, alertCondition, result, alert);
+
+        verify(alarmCallback, timeout(5000L)).call(stream, result);
+        verify(alarmCallbackHistoryService, timeout(5000L)).success(configuration, alert, alertCondition);
+        verify(emailAlarmCallback, never()).call(stream, result);
+    }
+
+    @Test
+    public void testFallsBackToEmailAlarmCallback() throws Exception {
+        when(alarmCallbackConfigurationService.getForStream(stream)).thenReturn(Collections.<AlarmCallbackConfiguration>emptyList());
+
+        dispatcher.dispatch(stream, alertCondition, result, alert);
+
+        verify(emailAlarmCallback, timeout(5000L)).call(stream, result);
+    }
+
+    @Test
+    public void testRetriesFailedAlarmCallback() throws Exception {
+        when(alarmCallbackConfigurationService.getForStream(stream)).thenReturn(Collections.singletonList(configuration));
+        doThrow(new AlarmCallbackException("Boom")).doNothing().when(alarmCallback).call(stream, result);
+
+        dispatcher.dispatch(stream, alertCondition, result, alert);
+
+        verify(alarmCallbackHistoryService, timeout(5000L)).success(configuration, alert, alertCondition);
+        verify(alarmCallback, timeout(5000L).times(2)).call(stream, result);
+        verify(alarmCallbackHistoryService, never()).error(configuration, alert, alertCondition, "Boom");
+        assertEquals(1L, metricRegistry.meter(name(AlarmCallbackDispatcher.class, "retries")).getCount());
+    }
+
+    @Test
+    public void testRecordsErrorAfterLastRetry() throws Exception {
+        when(alarmCallbackConfigurationService.getForStream(stream)).thenReturn(Collections.singletonList(configuration));
+        doThrow(new AlarmCallbackException("Boom")).when(alarmCallback).call(stream, result);
+
+        dispatcher.dispatch(stream, alertCondition, result, alert);
+
+        verify(alarmCallbackHistoryService, timeout(5000L)).error(configuration, alert, alertCondition, "Boom");
+        verify(alarmCallback, timeout(5000L).times(RETRIES + 1)).call(stream, result);
+        verify(alarmCallbackHistoryService, never()).success(configuration, alert, alertCondition);
+        assertEquals(RETRIES + 1, metricRegistry.meter(name(AlarmCallbackDispatcher.class, "failures")).getCount());
+    }
+
+    @Test
+    public void testRecordsLatencyPerAlarmCallbackClass() throws Exception {
+        when(alarmCallbackConfigurationService.getForStream(stream)).thenReturn(Collections.singletonList(configuration));
+        doNothing().when(alarmCallback).call(stream, result);
+
+        dispatcher.dispatch(stream, alertCondition, result, alert);
+        dispatcher.dispatch(stream, alertCondition, result, alert);
+
+        verify(alarmCallbackHistoryService, timeout(5000L).times(2)).success(configuration, alert, alertCondition);
+        when(alarmCallbackConfigurationService.getForStream(stream)).thenReturn(Collections.<AlarmCallbackConfiguration>emptyList());
+        dispatcher.dispatch(stream, alertCondition, result, alert);
+        verify(emailAlarmCallback, timeout(5000L)).call(stream, result);
+
+        final String configuredType = alarmCallback.getClass().getCanonicalName();
+        final String emailType = emailAlarmCallback.getClass().getCanonicalName();
+        assertEquals(2L, metricRegistry.timer(name(AlarmCallbackDispatcher.class, configuredType, "latency")).getCount());
+        assertFalse(metricRegistry.getNames().contains(name(AlarmCallbackDispatcher.class, "latency")));
+        assertTrue(metricRegistry.getNames().contains(name(AlarmCallbackDispatcher.class, emailType, "latency")));
+    }
+}
@@ -18,6 +18,7 @@ package org.graylog2.alerts;
 
 import com.google.common.collect.Maps;
 import com.google.inject.assistedinject.Assisted;
+import org.graylog2.alerts.streaming.StreamingAlertEvaluator;
 import org.graylog2.alerts.types.FieldContentValueAlertCondition;
 import org.graylog2.alerts.types.FieldValueAlertCondition;
 import org.graylog2.alerts.types.MessageCountAlertCondition;
@@ -48,6 +49,7 @@ import static org.mockito.Mockito.when;
 public abstract class AlertConditionTest {
     protected Stream stream;
     protected Searches searches;
+    protected StreamingAlertEvaluator streamingAlertEvaluator;
     protected MongoConnection mongoConnection;
     protected AlertService alertService;
 
@@ -61,6 +63,7 @@ public abstract class AlertConditionTest {
         when(stream.getId()).thenReturn(STREAM_ID);
 
         searches = mock(Searches.class);
+        streamingAlertEvaluator = mock(StreamingAlertEvaluator.class);
         mongoConnection = mock(MongoConnection.class);
         // TODO use injection please. this sucks so bad
         alertService = spy(new AlertServiceImpl(mongoConnection,
@@ -71,7 +74,7 @@ public abstract class AlertConditionTest {
                                                                          DateTime createdAt,
                                                                          @Assisted("userid") String creatorUserId,
                                                                          Map<String, Object> parameters) {
-                        return new FieldValueAlertCondition(searches, stream, id, createdAt, creatorUserId, parameters);
+                        return new FieldValueAlertCondition(searches, streamingAlertEvaluator, stream, id, createdAt, creatorUserId, parameters);
                     }
                 },
                 new MessageCountAlertCondition.Factory() {
@@ -81,7 +84,7 @@ public abstract class AlertConditionTest {
                                                                            DateTime createdAt,
                                                                            @Assisted("userid") String creatorUserId,
                                                                            Map<String, Object> parameters) {
-                        return new MessageCountAlertCondition(searches, stream, id, createdAt, creatorUserId, parameters);
+                        return new MessageCountAlertCondition(searches, streamingAlertEvaluator, stream, id, createdAt, creatorUserId, parameters);
                     }
                 },
                 new FieldContentValueAlertCondition.Factory() {
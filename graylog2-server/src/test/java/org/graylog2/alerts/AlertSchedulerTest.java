@@ -0,0 +1,180 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.alerts;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.alarmcallbacks.AlarmCallbackDispatcher;
+import org.graylog2.plugin.alarms.AlertCondition;
+import org.graylog2.plugin.streams.Stream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AlertSchedulerTest {
+    @Mock
+    private AlertService alertService;
+    @Mock
+    private AlarmCallbackDispatcher alarmCallbackDispatcher;
+    @Mock
+    private Stream stream;
+    @Mock
+    private AlertCondition alertCondition;
+    @Mock
+    private AlertCondition.CheckResult result;
+    @Mock
+    private Alert alert;
+
+    private MetricRegistry metricRegistry;
+    private Map<Stream, List<AlertCondition>> alertConditions;
+
+    @Before
+    public void setUp() throws Exception {
+        metricRegistry = new MetricRegistry();
+        when(stream.getId()).thenReturn("stream-1");
+        when(alertCondition.getId()).thenReturn("condition-1");
+        when(alertCondition.getParameters()).thenReturn(Collections.<String, Object>emptyMap());
+        when(alertService.triggered(alertCondition)).thenReturn(result);
+        when(alertService.factory(result)).thenReturn(alert);
+        alertConditions = ImmutableMap.<Stream, List<AlertCondition>>of(stream, Collections.singletonList(alertCondition));
+    }
+
+    @Test
+    public void testTriggeredConditionIsSavedAndDispatched() throws Exception {
+        when(result.isTriggered()).thenReturn(true);
+
+        createScheduler(60, Duration.minutes(1L)).schedule(alertConditions);
+
+        verify(alarmCallbackDispatcher, timeout(5000L)).dispatch(stream, alertCondition, result, alert);
+        verify(alertService).save(alert);
+        assertEquals(1L, metricRegistry.meter(name(AlertScheduler.class, "triggered")).getCount());
+    }
+
+    @Test
+    public void testConditionIsCheckedOncePerInterval() throws Exception {
+        final AlertScheduler scheduler = createScheduler(60, Duration.minutes(1L));
+
+        scheduler.schedule(alertConditions);
+        verify(alertService, timeout(5000L)).triggered(alertCondition);
+        Thread.sleep(50L);
+        scheduler.schedule(alertConditions);
+        Thread.sleep(50L);
+
+        verify(alertService, times(1)).triggered(alertCondition);
+        verify(alarmCallbackDispatcher, never()).dispatch(any(Stream.class), any(AlertCondition.class),
+                any(AlertCondition.CheckResult.class), any(Alert.class));
+    }
+
+    @Test
+    public void testConditionCheckIntervalOverridesDefault() throws Exception {
+        when(alertCondition.getParameters()).thenReturn(
+                ImmutableMap.<String, Object>of(AlertScheduler.PARAMETER_CHECK_INTERVAL, 3600));
+        final AlertScheduler scheduler = createScheduler(0, Duration.minutes(1L));
+
+        scheduler.schedule(alertConditions);
+        verify(alertService, timeout(5000L)).triggered(alertCondition);
+        Thread.sleep(50L);
+        scheduler.schedule(alertConditions);
+        Thread.sleep(50L);
+
+        verify(alertService, times(1)).triggered(alertCondition);
+    }
+
+    @Test
+    public void testRunningCheckIsNotStartedAgain() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(alertService.triggered(alertCondition)).thenAnswer(blockUntil(release, new CountDownLatch(1)));
+        final AlertScheduler scheduler = createScheduler(0, Duration.minutes(1L));
+
+        scheduler.schedule(alertConditions);
+        verify(alertService, timeout(5000L)).triggered(alertCondition);
+        scheduler.schedule(alertConditions);
+        release.countDown();
+        Thread.sleep(50L);
+
+        verify(alertService, times(1)).triggered(alertCondition);
+    }
+
+    @Test
+    public void testCheckExceedingTimeoutIsCancelled() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        when(alertService.triggered(alertCondition)).thenAnswer(blockUntil(new CountDownLatch(1), interrupted));
+        final AlertScheduler scheduler = createScheduler(0, Duration.milliseconds(1L));
+
+        scheduler.schedule(alertConditions);
+        verify(alertService, timeout(5000L)).triggered(alertCondition);
+        Thread.sleep(10L);
+        scheduler.schedule(alertConditions);
+
+        assertTrue(interrupted.await(5L, TimeUnit.SECONDS));
+        assertEquals(1L, metricRegistry.meter(name(AlertScheduler.class, "timeouts")).getCount());
+    }
+
+    @Test
+    public void testFailingCheckIsCounted() throws Exception {
+        when(alertService.triggered(alertCondition)).thenThrow(new IllegalStateException("Boom"));
+
+        createScheduler(60, Duration.minutes(1L)).schedule(alertConditions);
+
+        verify(alertService, timeout(5000L)).triggered(alertCondition);
+        Thread.sleep(50L);
+        assertEquals(1L, metricRegistry.meter(name(AlertScheduler.class, "failures")).getCount());
+        verify(alarmCallbackDispatcher, never()).dispatch(any(Stream.class), any(AlertCondition.class),
+                any(AlertCondition.CheckResult.class), any(Alert.class));
+    }
+
+    private AlertScheduler createScheduler(int alertCheckInterval, Duration timeout) {
+        return new AlertScheduler(alertService, alarmCallbackDispatcher, metricRegistry, alertCheckInterval, 1, timeout);
+    }
+
+    private Answer<AlertCondition.CheckResult> blockUntil(final CountDownLatch release, final CountDownLatch interrupted) {
+        return new Answer<AlertCondition.CheckResult>() {
+            @Override
+            public AlertCondition.CheckResult answer(InvocationOnMock invocation) throws Throwable {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return result;
+            }
+        };
+    }
+}
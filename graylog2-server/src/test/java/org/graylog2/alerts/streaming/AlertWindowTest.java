@@ -0,0 +1,154 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.alerts.streaming;
+
+import com.google.common.collect.ImmutableSet;
+import com.mongodb.DBObject;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AlertWindowTest {
+    private static final long START = TimeUnit.DAYS.toMillis(1L);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1L);
+
+    @Test
+    public void testCountsMessagesInsideWindow() throws Exception {
+        final AlertWindow window = new AlertWindow(5, Collections.<String>emptySet(), START);
+
+        window.add(message(null), START);
+        window.add(message(null), START + MINUTE);
+        window.add(message(null), START + 3 * MINUTE);
+
+        assertEquals(3L, statistics(window, 5, START + 4 * MINUTE).getCount());
+        assertEquals(2L, statistics(window, 5, START + 5 * MINUTE + AlertWindow.BUCKET_MILLIS).getCount());
+        assertEquals(1L, statistics(window, 2, START + 4 * MINUTE).getCount());
+        assertEquals(0L, statistics(window, 5, START + 10 * MINUTE).getCount());
+    }
+
+    @Test
+    public void testIncludesBucketOverlappingStartOfRange() throws Exception {
+        final AlertWindow window = new AlertWindow(1, Collections.<String>emptySet(), START);
+        final long halfBucket = AlertWindow.BUCKET_MILLIS / 2;
+
+        // inside the last minute, but in the same bucket as a message which is not
+        window.add(message(null), START + halfBucket + 1);
+        window.add(message(null), START + 1);
+
+        // the approximation may count messages up to one bucket older than the range, but never misses any
+        assertEquals(2L, statistics(window, 1, START + MINUTE + halfBucket).getCount());
+        assertEquals(0L, statistics(window, 1, START + MINUTE + AlertWindow.BUCKET_MILLIS).getCount());
+
+        final WindowStatistics persisted = new WindowStatistics();
+        AlertWindow.collect(persisted, window.toDBObjects(START + MINUTE + halfBucket), 1, START + MINUTE + halfBucket);
+        assertEquals(2L, persisted.getCount());
+    }
+
+    @Test
+    public void testRecyclesBuckets() throws Exception {
+        final AlertWindow window = new AlertWindow(1, Collections.<String>emptySet(), START);
+
+        window.add(message(null), START);
+        window.add(message(null), START + 2 * MINUTE);
+
+        assertEquals(1L, statistics(window, 1, START + 2 * MINUTE).getCount());
+    }
+
+    @Test
+    public void testFieldStatistics() throws Exception {
+        final AlertWindow window = new AlertWindow(5, ImmutableSet.of("took_ms"), START);
+
+        window.add(message(2), START);
+        window.add(message(4), START);
+        window.add(message(null), START);
+        window.add(message("not a number"), START);
+
+        final WindowStatistics statistics = statistics(window, 5, START);
+        final WindowStatistics.FieldStatistics field = statistics.getField("took_ms");
+        assertEquals(4L, statistics.getCount());
+        assertEquals(2L, field.getCount());
+        assertEquals(6.0d, field.getSum(), 0.0001d);
+        assertEquals(3.0d, field.getMean(), 0.0001d);
+        assertEquals(2.0d, field.getMin(), 0.0001d);
+        assertEquals(4.0d, field.getMax(), 0.0001d);
+        assertEquals(1.0d, field.getStdDeviation(), 0.0001d);
+        assertEquals(0L, statistics.getField("unknown").getCount());
+    }
+
+    @Test
+    public void testFieldStatisticsIncludeNumericStrings() throws Exception {
+        final AlertWindow window = new AlertWindow(5, ImmutableSet.of("took_ms"), START);
+
+        window.add(message("2"), START);
+        window.add(message(" 4.5 "), START);
+        window.add(message("NaN"), START);
+        window.add(message("12ms"), START);
+
+        final WindowStatistics.FieldStatistics field = statistics(window, 5, START).getField("took_ms");
+        assertEquals(2L, field.getCount());
+        assertEquals(6.5d, field.getSum(), 0.0001d);
+        assertEquals(4.5d, field.getMax(), 0.0001d);
+    }
+
+    @Test
+    public void testPersistedBucketsMatchLocalStatistics() throws Exception {
+        final AlertWindow window = new AlertWindow(5, ImmutableSet.of("took_ms"), START);
+        window.add(message(2), START);
+        window.add(message(10), START + MINUTE);
+
+        final List<DBObject> buckets = window.toDBObjects(START + MINUTE);
+        final WindowStatistics statistics = new WindowStatistics();
+        AlertWindow.collect(statistics, buckets, 5, START + MINUTE);
+
+        assertEquals(2L, statistics.getCount());
+        assertEquals(12.0d, statistics.getField("took_ms").getSum(), 0.0001d);
+        assertEquals(10.0d, statistics.getField("took_ms").getMax(), 0.0001d);
+    }
+
+    @Test
+    public void testCovers() throws Exception {
+        final AlertWindow window = new AlertWindow(5, ImmutableSet.of("took_ms"), START);
+
+        assertFalse(window.covers(5, null, START + 5 * MINUTE));
+        assertTrue(window.covers(5, null, START + 5 * MINUTE + AlertWindow.BUCKET_MILLIS));
+        assertTrue(window.covers(1, "took_ms", START + 2 * MINUTE));
+        assertFalse(window.covers(1, "other", START + 2 * MINUTE));
+        assertFalse(window.covers(10, null, START + 20 * MINUTE));
+    }
+
+    private static WindowStatistics statistics(AlertWindow window, int minutes, long now) {
+        final WindowStatistics statistics = new WindowStatistics();
+        window.collect(statistics, minutes, now);
+        return statistics;
+    }
+
+    private static Message message(Object value) {
+        final Message message = new Message("test", "source", Tools.iso8601());
+        if (value != null) {
+            message.addField("took_ms", value);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.alerts.streaming;
+
+import com.google.common.collect.ImmutableMap;
+import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
+import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
+import com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.graylog2.alerts.types.MessageCountAlertCondition;
+import org.graylog2.cluster.Node;
+import org.graylog2.cluster.NodeService;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.database.MongoConnectionRule;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.alarms.AlertCondition;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.system.NodeId;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb.InMemoryMongoRuleBuilder.newInMemoryMongoDbRule;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StreamingAlertEvaluatorTest {
+    @ClassRule
+    public static final InMemoryMongoDb IN_MEMORY_MONGO_DB = newInMemoryMongoDbRule().build();
+
+    private static final String STREAM_ID = "stream-1";
+    private static final String LOCAL_NODE = "local-node";
+    private static final String REMOTE_NODE = "remote-node";
+    private static final int MINUTES = 5;
+    private static final long START = TimeUnit.DAYS.toMillis(1L);
+    // late enough for a window started at START to cover MINUTES minutes
+    private static final long NOW = START + TimeUnit.MINUTES.toMillis(MINUTES + 1);
+
+    @Rule
+    public MongoConnectionRule mongoRule = MongoConnectionRule.build("test");
+
+    @Mock
+    private NodeId nodeId;
+    @Mock
+    private NodeService nodeService;
+    @Mock
+    private Stream stream;
+
+    private MongoConnection mongoConnection;
+    private StreamingAlertEvaluator evaluator;
+
+    @Before
+    public void setUp() throws Exception {
+        mongoConnection = mongoRule.getMongoConnection();
+        when(nodeId.toString()).thenReturn(LOCAL_NODE);
+        when(stream.getId()).thenReturn(STREAM_ID);
+        when(nodeService.allActive(Node.Type.SERVER)).thenReturn(ImmutableMap.of(
+                LOCAL_NODE, mock(Node.class),
+                REMOTE_NODE, mock(Node.class)));
+
+        evaluator = new StreamingAlertEvaluator(true, nodeId, nodeService, mongoConnection);
+
+        final MessageCountAlertCondition condition = mock(MessageCountAlertCondition.class);
+        when(condition.getStream()).thenReturn(stream);
+        when(condition.getTime()).thenReturn(MINUTES);
+
+        DateTimeUtils.setCurrentMillisFixed(START);
+        evaluator.updateAlertConditions(Collections.<AlertCondition>singleton(condition));
+
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        evaluator.process(message());
+        evaluator.process(message());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testMergesWindowsOfActiveNodes() throws Exception {
+        insertWindow(REMOTE_NODE, NOW, START, MINUTES, 3L);
+        // windows of nodes which are not active anymore are ignored
+        insertWindow("inactive-node", NOW, START, MINUTES, 100L);
+
+        final WindowStatistics statistics = evaluator.getStatistics(STREAM_ID, MINUTES, null);
+
+        assertNotNull(statistics);
+        assertEquals(5L, statistics.getCount());
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testNoStatisticsIfActiveNodeDidNotPublish() throws Exception {
+        assertNull(evaluator.getStatistics(STREAM_ID, MINUTES, null));
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testNoStatisticsIfRemoteWindowIsStale() throws Exception {
+        insertWindow(REMOTE_NODE, NOW - TimeUnit.MINUTES.toMillis(1L), START, MINUTES, 3L);
+
+        assertNull(evaluator.getStatistics(STREAM_ID, MINUTES, null));
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testNoStatisticsIfRemoteWindowStartedTooLate() throws Exception {
+        insertWindow(REMOTE_NODE, NOW, NOW - TimeUnit.MINUTES.toMillis(1L), MINUTES, 3L);
+
+        assertNull(evaluator.getStatistics(STREAM_ID, MINUTES, null));
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testNoStatisticsIfRemoteWindowIsTooShort() throws Exception {
+        insertWindow(REMOTE_NODE, NOW, START, MINUTES - 1, 3L);
+
+        assertNull(evaluator.getStatistics(STREAM_ID, MINUTES, null));
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testNoStatisticsIfRemoteNodeDoesNotTrackStream() throws Exception {
+        mongoConnection.getDatabase().getCollection(StreamingAlertEvaluator.COLLECTION_NAME).insert(
+                new BasicDBObject("_id", REMOTE_NODE)
+                        .append("updated_at", NOW)
+                        .append("streams", new BasicDBList()));
+
+        assertNull(evaluator.getStatistics(STREAM_ID, MINUTES, null));
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testNoStatisticsIfLocalWindowIsIncomplete() throws Exception {
+        insertWindow(REMOTE_NODE, NOW, START, MINUTES, 3L);
+        DateTimeUtils.setCurrentMillisFixed(START + TimeUnit.MINUTES.toMillis(MINUTES));
+
+        assertNull(evaluator.getStatistics(STREAM_ID, MINUTES, null));
+    }
+
+    private void insertWindow(String node, long updatedAt, long trackingSince, int minutes, long count) {
+        final BasicDBList buckets = new BasicDBList();
+        buckets.add(new BasicDBObject(AlertWindow.FIELD_EPOCH, NOW / AlertWindow.BUCKET_MILLIS)
+                .append(AlertWindow.FIELD_COUNT, count)
+                .append(AlertWindow.FIELD_FIELDS, new BasicDBList()));
+
+        final BasicDBList streams = new BasicDBList();
+        streams.add(new BasicDBObject("stream_id", STREAM_ID)
+                .append("minutes", minutes)
+                .append("tracking_since", trackingSince)
+                .append("fields", new BasicDBList())
+                .append("buckets", buckets));
+
+        final DBObject document = new BasicDBObject("_id", node)
+                .append("updated_at", updatedAt)
+                .append("streams", streams);
+        mongoConnection.getDatabase().getCollection(StreamingAlertEvaluator.COLLECTION_NAME).insert(document);
+    }
+
+    private Message message() {
+        final Message message = new Message("test", "source", Tools.iso8601());
+        message.setStreams(Collections.singletonList(stream));
+        return message;
+    }
+}
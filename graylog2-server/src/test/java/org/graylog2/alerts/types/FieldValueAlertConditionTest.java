@@ -139,6 +139,7 @@ public class FieldValueAlertConditionTest extends AlertConditionTest {
     protected FieldValueAlertCondition getFieldValueAlertCondition(Map<String, Object> parameters) {
         return new FieldValueAlertCondition(
                 searches,
+                streamingAlertEvaluator,
                 stream,
                 CONDITION_ID,
                 Tools.iso8601(),
@@ -17,6 +17,7 @@
 package org.graylog2.alerts.types;
 
 import org.graylog2.alerts.AlertConditionTest;
+import org.graylog2.alerts.streaming.WindowStatistics;
 import org.graylog2.indexer.InvalidRangeFormatException;
 import org.graylog2.indexer.results.CountResult;
 import org.graylog2.indexer.searches.timeranges.TimeRange;
@@ -31,7 +32,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -107,6 +110,21 @@ public class MessageCountAlertConditionTest extends AlertConditionTest {
         assertNotTriggered(result);
     }
 
+    @Test
+    public void testRunCheckUsesStreamingStatistics() throws Exception {
+        final MessageCountAlertCondition messageCountAlertCondition = getConditionWithParameters(MessageCountAlertCondition.ThresholdType.MORE, threshold);
+
+        final WindowStatistics statistics = mock(WindowStatistics.class);
+        when(statistics.getCount()).thenReturn((long) threshold + 1);
+        when(streamingAlertEvaluator.getStatistics(eq(STREAM_ID), anyInt(), anyString())).thenReturn(statistics);
+        alertLastTriggered(-1);
+
+        final AlertCondition.CheckResult result = alertService.triggered(messageCountAlertCondition);
+
+        assertTriggered(messageCountAlertCondition, result);
+        verify(searches, never()).count(anyString(), any(TimeRange.class), anyString());
+    }
+
     @Test
     public void testNoRecheckDuringGracePeriod() throws Exception {
         final MessageCountAlertCondition.ThresholdType type = MessageCountAlertCondition.ThresholdType.LESS;
@@ -160,6 +178,7 @@ public class MessageCountAlertConditionTest extends AlertConditionTest {
     protected MessageCountAlertCondition getMessageCountAlertCondition(Map<String, Object> parameters) {
         return new MessageCountAlertCondition(
                 searches,
+                streamingAlertEvaluator,
                 stream,
                 CONDITION_ID,
                 Tools.iso8601(),
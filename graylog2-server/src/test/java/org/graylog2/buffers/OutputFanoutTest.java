@@ -0,0 +1,260 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.buffers;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.Configuration;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OutputFanoutTest {
+    private static final int QUEUE_SIZE = 4;
+    private static final long FAULT_COUNT_THRESHOLD = 3;
+
+    private MetricRegistry metricRegistry;
+    private OutputFanout outputFanout;
+
+    @Before
+    public void setUp() throws Exception {
+        final Configuration configuration = mock(Configuration.class);
+        when(configuration.getOutputBufferFanoutQueueSize()).thenReturn(QUEUE_SIZE);
+        when(configuration.getOutputModuleTimeout()).thenReturn(10000L);
+        when(configuration.getOutputFaultCountThreshold()).thenReturn(FAULT_COUNT_THRESHOLD);
+        when(configuration.getOutputFaultPenaltySeconds()).thenReturn(60L);
+
+        metricRegistry = new MetricRegistry();
+        outputFanout = new OutputFanout(configuration, metricRegistry);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        outputFanout.stop();
+    }
+
+    @Test
+    public void testMessagesAreWrittenInOrder() throws Exception {
+        final RecordingOutput output = new RecordingOutput(QUEUE_SIZE);
+        final List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < QUEUE_SIZE; i++) {
+            final Message message = message(i);
+            messages.add(message);
+            assertTrue(outputFanout.offer(output, message));
+        }
+
+        assertTrue(output.written.await(5, TimeUnit.SECONDS));
+        assertEquals(messages, output.messages);
+    }
+
+    @Test
+    public void testFullQueueOnlyDropsMessagesOfItsOutput() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final BlockingOutput slowOutput = new BlockingOutput(release);
+        final RecordingOutput fastOutput = new RecordingOutput(QUEUE_SIZE * 4);
+
+        int dropped = 0;
+        for (int i = 0; i < QUEUE_SIZE * 4; i++) {
+            final Message message = message(i);
+            if (!outputFanout.offer(slowOutput, message)) {
+                dropped++;
+            }
+            assertTrue(outputFanout.offer(fastOutput, message));
+            // keep the queue of the fast output from filling up as well
+            fastOutput.awaitWritten(i + 1);
+        }
+        release.countDown();
+
+        // the first message blocks the writer thread, the queue holds QUEUE_SIZE more
+        assertTrue(dropped >= QUEUE_SIZE * 4 - QUEUE_SIZE - 1);
+        assertTrue(fastOutput.written.await(5, TimeUnit.SECONDS));
+        assertEquals(QUEUE_SIZE * 4, fastOutput.messages.size());
+    }
+
+    @Test
+    public void testQueueSizeIsRoundedUpToPowerOfTwo() throws Exception {
+        assertEquals(1, OutputFanout.queueSize(1));
+        assertEquals(8192, OutputFanout.queueSize(8192));
+        assertEquals(8192, OutputFanout.queueSize(5000));
+        assertEquals(1 << 30, OutputFanout.queueSize((1 << 30) + 1));
+        assertEquals(1 << 30, OutputFanout.queueSize(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testMetricsAreNamedAfterOutputId() throws Exception {
+        final RecordingOutput output = new RecordingOutput(1);
+        outputFanout.register("output-1", output);
+        assertTrue(outputFanout.offer(output, message(0)));
+        assertTrue(output.written.await(5, TimeUnit.SECONDS));
+
+        assertTrue(metricRegistry.getMetrics().containsKey(name(OutputFanout.class, "output-1", "writtenMessages")));
+
+        // a reloaded output of the same ID reuses the names instead of adding new ones
+        outputFanout.remove(output);
+        output.stop();
+        final RecordingOutput reloadedOutput = new RecordingOutput(1);
+        outputFanout.register("output-1", reloadedOutput);
+        assertTrue(outputFanout.offer(reloadedOutput, message(1)));
+        assertTrue(reloadedOutput.written.await(5, TimeUnit.SECONDS));
+
+        assertEquals(5, metricRegistry.getMetrics().size());
+        for (String metricName : metricRegistry.getNames()) {
+            assertTrue(metricName, metricName.startsWith(name(OutputFanout.class, "output-1") + "."));
+        }
+    }
+
+    @Test
+    public void testRemoveStopsQueueAndRemovesMetrics() throws Exception {
+        final RecordingOutput output = new RecordingOutput(1);
+        outputFanout.register("output-1", output);
+        assertTrue(outputFanout.offer(output, message(0)));
+        assertTrue(output.written.await(5, TimeUnit.SECONDS));
+        assertEquals(1, outputFanout.getQueueCount());
+        assertFalse(metricRegistry.getMetrics().isEmpty());
+
+        outputFanout.remove(output);
+        output.stop();
+
+        assertEquals(0, outputFanout.getQueueCount());
+        assertTrue(metricRegistry.getMetrics().isEmpty());
+        // stopped outputs do not get a new queue
+        assertFalse(outputFanout.offer(output, message(1)));
+        assertEquals(0, outputFanout.getQueueCount());
+    }
+
+    @Test
+    public void testStoppedOutputsAreRemovedWhenNewQueueIsCreated() throws Exception {
+        final RecordingOutput stoppedOutput = new RecordingOutput(1);
+        assertTrue(outputFanout.offer(stoppedOutput, message(0)));
+        assertTrue(stoppedOutput.written.await(5, TimeUnit.SECONDS));
+        stoppedOutput.stop();
+
+        assertTrue(outputFanout.offer(new RecordingOutput(1), message(1)));
+
+        assertEquals(1, outputFanout.getQueueCount());
+    }
+
+    @Test
+    public void testFailingOutputIsSuspendedWithoutAffectingOtherOutputs() throws Exception {
+        final FailingOutput failingOutput = new FailingOutput((int) FAULT_COUNT_THRESHOLD);
+        final RecordingOutput output = new RecordingOutput((int) FAULT_COUNT_THRESHOLD);
+
+        for (int i = 0; i < FAULT_COUNT_THRESHOLD; i++) {
+            final Message message = message(i);
+            assertTrue(outputFanout.offer(failingOutput, message));
+            assertTrue(outputFanout.offer(output, message));
+        }
+
+        assertTrue(failingOutput.attempts.await(5, TimeUnit.SECONDS));
+        assertTrue(output.written.await(5, TimeUnit.SECONDS));
+        assertEquals(FAULT_COUNT_THRESHOLD, output.messages.size());
+
+        // the fault penalty is only applied after the last write has returned
+        Thread.sleep(100L);
+        assertFalse(outputFanout.offer(failingOutput, message(42)));
+        assertTrue(outputFanout.offer(output, message(42)));
+    }
+
+    private static Message message(int i) {
+        return new Message("message " + i, "source", Tools.iso8601());
+    }
+
+    private static abstract class TestOutput implements MessageOutput {
+        private volatile boolean running = true;
+
+        @Override
+        public void stop() {
+            running = false;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+
+        @Override
+        public void write(List<Message> messages) throws Exception {
+            for (Message message : messages) {
+                write(message);
+            }
+        }
+    }
+
+    private static class RecordingOutput extends TestOutput {
+        private final List<Message> messages = Collections.synchronizedList(new ArrayList<Message>());
+        private final CountDownLatch written;
+
+        private RecordingOutput(int expectedMessages) {
+            this.written = new CountDownLatch(expectedMessages);
+        }
+
+        @Override
+        public void write(Message message) throws Exception {
+            messages.add(message);
+            written.countDown();
+        }
+
+        private void awaitWritten(int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5000L;
+            while (messages.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1L);
+            }
+        }
+    }
+
+    private static class BlockingOutput extends TestOutput {
+        private final CountDownLatch release;
+
+        private BlockingOutput(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void write(Message message) throws Exception {
+            release.await();
+        }
+    }
+
+    private static class FailingOutput extends TestOutput {
+        private final CountDownLatch attempts;
+
+        private FailingOutput(int expectedAttempts) {
+            this.attempts = new CountDownLatch(expectedAttempts);
+        }
+
+        @Override
+        public void write(Message message) throws Exception {
+            attempts.countDown();
+            throw new IllegalStateException("Boom");
+        }
+    }
+}
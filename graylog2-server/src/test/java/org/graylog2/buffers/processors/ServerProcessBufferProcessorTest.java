@@ -25,6 +25,7 @@ import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.filters.MessageFilter;
 import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.tracing.PipelineTracer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -66,7 +67,7 @@ public class ServerProcessBufferProcessorTest {
                 second);
         final ServerProcessBufferProcessor processor = new ServerProcessBufferProcessor(mock(
                 MetricRegistry.class), filters, mock(Configuration.class), serverStatus, mock(OutputBuffer.class), mock(
-                Journal.class));
+                Journal.class), mock(PipelineTracer.class));
         final List<MessageFilter> filterRegistry = processor.getFilterRegistry();
 
         assertEquals(filterRegistry.get(0), first);
@@ -87,7 +88,8 @@ public class ServerProcessBufferProcessorTest {
                         configuration,
                         mock(ServerStatus.class),
                         outputBuffer,
-                        mock(Journal.class));
+                        mock(Journal.class),
+                        mock(PipelineTracer.class));
         try {
             emptyFilters.handleMessage(new Message("test", "source", Tools.iso8601()));
             fail("A processor with empty filter set should throw an exception");
@@ -133,7 +135,8 @@ public class ServerProcessBufferProcessorTest {
                         configuration,
                         serverStatus,
                         outputBuffer,
-                        journal);
+                        journal,
+                        mock(PipelineTracer.class));
 
         Message filteredoutMessage = new Message("filtered out", "source", Tools.iso8601());
         filteredoutMessage.setJournalOffset(1);
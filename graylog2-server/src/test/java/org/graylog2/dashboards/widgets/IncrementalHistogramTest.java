@@ -0,0 +1,119 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.dashboards.widgets;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.elasticsearch.common.unit.TimeValue;
+import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.searches.Searches;
+import org.graylog2.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IncrementalHistogramTest {
+    private static final DateTime START = new DateTime(2015, 6, 1, 12, 0, 30, DateTimeZone.UTC);
+
+    private final List<Long> messages = Lists.newArrayList();
+    private final List<TimeRange> queriedRanges = Lists.newArrayList();
+    private final IncrementalHistogram.HistogramQuery<RuntimeException> query = new IncrementalHistogram.HistogramQuery<RuntimeException>() {
+        @Override
+        public HistogramResult histogram(TimeRange range) {
+            queriedRanges.add(range);
+            return histogramResult(count(range.getFrom().getMillis(), range.getTo().getMillis()));
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        DateTimeUtils.setCurrentMillisFixed(START.getMillis());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void testRefreshOnlyQueriesOpenBuckets() throws Exception {
+        final IncrementalHistogram histogram = new IncrementalHistogram();
+        final RelativeRange range = new RelativeRange(86400);
+
+        for (int i = 0; i < 60; i++) {
+            final long now = START.plusSeconds(i * 10).getMillis();
+            DateTimeUtils.setCurrentMillisFixed(now);
+            messages.add(now - 5000L);
+            queriedRanges.clear();
+
+            final ComputationResult result = histogram.compute(range, Searches.DateHistogramInterval.MINUTE, query);
+
+            assertThat(result.getResult()).isEqualTo(count(now - 86400000L, now));
+            if (i > 0) {
+                for (TimeRange queriedRange : queriedRanges) {
+                    assertThat(queriedRange.getTo().getMillis() - queriedRange.getFrom().getMillis()).isLessThan(600000L);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBucketStart() throws Exception {
+        final DateTime timestamp = new DateTime(2015, 8, 19, 13, 37, 42, DateTimeZone.UTC);
+
+        assertThat(Searches.DateHistogramInterval.MINUTE.bucketStart(timestamp))
+                .isEqualTo(new DateTime(2015, 8, 19, 13, 37, DateTimeZone.UTC));
+        assertThat(Searches.DateHistogramInterval.HOUR.bucketStart(timestamp))
+                .isEqualTo(new DateTime(2015, 8, 19, 13, 0, DateTimeZone.UTC));
+        assertThat(Searches.DateHistogramInterval.WEEK.bucketStart(timestamp))
+                .isEqualTo(new DateTime(2015, 8, 17, 0, 0, DateTimeZone.UTC));
+        assertThat(Searches.DateHistogramInterval.QUARTER.bucketStart(timestamp))
+                .isEqualTo(new DateTime(2015, 7, 1, 0, 0, DateTimeZone.UTC));
+        assertThat(Searches.DateHistogramInterval.YEAR.bucketStart(timestamp))
+                .isEqualTo(new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC));
+    }
+
+    private Map<Long, Long> count(long from, long to) {
+        final Map<Long, Long> buckets = Maps.newTreeMap();
+        for (long message : messages) {
+            if (message >= from && message <= to) {
+                final DateTime bucket = Searches.DateHistogramInterval.MINUTE.bucketStart(new DateTime(message, DateTimeZone.UTC));
+                final Long count = buckets.get(bucket.getMillis() / 1000L);
+                buckets.put(bucket.getMillis() / 1000L, count == null ? 1L : count + 1L);
+            }
+        }
+        return buckets;
+    }
+
+    private static HistogramResult histogramResult(Map<Long, Long> buckets) {
+        final HistogramResult result = mock(HistogramResult.class);
+        when(result.getResults()).thenReturn(buckets);
+        when(result.took()).thenReturn(TimeValue.timeValueMillis(1L));
+        return result;
+    }
+}
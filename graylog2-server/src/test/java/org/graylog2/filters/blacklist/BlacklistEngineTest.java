@@ -0,0 +1,128 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.filters.blacklist;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BlacklistEngineTest {
+    @Test
+    public void testEmptyBlacklistMatchesNothing() throws Exception {
+        final BlacklistEngine engine = BlacklistEngine.compile(ImmutableList.<FilterDescription>of());
+
+        assertThat(engine.isEmpty()).isTrue();
+        assertThat(engine.matches(message("foo", "bar", "10.0.0.1"))).isFalse();
+    }
+
+    @Test
+    public void testFieldEquality() throws Exception {
+        final BlacklistEngine engine = BlacklistEngine.compile(ImmutableList.<FilterDescription>of(
+                equality("source", "BadHost"),
+                equality("source", "otherhost")));
+
+        assertThat(engine.matches(message("source", "badhost", null))).isTrue();
+        assertThat(engine.matches(message("source", "OTHERHOST", null))).isTrue();
+        assertThat(engine.matches(message("source", "goodhost", null))).isFalse();
+    }
+
+    @Test
+    public void testPatterns() throws Exception {
+        final BlacklistEngine engine = BlacklistEngine.compile(ImmutableList.<FilterDescription>of(
+                pattern("facility", "kern.*"),
+                pattern("facility", "(a)\\1"),
+                pattern("facility", "(?i)mail")));
+
+        assertThat(engine.matches(message("facility", "kernel", null))).isTrue();
+        assertThat(engine.matches(message("facility", "aa", null))).isTrue();
+        assertThat(engine.matches(message("facility", "MAIL", null))).isTrue();
+        assertThat(engine.matches(message("facility", "user", null))).isFalse();
+        assertThat(engine.matches(message("facility", "mailer", null))).isFalse();
+    }
+
+    @Test
+    public void testUnterminatedQuoteDoesNotSwallowOtherPatterns() throws Exception {
+        final BlacklistEngine engine = BlacklistEngine.compile(ImmutableList.<FilterDescription>of(
+                pattern("facility", "\\Qkern.*"),
+                pattern("facility", "mail"),
+                pattern("facility", "user.*")));
+
+        assertThat(engine.matches(message("facility", "kern.*", null))).isTrue();
+        assertThat(engine.matches(message("facility", "kernel", null))).isFalse();
+        assertThat(engine.matches(message("facility", "mail", null))).isTrue();
+        assertThat(engine.matches(message("facility", "user-level", null))).isTrue();
+    }
+
+    @Test
+    public void testInvalidPatternOnlyDropsThatRule() throws Exception {
+        final BlacklistEngine engine = BlacklistEngine.compile(ImmutableList.<FilterDescription>of(
+                pattern("facility", "(unclosed"),
+                pattern("facility", "mail"),
+                equality("source", "badhost")));
+
+        assertThat(engine.matches(message("facility", "mail", null))).isTrue();
+        assertThat(engine.matches(message("facility", "(unclosed", null))).isFalse();
+        assertThat(engine.matches(message("source", "badhost", null))).isTrue();
+    }
+
+    @Test
+    public void testIpConditions() throws Exception {
+        final BlacklistEngine engine = BlacklistEngine.compile(ImmutableList.<FilterDescription>of(
+                ip("10.0.0.0/8"),
+                ip("192.168.1.*"),
+                ip("2001:db8::/32")));
+
+        assertThat(engine.matches(message("foo", "bar", "10.1.2.3"))).isTrue();
+        assertThat(engine.matches(message("foo", "bar", "192.168.1.100"))).isTrue();
+        assertThat(engine.matches(message("foo", "bar", "2001:db8::1"))).isTrue();
+        assertThat(engine.matches(message("foo", "bar", "192.168.2.1"))).isFalse();
+        assertThat(engine.matches(message("foo", "bar", "11.0.0.1"))).isFalse();
+        assertThat(engine.matches(message("foo", "bar", null))).isFalse();
+    }
+
+    private static Message message(String field, String value, String remoteIp) {
+        final Message message = new Message("hello", "junit", Tools.iso8601());
+        message.addField(field, value);
+        if (remoteIp != null) {
+            message.addField("gl2_remote_ip", remoteIp);
+        }
+        return message;
+    }
+
+    private static FilterDescription equality(String field, String value) {
+        final BlacklistFieldEqualityCondition condition = new BlacklistFieldEqualityCondition();
+        condition.fieldName = field;
+        condition.pattern = value;
+        return condition;
+    }
+
+    private static FilterDescription pattern(String field, String regex) {
+        final BlacklistPatternCondition condition = new BlacklistPatternCondition();
+        condition.fieldName = field;
+        condition.setPattern(regex);
+        return condition;
+    }
+
+    private static FilterDescription ip(String pattern) {
+        final BlacklistIpMatcherCondition condition = new BlacklistIpMatcherCondition();
+        condition.setPattern(pattern);
+        return condition;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.graylog2.plugin.Message;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeadLetterSpoolTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private BulkItemResponse item;
+    @Mock
+    private BulkItemResponse.Failure failure;
+
+    private final ObjectMapper objectMapper = new ObjectMapperProvider().get();
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder();
+        when(item.getFailure()).thenReturn(failure);
+        when(failure.getIndex()).thenReturn("graylog_1");
+        when(failure.getType()).thenReturn("message");
+        when(failure.getMessage()).thenReturn("MapperParsingException[failed to parse [took_ms]]");
+    }
+
+    private DeadLetterSpool newSpool(long maxSize) {
+        return new DeadLetterSpool(directory, maxSize, true, objectMapper, new MetricRegistry());
+    }
+
+    private DeadLetter deadLetter() {
+        return new DeadLetter(item, new Message("Hello", "example.org", new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC)));
+    }
+
+    @Test
+    public void appendedDeadLettersCanBeReadFromClosedSegments() throws Exception {
+        final DeadLetterSpool spool = newSpool(1024 * 1024);
+        final DeadLetter deadLetter = deadLetter();
+
+        assertThat(spool.append(ImmutableList.of(deadLetter, deadLetter()))).isTrue();
+        assertThat(spool.getSize()).isPositive();
+        assertThat(spool.getSegmentCount()).isEqualTo(1);
+
+        final List<File> segments = spool.closeAndListSegments();
+        assertThat(segments).hasSize(1);
+
+        final List<SpooledDeadLetter> spooled = spool.read(segments.get(0));
+        assertThat(spooled).hasSize(2);
+        assertThat(spooled.get(0).letterId()).isEqualTo(deadLetter.getId());
+        assertThat(spooled.get(0).index()).isEqualTo("graylog_1");
+        assertThat(spooled.get(0).errorMessage()).startsWith("MapperParsingException");
+        assertThat(spooled.get(0).message()).containsEntry("message", "Hello");
+
+        spool.delete(segments.get(0));
+        assertThat(spool.getSize()).isZero();
+        assertThat(spool.getSegmentCount()).isZero();
+        assertThat(spool.closeAndListSegments()).isEmpty();
+    }
+
+    @Test
+    public void newSegmentIsStartedAfterClosing() throws Exception {
+        final DeadLetterSpool spool = newSpool(1024 * 1024);
+
+        spool.append(ImmutableList.of(deadLetter()));
+        final List<File> first = spool.closeAndListSegments();
+        spool.append(ImmutableList.of(deadLetter()));
+        final List<File> second = spool.closeAndListSegments();
+
+        assertThat(first).hasSize(1);
+        assertThat(second).hasSize(2).startsWith(first.get(0));
+    }
+
+    @Test
+    public void deadLettersAreDroppedIfSpoolIsFull() throws Exception {
+        final DeadLetterSpool spool = newSpool(10);
+
+        assertThat(spool.append(ImmutableList.of(deadLetter()))).isFalse();
+        assertThat(spool.getSize()).isZero();
+        assertThat(spool.closeAndListSegments()).isEmpty();
+    }
+
+    @Test
+    public void segmentsOfPreviousRunAreKeptAndPartialRecordsSkipped() throws Exception {
+        final DeadLetterSpool spool = newSpool(1024 * 1024);
+        spool.append(ImmutableList.of(deadLetter()));
+        final File segment = spool.closeAndListSegments().get(0);
+        Files.write(segment.toPath(), "{\"letter_id\":\"trunc".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        final DeadLetterSpool restarted = newSpool(1024 * 1024);
+        assertThat(restarted.getSize()).isEqualTo(segment.length());
+        assertThat(restarted.getSegmentCount()).isEqualTo(1);
+
+        restarted.append(ImmutableList.of(deadLetter()));
+        final List<File> segments = restarted.closeAndListSegments();
+        assertThat(segments).hasSize(2).startsWith(segment);
+        assertThat(restarted.read(segment)).hasSize(1);
+    }
+}
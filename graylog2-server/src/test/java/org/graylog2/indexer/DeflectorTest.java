@@ -23,6 +23,7 @@ package org.graylog2.indexer;
 import org.elasticsearch.action.admin.indices.stats.IndexStats;
 import org.graylog2.configuration.ElasticsearchConfiguration;
 import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.maintenance.IndexMaintenanceScheduler;
 import org.graylog2.indexer.ranges.CreateNewSingleIndexRangeJob;
 import org.graylog2.system.activities.SystemMessageActivityWriter;
 import org.graylog2.system.jobs.SystemJobManager;
@@ -47,6 +48,7 @@ public class DeflectorTest {
     public void setUp() {
         deflector = new Deflector(
                 mock(SystemJobManager.class),
+                mock(IndexMaintenanceScheduler.class),
                 new ElasticsearchConfiguration(),
                 mock(SystemMessageActivityWriter.class),
                 mock(SetIndexReadOnlyJob.Factory.class),
@@ -77,6 +79,7 @@ public class DeflectorTest {
     public void testBuildIndexName() {
 
         Deflector d = new Deflector(mock(SystemJobManager.class),
+                mock(IndexMaintenanceScheduler.class),
                 mock(ElasticsearchConfiguration.class),
                 mock(SystemMessageActivityWriter.class),
                 mock(SetIndexReadOnlyJob.Factory.class),
@@ -96,6 +99,7 @@ public class DeflectorTest {
     @Test
     public void nullIndexerDoesNotThrow() {
         Deflector d = new Deflector(mock(SystemJobManager.class),
+                mock(IndexMaintenanceScheduler.class),
                 mock(ElasticsearchConfiguration.class),
                 mock(SystemMessageActivityWriter.class),
                 mock(SetIndexReadOnlyJob.Factory.class),
@@ -110,6 +114,7 @@ public class DeflectorTest {
     @Test
     public void nullIndexerDoesNotThrowOnIndexName() {
         Deflector d = new Deflector(mock(SystemJobManager.class),
+                mock(IndexMaintenanceScheduler.class),
                 mock(ElasticsearchConfiguration.class),
                 mock(SystemMessageActivityWriter.class),
                 mock(SetIndexReadOnlyJob.Factory.class),
@@ -135,6 +140,8 @@ public class DeflectorTest {
         assertTrue(deflector.isGraylog2Index("graylog2_100000000"));
         assertFalse(deflector.isGraylog2Index("graylog2_deflector"));
         assertFalse(deflector.isGraylog2Index("graylog2beta_1"));
+        assertFalse(deflector.isGraylog2Index("graylog2_audit_1"));
+        assertFalse(deflector.isGraylog2Index("graylog2_"));
         assertFalse(deflector.isGraylog2Index("HAHA"));
     }
 }
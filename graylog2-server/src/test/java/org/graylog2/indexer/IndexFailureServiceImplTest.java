@@ -0,0 +1,72 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
+import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
+import com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb;
+import org.graylog2.database.MongoConnectionRule;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb.InMemoryMongoRuleBuilder.newInMemoryMongoDbRule;
+import static org.junit.Assert.assertEquals;
+
+public class IndexFailureServiceImplTest {
+    @ClassRule
+    public static final InMemoryMongoDb IN_MEMORY_MONGO_DB = newInMemoryMongoDbRule().build();
+
+    @Rule
+    public MongoConnectionRule mongoRule = MongoConnectionRule.build("test");
+
+    private IndexFailureService indexFailureService;
+
+    @Before
+    public void setUp() {
+        indexFailureService = new IndexFailureServiceImpl(mongoRule.getMongoConnection());
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void saveAllDoesNotDuplicateRetriedFailures() throws Exception {
+        indexFailureService.saveAll(ImmutableList.<IndexFailure>of(indexFailure("letter-1"), indexFailure("letter-2")));
+        assertEquals(2L, indexFailureService.totalCount());
+
+        // a batch which is persisted again after a failure
+        indexFailureService.saveAll(ImmutableList.<IndexFailure>of(indexFailure("letter-1"), indexFailure("letter-2"), indexFailure("letter-3")));
+        assertEquals(3L, indexFailureService.totalCount());
+    }
+
+    private static IndexFailure indexFailure(String letterId) {
+        final Map<String, Object> doc = Maps.newHashMap();
+        doc.put("letter_id", letterId);
+        doc.put("index", "graylog2_0");
+        doc.put("type", "message");
+        doc.put("message", "MapperParsingException");
+        doc.put("timestamp", new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC));
+        doc.put("written", true);
+        return new IndexFailureImpl(doc);
+    }
+}
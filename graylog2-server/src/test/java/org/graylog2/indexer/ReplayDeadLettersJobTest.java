@@ -0,0 +1,188 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.elasticsearch.action.WriteConsistencyLevel;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.graylog2.Configuration;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.plugin.Message;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReplayDeadLettersJobTest {
+    @Mock
+    private Client client;
+    @Mock
+    private BulkRequestBuilder bulkRequestBuilder;
+    @Mock
+    private PersistedDeadLetterService persistedDeadLetterService;
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private ActivityWriter activityWriter;
+    @Mock
+    private Configuration configuration;
+
+    private ReplayDeadLettersJob job;
+
+    @Before
+    public void setUp() throws Exception {
+        when(configuration.getDeadLettersBatchSize()).thenReturn(2);
+        when(configuration.getDeadLettersReplayRate()).thenReturn(10000);
+        when(client.prepareBulk()).thenReturn(bulkRequestBuilder);
+        when(bulkRequestBuilder.setConsistencyLevel(any(WriteConsistencyLevel.class))).thenReturn(bulkRequestBuilder);
+        when(bulkRequestBuilder.add(any(IndexRequest.class))).thenReturn(bulkRequestBuilder);
+
+        final IndexSet defaultIndexSet = indexSet("graylog2_deflector");
+        final IndexSet auditIndexSet = indexSet("audit_deflector");
+        when(indexSetRegistry.getDefault()).thenReturn(defaultIndexSet);
+        when(indexSetRegistry.getForIndex("audit_3")).thenReturn(auditIndexSet);
+
+        job = new ReplayDeadLettersJob(client, persistedDeadLetterService, indexSetRegistry, activityWriter, configuration);
+    }
+
+    @Test
+    public void replaysIntoIndexSetOfFailedIndexAndDeletesIndexedLetters() throws Exception {
+        final PersistedDeadLetter first = deadLetter("000000000000000000000001", "letter-1", "audit_3", message("message-1"));
+        final PersistedDeadLetter second = deadLetter("000000000000000000000002", "letter-2", "graylog2_7", message("message-2"));
+        final PersistedDeadLetter third = deadLetter("000000000000000000000003", "letter-3", null, message(null));
+        when(persistedDeadLetterService.count()).thenReturn(3L);
+        when(persistedDeadLetterService.loadBatch(null, 2)).thenReturn(ImmutableList.of(first, second));
+        when(persistedDeadLetterService.loadBatch("000000000000000000000002", 2)).thenReturn(ImmutableList.of(third));
+        when(persistedDeadLetterService.loadBatch("000000000000000000000003", 2)).thenReturn(Collections.<PersistedDeadLetter>emptyList());
+        when(bulkRequestBuilder.get()).thenReturn(
+                bulkResponse(false, true),
+                bulkResponse(false));
+
+        job.execute();
+
+        final ArgumentCaptor<IndexRequest> requests = ArgumentCaptor.forClass(IndexRequest.class);
+        verify(bulkRequestBuilder, times(3)).add(requests.capture());
+        final List<String> targets = Lists.newArrayList();
+        final List<String> ids = Lists.newArrayList();
+        for (IndexRequest request : requests.getAllValues()) {
+            targets.add(request.index());
+            ids.add(request.id());
+        }
+        assertThat(targets).containsExactly("audit_deflector", "graylog2_deflector", "graylog2_deflector");
+        // the message id is kept, letters without one use their letter id
+        assertThat(ids).containsExactly("message-1", "message-2", "letter-3");
+
+        // the second letter failed again and is kept
+        verify(persistedDeadLetterService).deleteByLetterIds(ImmutableList.of("letter-1"));
+        verify(persistedDeadLetterService).deleteByLetterIds(ImmutableList.of("letter-3"));
+        assertThat(job.getProgress()).isEqualTo(100);
+    }
+
+    @Test
+    public void lettersWithoutMessageAreKept() throws Exception {
+        final PersistedDeadLetter deadLetter = deadLetter("000000000000000000000001", "letter-1", "graylog2_7", null);
+        when(persistedDeadLetterService.count()).thenReturn(1L);
+        when(persistedDeadLetterService.loadBatch(null, 2)).thenReturn(ImmutableList.of(deadLetter));
+        when(persistedDeadLetterService.loadBatch("000000000000000000000001", 2)).thenReturn(Collections.<PersistedDeadLetter>emptyList());
+
+        job.execute();
+
+        verify(bulkRequestBuilder, never()).get();
+        verify(persistedDeadLetterService, never()).deleteByLetterIds(anyCollectionOf(String.class));
+        assertThat(job.getProgress()).isEqualTo(100);
+    }
+
+    @Test
+    public void cancelledJobStopsReplaying() throws Exception {
+        when(persistedDeadLetterService.count()).thenReturn(10L);
+
+        job.requestCancel();
+        job.execute();
+
+        // anyString() matches null as well
+        verify(persistedDeadLetterService, never()).loadBatch(anyString(), anyInt());
+        assertThat(job.getProgress()).isEqualTo(0);
+    }
+
+    private static IndexSet indexSet(String deflectorName) {
+        final Deflector deflector = mock(Deflector.class);
+        when(deflector.getName()).thenReturn(deflectorName);
+        final IndexSet indexSet = mock(IndexSet.class);
+        when(indexSet.getDeflector()).thenReturn(deflector);
+        return indexSet;
+    }
+
+    private static Map<String, Object> message(String id) {
+        final Map<String, Object> message = Maps.newHashMap();
+        message.put("message", "foo");
+        if (id != null) {
+            message.put(Message.FIELD_ID, id);
+        }
+        return message;
+    }
+
+    private static PersistedDeadLetter deadLetter(String id, String letterId, String index, Map<String, Object> message) {
+        final Map<String, Object> fields = Maps.newHashMap();
+        fields.put(PersistedDeadLetterImpl.LETTERID, letterId);
+        fields.put(PersistedDeadLetterImpl.INDEX, index);
+        fields.put(PersistedDeadLetterImpl.MESSAGE, message);
+
+        final PersistedDeadLetter deadLetter = mock(PersistedDeadLetter.class);
+        when(deadLetter.getId()).thenReturn(id);
+        when(deadLetter.getFields()).thenReturn(fields);
+        return deadLetter;
+    }
+
+    private static BulkResponse bulkResponse(boolean... failed) {
+        final BulkItemResponse[] items = new BulkItemResponse[failed.length];
+        for (int i = 0; i < failed.length; i++) {
+            items[i] = mock(BulkItemResponse.class);
+            when(items[i].getItemId()).thenReturn(i);
+            when(items[i].isFailed()).thenReturn(failed[i]);
+        }
+
+        final BulkResponse response = mock(BulkResponse.class);
+        when(response.getItems()).thenReturn(items);
+        return response;
+    }
+}
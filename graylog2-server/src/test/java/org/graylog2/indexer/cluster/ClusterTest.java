@@ -0,0 +1,152 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.cluster;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.base.Ticker;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.client.Client;
+import org.graylog2.indexer.Deflector;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClusterTest {
+    @Mock
+    private Client client;
+    @Mock
+    private Deflector deflector;
+    @Mock
+    private ScheduledExecutorService healthExecutor;
+    @Mock
+    private ClusterHealthResponse greenHealth;
+    @Mock
+    private ClusterHealthResponse redHealth;
+
+    private final AtomicLong nanos = new AtomicLong(0L);
+    private final AtomicInteger healthRequests = new AtomicInteger(0);
+    private volatile ClusterHealthResponse health;
+    private Cluster cluster;
+
+    @Before
+    public void setUp() throws Exception {
+        when(deflector.isUp()).thenReturn(true);
+        when(greenHealth.getStatus()).thenReturn(ClusterHealthStatus.GREEN);
+        when(redHealth.getStatus()).thenReturn(ClusterHealthStatus.RED);
+        health = greenHealth;
+
+        final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        cluster = new Cluster(client, deflector, Duration.seconds(10L), healthExecutor, ticker) {
+            @Override
+            public ClusterHealthResponse health() {
+                healthRequests.incrementAndGet();
+                if (health == null) {
+                    throw new ElasticsearchException("Unreachable");
+                }
+                return health;
+            }
+        };
+    }
+
+    @Test
+    public void testHealthIsRefreshedPeriodicallyOnOwnExecutor() throws Exception {
+        final ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(healthExecutor).scheduleWithFixedDelay(refresh.capture(), eq(0L), eq(5000L), eq(TimeUnit.MILLISECONDS));
+
+        refresh.getValue().run();
+        assertThat(healthRequests.get()).isEqualTo(1);
+        assertThat(cluster.isHealthy()).isTrue();
+
+        health = redHealth;
+        refresh.getValue().run();
+        assertThat(healthRequests.get()).isEqualTo(2);
+        assertThat(cluster.isHealthy()).isFalse();
+        assertThat(cluster.cachedHealthStatus()).isEqualTo(ClusterHealthStatus.RED);
+        assertThat(healthRequests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCachedHealthIsUsedUntilMaxAge() throws Exception {
+        assertThat(cluster.cachedHealth()).isSameAs(greenHealth);
+        assertThat(healthRequests.get()).isEqualTo(1);
+
+        health = redHealth;
+        nanos.set(TimeUnit.SECONDS.toNanos(29L));
+        assertThat(cluster.isHealthy()).isTrue();
+        assertThat(cluster.cachedHealthStatus()).isEqualTo(ClusterHealthStatus.GREEN);
+        assertThat(healthRequests.get()).isEqualTo(1);
+
+        // the background refresh got stuck, ask Elasticsearch directly
+        nanos.set(TimeUnit.SECONDS.toNanos(31L));
+        assertThat(cluster.isHealthy()).isFalse();
+        assertThat(healthRequests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testClusterStateChangesRefreshHealthInBackground() throws Exception {
+        assertThat(cluster.isHealthy()).isTrue();
+
+        health = redHealth;
+        cluster.clusterStateChanged();
+        cluster.clusterStateChanged();
+
+        final ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        // pending refreshes are coalesced and nothing is requested on the calling thread
+        verify(healthExecutor, times(1)).execute(refresh.capture());
+        assertThat(healthRequests.get()).isEqualTo(1);
+        assertThat(cluster.isHealthy()).isTrue();
+
+        refresh.getValue().run();
+        assertThat(healthRequests.get()).isEqualTo(2);
+        assertThat(cluster.isHealthy()).isFalse();
+
+        cluster.clusterStateChanged();
+        verify(healthExecutor, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testUnreachableClusterIsRed() throws Exception {
+        health = null;
+
+        assertThat(cluster.cachedHealth()).isNull();
+        assertThat(cluster.cachedHealthStatus()).isEqualTo(ClusterHealthStatus.RED);
+        assertThat(cluster.isHealthy()).isFalse();
+    }
+}
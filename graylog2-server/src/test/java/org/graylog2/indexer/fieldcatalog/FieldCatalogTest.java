@@ -0,0 +1,169 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.fieldcatalog;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
+import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
+import com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb;
+import org.graylog2.Configuration;
+import org.graylog2.database.MongoConnectionRule;
+import org.graylog2.indexer.esplugin.IndexFieldsChangedEvent;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Stream;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+
+import static com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb.InMemoryMongoRuleBuilder.newInMemoryMongoDbRule;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FieldCatalogTest {
+    @ClassRule
+    public static final InMemoryMongoDb IN_MEMORY_MONGO_DB = newInMemoryMongoDbRule().build();
+    private static final String STREAM_ID = "000000000000000000000001";
+
+    @Rule
+    public MongoConnectionRule mongoRule = MongoConnectionRule.build("test");
+
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private Stream stream;
+
+    private EventBus eventBus;
+    private FieldCatalog fieldCatalog;
+
+    @Before
+    public void setUp() throws Exception {
+        when(configuration.isFieldCatalogEnabled()).thenReturn(true);
+        when(configuration.isFieldCatalogPerStream()).thenReturn(true);
+        when(stream.getId()).thenReturn(STREAM_ID);
+        eventBus = new EventBus();
+        fieldCatalog = newFieldCatalog();
+    }
+
+    private FieldCatalog newFieldCatalog() {
+        return new FieldCatalog(configuration, mongoRule.getMongoConnection(), indexSetRegistry, eventBus);
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void recordTracksFieldsOfAllMessagesAndStreams() throws Exception {
+        fieldCatalog.record(ImmutableList.of(Message.FIELD_ID, "message", "source"), Collections.<Stream>emptyList());
+        fieldCatalog.record(ImmutableList.of("message", "took_ms"), ImmutableList.of(stream));
+
+        assertThat(fieldCatalog.getFields()).containsOnly("message", "source", "took_ms");
+        assertThat(fieldCatalog.getFields(STREAM_ID)).containsOnly("message", "took_ms");
+        assertThat(fieldCatalog.getFields("000000000000000000000002")).isEmpty();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void recordIgnoresStreamsIfPerStreamTrackingIsDisabled() throws Exception {
+        when(configuration.isFieldCatalogPerStream()).thenReturn(false);
+        fieldCatalog = newFieldCatalog();
+
+        fieldCatalog.record(ImmutableList.of("message"), ImmutableList.of(stream));
+
+        assertThat(fieldCatalog.getFields()).containsOnly("message");
+        assertThat(fieldCatalog.getFields(STREAM_ID)).isEmpty();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void flushedFieldsAreLoadedByOtherNodes() throws Exception {
+        fieldCatalog.record(ImmutableList.of("message", "took_ms"), ImmutableList.of(stream));
+        fieldCatalog.flush();
+
+        final FieldCatalog otherNode = newFieldCatalog();
+        otherNode.record(ImmutableList.of("user"), Collections.<Stream>emptyList());
+        otherNode.flush();
+        assertThat(otherNode.isLoaded()).isFalse();
+
+        otherNode.load();
+        assertThat(otherNode.isLoaded()).isTrue();
+        assertThat(otherNode.getFields()).containsOnly("message", "took_ms", "user");
+        assertThat(otherNode.getFields(STREAM_ID)).containsOnly("message", "took_ms");
+
+        fieldCatalog.load();
+        assertThat(fieldCatalog.getFields()).containsOnly("message", "took_ms", "user");
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void replaceForgetsFieldsOfAllMessages() throws Exception {
+        fieldCatalog.record(ImmutableList.of("message", "gone"), ImmutableList.of(stream));
+        fieldCatalog.flush();
+
+        fieldCatalog.replace(ImmutableSet.of(Message.FIELD_ID, "message", "source"));
+
+        final FieldCatalog otherNode = newFieldCatalog();
+        otherNode.load();
+        assertThat(fieldCatalog.getFields()).containsOnly("message", "source");
+        assertThat(otherNode.getFields()).containsOnly("message", "source");
+        assertThat(otherNode.getFields(STREAM_ID)).containsOnly("message", "gone");
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void loadForgetsFieldsRemovedByTheMasterNode() throws Exception {
+        fieldCatalog.record(ImmutableList.of("message", "gone"), Collections.<Stream>emptyList());
+        fieldCatalog.flush();
+
+        final FieldCatalog otherNode = newFieldCatalog();
+        otherNode.load();
+        assertThat(otherNode.getFields()).containsOnly("message", "gone");
+
+        fieldCatalog.replace(ImmutableSet.of("message", "source"));
+        otherNode.record(ImmutableList.of("user"), ImmutableList.of(stream));
+        otherNode.load();
+
+        // fields which haven't been flushed yet are kept
+        assertThat(otherNode.getFields()).containsOnly("message", "source", "user");
+        assertThat(otherNode.getFields(STREAM_ID)).containsOnly("user");
+
+        otherNode.flush();
+        otherNode.load();
+        assertThat(otherNode.getFields()).containsOnly("message", "source", "user");
+        assertThat(otherNode.getFields(STREAM_ID)).containsOnly("user");
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void mappingChangesOfManagedIndicesAreRecorded() throws Exception {
+        when(indexSetRegistry.isManagedIndex("graylog_1")).thenReturn(true);
+
+        eventBus.post(IndexFieldsChangedEvent.create("graylog_1", ImmutableSet.of("message", "took_ms")));
+        eventBus.post(IndexFieldsChangedEvent.create("other_1", ImmutableSet.of("unrelated")));
+
+        assertThat(fieldCatalog.getFields()).containsOnly("message", "took_ms");
+    }
+}
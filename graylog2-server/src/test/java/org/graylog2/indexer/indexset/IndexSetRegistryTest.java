@@ -0,0 +1,185 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.indexset;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.cluster.ClusterConfigChangedEvent;
+import org.graylog2.configuration.ElasticsearchConfiguration;
+import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.IndexHelper;
+import org.graylog2.indexer.SetIndexReadOnlyJob;
+import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.maintenance.IndexMaintenanceScheduler;
+import org.graylog2.indexer.ranges.CreateNewSingleIndexRangeJob;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.indexer.ranges.IndexRangeService;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.cluster.ClusterConfigService;
+import org.graylog2.plugin.indexer.rotation.RotationStrategy;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.system.activities.NullActivityWriter;
+import org.graylog2.system.jobs.SystemJobManager;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.inject.Provider;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IndexSetRegistryTest {
+    private static final String AUDIT_STREAM = "5628f8f0d4c6b1b5ba3d8a1e";
+    private static final String DEBUG_STREAM = "5628f8f0d4c6b1b5ba3d8a1f";
+    private static final String OTHER_STREAM = "5628f8f0d4c6b1b5ba3d8a20";
+
+    @Mock
+    private ClusterConfigService clusterConfigService;
+    @Mock
+    private Indices indices;
+    @Mock
+    private Provider<RotationStrategy> rotationStrategyProvider;
+
+    private IndexSetRegistry indexSetRegistry;
+
+    @Before
+    public void setUp() {
+        final IndexSetsConfig config = IndexSetsConfig.create(ImmutableList.of(
+                indexSetConfig("Audit", "audit", AUDIT_STREAM),
+                indexSetConfig("Debug", "graylog2_debug", DEBUG_STREAM)));
+        when(clusterConfigService.getOrDefault(eq(IndexSetsConfig.class), any(IndexSetsConfig.class))).thenReturn(config);
+
+        final ElasticsearchConfiguration configuration = new ElasticsearchConfiguration();
+        final Deflector deflector = new Deflector(mock(SystemJobManager.class), mock(IndexMaintenanceScheduler.class),
+                configuration, new NullActivityWriter(),
+                mock(SetIndexReadOnlyJob.Factory.class), mock(CreateNewSingleIndexRangeJob.Factory.class), indices);
+        indexSetRegistry = new IndexSetRegistry(configuration, deflector, rotationStrategyProvider,
+                clusterConfigService, indices, mock(SystemJobManager.class), mock(IndexMaintenanceScheduler.class),
+                new NullActivityWriter(),
+                mock(SetIndexReadOnlyJob.Factory.class), mock(CreateNewSingleIndexRangeJob.Factory.class), new EventBus());
+    }
+
+    @Test
+    public void loadsAdditionalIndexSets() {
+        final List<IndexSet> indexSets = indexSetRegistry.getAll();
+
+        assertThat(indexSets).hasSize(3);
+        assertThat(indexSets.get(0).isDefault()).isTrue();
+        assertThat(indexSets.get(1).getDeflector().getName()).isEqualTo("audit_deflector");
+        assertThat(indexSets.get(2).getDeflector().getName()).isEqualTo("graylog2_debug_deflector");
+    }
+
+    @Test
+    public void writesMessagesIntoExactlyOneIndexSet() {
+        assertThat(indexSetRegistry.getWriteTarget(message())).isEqualTo("graylog2_deflector");
+        assertThat(indexSetRegistry.getWriteTarget(message(OTHER_STREAM))).isEqualTo("graylog2_deflector");
+        assertThat(indexSetRegistry.getWriteTarget(message(OTHER_STREAM, AUDIT_STREAM))).isEqualTo("audit_deflector");
+        assertThat(indexSetRegistry.getWriteTarget(message(DEBUG_STREAM))).isEqualTo("graylog2_debug_deflector");
+        assertThat(indexSetRegistry.getWriteTarget(message(DEBUG_STREAM, AUDIT_STREAM))).isEqualTo("audit_deflector");
+    }
+
+    @Test
+    public void messagesWrittenBeforeStreamWasAssignedAreStillFound() {
+        final DateTime now = Tools.nowUTC();
+        final TimeRange range = new AbsoluteRange(now.minusHours(1), now);
+        final IndexRangeService indexRangeService = mock(IndexRangeService.class);
+        final ImmutableSortedSet<IndexRange> indexRanges = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR)
+                .add(IndexRange.create("graylog2_0", now.minusHours(1), now, now, 0))
+                .add(IndexRange.create("graylog2_debug_0", now.minusHours(1), now, now, 0))
+                .build();
+        when(indexRangeService.find(any(DateTime.class), any(DateTime.class))).thenReturn(indexRanges);
+        when(indices.aliasTarget("other_deflector")).thenReturn("other_0");
+
+        // the message is written before its stream is assigned to an index set
+        assertThat(indexSetRegistry.getWriteTarget(message(OTHER_STREAM))).isEqualTo("graylog2_deflector");
+
+        // assign the stream to a new index set, and move the debug stream to it as well
+        final IndexSetsConfig config = IndexSetsConfig.create(ImmutableList.of(
+                indexSetConfig("Audit", "audit", AUDIT_STREAM),
+                indexSetConfig("Debug", "graylog2_debug"),
+                indexSetConfig("Other", "other", OTHER_STREAM, DEBUG_STREAM)));
+        when(clusterConfigService.getOrDefault(eq(IndexSetsConfig.class), any(IndexSetsConfig.class))).thenReturn(config);
+        indexSetRegistry.handleClusterConfigChanged(
+                ClusterConfigChangedEvent.create(now, "node-id", IndexSetsConfig.class.getCanonicalName()));
+
+        assertThat(indexSetRegistry.getWriteTarget(message(OTHER_STREAM))).isEqualTo("other_deflector");
+        assertThat(indexSetRegistry.getWriteTarget(message(DEBUG_STREAM))).isEqualTo("other_deflector");
+        assertThat(IndexHelper.determineAffectedIndices(indexRangeService, indexSetRegistry, range))
+                .containsOnly("graylog2_0", "graylog2_debug_0", "other_0");
+    }
+
+    @Test
+    public void indicesBelongToExactlyOneIndexSet() {
+        assertThat(indexSetRegistry.getForIndex("graylog2_1").isDefault()).isTrue();
+        assertThat(indexSetRegistry.getForIndex("graylog2_debug_1").getTitle()).isEqualTo("Debug");
+        assertThat(indexSetRegistry.getForIndex("audit_12").getTitle()).isEqualTo("Audit");
+        assertThat(indexSetRegistry.getForIndex("audit_deflector")).isNull();
+        assertThat(indexSetRegistry.isManagedIndex("foobar_1")).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validateRejectsDefaultIndexPrefix() {
+        indexSetRegistry.validate(IndexSetsConfig.create(ImmutableList.of(indexSetConfig("Test", "graylog2"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validateRejectsStreamsInSeveralIndexSets() {
+        indexSetRegistry.validate(IndexSetsConfig.create(ImmutableList.of(
+                indexSetConfig("Test 1", "test1", AUDIT_STREAM),
+                indexSetConfig("Test 2", "test2", AUDIT_STREAM))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validateRejectsInvalidRotationPeriod() {
+        indexSetRegistry.validate(IndexSetsConfig.create(ImmutableList.of(
+                IndexSetConfig.create("Test", "test", 1, 0, "time", 0, 0L, "one day", "delete", 10,
+                        Collections.<String>emptySet()))));
+    }
+
+    private static IndexSetConfig indexSetConfig(String title, String prefix, String... streams) {
+        return IndexSetConfig.create(title, prefix, 1, 0, "count", 20000000, 0L, null, "delete", 20,
+                ImmutableSet.copyOf(streams));
+    }
+
+    private static Message message(String... streamIds) {
+        final ImmutableList.Builder<Stream> streams = ImmutableList.builder();
+        for (String streamId : streamIds) {
+            final Stream stream = mock(Stream.class);
+            when(stream.getId()).thenReturn(streamId);
+            streams.add(stream);
+        }
+
+        final Message message = new Message("message", "source", Tools.iso8601());
+        message.setStreams(streams.build());
+        return message;
+    }
+}
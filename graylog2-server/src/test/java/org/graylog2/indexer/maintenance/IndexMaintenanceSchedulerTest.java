@@ -0,0 +1,224 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.maintenance;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.system.jobs.SystemJob;
+import org.graylog2.system.jobs.SystemJobConcurrencyException;
+import org.graylog2.system.jobs.SystemJobManager;
+import org.joda.time.LocalTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.inject.Provider;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IndexMaintenanceSchedulerTest {
+    @Mock
+    private Cluster cluster;
+    @Mock
+    private ClusterHealthResponse health;
+    @Mock
+    private SystemJobManager systemJobManager;
+    @Mock
+    private ScheduledExecutorService executor;
+
+    private IndexMaintenanceScheduler.ClusterCondition clusterCondition;
+    private LocalTime now;
+
+    @Before
+    public void setUp() throws Exception {
+        clusterCondition = IndexMaintenanceScheduler.ClusterCondition.SETTLED;
+        now = new LocalTime(2, 0);
+    }
+
+    private final Provider<Cluster> clusterProvider = new Provider<Cluster>() {
+        @Override
+        public Cluster get() {
+            return cluster;
+        }
+    };
+
+    private IndexMaintenanceScheduler newScheduler(int concurrency, String window) {
+        return new IndexMaintenanceScheduler(clusterProvider, systemJobManager, concurrency, TimeOfDayWindow.parse(window), executor) {
+            @Override
+            ClusterCondition clusterCondition() {
+                return clusterCondition;
+            }
+
+            @Override
+            LocalTime now() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void operationsAreOnlyQueuedOnce() throws Exception {
+        final IndexMaintenanceScheduler scheduler = newScheduler(2, null);
+
+        assertThat(scheduler.submit(IndexOperation.DELETE, "graylog_1", mock(SystemJob.class))).isTrue();
+        assertThat(scheduler.submit(IndexOperation.DELETE, "graylog_1", mock(SystemJob.class))).isFalse();
+        assertThat(scheduler.submit(IndexOperation.OPTIMIZE, "graylog_1", mock(SystemJob.class))).isTrue();
+        assertThat(scheduler.isPending(IndexOperation.DELETE, "graylog_1")).isTrue();
+        assertThat(scheduler.getQueueSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void concurrencyIsBoundedAndSlotsAreReleased() throws Exception {
+        final IndexMaintenanceScheduler scheduler = newScheduler(2, null);
+        final SystemJob first = mock(SystemJob.class);
+        final SystemJob second = mock(SystemJob.class);
+        final SystemJob third = mock(SystemJob.class);
+        scheduler.submit(IndexOperation.DELETE, "graylog_1", first);
+        scheduler.submit(IndexOperation.DELETE, "graylog_2", second);
+        scheduler.submit(IndexOperation.DELETE, "graylog_3", third);
+
+        scheduler.dispatch();
+
+        final ArgumentCaptor<Runnable> callback = ArgumentCaptor.forClass(Runnable.class);
+        verify(systemJobManager).submit(eq(first), callback.capture());
+        verify(systemJobManager).submit(eq(second), any(Runnable.class));
+        verify(systemJobManager, never()).submit(eq(third), any(Runnable.class));
+        assertThat(scheduler.getRunning()).isEqualTo(2);
+
+        callback.getValue().run();
+        assertThat(scheduler.isPending(IndexOperation.DELETE, "graylog_1")).isFalse();
+        scheduler.dispatch();
+
+        verify(systemJobManager).submit(eq(third), any(Runnable.class));
+        assertThat(scheduler.getQueueSize()).isZero();
+    }
+
+    @Test
+    public void lightOperationsArePreferredAndOneSlotIsKeptFree() throws Exception {
+        final IndexMaintenanceScheduler scheduler = newScheduler(2, null);
+        final SystemJob optimize1 = mock(SystemJob.class);
+        final SystemJob optimize2 = mock(SystemJob.class);
+        final SystemJob delete = mock(SystemJob.class);
+        scheduler.submit(IndexOperation.OPTIMIZE, "graylog_5", optimize1);
+        scheduler.submit(IndexOperation.OPTIMIZE, "graylog_6", optimize2);
+
+        scheduler.dispatch();
+        verify(systemJobManager).submit(eq(optimize1), any(Runnable.class));
+        verify(systemJobManager, never()).submit(eq(optimize2), any(Runnable.class));
+
+        scheduler.submit(IndexOperation.DELETE, "graylog_1", delete);
+        scheduler.dispatch();
+        verify(systemJobManager).submit(eq(delete), any(Runnable.class));
+        verify(systemJobManager, never()).submit(eq(optimize2), any(Runnable.class));
+    }
+
+    @Test
+    public void heavyOperationsWaitForSettledClusterAndWindow() throws Exception {
+        final IndexMaintenanceScheduler scheduler = newScheduler(3, "01:00-05:00");
+        final SystemJob optimize = mock(SystemJob.class);
+        final SystemJob close = mock(SystemJob.class);
+        scheduler.submit(IndexOperation.OPTIMIZE, "graylog_5", optimize);
+        scheduler.submit(IndexOperation.CLOSE, "graylog_1", close);
+
+        clusterCondition = IndexMaintenanceScheduler.ClusterCondition.AVAILABLE;
+        scheduler.dispatch();
+        verify(systemJobManager).submit(eq(close), any(Runnable.class));
+        verify(systemJobManager, never()).submit(eq(optimize), any(Runnable.class));
+
+        clusterCondition = IndexMaintenanceScheduler.ClusterCondition.SETTLED;
+        now = new LocalTime(12, 0);
+        scheduler.dispatch();
+        verify(systemJobManager, never()).submit(eq(optimize), any(Runnable.class));
+
+        now = new LocalTime(4, 0);
+        scheduler.dispatch();
+        verify(systemJobManager).submit(eq(optimize), any(Runnable.class));
+    }
+
+    @Test
+    public void nothingRunsWhileClusterIsUnavailable() throws Exception {
+        final IndexMaintenanceScheduler scheduler = newScheduler(2, null);
+        scheduler.submit(IndexOperation.DELETE, "graylog_1", mock(SystemJob.class));
+
+        clusterCondition = IndexMaintenanceScheduler.ClusterCondition.UNAVAILABLE;
+        scheduler.dispatch();
+
+        verify(systemJobManager, never()).submit(any(SystemJob.class), any(Runnable.class));
+        assertThat(scheduler.getQueueSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void delayedOperationsAreNotStartedEarly() throws Exception {
+        final IndexMaintenanceScheduler scheduler = newScheduler(2, null);
+        scheduler.submit(IndexOperation.SET_READ_ONLY, "graylog_1", mock(SystemJob.class), 1, TimeUnit.HOURS);
+
+        scheduler.dispatch();
+
+        verify(systemJobManager, never()).submit(any(SystemJob.class), any(Runnable.class));
+    }
+
+    @Test
+    public void rejectedOperationsAreRequeued() throws Exception {
+        final IndexMaintenanceScheduler scheduler = newScheduler(2, null);
+        final SystemJob job = mock(SystemJob.class);
+        doThrow(new SystemJobConcurrencyException("busy")).when(systemJobManager).submit(eq(job), any(Runnable.class));
+        scheduler.submit(IndexOperation.DELETE, "graylog_1", job);
+
+        scheduler.dispatch();
+        scheduler.dispatch();
+
+        verify(systemJobManager, times(2)).submit(eq(job), any(Runnable.class));
+        assertThat(scheduler.getQueueSize()).isEqualTo(1);
+        assertThat(scheduler.getRunning()).isZero();
+    }
+
+    @Test
+    public void clusterConditionFollowsCachedClusterHealth() throws Exception {
+        final IndexMaintenanceScheduler scheduler = new IndexMaintenanceScheduler(clusterProvider, systemJobManager, 1,
+                TimeOfDayWindow.parse(null), executor);
+
+        when(cluster.cachedHealth()).thenReturn(null);
+        assertThat(scheduler.clusterCondition()).isEqualTo(IndexMaintenanceScheduler.ClusterCondition.UNAVAILABLE);
+
+        when(cluster.cachedHealth()).thenReturn(health);
+        when(health.getStatus()).thenReturn(ClusterHealthStatus.RED);
+        assertThat(scheduler.clusterCondition()).isEqualTo(IndexMaintenanceScheduler.ClusterCondition.UNAVAILABLE);
+
+        when(health.getStatus()).thenReturn(ClusterHealthStatus.GREEN);
+        when(health.getRelocatingShards()).thenReturn(1);
+        assertThat(scheduler.clusterCondition()).isEqualTo(IndexMaintenanceScheduler.ClusterCondition.AVAILABLE);
+
+        when(health.getRelocatingShards()).thenReturn(0);
+        assertThat(scheduler.clusterCondition()).isEqualTo(IndexMaintenanceScheduler.ClusterCondition.SETTLED);
+        verify(cluster, never()).health();
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.maintenance;
+
+import org.joda.time.LocalTime;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimeOfDayWindowTest {
+    @Test
+    public void emptyWindowContainsWholeDay() throws Exception {
+        assertThat(TimeOfDayWindow.parse(null).contains(new LocalTime(0, 0))).isTrue();
+        assertThat(TimeOfDayWindow.parse("").contains(new LocalTime(12, 0))).isTrue();
+        assertThat(TimeOfDayWindow.parse("03:00-03:00").contains(new LocalTime(23, 59))).isTrue();
+    }
+
+    @Test
+    public void windowWithinDay() throws Exception {
+        final TimeOfDayWindow window = TimeOfDayWindow.parse("01:00-05:30");
+
+        assertThat(window.contains(new LocalTime(0, 59))).isFalse();
+        assertThat(window.contains(new LocalTime(1, 0))).isTrue();
+        assertThat(window.contains(new LocalTime(5, 29))).isTrue();
+        assertThat(window.contains(new LocalTime(5, 30))).isFalse();
+    }
+
+    @Test
+    public void windowSpanningMidnight() throws Exception {
+        final TimeOfDayWindow window = TimeOfDayWindow.parse("22:00 - 06:00");
+
+        assertThat(window.contains(new LocalTime(21, 59))).isFalse();
+        assertThat(window.contains(new LocalTime(23, 0))).isTrue();
+        assertThat(window.contains(new LocalTime(3, 0))).isTrue();
+        assertThat(window.contains(new LocalTime(6, 0))).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWindow() throws Exception {
+        TimeOfDayWindow.parse("nightly");
+    }
+}
@@ -32,9 +32,14 @@ import org.graylog2.configuration.ElasticsearchConfiguration;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.indexer.Deflector;
 import org.graylog2.indexer.IndexMapping;
+import org.graylog2.indexer.esplugin.IndicesDeletedEvent;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.indexer.indexset.IndexSetsConfig;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.nosqlunit.IndexCreatingLoadStrategyFactory;
 import org.graylog2.indexer.searches.TimestampStats;
+import org.graylog2.plugin.cluster.ClusterConfigService;
+import org.graylog2.plugin.indexer.rotation.RotationStrategy;
 import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
 import org.graylog2.shared.system.activities.NullActivityWriter;
 import org.joda.time.DateTime;
@@ -48,6 +53,8 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.Collections;
 import java.util.Set;
 import java.util.SortedSet;
 
@@ -55,9 +62,12 @@ import static com.lordofthejars.nosqlunit.elasticsearch.ElasticsearchRule.Elasti
 import static com.lordofthejars.nosqlunit.elasticsearch.EmbeddedElasticsearch.EmbeddedElasticsearchRuleBuilder.newEmbeddedElasticsearchRule;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class EsIndexRangeServiceTest {
@@ -84,6 +94,10 @@ public class EsIndexRangeServiceTest {
     private EventBus localEventBus;
     @Mock
     private EventBus clusterEventBus;
+    @Mock
+    private ClusterConfigService clusterConfigService;
+    @Mock
+    private Provider<RotationStrategy> rotationStrategyProvider;
     private EsIndexRangeService indexRangeService;
 
     public EsIndexRangeServiceTest() {
@@ -94,8 +108,13 @@ public class EsIndexRangeServiceTest {
     @Before
     public void setUp() throws Exception {
         indices = new Indices(client, ELASTICSEARCH_CONFIGURATION, new IndexMapping(client));
-        final Deflector deflector = new Deflector(null, ELASTICSEARCH_CONFIGURATION, new NullActivityWriter(), null, null, indices);
-        indexRangeService = new EsIndexRangeService(client, objectMapper, indices, deflector,
+        final Deflector deflector = new Deflector(null, null, ELASTICSEARCH_CONFIGURATION, new NullActivityWriter(), null, null, indices);
+        when(clusterConfigService.getOrDefault(eq(IndexSetsConfig.class), any(IndexSetsConfig.class)))
+                .thenReturn(IndexSetsConfig.empty());
+        final IndexSetRegistry indexSetRegistry = new IndexSetRegistry(ELASTICSEARCH_CONFIGURATION, deflector,
+                rotationStrategyProvider, clusterConfigService, indices, null, null, new NullActivityWriter(), null, null,
+                new EventBus());
+        indexRangeService = new EsIndexRangeService(client, objectMapper, indices, indexSetRegistry,
                 localEventBus, clusterEventBus, new MetricRegistry());
     }
 
@@ -135,6 +154,22 @@ public class EsIndexRangeServiceTest {
         );
     }
 
+    @Test
+    @UsingDataSet(locations = "EsIndexRangeServiceTest-distinct.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void findDoesNotReturnDeletedIndexRanges() throws Exception {
+        final DateTime begin = new DateTime(2015, 1, 2, 12, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2015, 1, 4, 12, 0, DateTimeZone.UTC);
+        assertThat(indexRangeService.find(begin, end)).hasSize(3);
+
+        indexRangeService.handleIndexDeletion(IndicesDeletedEvent.create(Collections.singletonList("graylog_3")));
+
+        final SortedSet<IndexRange> indexRanges = indexRangeService.find(begin, end);
+        assertThat(indexRanges).hasSize(2);
+        for (IndexRange indexRange : indexRanges) {
+            assertThat(indexRange.indexName()).isNotEqualTo("graylog_3");
+        }
+    }
+
     @Test
     @UsingDataSet(locations = "EsIndexRangeServiceTest.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
     public void findReturnsNothingBeforeBegin() throws Exception {
@@ -0,0 +1,97 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexRangeIntervalTreeTest {
+    private static final DateTime NOW = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    @Test
+    public void testFindReturnsOverlappingRanges() throws Exception {
+        final IndexRange first = indexRange("graylog_1", 0, 10);
+        final IndexRange second = indexRange("graylog_2", 10, 20);
+        final IndexRange third = indexRange("graylog_3", 20, 30);
+        final IndexRangeIntervalTree tree = new IndexRangeIntervalTree(ImmutableList.of(third, first, second));
+
+        assertThat(tree.find(millis(12), millis(15))).containsExactly(second);
+        assertThat(tree.find(millis(10), millis(20))).containsOnly(first, second, third);
+        assertThat(tree.find(millis(31), millis(40))).isEmpty();
+    }
+
+    @Test
+    public void testFindMatchesLinearScan() throws Exception {
+        final Random random = new Random(42L);
+        final List<IndexRange> indexRanges = Lists.newArrayList();
+        for (int i = 0; i < 500; i++) {
+            final int begin = random.nextInt(10000);
+            indexRanges.add(indexRange("graylog_" + i, begin, begin + random.nextInt(500)));
+        }
+        final IndexRangeIntervalTree tree = new IndexRangeIntervalTree(indexRanges);
+
+        for (int i = 0; i < 200; i++) {
+            final int begin = random.nextInt(11000);
+            final int end = begin + random.nextInt(1000);
+            assertThat(tree.find(millis(begin), millis(end))).isEqualTo(linearScan(indexRanges, millis(begin), millis(end)));
+        }
+    }
+
+    @Test
+    public void testWithAndWithout() throws Exception {
+        final IndexRange first = indexRange("graylog_1", 0, 10);
+        final IndexRange second = indexRange("graylog_2", 10, 20);
+        final IndexRangeIntervalTree tree = new IndexRangeIntervalTree(ImmutableList.of(first));
+
+        final IndexRange updatedFirst = indexRange("graylog_1", 0, 15);
+        final IndexRangeIntervalTree updated = tree.with(second).with(updatedFirst);
+        assertThat(updated.size()).isEqualTo(2);
+        assertThat(updated.find(millis(12), millis(12))).containsOnly(updatedFirst, second);
+
+        final IndexRangeIntervalTree removed = updated.without(ImmutableList.of("graylog_1"));
+        assertThat(removed.find(millis(0), millis(30))).containsExactly(second);
+        assertThat(tree.size()).isEqualTo(1);
+    }
+
+    private static SortedSet<IndexRange> linearScan(List<IndexRange> indexRanges, long begin, long end) {
+        final ImmutableSortedSet.Builder<IndexRange> result = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
+        for (IndexRange indexRange : indexRanges) {
+            if (indexRange.begin().getMillis() <= end && indexRange.end().getMillis() >= begin) {
+                result.add(indexRange);
+            }
+        }
+        return result.build();
+    }
+
+    private static long millis(int minutes) {
+        return NOW.plusMinutes(minutes).getMillis();
+    }
+
+    private static IndexRange indexRange(String indexName, int beginMinutes, int endMinutes) {
+        return IndexRange.create(indexName, NOW.plusMinutes(beginMinutes), NOW.plusMinutes(endMinutes), NOW, 0);
+    }
+}
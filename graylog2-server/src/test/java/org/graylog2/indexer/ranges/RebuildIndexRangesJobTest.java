@@ -0,0 +1,175 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RebuildIndexRangesJobTest {
+    private static final String[] INDICES = {"graylog_0", "graylog_1", "graylog_2", "graylog_3"};
+
+    @Mock
+    private Deflector deflector;
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private ActivityWriter activityWriter;
+    @Mock
+    private IndexRangeService indexRangeService;
+    @Mock
+    private IndexRangeRebuildCheckpoint checkpoint;
+    @Mock
+    private Cluster cluster;
+
+    private RebuildIndexRangesJob job;
+
+    @Before
+    public void setUp() throws Exception {
+        when(indexSetRegistry.getAllManagedIndexNames()).thenReturn(INDICES);
+        when(checkpoint.startOrResume()).thenReturn(ImmutableSet.<String>of());
+        when(cluster.cachedHealthStatus()).thenReturn(ClusterHealthStatus.GREEN);
+        when(indexRangeService.calculateRange(anyString())).thenAnswer(new Answer<IndexRange>() {
+            @Override
+            public IndexRange answer(InvocationOnMock invocation) throws Throwable {
+                return range((String) invocation.getArguments()[0]);
+            }
+        });
+
+        final IndexRangeRebuildExecutor executor = new IndexRangeRebuildExecutor(2, new MetricRegistry());
+        job = new RebuildIndexRangesJob(deflector, indexSetRegistry, activityWriter, indexRangeService, checkpoint,
+                cluster, executor, 10L);
+    }
+
+    @Test
+    public void testCalculatesAllIndicesAndFinishesCheckpoint() throws Exception {
+        job.execute();
+
+        for (String index : INDICES) {
+            verify(indexRangeService).calculateRange(index);
+            verify(checkpoint).markCompleted(index);
+        }
+        verify(checkpoint).finish();
+        assertEquals(100, job.getProgress());
+    }
+
+    @Test
+    public void testResumesFromCheckpoint() throws Exception {
+        when(checkpoint.startOrResume()).thenReturn(ImmutableSet.of(INDICES[0], INDICES[1]));
+
+        job.execute();
+
+        verify(indexRangeService, never()).calculateRange(INDICES[0]);
+        verify(indexRangeService, never()).calculateRange(INDICES[1]);
+        verify(indexRangeService).calculateRange(INDICES[2]);
+        verify(indexRangeService).calculateRange(INDICES[3]);
+        verify(checkpoint).finish();
+        assertEquals(100, job.getProgress());
+    }
+
+    @Test
+    public void testOnlyStoredRangesAreMarkedCompleted() throws Exception {
+        final IndexRange failingRange = range(INDICES[1]);
+        doReturn(failingRange).when(indexRangeService).calculateRange(INDICES[1]);
+        doThrow(new IllegalStateException("Boom")).when(indexRangeService).save(failingRange);
+        doThrow(new IllegalStateException("Boom")).when(indexRangeService).calculateRange(INDICES[2]);
+
+        job.execute();
+
+        verify(checkpoint).markCompleted(INDICES[0]);
+        verify(checkpoint, never()).markCompleted(INDICES[1]);
+        verify(checkpoint, never()).markCompleted(INDICES[2]);
+        verify(checkpoint).markCompleted(INDICES[3]);
+    }
+
+    @Test
+    public void testYellowClusterOnlyCalculatesOneIndexAtATime() throws Exception {
+        when(cluster.cachedHealthStatus()).thenReturn(ClusterHealthStatus.YELLOW);
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        doAnswer(new Answer<IndexRange>() {
+            @Override
+            public IndexRange answer(InvocationOnMock invocation) throws Throwable {
+                final int current = running.incrementAndGet();
+                maxRunning.set(Math.max(maxRunning.get(), current));
+                Thread.sleep(20L);
+                running.decrementAndGet();
+                return range((String) invocation.getArguments()[0]);
+            }
+        }).when(indexRangeService).calculateRange(anyString());
+
+        job.execute();
+
+        assertEquals(1, maxRunning.get());
+        verify(indexRangeService, times(INDICES.length)).save(any(IndexRange.class));
+        verify(checkpoint).finish();
+    }
+
+    @Test
+    public void testRedClusterPausesCalculation() throws Exception {
+        when(cluster.cachedHealthStatus()).thenReturn(ClusterHealthStatus.RED);
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                job.execute();
+            }
+        });
+
+        thread.start();
+        Thread.sleep(100L);
+        job.requestCancel();
+        thread.join(TimeUnit.SECONDS.toMillis(5L));
+
+        assertFalse(thread.isAlive());
+        verify(indexRangeService, never()).calculateRange(anyString());
+        verify(checkpoint, never()).markCompleted(anyString());
+    }
+
+    private static IndexRange range(String index) {
+        final IndexRange indexRange = mock(IndexRange.class);
+        when(indexRange.indexName()).thenReturn(index);
+        return indexRange;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.results;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ParallelScrollResultTest {
+    private static final List<String> FIELDS = ImmutableList.of("timestamp", "message");
+    private static final long KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(1L);
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testNextChunkReturnsChunksOfAllSlices() throws Exception {
+        final List<Callable<ScrollResult>> slices = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            slices.add(slice(3, 2));
+        }
+        final ParallelScrollResult result = new ParallelScrollResult("*", 30L, FIELDS, slices, 2, executor, KEEP_ALIVE_MILLIS);
+
+        int chunks = 0;
+        int messages = 0;
+        ScrollResult.ScrollChunk chunk;
+        while ((chunk = result.nextChunk()) != null) {
+            assertThat(chunk.getChunkNumber()).isEqualTo(chunks);
+            assertThat(chunk.getFields()).isEqualTo(FIELDS);
+            chunks++;
+            messages += chunk.getMessages().size();
+        }
+
+        assertThat(chunks).isEqualTo(15);
+        assertThat(messages).isEqualTo(30);
+        assertThat(result.nextChunk()).isNull();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNextChunkRethrowsSliceFailures() throws Exception {
+        final Callable<ScrollResult> failingSlice = new Callable<ScrollResult>() {
+            @Override
+            public ScrollResult call() throws Exception {
+                throw new IllegalStateException("Boom");
+            }
+        };
+        final ParallelScrollResult result = new ParallelScrollResult("*", 0L, FIELDS,
+                ImmutableList.of(slice(1, 1), failingSlice), 2, executor, KEEP_ALIVE_MILLIS);
+
+        while (result.nextChunk() != null) {
+            // consume everything until the failure shows up
+        }
+    }
+
+    @Test
+    public void testCancelClearsScrollWhichIsStartedWhileCancelling() throws Exception {
+        final ScrollResult scroll = mock(ScrollResult.class);
+        final CountDownLatch starting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<ScrollResult> slowSlice = new Callable<ScrollResult>() {
+            @Override
+            public ScrollResult call() throws Exception {
+                starting.countDown();
+                // the search request can't be interrupted either
+                Uninterruptibles.awaitUninterruptibly(release);
+                return scroll;
+            }
+        };
+        final ParallelScrollResult result = new ParallelScrollResult("*", 0L, FIELDS,
+                ImmutableList.of(slowSlice), 2, executor, KEEP_ALIVE_MILLIS);
+
+        assertThat(starting.await(5, TimeUnit.SECONDS)).isTrue();
+        result.cancel();
+        release.countDown();
+
+        verify(scroll, timeout(5000)).cancel();
+    }
+
+    @Test
+    public void testCancelClearsScrollOfRunningSlice() throws Exception {
+        final ScrollResult scroll = scroll(10, 1);
+        final ParallelScrollResult result = new ParallelScrollResult("*", 0L, FIELDS,
+                ImmutableList.of(slice(scroll)), 1, executor, KEEP_ALIVE_MILLIS);
+
+        assertThat(result.nextChunk()).isNotNull();
+        result.cancel();
+
+        verify(scroll, timeout(5000)).cancel();
+    }
+
+    @Test
+    public void testCompletedSlicesAreNotCleared() throws Exception {
+        final ScrollResult scroll = scroll(2, 1);
+        final ParallelScrollResult result = new ParallelScrollResult("*", 0L, FIELDS,
+                ImmutableList.of(slice(scroll)), 1, executor, KEEP_ALIVE_MILLIS);
+
+        while (result.nextChunk() != null) {
+            // consume everything
+        }
+
+        verify(scroll, never()).cancel();
+    }
+
+    private static Callable<ScrollResult> slice(int numberOfChunks, int messagesPerChunk) {
+        return slice(scroll(numberOfChunks, messagesPerChunk));
+    }
+
+    private static Callable<ScrollResult> slice(final ScrollResult scroll) {
+        return new Callable<ScrollResult>() {
+            @Override
+            public ScrollResult call() throws Exception {
+                return scroll;
+            }
+        };
+    }
+
+    private static ScrollResult scroll(int numberOfChunks, int messagesPerChunk) {
+        final ScrollResult scroll = mock(ScrollResult.class);
+        final List<ResultMessage> messages = Collections.nCopies(messagesPerChunk, mock(ResultMessage.class));
+
+        final ScrollResult.ScrollChunk[] chunks = new ScrollResult.ScrollChunk[numberOfChunks];
+        for (int i = 0; i < numberOfChunks; i++) {
+            chunks[i] = scroll.new ScrollChunk(messages, FIELDS, i);
+        }
+        final ScrollResult.ScrollChunk[] rest = new ScrollResult.ScrollChunk[numberOfChunks];
+        System.arraycopy(chunks, 1, rest, 0, numberOfChunks - 1);
+        when(scroll.nextChunk()).thenReturn(chunks[0], rest);
+
+        return scroll;
+    }
+}
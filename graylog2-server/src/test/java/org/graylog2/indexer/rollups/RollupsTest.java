@@ -0,0 +1,214 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.rollups;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
+import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
+import com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb;
+import org.graylog2.Configuration;
+import org.graylog2.database.MongoConnectionRule;
+import org.graylog2.indexer.esplugin.IndicesDeletedEvent;
+import org.graylog2.indexer.searches.Searches.DateHistogramInterval;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb.InMemoryMongoRuleBuilder.newInMemoryMongoDbRule;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RollupsTest {
+    @ClassRule
+    public static final InMemoryMongoDb IN_MEMORY_MONGO_DB = newInMemoryMongoDbRule().build();
+    private static final String STREAM_ID = "000000000000000000000001";
+    private static final Set<String> INDICES = ImmutableSet.of("graylog_0", "graylog_1");
+    private static final DateTime FROM = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final DateTime TO = new DateTime(2015, 1, 3, 0, 0, DateTimeZone.UTC);
+
+    @Rule
+    public MongoConnectionRule mongoRule = MongoConnectionRule.build("test");
+
+    @Mock
+    private Configuration configuration;
+
+    private Rollups rollups;
+
+    @Before
+    public void setUp() throws Exception {
+        when(configuration.isRollupsEnabled()).thenReturn(true);
+        when(configuration.getRollupsFields()).thenReturn(ImmutableList.of("took_ms"));
+        when(configuration.getRollupsMinTimeRange()).thenReturn(Duration.days(1L));
+        rollups = new Rollups(configuration, mongoRule.getMongoConnection(), new EventBus());
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void planSplitsIndicesByRollups() throws Exception {
+        rollups.markRolledUp("graylog_0", Collections.singleton("took_ms"));
+
+        final RollupPlan plan = rollups.plan("*", null, new AbsoluteRange(FROM, TO), DateHistogramInterval.HOUR, INDICES, null);
+
+        assertThat(plan).isNotNull();
+        assertThat(plan.stream()).isEqualTo(Rollups.ALL_MESSAGES);
+        assertThat(plan.resolution()).isEqualTo(Rollups.Resolution.HOUR);
+        assertThat(plan.rolledUpIndices()).containsOnly("graylog_0");
+        assertThat(plan.otherIndices()).containsOnly("graylog_1");
+        assertThat(plan.from()).isEqualTo(FROM);
+        assertThat(plan.to()).isEqualTo(TO);
+        assertThat(plan.edges()).hasSize(1);
+        assertThat(plan.edges().get(0).getFrom()).isEqualTo(TO);
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void planOnlyAcceptsMatchAllQueriesOfAllMessagesOrOneStream() throws Exception {
+        rollups.markRolledUp("graylog_0", Collections.singleton("took_ms"));
+        final AbsoluteRange range = new AbsoluteRange(FROM, TO);
+
+        assertThat(rollups.plan("*", "streams:" + STREAM_ID, range, DateHistogramInterval.HOUR, INDICES, null).stream())
+                .isEqualTo(STREAM_ID);
+        assertThat(rollups.plan("source:example.org", null, range, DateHistogramInterval.HOUR, INDICES, null)).isNull();
+        assertThat(rollups.plan("*", "source:example.org", range, DateHistogramInterval.HOUR, INDICES, null)).isNull();
+        assertThat(rollups.plan("*", null, range, DateHistogramInterval.HOUR, INDICES, "bytes")).isNull();
+        assertThat(rollups.plan("*", null, new AbsoluteRange(FROM, FROM.plusHours(2)), DateHistogramInterval.HOUR, INDICES, null)).isNull();
+        assertThat(rollups.plan("*", null, range, DateHistogramInterval.HOUR, ImmutableSet.of("graylog_1"), null)).isNull();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void planAlignsTimeRangeToRollupBuckets() throws Exception {
+        rollups.markRolledUp("graylog_0", Collections.singleton("took_ms"));
+        final AbsoluteRange range = new AbsoluteRange(FROM.plusSeconds(30), TO.minusSeconds(30));
+
+        final RollupPlan plan = rollups.plan("*", null, range, DateHistogramInterval.MINUTE, INDICES, null);
+
+        assertThat(plan.resolution()).isEqualTo(Rollups.Resolution.MINUTE);
+        assertThat(plan.from()).isEqualTo(FROM.plusMinutes(1));
+        assertThat(plan.to()).isEqualTo(TO.minusMinutes(1));
+        assertThat(plan.edges()).hasSize(2);
+        assertThat(plan.edges().get(0).getFrom()).isEqualTo(range.getFrom());
+        assertThat(plan.edges().get(0).getTo()).isEqualTo(FROM.plusMinutes(1).minusMillis(1));
+        assertThat(plan.edges().get(1).getFrom()).isEqualTo(TO.minusMinutes(1));
+        assertThat(plan.edges().get(1).getTo()).isEqualTo(range.getTo());
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void findSumsRollupsOfAllIndices() throws Exception {
+        rollups.save("graylog_0", Rollups.ALL_MESSAGES, ImmutableMap.of(
+                FROM.plusMinutes(1), bucket(2L, 10.0d),
+                FROM.plusMinutes(2), bucket(3L, 20.0d),
+                FROM.plusHours(1), bucket(1L, 5.0d)));
+        rollups.save("graylog_1", Rollups.ALL_MESSAGES, ImmutableMap.of(FROM.plusMinutes(1), bucket(4L, 30.0d)));
+        rollups.markRolledUp("graylog_0", Collections.singleton("took_ms"));
+        rollups.markRolledUp("graylog_1", Collections.singleton("took_ms"));
+        final AbsoluteRange range = new AbsoluteRange(FROM, TO);
+
+        final SortedMap<DateTime, RollupBucket> minutes = rollups.find(rollups.plan("*", null, range, DateHistogramInterval.MINUTE, INDICES, null));
+        assertThat(minutes).hasSize(3);
+        assertThat(minutes.get(FROM.plusMinutes(1)).getCount()).isEqualTo(6L);
+        assertThat(minutes.get(FROM.plusMinutes(1)).getFields().get("took_ms").getMax()).isEqualTo(30.0d);
+
+        final SortedMap<DateTime, RollupBucket> hours = rollups.find(rollups.plan("*", null, range, DateHistogramInterval.DAY, INDICES, "took_ms"));
+        assertThat(hours).hasSize(2);
+        final RollupBucket firstHour = hours.get(FROM);
+        assertThat(firstHour.getCount()).isEqualTo(9L);
+        assertThat(firstHour.getFields().get("took_ms").getCount()).isEqualTo(9L);
+        assertThat(firstHour.getFields().get("took_ms").getSum()).isEqualTo(200.0d);
+        assertThat(firstHour.getFields().get("took_ms").getMin()).isEqualTo(10.0d);
+        assertThat(hours.get(FROM.plusHours(1)).getCount()).isEqualTo(1L);
+
+        final RollupPlan streamPlan = rollups.plan("*", "streams:" + STREAM_ID, range, DateHistogramInterval.DAY, INDICES, null);
+        assertThat(rollups.find(streamPlan)).isEmpty();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void deletedIndicesAreNotRolledUpAnymore() throws Exception {
+        rollups.save("graylog_0", Rollups.ALL_MESSAGES, ImmutableMap.of(FROM, bucket(1L, 1.0d)));
+        rollups.markRolledUp("graylog_0", Collections.singleton("took_ms"));
+        assertThat(rollups.isRolledUp("graylog_0")).isTrue();
+
+        rollups.handleIndexDeletion(IndicesDeletedEvent.create(Collections.singletonList("graylog_0")));
+
+        assertThat(rollups.isRolledUp("graylog_0")).isFalse();
+        assertThat(mongoRule.getMongoConnection().getDatabase().getCollection(Rollups.COLLECTION_NAME).count()).isEqualTo(0L);
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void failedIndicesBackOff() throws Exception {
+        final DateTime now = new DateTime(2015, 1, 5, 0, 0, DateTimeZone.UTC);
+        DateTimeUtils.setCurrentMillisFixed(now.getMillis());
+        try {
+            assertThat(rollups.isBackingOff("graylog_0")).isFalse();
+
+            rollups.recordFailure("graylog_0", new IllegalStateException("Boom"));
+            assertThat(rollups.isBackingOff("graylog_0")).isTrue();
+            assertThat(rollups.isBackingOff("graylog_1")).isFalse();
+
+            DateTimeUtils.setCurrentMillisFixed(now.plusMinutes(6).getMillis());
+            assertThat(rollups.isBackingOff("graylog_0")).isFalse();
+
+            // the back-off doubles with every consecutive failure
+            rollups.recordFailure("graylog_0", new IllegalStateException("Boom"));
+            DateTimeUtils.setCurrentMillisFixed(now.plusMinutes(15).getMillis());
+            assertThat(rollups.isBackingOff("graylog_0")).isTrue();
+            DateTimeUtils.setCurrentMillisFixed(now.plusMinutes(17).getMillis());
+            assertThat(rollups.isBackingOff("graylog_0")).isFalse();
+
+            rollups.recordFailure("graylog_0", new IllegalStateException("Boom"));
+            rollups.markRolledUp("graylog_0", Collections.singleton("took_ms"));
+            assertThat(rollups.isBackingOff("graylog_0")).isFalse();
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void failureBackoffIsCapped() throws Exception {
+        assertThat(Rollups.failureBackoffMillis(1)).isEqualTo(TimeUnit.MINUTES.toMillis(5L));
+        assertThat(Rollups.failureBackoffMillis(2)).isEqualTo(TimeUnit.MINUTES.toMillis(10L));
+        assertThat(Rollups.failureBackoffMillis(100)).isEqualTo(TimeUnit.DAYS.toMillis(1L));
+    }
+
+    private static RollupBucket bucket(long count, double value) {
+        final RollupBucket bucket = new RollupBucket();
+        bucket.addCount(count);
+        bucket.addFieldStats("took_ms", count, value * count, value, value);
+        return bucket;
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.searches;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.esplugin.IndicesDeletedEvent;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SearchResultCacheTest {
+    private static final TimeRange RANGE = new AbsoluteRange(
+            new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC),
+            new DateTime(2015, 1, 2, 0, 0, DateTimeZone.UTC));
+    private static final Set<String> INDICES = ImmutableSet.of("graylog_0", "graylog_1");
+
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private IndexSet defaultIndexSet;
+    @Mock
+    private Deflector defaultDeflector;
+    @Mock
+    private IndexSet auditIndexSet;
+    @Mock
+    private Deflector auditDeflector;
+    private EventBus eventBus;
+    private SearchResultCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        when(defaultDeflector.getCurrentActualTargetIndex()).thenReturn("graylog_2");
+        when(defaultIndexSet.getDeflector()).thenReturn(defaultDeflector);
+        when(auditDeflector.getCurrentActualTargetIndex()).thenReturn("audit_3");
+        when(auditIndexSet.getDeflector()).thenReturn(auditDeflector);
+        when(indexSetRegistry.getAll()).thenReturn(ImmutableList.of(defaultIndexSet, auditIndexSet));
+        eventBus = new EventBus();
+        cache = new SearchResultCache(true, 100, Duration.seconds(5L), indexSetRegistry, new MetricRegistry(), eventBus);
+    }
+
+    @Test
+    public void testGetReturnsCachedResult() throws Exception {
+        final CountingLoader loader = new CountingLoader();
+
+        assertThat(cache.get(cache.key("count", "*", null, RANGE, INDICES), loader)).isEqualTo(1);
+        assertThat(cache.get(cache.key("count", "*", null, RANGE, INDICES), loader)).isEqualTo(1);
+        assertThat(loader.calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testKeyNormalizesQueryAndFilter() throws Exception {
+        assertThat(cache.key("count", "", "*", RANGE, INDICES)).isEqualTo(cache.key("count", "*", null, RANGE, INDICES));
+        assertThat(cache.key("terms", "*", null, RANGE, INDICES, "source", 50))
+                .isNotEqualTo(cache.key("terms", "*", null, RANGE, INDICES, "source", 10));
+    }
+
+    @Test
+    public void testDisabledCacheAlwaysLoads() throws Exception {
+        final SearchResultCache disabled = new SearchResultCache(false, 100, Duration.seconds(5L), indexSetRegistry, new MetricRegistry(), eventBus);
+        final CountingLoader loader = new CountingLoader();
+
+        disabled.get(disabled.key("count", "*", null, RANGE, INDICES), loader);
+        disabled.get(disabled.key("count", "*", null, RANGE, INDICES), loader);
+
+        assertThat(loader.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDeletedIndexInvalidatesResults() throws Exception {
+        final CountingLoader loader = new CountingLoader();
+
+        cache.get(cache.key("count", "*", null, RANGE, INDICES), loader);
+        eventBus.post(IndicesDeletedEvent.create(ImmutableList.of("graylog_1")));
+        cache.get(cache.key("count", "*", null, RANGE, INDICES), loader);
+
+        assertThat(loader.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testResultsIncludingWriteIndexOfAnyIndexSetExpire() throws Exception {
+        final SearchResultCache shortLived = new SearchResultCache(true, 100, Duration.milliseconds(10L), indexSetRegistry,
+                new MetricRegistry(), eventBus);
+        final Set<String> defaultWriteIndex = ImmutableSet.of("graylog_1", "graylog_2");
+        final Set<String> auditWriteIndex = ImmutableSet.of("audit_2", "audit_3");
+        final CountingLoader immutableLoader = new CountingLoader();
+        final CountingLoader defaultLoader = new CountingLoader();
+        final CountingLoader auditLoader = new CountingLoader();
+
+        for (int i = 0; i < 2; i++) {
+            shortLived.get(shortLived.key("count", "*", null, RANGE, INDICES), immutableLoader);
+            shortLived.get(shortLived.key("count", "*", null, RANGE, defaultWriteIndex), defaultLoader);
+            shortLived.get(shortLived.key("count", "*", null, RANGE, auditWriteIndex), auditLoader);
+            Thread.sleep(50L);
+        }
+
+        assertThat(immutableLoader.calls.get()).isEqualTo(1);
+        assertThat(defaultLoader.calls.get()).isEqualTo(2);
+        assertThat(auditLoader.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testConcurrentIdenticalQueriesAreLoadedOnce() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final Callable<Integer> loader = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                calls.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return 42;
+            }
+        };
+        final Callable<Integer> search = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return cache.get(cache.key("count", "*", null, RANGE, INDICES), loader);
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Integer> first = executor.submit(search);
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            final Future<Integer> second = executor.submit(search);
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+            assertThat(calls.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class CountingLoader implements Callable<Integer> {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Integer call() {
+            return calls.incrementAndGet();
+        }
+    }
+}
@@ -19,7 +19,10 @@ package org.graylog2.indexer.searches;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.EventBus;
 import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
 import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
 import com.lordofthejars.nosqlunit.elasticsearch.ElasticsearchRule;
@@ -27,6 +30,8 @@ import com.lordofthejars.nosqlunit.elasticsearch.EmbeddedElasticsearch;
 import org.elasticsearch.client.Client;
 import org.graylog2.Configuration;
 import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.nosqlunit.IndexCreatingLoadStrategyFactory;
 import org.graylog2.indexer.ranges.IndexRange;
 import org.graylog2.indexer.ranges.IndexRangeComparator;
@@ -34,8 +39,11 @@ import org.graylog2.indexer.ranges.IndexRangeService;
 import org.graylog2.indexer.results.CountResult;
 import org.graylog2.indexer.results.FieldStatsResult;
 import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.results.ResultMessage;
+import org.graylog2.indexer.results.SearchResult;
 import org.graylog2.indexer.results.TermsResult;
 import org.graylog2.indexer.results.TermsStatsResult;
+import org.graylog2.indexer.rollups.Rollups;
 import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -101,7 +109,13 @@ public class SearchesTest {
     @Mock
     private Deflector deflector;
     @Mock
+    private IndexSet indexSet;
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+    @Mock
     private IndexRangeService indexRangeService;
+    @Mock
+    private Rollups rollups;
 
     private MetricRegistry metricRegistry;
     private Searches searches;
@@ -117,8 +131,12 @@ public class SearchesTest {
     @Before
     public void setUp() throws Exception {
         when(indexRangeService.find(any(DateTime.class), any(DateTime.class))).thenReturn(INDEX_RANGES);
+        when(indexSet.getDeflector()).thenReturn(deflector);
+        when(indexSetRegistry.getAll()).thenReturn(Collections.singletonList(indexSet));
         metricRegistry = new MetricRegistry();
-        searches = new Searches(new Configuration(), deflector, indexRangeService, client, metricRegistry);
+        final SearchResultCache resultCache = new SearchResultCache(false, 1000, Duration.seconds(5L), indexSetRegistry, metricRegistry, new EventBus());
+        searches = new Searches(new Configuration(), indexSetRegistry, indexRangeService, client, metricRegistry, resultCache, rollups,
+                new SearchExportExecutor(1, metricRegistry));
     }
 
     @Test
@@ -131,6 +149,23 @@ public class SearchesTest {
         assertThat(result.getCount()).isEqualTo(10L);
     }
 
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void searchOnlyReturnsRequestedFields() throws Exception {
+        final SearchesConfig config = SearchesConfigBuilder.newConfig()
+                .setQuery("*")
+                .setRange(new AbsoluteRange(new DateTime(2015, 1, 1, 0, 0), new DateTime(2015, 1, 2, 0, 0)))
+                .setFields(ImmutableList.of("timestamp", "message"))
+                .setLimit(100)
+                .build();
+        final SearchResult result = searches.search(config);
+
+        assertThat(result.getResults()).hasSize(10);
+        for (ResultMessage resultMessage : result.getResults()) {
+            assertThat(resultMessage.getMessage()).containsOnlyKeys("_id", "timestamp", "message");
+        }
+    }
+
     @Test
     @UsingDataSet(loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
     public void countRecordsMetrics() throws Exception {
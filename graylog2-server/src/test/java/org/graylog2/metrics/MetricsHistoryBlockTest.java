@@ -0,0 +1,182 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.metrics;
+
+import com.mongodb.DBObject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsHistoryBlockTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long START = TimeUnit.HOURS.toMillis(400000);
+
+    @Test
+    public void roundTripsThroughDBObject() {
+        final MetricsHistoryBlock block = new MetricsHistoryBlock("node", MetricsHistoryStore.Resolution.MINUTE, START);
+        block.append(point(START, "counter", MetricType.COUNTER, 100));
+        block.append(point(START + MINUTE, "counter", MetricType.COUNTER, 90));
+        block.append(point(START + 2 * MINUTE, "counter", MetricType.COUNTER, 1234567890123L));
+
+        final DBObject document = block.toDBObjects().get(0);
+        final MetricsHistoryBlock decoded = MetricsHistoryBlock.fromDBObject(document);
+
+        assertEquals(block.getId() + ":0", document.get("_id"));
+        assertEquals(3, decoded.getPoints());
+        final MetricHistory history = new MetricHistory();
+        decoded.collect("counter", -1, history);
+        assertEquals(MetricType.COUNTER, history.getType());
+        assertEquals(3, history.getValues().size());
+        assertArrayEquals(new double[]{100}, history.getValues().get(0), 0.0);
+        assertArrayEquals(new double[]{90}, history.getValues().get(1), 0.0);
+        assertArrayEquals(new double[]{1234567890123d}, history.getValues().get(2), 0.0);
+        assertEquals(START + 2 * MINUTE, (long) history.getTimestamps().get(2));
+    }
+
+    @Test
+    public void keepsThreeDecimalPlaces() {
+        final MetricsHistoryBlock block = new MetricsHistoryBlock("node", MetricsHistoryStore.Resolution.MINUTE, START);
+        block.append(point(START, "meter", MetricType.METER, 10, 1.2346, 0.5, -0.25, Double.NaN));
+
+        final MetricHistory history = new MetricHistory();
+        MetricsHistoryBlock.fromDBObject(block.toDBObjects().get(0)).collect("meter", -1, history);
+
+        assertArrayEquals(new double[]{10, 1.235, 0.5, -0.25, 0}, history.getValues().get(0), 0.0);
+    }
+
+    @Test
+    public void missingValuesStayMissing() {
+        final MetricsHistoryBlock block = new MetricsHistoryBlock("node", MetricsHistoryStore.Resolution.MINUTE, START);
+        block.append(point(START, "gauge", MetricType.GAUGE, 1));
+        block.append(point(START + MINUTE, "other", MetricType.GAUGE, 2));
+        block.append(point(START + 3 * MINUTE, "late", MetricType.GAUGE, 3));
+        block.append(point(START + 4 * MINUTE, "gauge", MetricType.GAUGE, 5));
+
+        final MetricsHistoryBlock decoded = MetricsHistoryBlock.fromDBObject(block.toDBObjects().get(0));
+
+        final MetricHistory gauge = new MetricHistory();
+        decoded.collect("gauge", -1, gauge);
+        assertEquals(2, gauge.getValues().size());
+        assertEquals(START, (long) gauge.getTimestamps().get(0));
+        assertEquals(START + 4 * MINUTE, (long) gauge.getTimestamps().get(1));
+        assertArrayEquals(new double[]{5}, gauge.getValues().get(1), 0.0);
+
+        final MetricHistory late = new MetricHistory();
+        decoded.collect("late", -1, late);
+        assertEquals(1, late.getValues().size());
+        assertEquals(START + 3 * MINUTE, (long) late.getTimestamps().get(0));
+    }
+
+    @Test
+    public void continuedBlockKeepsTheGapOfARestart() {
+        final MetricsHistoryBlock block = new MetricsHistoryBlock("node", MetricsHistoryStore.Resolution.MINUTE, START);
+        block.append(point(START, "counter", MetricType.COUNTER, 1));
+        block.append(point(START + MINUTE, "counter", MetricType.COUNTER, 2));
+
+        // the node was down for 10 minutes
+        final MetricsHistoryBlock continued = MetricsHistoryBlock.fromDBObject(block.toDBObjects().get(0));
+        continued.append(point(START + 12 * MINUTE, "counter", MetricType.COUNTER, 3));
+        continued.append(point(START + 13 * MINUTE, "counter", MetricType.COUNTER, 4));
+
+        final MetricHistory history = new MetricHistory();
+        MetricsHistoryBlock.fromDBObject(continued.toDBObjects().get(0)).collect("counter", -1, history);
+
+        assertEquals(14, continued.getPoints());
+        assertEquals(4, history.getValues().size());
+        assertEquals(START + MINUTE, (long) history.getTimestamps().get(1));
+        assertEquals(START + 12 * MINUTE, (long) history.getTimestamps().get(2));
+        assertArrayEquals(new double[]{3}, history.getValues().get(2), 0.0);
+        assertArrayEquals(new double[]{4}, history.getValues().get(3), 0.0);
+    }
+
+    @Test
+    public void splitsBlocksWithManyMetricsIntoSeveralDocuments() {
+        final int metrics = 2 * MetricsHistoryBlock.METRICS_PER_DOCUMENT + 1;
+        final int fields = MetricType.TIMER.getFields().length;
+        final MetricsHistoryBlock block = new MetricsHistoryBlock("node", MetricsHistoryStore.Resolution.MINUTE, START);
+        for (int minute = 0; minute < 60; minute++) {
+            final MetricsSample sample = new MetricsSample(START + minute * MINUTE);
+            for (int metric = 0; metric < metrics; metric++) {
+                final double[] values = new double[fields];
+                for (int field = 0; field < fields; field++) {
+                    // alternate between large values, so the deltas take many bytes
+                    values[field] = (minute % 2 == 0 ? 1 : -1) * 1e12 + metric + field;
+                }
+                sample.add("timer-" + metric, MetricType.TIMER, values);
+            }
+            block.append(sample);
+        }
+
+        final List<DBObject> documents = block.toDBObjects();
+
+        assertEquals(3, documents.size());
+        final MetricsHistoryBlock continued = new MetricsHistoryBlock("node", MetricsHistoryStore.Resolution.MINUTE, START);
+        for (int chunk = 0; chunk < documents.size(); chunk++) {
+            final DBObject document = documents.get(chunk);
+            assertEquals(block.getId() + ":" + chunk, document.get("_id"));
+            assertTrue(((List<?>) document.get(MetricsHistoryBlock.FIELD_NAMES)).size() <= MetricsHistoryBlock.METRICS_PER_DOCUMENT);
+            // well below the document size limit of 16 MB
+            assertTrue(((byte[]) document.get(MetricsHistoryBlock.FIELD_DATA)).length < 8 * 1024 * 1024);
+            continued.read(document);
+        }
+
+        final MetricHistory history = new MetricHistory();
+        continued.collect("timer-" + (metrics - 1), -1, history);
+        assertEquals(60, continued.getPoints());
+        assertEquals(60, history.getValues().size());
+        assertEquals(-1e12 + metrics - 1 + fields - 1, history.getValues().get(59)[fields - 1], 0.0);
+    }
+
+    @Test
+    public void collectSkipsOlderPoints() {
+        final MetricsHistoryBlock block = new MetricsHistoryBlock("node", MetricsHistoryStore.Resolution.MINUTE, START);
+        block.append(point(START, "counter", MetricType.COUNTER, 1));
+        block.append(point(START + MINUTE, "counter", MetricType.COUNTER, 2));
+
+        final MetricHistory history = new MetricHistory();
+        block.collect("counter", START, history);
+        block.collect("unknown", -1, new MetricHistory());
+
+        final List<double[]> values = history.getValues();
+        assertEquals(1, values.size());
+        assertArrayEquals(new double[]{2}, values.get(0), 0.0);
+    }
+
+    @Test
+    public void ignoresPointsOlderThanTheLastPoint() {
+        final MetricsHistoryBlock block = new MetricsHistoryBlock("node", MetricsHistoryStore.Resolution.MINUTE, START);
+        block.append(point(START + MINUTE, "counter", MetricType.COUNTER, 2));
+        block.append(point(START, "counter", MetricType.COUNTER, 1));
+
+        final MetricHistory history = new MetricHistory();
+        block.collect("counter", -1, history);
+
+        assertEquals(1, history.getValues().size());
+        assertArrayEquals(new double[]{2}, history.getValues().get(0), 0.0);
+    }
+
+    private static MetricsSample point(long timestamp, String name, MetricType type, double... values) {
+        final MetricsSample sample = new MetricsSample(timestamp);
+        sample.add(name, type, values);
+        return sample;
+    }
+}
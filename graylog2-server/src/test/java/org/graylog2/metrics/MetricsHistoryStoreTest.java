@@ -0,0 +1,154 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.metrics;
+
+import com.google.common.base.Suppliers;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetricsHistoryStoreTest {
+    private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long START = TimeUnit.HOURS.toMillis(400000);
+
+    private DBCollection collection;
+    private MetricsHistoryStore store;
+
+    @Before
+    public void setUp() {
+        collection = mock(DBCollection.class);
+        final DBCursor cursor = mock(DBCursor.class);
+        when(collection.find(any(DBObject.class))).thenReturn(cursor);
+        when(cursor.sort(any(DBObject.class))).thenReturn(cursor);
+        when(cursor.iterator()).thenReturn(Collections.<DBObject>emptyIterator());
+        store = new MetricsHistoryStore("node", Suppliers.ofInstance(collection), MetricsHistoryStore.RECENT_VALUES);
+    }
+
+    @Test
+    public void keepsRecentSamplesInMemory() {
+        for (int i = 0; i < MetricsHistoryStore.RECENT_SAMPLES + 10; i++) {
+            store.record(sample(START + i * SECOND, i));
+        }
+
+        final MetricHistory all = store.getHistory("gauge", MetricsHistoryStore.Resolution.RAW, -1);
+        final MetricHistory recent = store.getHistory("gauge", MetricsHistoryStore.Resolution.RAW, START + 305 * SECOND);
+
+        assertEquals(MetricsHistoryStore.RECENT_SAMPLES, all.getValues().size());
+        assertArrayEquals(new double[]{10}, all.getValues().get(0), 0.0);
+        assertEquals(4, recent.getValues().size());
+    }
+
+    @Test
+    public void limitsTheNumberOfRecentValues() {
+        store = new MetricsHistoryStore("node", Suppliers.ofInstance(collection), 12);
+        for (int i = 0; i < 10; i++) {
+            final MetricsSample sample = sample(START + i * SECOND, i);
+            sample.add("meter", MetricType.METER, i, i, i, i, i);
+            store.record(sample);
+        }
+
+        final MetricHistory history = store.getHistory("gauge", MetricsHistoryStore.Resolution.RAW, -1);
+
+        // every sample has 6 values
+        assertEquals(2, history.getValues().size());
+        assertArrayEquals(new double[]{8}, history.getValues().get(0), 0.0);
+    }
+
+    @Test
+    public void writesOneBlockPerCompletedMinute() {
+        for (int i = 0; i < 60; i++) {
+            store.record(sample(START + i * SECOND, i));
+        }
+        verify(collection, never()).save(any(DBObject.class), any(WriteConcern.class));
+
+        store.record(sample(START + MINUTE, 0));
+
+        final ArgumentCaptor<DBObject> block = ArgumentCaptor.forClass(DBObject.class);
+        verify(collection, times(1)).save(block.capture(), eq(WriteConcern.ACKNOWLEDGED));
+
+        final MetricHistory history = new MetricHistory();
+        MetricsHistoryBlock.fromDBObject(block.getValue()).collect("gauge", -1, history);
+        assertEquals(1, history.getValues().size());
+        assertEquals(START, (long) history.getTimestamps().get(0));
+        // the average of 0..59
+        assertArrayEquals(new double[]{29.5}, history.getValues().get(0), 0.0);
+    }
+
+    @Test
+    public void downsamplesMinimumsAndMaximumsWithoutAveraging() {
+        for (int i = 0; i <= 60; i++) {
+            final MetricsSample sample = new MetricsSample(START + i * SECOND);
+            // count, percentiles, max, min, mean, median, std_dev
+            sample.add("histogram", MetricType.HISTOGRAM, i, i, i, i, i, i, 2 * i, -i, i, i, 1);
+            store.record(sample);
+        }
+
+        final ArgumentCaptor<DBObject> block = ArgumentCaptor.forClass(DBObject.class);
+        verify(collection, times(1)).save(block.capture(), eq(WriteConcern.ACKNOWLEDGED));
+
+        final MetricHistory history = new MetricHistory();
+        MetricsHistoryBlock.fromDBObject(block.getValue()).collect("histogram", -1, history);
+        assertArrayEquals(new double[]{59, 29.5, 29.5, 29.5, 29.5, 29.5, 118, -59, 29.5, 29.5, 1},
+                history.getValues().get(0), 0.0);
+    }
+
+    @Test
+    public void writesHourBlocksOnceTheHourIsComplete() {
+        for (int minute = 0; minute <= 60; minute++) {
+            store.record(sample(START + minute * MINUTE, minute));
+        }
+        // minute 60 starts the second hour, it is completed by the next sample
+        store.record(sample(START + 61 * MINUTE, 61));
+
+        final ArgumentCaptor<DBObject> blocks = ArgumentCaptor.forClass(DBObject.class);
+        verify(collection, times(62)).save(blocks.capture(), eq(WriteConcern.ACKNOWLEDGED));
+
+        final List<DBObject> saved = blocks.getAllValues();
+        final DBObject hourBlock = saved.get(saved.size() - 1);
+        assertEquals("hour", hourBlock.get(MetricsHistoryBlock.FIELD_RESOLUTION));
+
+        final MetricHistory history = new MetricHistory();
+        MetricsHistoryBlock.fromDBObject(hourBlock).collect("gauge", -1, history);
+        assertEquals(1, history.getValues().size());
+        assertArrayEquals(new double[]{29.5}, history.getValues().get(0), 0.0);
+    }
+
+    private static MetricsSample sample(long timestamp, double value) {
+        final MetricsSample sample = new MetricsSample(timestamp);
+        sample.add("gauge", MetricType.GAUGE, value);
+        return sample;
+    }
+}
@@ -25,6 +25,7 @@ import org.graylog2.indexer.messages.Messages;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.Tools;
 import org.graylog2.shared.journal.NoopJournal;
+import org.graylog2.shared.tracing.PipelineTracer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -72,7 +73,7 @@ public class BatchedElasticSearchOutputTest {
         MetricRegistry metricRegistry = new MetricRegistry();
 
         final BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages,
-                cluster, config, new NoopJournal());
+                cluster, config, new NoopJournal(), mock(PipelineTracer.class));
 
         for (Message message : messageList) {
             output.write(message);
@@ -95,7 +96,7 @@ public class BatchedElasticSearchOutputTest {
         when(cluster.isHealthy()).thenReturn(false);
 
         final List<Message> messageList = buildMessages(3);
-        BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, new NoopJournal());
+        BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, new NoopJournal(), mock(PipelineTracer.class));
 
         for (Message message : messageList) {
             output.write(message);
@@ -119,7 +120,7 @@ public class BatchedElasticSearchOutputTest {
         when(cluster.isHealthy()).thenReturn(true);
 
         final List<Message> messageList = buildMessages(batchSize + 1);
-        final BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, new NoopJournal());
+        final BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, new NoopJournal(), mock(PipelineTracer.class));
 
         for (Message message : messageList) {
             output.write(message);
@@ -144,7 +145,7 @@ public class BatchedElasticSearchOutputTest {
         when(cluster.isConnected()).thenReturn(true);
         when(cluster.isHealthy()).thenReturn(true);
 
-        final BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, new NoopJournal());
+        final BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, new NoopJournal(), mock(PipelineTracer.class));
 
         output.flush(false);
 
@@ -17,6 +17,7 @@
 package org.graylog2.outputs;
 
 import com.google.common.collect.Iterables;
+import org.graylog2.buffers.OutputFanout;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.outputs.MessageOutput;
@@ -27,6 +28,7 @@ import org.graylog2.streams.OutputService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -38,7 +40,9 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -56,6 +60,8 @@ public class OutputRegistryTest {
     private OutputService outputService;
     @Mock
     private org.graylog2.Configuration configuration;
+    @Mock
+    private OutputFanout outputFanout;
 
     @Before
     public void setUp() throws Exception {
@@ -65,7 +71,7 @@ public class OutputRegistryTest {
 
     @Test
     public void testMessageOutputsIncludesDefault() {
-        OutputRegistry registry = new OutputRegistry(messageOutput, null, null, null, null, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
+        OutputRegistry registry = new OutputRegistry(messageOutput, null, null, null, null, outputFanout, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
 
         Set<MessageOutput> outputs = registry.getMessageOutputs();
         assertSame("we should only have the default MessageOutput", Iterables.getOnlyElement(outputs, null), messageOutput);
@@ -74,7 +80,7 @@ public class OutputRegistryTest {
     @Test(expected = IllegalArgumentException.class)
     public void testThrowExceptionForUnknownOutputType() throws MessageOutputConfigurationException {
         when(messageOutputFactory.fromStreamOutput(eq(output), any(Stream.class), any(Configuration.class))).thenReturn(null);
-        OutputRegistry registry = new OutputRegistry(null, null, messageOutputFactory, null, null, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
+        OutputRegistry registry = new OutputRegistry(null, null, messageOutputFactory, null, null, outputFanout, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
 
         registry.launchOutput(output, null);
 
@@ -88,7 +94,7 @@ public class OutputRegistryTest {
         when(messageOutputFactory.fromStreamOutput(eq(output), eq(stream), any(Configuration.class))).thenReturn(messageOutput);
         when(outputService.load(eq(outputId))).thenReturn(output);
 
-        final OutputRegistry outputRegistry = new OutputRegistry(null, outputService, messageOutputFactory, null, null, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
+        final OutputRegistry outputRegistry = new OutputRegistry(null, outputService, messageOutputFactory, null, null, outputFanout, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
         assertEquals(outputRegistry.getRunningMessageOutputs().size(), 0);
 
         MessageOutput result = outputRegistry.getOutputForIdAndStream(outputId, stream);
@@ -96,6 +102,7 @@ public class OutputRegistryTest {
         assertSame(result, messageOutput);
         assertNotNull(outputRegistry.getRunningMessageOutputs());
         assertEquals(outputRegistry.getRunningMessageOutputs().size(), 1);
+        verify(outputFanout).register(outputId, messageOutput);
     }
 
     @Test
@@ -104,7 +111,7 @@ public class OutputRegistryTest {
         final Stream stream = mock(Stream.class);
         when(outputService.load(eq(outputId))).thenThrow(NotFoundException.class);
 
-        final OutputRegistry outputRegistry = new OutputRegistry(null, outputService, null, null, null, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
+        final OutputRegistry outputRegistry = new OutputRegistry(null, outputService, null, null, null, outputFanout, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
 
         MessageOutput messageOutput = outputRegistry.getOutputForIdAndStream(outputId, stream);
 
@@ -119,7 +126,7 @@ public class OutputRegistryTest {
         when(messageOutputFactory.fromStreamOutput(eq(output), any(Stream.class), any(Configuration.class))).thenThrow(new MessageOutputConfigurationException());
         when(outputService.load(eq(outputId))).thenReturn(output);
 
-        final OutputRegistry outputRegistry = new OutputRegistry(null, outputService, messageOutputFactory, null, null, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
+        final OutputRegistry outputRegistry = new OutputRegistry(null, outputService, messageOutputFactory, null, null, outputFanout, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
         assertEquals(outputRegistry.getRunningMessageOutputs().size(), 0);
 
         MessageOutput result = outputRegistry.getOutputForIdAndStream(outputId, stream);
@@ -127,4 +134,23 @@ public class OutputRegistryTest {
         assertNull(result);
         assertEquals(outputRegistry.getRunningMessageOutputs().size(), 0);
     }
+
+    @Test
+    public void testRemoveOutputRemovesQueueBeforeStoppingOutput() throws Exception {
+        final String outputId = "foobar";
+        final Stream stream = mock(Stream.class);
+        when(output.getId()).thenReturn(outputId);
+        when(messageOutputFactory.fromStreamOutput(eq(output), eq(stream), any(Configuration.class))).thenReturn(messageOutput);
+        when(outputService.load(eq(outputId))).thenReturn(output);
+
+        final OutputRegistry outputRegistry = new OutputRegistry(null, outputService, messageOutputFactory, null, null, outputFanout, FAULT_COUNT_THRESHOLD, FAULT_PENALTY_SECONDS);
+        assertSame(messageOutput, outputRegistry.getOutputForIdAndStream(outputId, stream));
+
+        outputRegistry.removeOutput(output);
+
+        final InOrder inOrder = inOrder(outputFanout, messageOutput);
+        inOrder.verify(outputFanout).remove(messageOutput);
+        inOrder.verify(messageOutput).stop();
+        assertEquals(outputRegistry.getRunningMessageOutputs().size(), 0);
+    }
 }
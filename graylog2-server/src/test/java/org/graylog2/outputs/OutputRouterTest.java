@@ -28,6 +28,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -37,6 +38,8 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -60,6 +63,7 @@ public class OutputRouterTest {
     @Test
     public void testGetMessageOutputsForEmptyStream() throws Exception {
         final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
         final OutputRouter outputRouter = new OutputRouter(defaultMessageOutput, outputRegistry);
 
         final Collection<MessageOutput> messageOutputs = outputRouter.getMessageOutputsForStream(stream);
@@ -70,6 +74,7 @@ public class OutputRouterTest {
     @Test
     public void testGetMessageOutputsForSingleStream() throws Exception {
         final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
         final Output output = mock(Output.class);
         final String outputId = "foobar";
         final MessageOutput messageOutput = mock(MessageOutput.class);
@@ -90,6 +95,7 @@ public class OutputRouterTest {
     @Test
     public void testGetMessageOutputsForStreamWithTwoOutputs() throws Exception {
         final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
         final Output output1 = mock(Output.class);
         final Output output2 = mock(Output.class);
         final String output1Id = "foo";
@@ -117,6 +123,7 @@ public class OutputRouterTest {
     @Test
     public void testGetOutputFromSingleStreams() throws Exception {
         final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
         List<Stream> streamList = new ArrayList<Stream>() {{
             add(stream);
         }};
@@ -143,7 +150,9 @@ public class OutputRouterTest {
     @Test
     public void testGetOutputsFromTwoStreams() throws Exception {
         final Stream stream1 = mock(Stream.class);
+        when(stream1.getId()).thenReturn("stream1-id");
         final Stream stream2 = mock(Stream.class);
+        when(stream2.getId()).thenReturn("stream2-id");
         final MessageOutput messageOutput1 = mock(MessageOutput.class);
         final Set<MessageOutput> messageOutputSet1 = new HashSet<MessageOutput>() {{
             add(messageOutput1);
@@ -174,7 +183,9 @@ public class OutputRouterTest {
     @Test
     public void testGetOutputsWithIdenticalMessageOutputs() throws Exception {
         final Stream stream1 = mock(Stream.class);
+        when(stream1.getId()).thenReturn("stream1-id");
         final Stream stream2 = mock(Stream.class);
+        when(stream2.getId()).thenReturn("stream2-id");
         final MessageOutput messageOutput = mock(MessageOutput.class);
         final Set<MessageOutput> messageOutputSet = new HashSet<MessageOutput>() {{
             add(messageOutput);
@@ -196,4 +207,99 @@ public class OutputRouterTest {
         assertTrue(result.contains(defaultMessageOutput));
         assertTrue(result.contains(messageOutput));
     }
+
+    @Test
+    public void testStreamOutputsAreResolvedOncePerStream() throws Exception {
+        final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
+        final Output output = mock(Output.class);
+        final MessageOutput messageOutput = mock(MessageOutput.class);
+        final Set<Output> outputSet = new HashSet<Output>() {{
+            add(output);
+        }};
+        when(stream.getOutputs()).thenReturn(outputSet);
+        when(output.getId()).thenReturn("foobar");
+        when(outputRegistry.getOutputForIdAndStream(eq("foobar"), eq(stream))).thenReturn(messageOutput);
+        final Message message = mock(Message.class);
+        final List<Stream> streamList = new ArrayList<Stream>() {{
+            add(stream);
+        }};
+        when(message.getStreams()).thenReturn(streamList);
+
+        final OutputRouter outputRouter = new OutputRouter(defaultMessageOutput, outputRegistry);
+
+        assertEquals(outputRouter.getStreamOutputsForMessage(message).size(), 1);
+        assertEquals(outputRouter.getStreamOutputsForMessage(message).get(0), messageOutput);
+        verify(outputRegistry, times(1)).getOutputForIdAndStream(eq("foobar"), eq(stream));
+
+        // removing an output from the registry invalidates the routing table
+        when(outputRegistry.getGeneration()).thenReturn(1L);
+        assertEquals(outputRouter.getStreamOutputsForMessage(message).get(0), messageOutput);
+        verify(outputRegistry, times(2)).getOutputForIdAndStream(eq("foobar"), eq(stream));
+    }
+
+    @Test
+    public void testRoutesAreResolvedAgainWhenStreamOutputsChange() throws Exception {
+        final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
+        final Output output1 = mock(Output.class);
+        when(output1.getId()).thenReturn("output1");
+        final Output output2 = mock(Output.class);
+        when(output2.getId()).thenReturn("output2");
+        final MessageOutput messageOutput1 = mock(MessageOutput.class);
+        final MessageOutput messageOutput2 = mock(MessageOutput.class);
+        when(outputRegistry.getOutputForIdAndStream(eq("output1"), eq(stream))).thenReturn(messageOutput1);
+        when(outputRegistry.getOutputForIdAndStream(eq("output2"), eq(stream))).thenReturn(messageOutput2);
+        final Set<Output> outputSet = new HashSet<>();
+        outputSet.add(output1);
+        when(stream.getOutputs()).thenReturn(outputSet);
+        final Message message = mock(Message.class);
+        when(message.getStreams()).thenReturn(Collections.singletonList(stream));
+
+        final OutputRouter outputRouter = new OutputRouter(defaultMessageOutput, outputRegistry);
+        assertEquals(Collections.singletonList(messageOutput1), outputRouter.getStreamOutputsForMessage(message));
+
+        // the same stream instance, but with an additional output
+        outputSet.add(output2);
+        final List<MessageOutput> outputs = outputRouter.getStreamOutputsForMessage(message);
+
+        assertEquals(2, outputs.size());
+        assertTrue(outputs.contains(messageOutput1));
+        assertTrue(outputs.contains(messageOutput2));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReturnedStreamOutputsAreImmutable() throws Exception {
+        final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
+        final Message message = mock(Message.class);
+        when(message.getStreams()).thenReturn(Collections.singletonList(stream));
+
+        final OutputRouter outputRouter = new OutputRouter(defaultMessageOutput, outputRegistry);
+
+        outputRouter.getStreamOutputsForMessage(message).add(mock(MessageOutput.class));
+    }
+
+    @Test
+    public void testUnresolvedStreamOutputsAreRetried() throws Exception {
+        final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
+        final Output output = mock(Output.class);
+        final Set<Output> outputSet = new HashSet<Output>() {{
+            add(output);
+        }};
+        when(stream.getOutputs()).thenReturn(outputSet);
+        when(output.getId()).thenReturn("foobar");
+        final Message message = mock(Message.class);
+        final List<Stream> streamList = new ArrayList<Stream>() {{
+            add(stream);
+        }};
+        when(message.getStreams()).thenReturn(streamList);
+
+        final OutputRouter outputRouter = new OutputRouter(defaultMessageOutput, outputRegistry);
+
+        assertEquals(outputRouter.getStreamOutputsForMessage(message).size(), 0);
+        assertEquals(outputRouter.getStreamOutputsForMessage(message).size(), 0);
+        verify(outputRegistry, times(2)).getOutputForIdAndStream(eq("foobar"), eq(stream));
+    }
 }
@@ -0,0 +1,91 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.Configuration;
+import org.graylog2.alerts.AlertScheduler;
+import org.graylog2.initializers.IndexerSetupService;
+import org.graylog2.plugin.alarms.AlertCondition;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.graylog2.streams.StreamsChangedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AlertScannerThreadTest {
+    @Mock
+    private StreamService streamService;
+    @Mock
+    private IndexerSetupService indexerSetupService;
+    @Mock
+    private AlertScheduler alertScheduler;
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private Stream stream;
+    @Mock
+    private AlertCondition alertCondition;
+
+    private EventBus serverEventBus;
+    private AlertScannerThread alertScannerThread;
+
+    @Before
+    public void setUp() throws Exception {
+        when(indexerSetupService.isRunning()).thenReturn(true);
+        when(configuration.getAlertCheckInterval()).thenReturn(3600);
+        when(streamService.loadAllWithConfiguredAlertConditions()).thenReturn(Collections.singletonList(stream));
+        when(streamService.getAlertConditions(stream)).thenReturn(Collections.singletonList(alertCondition));
+
+        serverEventBus = new EventBus();
+        alertScannerThread = new AlertScannerThread(streamService, indexerSetupService, alertScheduler, configuration,
+                serverEventBus);
+    }
+
+    @Test
+    public void testCachesAlertConditions() throws Exception {
+        alertScannerThread.doRun();
+        alertScannerThread.doRun();
+
+        verify(streamService, times(1)).loadAllWithConfiguredAlertConditions();
+        verify(alertScheduler, times(2)).schedule(ImmutableMap.of(stream, Collections.singletonList(alertCondition)));
+    }
+
+    @Test
+    public void testDeletedAlertConditionIsNoLongerChecked() throws Exception {
+        alertScannerThread.doRun();
+        verify(alertScheduler).schedule(ImmutableMap.of(stream, Collections.singletonList(alertCondition)));
+
+        // deleting the alert condition bumps the stream version, which publishes this event
+        when(streamService.getAlertConditions(stream)).thenReturn(Collections.<AlertCondition>emptyList());
+        serverEventBus.post(StreamsChangedEvent.create(2L));
+        alertScannerThread.doRun();
+
+        verify(alertScheduler).schedule(ImmutableMap.of(stream, Collections.<AlertCondition>emptyList()));
+    }
+}
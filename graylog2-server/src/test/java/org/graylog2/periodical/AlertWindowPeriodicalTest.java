@@ -0,0 +1,102 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import com.google.common.eventbus.EventBus;
+import org.graylog2.alerts.streaming.StreamingAlertEvaluator;
+import org.graylog2.plugin.alarms.AlertCondition;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.graylog2.streams.StreamsChangedEvent;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AlertWindowPeriodicalTest {
+    private static final long NOW = 1000000000000L;
+
+    @Mock
+    private StreamingAlertEvaluator streamingAlertEvaluator;
+    @Mock
+    private StreamService streamService;
+
+    private AlertWindowPeriodical periodical;
+
+    @Before
+    public void setUp() throws Exception {
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        when(streamService.loadAllWithConfiguredAlertConditions()).thenReturn(Collections.<Stream>emptyList());
+        periodical = new AlertWindowPeriodical(streamingAlertEvaluator, streamService, new EventBus());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void testReloadsOnlyAfterStreamsChanged() throws Exception {
+        periodical.doRun();
+        periodical.doRun();
+        verify(streamService, times(1)).loadAllWithConfiguredAlertConditions();
+
+        periodical.handleStreamsChanged(StreamsChangedEvent.create(2L));
+        periodical.doRun();
+        periodical.doRun();
+        verify(streamService, times(2)).loadAllWithConfiguredAlertConditions();
+        verify(streamingAlertEvaluator, times(2)).updateAlertConditions(anyCollectionOf(AlertCondition.class));
+
+        // the windows are published on every run
+        verify(streamingAlertEvaluator, times(4)).publish();
+    }
+
+    @Test
+    public void testReloadsAfterReloadInterval() throws Exception {
+        periodical.doRun();
+
+        DateTimeUtils.setCurrentMillisFixed(NOW + AlertWindowPeriodical.RELOAD_INTERVAL_MILLIS);
+        periodical.doRun();
+
+        verify(streamService, times(2)).loadAllWithConfiguredAlertConditions();
+    }
+
+    @Test
+    public void testRetriesFailedReload() throws Exception {
+        when(streamService.loadAllWithConfiguredAlertConditions())
+                .thenThrow(new IllegalStateException("Boom"))
+                .thenReturn(Collections.<Stream>emptyList());
+
+        periodical.doRun();
+        periodical.doRun();
+        periodical.doRun();
+
+        verify(streamService, times(2)).loadAllWithConfiguredAlertConditions();
+        verify(streamingAlertEvaluator, times(3)).publish();
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.indexer.Deflector;
+import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
+import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.rollups.RollupIndexJob;
+import org.graylog2.indexer.rollups.Rollups;
+import org.graylog2.system.jobs.SystemJobManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IndexRollupPeriodicalTest {
+    @Mock
+    private Rollups rollups;
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private IndexSet defaultIndexSet;
+    @Mock
+    private Deflector deflector;
+    @Mock
+    private IndexSet auditIndexSet;
+    @Mock
+    private Deflector auditDeflector;
+    @Mock
+    private Indices indices;
+    @Mock
+    private Cluster cluster;
+    @Mock
+    private SystemJobManager systemJobManager;
+    @Mock
+    private RollupIndexJob.Factory rollupIndexJobFactory;
+
+    private IndexRollupPeriodical periodical;
+
+    @Before
+    public void setUp() throws Exception {
+        when(cluster.isConnected()).thenReturn(true);
+        when(deflector.getCurrentActualTargetIndex()).thenReturn("graylog_3");
+        when(deflector.getAllDeflectorIndexNames()).thenReturn(new String[]{"graylog_0", "graylog_1", "graylog_2", "graylog_3"});
+        when(defaultIndexSet.getDeflector()).thenReturn(deflector);
+        when(auditDeflector.getCurrentActualTargetIndex()).thenReturn("audit_1");
+        when(auditDeflector.getAllDeflectorIndexNames()).thenReturn(new String[]{"audit_0", "audit_1"});
+        when(auditIndexSet.getDeflector()).thenReturn(auditDeflector);
+        when(indexSetRegistry.getAll()).thenReturn(ImmutableList.of(defaultIndexSet, auditIndexSet));
+        when(indices.isReadOnly(anyString())).thenReturn(true);
+        when(rollupIndexJobFactory.create(anyString())).thenReturn(mock(RollupIndexJob.class));
+
+        periodical = new IndexRollupPeriodical(rollups, indexSetRegistry, indices, cluster, systemJobManager, rollupIndexJobFactory);
+    }
+
+    @Test
+    public void testRollsUpNewestRotatedIndexFirst() throws Exception {
+        periodical.doRun();
+
+        verify(rollupIndexJobFactory, never()).create("graylog_3");
+        verify(rollupIndexJobFactory).create("graylog_2");
+        verify(rollupIndexJobFactory, never()).create("graylog_1");
+        verify(systemJobManager).submit(any(RollupIndexJob.class));
+    }
+
+    @Test
+    public void testSkipsIndicesWhichAreNotReadOnly() throws Exception {
+        when(indices.isReadOnly("graylog_2")).thenReturn(false);
+        when(indices.isReadOnly("graylog_1")).thenThrow(new IllegalStateException("Boom"));
+
+        periodical.doRun();
+
+        verify(rollupIndexJobFactory, never()).create("graylog_2");
+        verify(rollupIndexJobFactory, never()).create("graylog_1");
+        verify(rollupIndexJobFactory).create("graylog_0");
+    }
+
+    @Test
+    public void testSkipsRolledUpAndFailingIndices() throws Exception {
+        when(rollups.isRolledUp("graylog_2")).thenReturn(true);
+        when(rollups.isBackingOff("graylog_1")).thenReturn(true);
+
+        periodical.doRun();
+
+        verify(rollupIndexJobFactory, never()).create("graylog_2");
+        verify(rollupIndexJobFactory, never()).create("graylog_1");
+        verify(rollupIndexJobFactory).create("graylog_0");
+    }
+
+    @Test
+    public void testRollsUpIndicesOfAdditionalIndexSets() throws Exception {
+        when(rollups.isRolledUp(anyString())).thenReturn(true);
+        when(rollups.isRolledUp("audit_0")).thenReturn(false);
+
+        periodical.doRun();
+
+        verify(rollupIndexJobFactory, never()).create("audit_1");
+        verify(rollupIndexJobFactory).create("audit_0");
+        verify(systemJobManager).submit(any(RollupIndexJob.class));
+    }
+
+    @Test
+    public void testDoesNothingWhileRollupsAreCalculated() throws Exception {
+        when(systemJobManager.concurrentJobs(RollupIndexJob.class)).thenReturn(1);
+
+        periodical.doRun();
+
+        verify(rollupIndexJobFactory, never()).create(anyString());
+    }
+}
@@ -16,9 +16,12 @@
  */
 package org.graylog2.periodical;
 
+import com.google.common.collect.ImmutableList;
 import org.graylog2.indexer.Deflector;
 import org.graylog2.indexer.NoTargetIndexException;
 import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.indexset.IndexSet;
+import org.graylog2.indexer.indexset.IndexSetRegistry;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.initializers.IndexerSetupService;
 import org.graylog2.notifications.NotificationService;
@@ -32,6 +35,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import javax.annotation.Nullable;
 import javax.inject.Provider;
+import java.util.Collections;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -49,6 +53,8 @@ public class IndexRotationThreadTest {
     private Indices indices;
     @Mock
     private Cluster cluster;
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
 
     @Test
     public void testFailedRotation() {
@@ -65,16 +71,16 @@ public class IndexRotationThreadTest {
             }
         };
 
+        final IndexSet indexSet = new IndexSet("Default index set", deflector, provider, "delete", 20, true);
         final IndexRotationThread rotationThread = new IndexRotationThread(
                 notificationService,
                 indices,
-                deflector,
+                indexSetRegistry,
                 cluster,
-                new NullActivityWriter(),
-                provider
+                new NullActivityWriter()
         );
 
-        rotationThread.checkForRotation();
+        rotationThread.checkForRotation(indexSet);
 
         verify(deflector, never()).cycle();
     }
@@ -104,18 +110,18 @@ public class IndexRotationThreadTest {
             }
         };
 
+        final IndexSet indexSet = new IndexSet("Default index set", deflector, provider, "delete", 20, true);
         final IndexRotationThread rotationThread = new IndexRotationThread(
                 notificationService,
                 indices,
-                deflector,
+                indexSetRegistry,
                 cluster,
-                new NullActivityWriter(),
-                provider
+                new NullActivityWriter()
         );
 
         when(deflector.getNewestTargetName()).thenReturn("some_index");
 
-        rotationThread.checkForRotation();
+        rotationThread.checkForRotation(indexSet);
 
         verify(deflector, times(1)).cycle();
         verify(deflector, times(1)).getNewestTargetName();
@@ -146,18 +152,18 @@ public class IndexRotationThreadTest {
             }
         };
 
+        final IndexSet indexSet = new IndexSet("Default index set", deflector, provider, "delete", 20, true);
         final IndexRotationThread rotationThread = new IndexRotationThread(
                 notificationService,
                 indices,
-                deflector,
+                indexSetRegistry,
                 cluster,
-                new NullActivityWriter(),
-                provider
+                new NullActivityWriter()
         );
 
         when(deflector.getNewestTargetName()).thenReturn("some_index");
 
-        rotationThread.checkForRotation();
+        rotationThread.checkForRotation(indexSet);
 
         verify(deflector, never()).cycle();
         verify(deflector, times(1)).getNewestTargetName();
@@ -169,13 +175,14 @@ public class IndexRotationThreadTest {
         when(cluster.isConnected()).thenReturn(false);
         when(cluster.isHealthy()).thenReturn(false);
 
+        final IndexSet indexSet = new IndexSet("Default index set", deflector, provider, "delete", 20, true);
+        when(indexSetRegistry.getAll()).thenReturn(Collections.singletonList(indexSet));
         final IndexRotationThread rotationThread = new IndexRotationThread(
                 notificationService,
                 indices,
-                deflector,
+                indexSetRegistry,
                 cluster,
-                new NullActivityWriter(),
-                provider
+                new NullActivityWriter()
         );
 
         rotationThread.doRun();
@@ -183,4 +190,54 @@ public class IndexRotationThreadTest {
         verify(deflector, never()).cycle();
         verify(provider, never()).get();
     }
+
+    @Test
+    public void testRotationOfAllIndexSets() throws NoTargetIndexException {
+        final Provider<RotationStrategy> provider = new Provider<RotationStrategy>() {
+            @Override
+            public RotationStrategy get() {
+                return new RotationStrategy() {
+                    @Nullable
+                    @Override
+                    public Result shouldRotate(final String index) {
+                        return new Result() {
+                            @Override
+                            public String getDescription() {
+                                return "performed";
+                            }
+
+                            @Override
+                            public boolean shouldRotate() {
+                                return index.startsWith("audit");
+                            }
+                        };
+                    }
+                };
+            }
+        };
+        final Deflector auditDeflector = mock(Deflector.class);
+        when(cluster.isConnected()).thenReturn(true);
+        when(deflector.isUp()).thenReturn(true);
+        when(deflector.getCurrentActualTargetIndex()).thenReturn("graylog_1");
+        when(deflector.getNewestTargetName()).thenReturn("graylog_1");
+        when(auditDeflector.isUp()).thenReturn(true);
+        when(auditDeflector.getCurrentActualTargetIndex()).thenReturn("audit_3");
+        when(auditDeflector.getNewestTargetName()).thenReturn("audit_3");
+        when(indexSetRegistry.getAll()).thenReturn(ImmutableList.of(
+                new IndexSet("Default index set", deflector, provider, "delete", 20, true),
+                new IndexSet("Audit", auditDeflector, provider, "close", 10, false)));
+
+        final IndexRotationThread rotationThread = new IndexRotationThread(
+                notificationService,
+                indices,
+                indexSetRegistry,
+                cluster,
+                new NullActivityWriter()
+        );
+
+        rotationThread.doRun();
+
+        verify(deflector, never()).cycle();
+        verify(auditDeflector, times(1)).cycle();
+    }
 }
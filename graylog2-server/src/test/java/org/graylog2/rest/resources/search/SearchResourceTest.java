@@ -0,0 +1,116 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest.resources.search;
+
+import com.google.common.collect.ImmutableList;
+import org.glassfish.jersey.server.ChunkedOutput;
+import org.graylog2.indexer.results.ResultMessage;
+import org.graylog2.indexer.results.ScrollResult;
+import org.graylog2.indexer.searches.Searches;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SearchResourceTest {
+    @Mock
+    private Searches searches;
+    @Mock
+    private ScrollResult scroll;
+    @Mock
+    private ChunkedOutput<ScrollResult.ScrollChunk> output;
+    @Mock
+    private ScrollResult.ScrollChunk chunk;
+
+    private SearchResource resource;
+
+    @Before
+    public void setUp() throws Exception {
+        resource = new SearchResource(searches) {
+        };
+        when(scroll.getQueryHash()).thenReturn("hash");
+        when(chunk.getMessages()).thenReturn(ImmutableList.of(mock(ResultMessage.class)));
+    }
+
+    @Test
+    public void testExhaustedScrollIsNotCancelled() throws Exception {
+        when(scroll.nextChunk()).thenReturn(chunk, chunk, null);
+
+        resource.createScrollChunkProducer(scroll, output, 0).run();
+
+        verify(output, times(2)).write(chunk);
+        verify(output).close();
+        verify(scroll, never()).cancel();
+    }
+
+    @Test
+    public void testScrollIsCancelledWhenLimitIsReached() throws Exception {
+        when(scroll.nextChunk()).thenReturn(chunk, chunk, chunk, null);
+
+        resource.createScrollChunkProducer(scroll, output, 2).run();
+
+        verify(output, times(2)).write(chunk);
+        verify(output).close();
+        verify(scroll).cancel();
+    }
+
+    @Test
+    public void testScrollIsCancelledWhenClientDisconnected() throws Exception {
+        when(scroll.nextChunk()).thenReturn(chunk, null);
+        when(output.isClosed()).thenReturn(true);
+
+        resource.createScrollChunkProducer(scroll, output, 0).run();
+
+        verify(output, never()).write(chunk);
+        verify(scroll).cancel();
+    }
+
+    @Test
+    public void testScrollIsCancelledWhenWriteFails() throws Exception {
+        when(scroll.nextChunk()).thenReturn(chunk, chunk, null);
+        doThrow(new IOException("Broken pipe")).when(output).write(chunk);
+
+        resource.createScrollChunkProducer(scroll, output, 0).run();
+
+        verify(output, times(1)).write(chunk);
+        verify(scroll, times(1)).nextChunk();
+        verify(output).close();
+        verify(scroll).cancel();
+    }
+
+    @Test
+    public void testFailingCancelDoesNotEscape() throws Exception {
+        when(scroll.nextChunk()).thenThrow(new IllegalStateException("Boom"));
+        doThrow(new IllegalStateException("Boom")).when(scroll).cancel();
+
+        resource.createScrollChunkProducer(scroll, output, 0).run();
+
+        verify(output).close();
+        verify(scroll).cancel();
+    }
+}
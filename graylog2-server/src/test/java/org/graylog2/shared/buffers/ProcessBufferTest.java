@@ -18,6 +18,7 @@ package org.graylog2.shared.buffers;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import org.graylog2.plugin.ServerStatus;
@@ -32,6 +33,8 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import javax.inject.Provider;
 
+import static org.mockito.AdditionalAnswers.returnsSecondArg;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -49,6 +52,7 @@ public class ProcessBufferTest {
         when(mockMetricRegistry.meter(anyString())).thenReturn(mockMeter);
         when(mockMetricRegistry.timer(anyString())).thenReturn(mockTimer);
         when(mockMetricRegistry.counter(anyString())).thenReturn(mockCounter);
+        when(mockMetricRegistry.register(anyString(), any(Metric.class))).thenAnswer(returnsSecondArg());
 
         return mockMetricRegistry;
     }
@@ -27,6 +27,7 @@ import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.plugin.streams.StreamRuleType;
 import org.graylog2.streams.matchers.StreamRuleMock;
+import org.graylog2.shared.stats.ThroughputStats;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
@@ -53,6 +54,7 @@ public class StreamRouterEngineTest {
     @Mock
     StreamFaultManager streamFaultManager;
     StreamMetrics streamMetrics = new StreamMetrics(new MetricRegistry());
+    ThroughputStats throughputStats = new ThroughputStats();
 
     @Before
     public void setUp() throws Exception {
@@ -60,7 +62,7 @@ public class StreamRouterEngineTest {
     }
 
     private StreamRouterEngine newEngine(List<Stream> streams) {
-        return new StreamRouterEngine(streams, Executors.newSingleThreadExecutor(), streamFaultManager, streamMetrics);
+        return new StreamRouterEngine(streams, Executors.newSingleThreadExecutor(), streamFaultManager, streamMetrics, throughputStats);
     }
 
     @Test
@@ -679,6 +681,30 @@ public class StreamRouterEngineTest {
                 Lists.<Stream>newArrayList(stream), engine.match(message2));
     }
 
+    @Test
+    public void testMatchCountsStreamThroughput() throws Exception {
+        final StreamMock stream = getStreamMock("test");
+        final StreamRuleMock rule = new StreamRuleMock(ImmutableMap.<String, Object>of(
+                "_id", new ObjectId(),
+                "field", "testfield",
+                "type", StreamRuleType.PRESENCE.toInteger(),
+                "stream_id", stream.getId()
+        ));
+
+        stream.setStreamRules(Lists.<StreamRule>newArrayList(rule));
+
+        final StreamRouterEngine engine = newEngine(Lists.<Stream>newArrayList(stream));
+        final Message message = getMessage();
+        message.addField("testfield", "testvalue");
+
+        engine.match(message);
+        engine.match(message);
+        engine.match(getMessage());
+
+        assertThat(throughputStats.cycleStreamThroughput()).containsEntry(stream.getId(), 2L);
+        assertThat(throughputStats.cycleStreamThroughput()).isEmpty();
+    }
+
     private StreamMock getStreamMock(String title) {
         return getStreamMock(title, Stream.MatchingType.AND);
     }
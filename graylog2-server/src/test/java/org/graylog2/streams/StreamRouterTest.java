@@ -0,0 +1,190 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.stats.ThroughputStats;
+import org.graylog2.shared.tracing.PipelineTracer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StreamRouterTest {
+    @Mock
+    private StreamService streamService;
+    @Mock
+    private ServerStatus serverStatus;
+    @Mock
+    private StreamRouterEngine.Factory engineFactory;
+    @Mock
+    private ScheduledExecutorService scheduler;
+    @Mock
+    private StreamVersionService streamVersionService;
+    @Mock
+    private EventBus serverEventBus;
+    @Mock
+    private PipelineTracer pipelineTracer;
+
+    private final AtomicInteger engineCount = new AtomicInteger(0);
+
+    @Before
+    public void setUp() throws Exception {
+        when(streamService.loadAllEnabled()).thenReturn(Collections.<Stream>emptyList());
+        when(engineFactory.create(anyListOf(Stream.class), any(ExecutorService.class))).thenAnswer(new Answer<StreamRouterEngine>() {
+            @Override
+            public StreamRouterEngine answer(InvocationOnMock invocation) throws Throwable {
+                // every engine gets a new fingerprint so that each reload replaces the engine
+                final StreamRouterEngine engine = mock(StreamRouterEngine.class);
+                when(engine.getFingerprint()).thenReturn(String.valueOf(engineCount.incrementAndGet()));
+                when(engine.getStreams()).thenReturn(Collections.<Stream>emptyList());
+                return engine;
+            }
+        });
+        when(streamVersionService.currentVersion()).thenReturn(1L);
+    }
+
+    @Test
+    public void testIncrementalUpdaterDoesNotReloadWithoutChanges() throws Exception {
+        final Runnable updater = createIncrementalRouter(Duration.hours(1L));
+
+        updater.run();
+        updater.run();
+
+        // only the initial load of the constructor
+        verify(streamService, times(1)).loadAllEnabled();
+    }
+
+    @Test
+    public void testIncrementalUpdaterReloadsOncePerStreamsChangedEvent() throws Exception {
+        final StreamRouter streamRouter = createRouter(true, Duration.hours(1L));
+        final Runnable updater = captureUpdater();
+
+        streamRouter.handleStreamsChanged(StreamsChangedEvent.create(2L));
+        updater.run();
+        verify(streamService, times(2)).loadAllEnabled();
+
+        updater.run();
+        verify(streamService, times(2)).loadAllEnabled();
+    }
+
+    @Test
+    public void testIncrementalUpdaterReloadsIfVersionChangedWithoutEvent() throws Exception {
+        final Runnable updater = createIncrementalRouter(Duration.milliseconds(0L));
+
+        updater.run();
+        verify(streamService, times(1)).loadAllEnabled();
+
+        // the event of this change got lost, the periodic version check has to pick it up
+        when(streamVersionService.currentVersion()).thenReturn(2L);
+        updater.run();
+        verify(streamService, times(2)).loadAllEnabled();
+
+        updater.run();
+        verify(streamService, times(2)).loadAllEnabled();
+    }
+
+    @Test
+    public void testIncrementalUpdaterFallsBackToFullReloadIfVersionIsUnreadable() throws Exception {
+        when(streamVersionService.currentVersion()).thenReturn(-1L);
+        final Runnable updater = createIncrementalRouter(Duration.milliseconds(0L));
+
+        updater.run();
+        updater.run();
+
+        verify(streamService, times(3)).loadAllEnabled();
+    }
+
+    @Test
+    public void testIncrementalUpdaterRetriesFailedUpdate() throws Exception {
+        final StreamRouter streamRouter = createRouter(true, Duration.hours(1L));
+        final Runnable updater = captureUpdater();
+
+        when(streamService.loadAllEnabled())
+                .thenThrow(new IllegalStateException("Boom"))
+                .thenReturn(Collections.<Stream>emptyList());
+        streamRouter.handleStreamsChanged(StreamsChangedEvent.create(2L));
+
+        updater.run();
+        updater.run();
+        verify(streamService, times(3)).loadAllEnabled();
+
+        updater.run();
+        verify(streamService, times(3)).loadAllEnabled();
+    }
+
+    @Test
+    public void testPeriodicUpdaterReloadsEveryTime() throws Exception {
+        createRouter(false, Duration.hours(1L));
+        final Runnable updater = captureUpdater();
+
+        updater.run();
+        updater.run();
+
+        verify(streamService, times(3)).loadAllEnabled();
+    }
+
+    @Test
+    public void testUpdateDropsMetricsOfRemovedStreams() throws Exception {
+        createRouter(false, Duration.hours(1L));
+        final Runnable updater = captureUpdater();
+
+        updater.run();
+
+        verify(pipelineTracer).retainStreams(Collections.<String>emptyList());
+    }
+
+    private Runnable createIncrementalRouter(Duration versionCheckInterval) {
+        createRouter(true, versionCheckInterval);
+        return captureUpdater();
+    }
+
+    private StreamRouter createRouter(boolean incrementalUpdates, Duration versionCheckInterval) {
+        return new StreamRouter(streamService, serverStatus, engineFactory, scheduler, streamVersionService,
+                serverEventBus, incrementalUpdates, versionCheckInterval, new ThroughputStats(),
+                pipelineTracer);
+    }
+
+    private Runnable captureUpdater() {
+        final ArgumentCaptor<Runnable> updater = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleAtFixedRate(updater.capture(), anyLong(), anyLong(), eq(TimeUnit.SECONDS));
+        return updater.getValue();
+    }
+}
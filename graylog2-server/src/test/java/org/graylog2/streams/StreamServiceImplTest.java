@@ -0,0 +1,163 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams;
+
+import com.google.common.collect.ImmutableMap;
+import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
+import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
+import com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb;
+import org.bson.types.ObjectId;
+import org.graylog2.alerts.AbstractAlertCondition;
+import org.graylog2.alerts.AlertService;
+import org.graylog2.database.MongoConnectionRule;
+import org.graylog2.notifications.NotificationService;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.streams.Stream;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb.InMemoryMongoRuleBuilder.newInMemoryMongoDbRule;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StreamServiceImplTest {
+    @ClassRule
+    public static final InMemoryMongoDb IN_MEMORY_MONGO_DB = newInMemoryMongoDbRule().build();
+
+    @Rule
+    public MongoConnectionRule mongoRule = MongoConnectionRule.build("test");
+
+    @Mock
+    private StreamRuleService streamRuleService;
+    @Mock
+    private AlertService alertService;
+    @Mock
+    private OutputService outputService;
+    @Mock
+    private NotificationService notificationService;
+    @Mock
+    private StreamVersionService streamVersionService;
+
+    private StreamServiceImpl streamService;
+
+    @Before
+    public void setUp() throws Exception {
+        streamService = new StreamServiceImpl(mongoRule.getMongoConnection(), streamRuleService, alertService,
+                outputService, notificationService, streamVersionService);
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testSavingNewStreamBumpsVersion() throws Exception {
+        streamService.save(createStream());
+
+        verify(streamVersionService, times(1)).streamsChanged();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testChangingTitleDoesNotBumpVersion() throws Exception {
+        final Stream stream = createStream();
+        streamService.save(stream);
+        reset(streamVersionService);
+
+        streamService.update(stream, "New title", "New description");
+
+        verify(streamVersionService, never()).streamsChanged();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testPauseAndResumeBumpVersion() throws Exception {
+        final Stream stream = createStream();
+        streamService.save(stream);
+        reset(streamVersionService);
+
+        streamService.pause(stream);
+        verify(streamVersionService, times(1)).streamsChanged();
+
+        // saving it again without a change is a no-op for the stream router
+        streamService.pause(stream);
+        verify(streamVersionService, times(1)).streamsChanged();
+
+        streamService.resume(stream);
+        verify(streamVersionService, times(2)).streamsChanged();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testChangingOutputsOrMatchingTypeBumpsVersion() throws Exception {
+        final Stream stream = createStream();
+        streamService.save(stream);
+        reset(streamVersionService);
+
+        stream.getFields().put(StreamImpl.FIELD_OUTPUTS, Collections.singletonList(new ObjectId()));
+        streamService.save(stream);
+        verify(streamVersionService, times(1)).streamsChanged();
+
+        stream.getFields().put(StreamImpl.FIELD_MATCHING_TYPE, Stream.MatchingType.OR.toString());
+        streamService.save(stream);
+        verify(streamVersionService, times(2)).streamsChanged();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void testChangingAlertConditionsBumpsVersion() throws Exception {
+        final Stream stream = createStream();
+        streamService.save(stream);
+        reset(streamVersionService);
+
+        final AbstractAlertCondition alertCondition = mock(AbstractAlertCondition.class);
+        when(alertCondition.getId()).thenReturn("condition-1");
+        when(alertCondition.getPersistedFields()).thenReturn(ImmutableMap.<String, Object>of(
+                "id", "condition-1",
+                "parameters", Collections.emptyMap()));
+
+        streamService.addAlertCondition(stream, alertCondition);
+        verify(streamVersionService, times(1)).streamsChanged();
+
+        streamService.updateAlertCondition(stream, alertCondition);
+        verify(streamVersionService, times(2)).streamsChanged();
+
+        streamService.removeAlertCondition(stream, "condition-1");
+        verify(streamVersionService, times(3)).streamsChanged();
+    }
+
+    private Stream createStream() {
+        final Map<String, Object> fields = new HashMap<>();
+        fields.put(StreamImpl.FIELD_TITLE, "Test");
+        fields.put(StreamImpl.FIELD_CREATOR_USER_ID, "admin");
+        fields.put(StreamImpl.FIELD_CREATED_AT, Tools.iso8601());
+        fields.put(StreamImpl.FIELD_MATCHING_TYPE, Stream.MatchingType.AND.toString());
+        fields.put(StreamImpl.FIELD_DISABLED, false);
+        return streamService.create(fields);
+    }
+}
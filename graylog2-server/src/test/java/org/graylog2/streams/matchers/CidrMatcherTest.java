@@ -0,0 +1,113 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams.matchers;
+
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.plugin.streams.StreamRuleType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CidrMatcherTest extends MatcherTest {
+
+    @Test
+    public void testSuccessfulMatch() {
+        StreamRule rule = getSampleRule();
+
+        Message msg = getSampleMessage();
+        msg.addField("something", "192.168.1.42");
+
+        StreamRuleMatcher matcher = getMatcher(rule);
+        assertTrue(matcher.match(msg, rule));
+    }
+
+    @Test
+    public void testSuccessfulIpv6Match() {
+        StreamRule rule = getSampleRule();
+
+        Message msg = getSampleMessage();
+        msg.addField("something", "2001:db8::23");
+
+        StreamRuleMatcher matcher = getMatcher(rule);
+        assertTrue(matcher.match(msg, rule));
+    }
+
+    @Test
+    public void testMissedMatch() {
+        StreamRule rule = getSampleRule();
+
+        Message msg = getSampleMessage();
+        msg.addField("something", "192.168.2.42");
+
+        StreamRuleMatcher matcher = getMatcher(rule);
+        assertFalse(matcher.match(msg, rule));
+    }
+
+    @Test
+    public void testInvalidAddress() {
+        StreamRule rule = getSampleRule();
+
+        Message msg = getSampleMessage();
+        msg.addField("something", "example.org");
+
+        StreamRuleMatcher matcher = getMatcher(rule);
+        assertFalse(matcher.match(msg, rule));
+    }
+
+    @Test
+    public void testInvertedMatch() {
+        StreamRule rule = getSampleRule();
+        rule.setInverted(true);
+
+        Message msg = getSampleMessage();
+        msg.addField("something", "172.16.0.1");
+
+        StreamRuleMatcher matcher = getMatcher(rule);
+        assertTrue(matcher.match(msg, rule));
+    }
+
+    @Test
+    public void testNonExistantField() {
+        StreamRule rule = getSampleRule();
+
+        Message msg = getSampleMessage();
+        msg.addField("someother", "192.168.1.42");
+
+        StreamRuleMatcher matcher = getMatcher(rule);
+        assertFalse(matcher.match(msg, rule));
+    }
+
+    protected StreamRule getSampleRule() {
+        StreamRule rule = super.getSampleRule();
+        rule.setType(StreamRuleType.CIDR);
+        rule.setValue("10.0.0.0/8, 192.168.1.0/24\n2001:db8::/32");
+
+        return rule;
+    }
+
+    protected StreamRuleMatcher getMatcher(StreamRule rule) {
+        StreamRuleMatcher matcher = super.getMatcher(rule);
+
+        assertEquals(matcher.getClass(), CidrMatcher.class);
+
+        return matcher;
+    }
+
+}
@@ -26,7 +26,9 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
 import com.lmax.disruptor.EventHandler;
+import org.graylog2.plugin.MessageTrace;
 import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.tracing.PipelineTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,11 +64,16 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
     private final Counter byteCounter;
     private final Journal journal;
     private final Semaphore journalFilled;
+    private final PipelineTracer pipelineTracer;
 
     @Inject
-    public JournallingMessageHandler(MetricRegistry metrics, Journal journal, @Named("JournalSignal") Semaphore journalFilled) {
+    public JournallingMessageHandler(MetricRegistry metrics,
+                                     Journal journal,
+                                     @Named("JournalSignal") Semaphore journalFilled,
+                                     PipelineTracer pipelineTracer) {
         this.journal = journal;
         this.journalFilled = journalFilled;
+        this.pipelineTracer = pipelineTracer;
         byteCounter = metrics.counter(MetricRegistry.name(JournallingMessageHandler.class, "written_bytes"));
     }
 
@@ -85,30 +92,45 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
             // Remove all null values returned from the converter (might happen if the Converter throws an exception)
             entries.removeAll(NULL_SINGLETON);
 
-            // Clear the batch list after transforming it with the Converter because the fields of the RawMessageEvent
-            // objects in there have been set to null and cannot be used anymore.
-            batch.clear();
-
-            // Catch all exceptions that might happen during the journal write and retry the operation.
-            // This basically blocks if the journal write always throws an exception. Once the write succeeds, we will
-            // continue.
             try {
-                writeToJournal(converter, entries);
-            } catch (Exception e) {
-                log.error("Unable to write to journal - retrying", e);
-
-                // Use retryer with exponential back-off to avoid spamming the logs.
-                JOURNAL_WRITE_RETRYER.call(new Callable<Void>() {
-                    @Override
-                    public Void call() throws Exception {
-                        writeToJournal(converter, entries);
-                        return null;
-                    }
-                });
+                // Catch all exceptions that might happen during the journal write and retry the operation.
+                // This basically blocks if the journal write always throws an exception. Once the write succeeds, we
+                // will continue.
+                try {
+                    writeToJournal(converter, entries);
+                } catch (Exception e) {
+                    log.error("Unable to write to journal - retrying", e);
+
+                    // Use retryer with exponential back-off to avoid spamming the logs.
+                    JOURNAL_WRITE_RETRYER.call(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            writeToJournal(converter, entries);
+                            return null;
+                        }
+                    });
+                }
+
+                if (pipelineTracer.isEnabled()) {
+                    recordJournalWrites();
+                }
+            } finally {
+                // Clear the batch list after journalling it because the fields of the RawMessageEvent objects in
+                // there have been set to null by the Converter and cannot be used anymore. The events themselves are
+                // not reused by the producers before this method returns.
+                batch.clear();
             }
         }
     }
 
+    private void recordJournalWrites() {
+        final long now = System.nanoTime();
+        for (RawMessageEvent event : batch) {
+            pipelineTracer.recordInputStage(event.getSourceInputId(), MessageTrace.JOURNAL_WRITE,
+                    now - event.getReceivedNanos());
+        }
+    }
+
     private void writeToJournal(Converter converter, List<Journal.Entry> entries) {
         final long lastOffset = journal.write(entries);
         log.debug("Processed batch, wrote {} bytes, last journal offset: {}, signalling reader.",
@@ -69,10 +69,10 @@ public class ProcessBuffer extends Buffer {
         this.ringBufferSize = ringSize;
 
         this.executor = executorService(metricRegistry);
-        this.incomingMessages = metricRegistry.meter(name(ProcessBuffer.class, "incomingMessages"));
+        this.incomingMessages = MetricUtils.lowOverheadMeter(metricRegistry, name(ProcessBuffer.class, "incomingMessages"));
 
-        this.parseTime = metricRegistry.timer(name(ProcessBuffer.class, "parseTime"));
-        this.decodeTime = metricRegistry.timer(name(ProcessBuffer.class, "decodeTime"));
+        this.parseTime = MetricUtils.lowOverheadTimer(metricRegistry, name(ProcessBuffer.class, "parseTime"));
+        this.decodeTime = MetricUtils.lowOverheadTimer(metricRegistry, name(ProcessBuffer.class, "decodeTime"));
 
         MetricUtils.safelyRegister(metricRegistry, GlobalMetricNames.PROCESS_BUFFER_USAGE, new Gauge<Long>() {
             @Override
@@ -116,9 +116,12 @@ public class ProcessBuffer extends Buffer {
     }
 
     public void insertBlocking(@Nonnull RawMessage rawMessage) {
+        // taken before claiming the slot, waiting for a free slot is part of the queue wait
+        final long insertedNanos = System.nanoTime();
         final long sequence = ringBuffer.next();
         final MessageEvent event = ringBuffer.get(sequence);
         event.setRaw(rawMessage);
+        event.setRawInsertedNanos(insertedNanos);
         ringBuffer.publish(sequence);
         afterInsert(1);
     }
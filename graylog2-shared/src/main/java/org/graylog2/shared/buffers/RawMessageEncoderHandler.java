@@ -40,6 +40,7 @@ public class RawMessageEncoderHandler implements WorkHandler<RawMessageEvent> {
         incomingMessages.mark();
         event.setEncodedRawMessage(event.getRawMessage().encode());
         event.setMessageIdBytes(event.getRawMessage().getIdBytes());
+        event.setSourceInputId(event.getRawMessage().getLastSourceInputId());
         
         if (log.isTraceEnabled()) {
             log.trace("Serialized message {} for journal, size {} bytes",
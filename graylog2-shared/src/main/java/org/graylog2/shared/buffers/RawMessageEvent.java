@@ -33,6 +33,10 @@ public class RawMessageEvent {
     private byte[] messageIdBytes;
     private byte[] encodedRawMessage;
 
+    // kept for message tracing after the rawMessage has been cleared
+    private long receivedNanos;
+    private String sourceInputId;
+
     public static final EventFactory<RawMessageEvent> FACTORY = new EventFactory<RawMessageEvent>() {
         @Override
         public RawMessageEvent newInstance() {
@@ -43,6 +47,7 @@ public class RawMessageEvent {
         @Override
         public void translateTo(RawMessageEvent event, long sequence, RawMessage arg0) {
             event.setRawMessage(arg0);
+            event.setReceivedNanos(System.nanoTime());
         }
     };
 
@@ -79,6 +84,22 @@ public class RawMessageEvent {
         return messageIdBytes;
     }
 
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    public void setReceivedNanos(long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+    }
+
+    public String getSourceInputId() {
+        return sourceInputId;
+    }
+
+    public void setSourceInputId(String sourceInputId) {
+        this.sourceInputId = sourceInputId;
+    }
+
     // performance doesn't matter, it's only being called during tracing
     public UUID getMessageId() {
         final ByteBuffer wrap = ByteBuffer.wrap(messageIdBytes);
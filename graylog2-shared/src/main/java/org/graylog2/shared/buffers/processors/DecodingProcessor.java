@@ -20,7 +20,6 @@ package org.graylog2.shared.buffers.processors;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.net.InetAddresses;
 import com.google.inject.assistedinject.Assisted;
@@ -33,6 +32,9 @@ import org.graylog2.plugin.buffers.MessageEvent;
 import org.graylog2.plugin.inputs.codecs.Codec;
 import org.graylog2.plugin.inputs.codecs.MultiMessageCodec;
 import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.metrics.MetricHandles;
+import org.graylog2.shared.metrics.MetricLayout;
+import org.graylog2.shared.tracing.PipelineTracer;
 import org.graylog2.shared.utilities.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +42,8 @@ import org.slf4j.LoggerFactory;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -49,6 +52,12 @@ import static com.codahale.metrics.MetricRegistry.name;
 public class DecodingProcessor implements EventHandler<MessageEvent> {
     private static final Logger LOG = LoggerFactory.getLogger(DecodingProcessor.class);
 
+    private static final MetricLayout CODEC_METRICS = new MetricLayout();
+    private static final int FAILURES = CODEC_METRICS.meter("failures");
+    private static final int INCOMPLETE = CODEC_METRICS.meter("incomplete");
+    private static final int PROCESSED_MESSAGES = CODEC_METRICS.meter("processedMessages");
+    private static final int PARSE_TIME = CODEC_METRICS.timer("parseTime");
+
     private final Timer decodeTime;
 
     public interface Factory {
@@ -59,16 +68,21 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
     private final ServerStatus serverStatus;
     private final MetricRegistry metricRegistry;
     private final Timer parseTime;
+    private final PipelineTracer pipelineTracer;
+    // keyed by input id, an input always uses the same codec
+    private final ConcurrentMap<String, MetricHandles> codecMetrics = new ConcurrentHashMap<>();
 
     @AssistedInject
     public DecodingProcessor(Map<String, Codec.Factory<? extends Codec>> codecFactory,
                              final ServerStatus serverStatus,
                              final MetricRegistry metricRegistry,
+                             final PipelineTracer pipelineTracer,
                              @Assisted("decodeTime") Timer decodeTime,
                              @Assisted("parseTime") Timer parseTime) {
         this.codecFactory = codecFactory;
         this.serverStatus = serverStatus;
         this.metricRegistry = metricRegistry;
+        this.pipelineTracer = pipelineTracer;
 
         // these metrics are global to all processors, thus they are passed in directly to avoid relying on the class name
         this.parseTime = parseTime;
@@ -77,6 +91,7 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
 
     @Override
     public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+        final long queuedNanos = System.nanoTime() - event.getRawInsertedNanos();
         final Timer.Context context = decodeTime.time();
         try {
             processMessage(event);
@@ -87,11 +102,14 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             // basically this will make sure old messages are cleared out early.
             event.clearMessages();
         } finally {
+            final long decodeNanos = context.stop();
             if (event.getMessage() != null) {
-                event.getMessage().recordTiming(serverStatus, "decode", context.stop());
+                event.getMessage().recordTiming(serverStatus, "decode", decodeNanos);
+                beginTrace(event.getMessage(), event.getRaw(), queuedNanos, decodeNanos);
             } else if (event.getMessages() != null) {
                 for (final Message message : event.getMessages()) {
-                    message.recordTiming(serverStatus, "decode", context.stop());
+                    message.recordTiming(serverStatus, "decode", decodeNanos);
+                    beginTrace(message, event.getRaw(), queuedNanos, decodeNanos);
                 }
             }
             // aid garbage collection to collect the raw message early (to avoid promoting it to later generations).
@@ -99,6 +117,12 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
         }
     }
 
+    private void beginTrace(Message message, RawMessage raw, long queuedNanos, long decodeNanos) {
+        if (pipelineTracer.isEnabled()) {
+            pipelineTracer.begin(message, raw.getTimestampMillis(), queuedNanos, decodeNanos);
+        }
+    }
+
     private void processMessage(final MessageEvent event) throws ExecutionException {
         final RawMessage raw = event.getRaw();
 
@@ -113,14 +137,9 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
         // for backwards compatibility: the last source node should contain the input we use.
         // this means that extractors etc defined on the prior inputs are silently ignored.
         // TODO fix the above
-        String inputIdOnCurrentNode;
-        try {
-            // .inputId checked during raw message decode!
-            inputIdOnCurrentNode = Iterables.getLast(raw.getSourceNodes()).inputId;
-        } catch (NoSuchElementException e) {
-            inputIdOnCurrentNode = null;
-        }
-        final String baseMetricName = name(codec.getClass(), inputIdOnCurrentNode);
+        // .inputId checked during raw message decode!
+        final String inputIdOnCurrentNode = raw.getLastSourceInputId();
+        final MetricHandles metrics = codecMetrics(codec, inputIdOnCurrentNode);
 
         Message message = null;
         Collection<Message> messages = null;
@@ -143,19 +162,19 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             }
             LOG.error("Unable to decode raw message {} (journal offset {}) encoded as {} received from {}.",
                       raw.getId(), raw.getJournalOffset(), raw.getCodecName(), remote);
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            metrics.meter(FAILURES).mark();
             throw e;
         } finally {
             decodeTime = decodeTimeCtx.stop();
         }
 
         if (message != null) {
-            event.setMessage(postProcessMessage(raw, codec, inputIdOnCurrentNode, baseMetricName, message, decodeTime));
+            event.setMessage(postProcessMessage(raw, codec, inputIdOnCurrentNode, metrics, message, decodeTime));
         } else if (messages != null && !messages.isEmpty()) {
             final List<Message> processedMessages = Lists.newArrayListWithCapacity(messages.size());
 
             for (final Message msg : messages) {
-                final Message processedMessage = postProcessMessage(raw, codec, inputIdOnCurrentNode, baseMetricName, msg, decodeTime);
+                final Message processedMessage = postProcessMessage(raw, codec, inputIdOnCurrentNode, metrics, msg, decodeTime);
 
                 if (processedMessage != null) {
                     processedMessages.add(processedMessage);
@@ -166,13 +185,26 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
         }
     }
 
-    private Message postProcessMessage(RawMessage raw, Codec codec, String inputIdOnCurrentNode, String baseMetricName, Message message, long decodeTime) {
+    private MetricHandles codecMetrics(Codec codec, String inputIdOnCurrentNode) {
+        final String key = inputIdOnCurrentNode == null ? codec.getClass().getName() : inputIdOnCurrentNode;
+        MetricHandles metrics = codecMetrics.get(key);
+        if (metrics == null) {
+            metrics = CODEC_METRICS.resolve(metricRegistry, name(codec.getClass(), inputIdOnCurrentNode));
+            final MetricHandles existing = codecMetrics.putIfAbsent(key, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    private Message postProcessMessage(RawMessage raw, Codec codec, String inputIdOnCurrentNode, MetricHandles metrics, Message message, long decodeTime) {
         if (message == null) {
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            metrics.meter(FAILURES).mark();
             return null;
         }
         if (!message.isComplete()) {
-            metricRegistry.meter(name(baseMetricName, "incomplete")).mark();
+            metrics.meter(INCOMPLETE).mark();
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping incomplete message. Parsed fields: [{}]", message.getFields());
             }
@@ -181,7 +213,7 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
 
         message.setJournalOffset(raw.getJournalOffset());
         message.recordTiming(serverStatus, "parse", decodeTime);
-        metricRegistry.timer(name(baseMetricName, "parseTime")).update(decodeTime, TimeUnit.NANOSECONDS);
+        metrics.timer(PARSE_TIME).update(decodeTime, TimeUnit.NANOSECONDS);
 
         for (final RawMessage.SourceNode node : raw.getSourceNodes()) {
             switch (node.type) {
@@ -238,7 +270,7 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             message.setSource("unknown");
         }
 
-        metricRegistry.meter(name(baseMetricName, "processedMessages")).mark();
+        metrics.meter(PROCESSED_MESSAGES).mark();
         return message;
     }
 }
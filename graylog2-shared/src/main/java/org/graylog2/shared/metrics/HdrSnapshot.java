@@ -0,0 +1,77 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.AbstractHistogram;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Codahale {@link Snapshot} view of an HdrHistogram. The histogram must not be modified anymore.
+ */
+class HdrSnapshot extends Snapshot {
+    private final AbstractHistogram histogram;
+
+    HdrSnapshot(AbstractHistogram histogram) {
+        this.histogram = histogram;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        return histogram.getValueAtPercentile(quantile * 100);
+    }
+
+    @Override
+    public long[] getValues() {
+        return new long[0];
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public long getMax() {
+        return histogram.getMaxValue();
+    }
+
+    @Override
+    public double getMean() {
+        final double mean = histogram.getMean();
+        return Double.isNaN(mean) ? 0 : mean;
+    }
+
+    @Override
+    public long getMin() {
+        final long minValue = histogram.getMinValue();
+        return minValue == Long.MAX_VALUE ? 0 : minValue;
+    }
+
+    @Override
+    public double getStdDev() {
+        final double stdDeviation = histogram.getStdDeviation();
+        return Double.isNaN(stdDeviation) ? 0 : stdDeviation;
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+        histogram.outputPercentileDistribution(new PrintStream(output), 1d);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.EWMA;
+import com.codahale.metrics.Meter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link Meter} which only adds to a striped {@link LongAdder} when it is marked. Unlike the Codahale meter, marking
+ * neither reads the clock nor updates the moving averages; the rates are brought up to date when they are read, by
+ * spreading the events counted since the last read evenly over the elapsed tick intervals.
+ */
+public class LongAdderMeter extends Meter {
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final LongAdder count = new LongAdder();
+    private final EWMA m1Rate = EWMA.oneMinuteEWMA();
+    private final EWMA m5Rate = EWMA.fiveMinuteEWMA();
+    private final EWMA m15Rate = EWMA.fifteenMinuteEWMA();
+    private final Clock clock;
+    private final long startTime;
+
+    // guarded by this
+    private long lastTick;
+    private long lastTickCount = 0;
+
+    public LongAdderMeter() {
+        this(Clock.defaultClock());
+    }
+
+    public LongAdderMeter(Clock clock) {
+        super(clock);
+        this.clock = clock;
+        this.startTime = clock.getTick();
+        this.lastTick = startTime;
+    }
+
+    @Override
+    public void mark() {
+        count.increment();
+    }
+
+    @Override
+    public void mark(long n) {
+        count.add(n);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanRate() {
+        final long count = getCount();
+        if (count == 0) {
+            return 0.0;
+        }
+        final double elapsed = clock.getTick() - startTime;
+        return count / elapsed * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        tickIfNecessary();
+        return m1Rate.getRate(TimeUnit.SECONDS);
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        tickIfNecessary();
+        return m5Rate.getRate(TimeUnit.SECONDS);
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        tickIfNecessary();
+        return m15Rate.getRate(TimeUnit.SECONDS);
+    }
+
+    private synchronized void tickIfNecessary() {
+        final long age = clock.getTick() - lastTick;
+        if (age < TICK_INTERVAL) {
+            return;
+        }
+        final long ticks = age / TICK_INTERVAL;
+        lastTick += ticks * TICK_INTERVAL;
+
+        final long currentCount = count.sum();
+        final long delta = currentCount - lastTickCount;
+        lastTickCount = currentCount;
+
+        final long perTick = delta / ticks;
+        for (long i = 0; i < ticks; i++) {
+            // the remainder goes into the most recent interval
+            final long n = i == ticks - 1 ? delta - perTick * (ticks - 1) : perTick;
+            m1Rate.update(n);
+            m5Rate.update(n);
+            m15Rate.update(n);
+            m1Rate.tick();
+            m5Rate.tick();
+            m15Rate.tick();
+        }
+    }
+}
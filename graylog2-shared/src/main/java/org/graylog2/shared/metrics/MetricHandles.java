@@ -0,0 +1,55 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+
+/**
+ * The metrics of a {@link MetricLayout} resolved for one entity. Instances are immutable and meant to be cached by
+ * the caller, e.g. per input or stream id.
+ */
+public class MetricHandles {
+    private final String baseName;
+    private final Counter[] counters;
+    private final Meter[] meters;
+    private final Timer[] timers;
+
+    MetricHandles(String baseName, Counter[] counters, Meter[] meters, Timer[] timers) {
+        this.baseName = baseName;
+        this.counters = counters;
+        this.meters = meters;
+        this.timers = timers;
+    }
+
+    public String getBaseName() {
+        return baseName;
+    }
+
+    public Counter counter(int slot) {
+        return counters[slot];
+    }
+
+    public Meter meter(int slot) {
+        return meters[slot];
+    }
+
+    public Timer timer(int slot) {
+        return timers[slot];
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Declares a fixed set of metrics which exist once per entity, e.g. per input or per stream.
+ * <p/>
+ * Each declared metric gets a dense slot index. {@link #resolve(MetricRegistry, String)} registers all metrics of the
+ * layout below a base name once and returns {@link MetricHandles} which are looked up by slot index, so the hot path
+ * neither builds metric names nor goes through the registry.
+ * <p/>
+ * Meters and timers are registered as {@link LongAdderMeter} and {@link RecorderTimer}; they still show up in the
+ * registry like any other metric. Layouts are meant to be built once in a static initializer and are not thread safe
+ * while being built.
+ */
+public class MetricLayout {
+    private final List<String> counters = Lists.newArrayList();
+    private final List<String> meters = Lists.newArrayList();
+    private final List<String> timers = Lists.newArrayList();
+
+    /**
+     * @return the slot index of the counter, to be passed to {@link MetricHandles#counter(int)}
+     */
+    public int counter(String name) {
+        counters.add(name);
+        return counters.size() - 1;
+    }
+
+    /**
+     * @return the slot index of the meter, to be passed to {@link MetricHandles#meter(int)}
+     */
+    public int meter(String name) {
+        meters.add(name);
+        return meters.size() - 1;
+    }
+
+    /**
+     * @return the slot index of the timer, to be passed to {@link MetricHandles#timer(int)}
+     */
+    public int timer(String name) {
+        timers.add(name);
+        return timers.size() - 1;
+    }
+
+    public MetricHandles resolve(MetricRegistry metricRegistry, String baseName) {
+        final Counter[] resolvedCounters = new Counter[counters.size()];
+        for (int i = 0; i < resolvedCounters.length; i++) {
+            resolvedCounters[i] = metricRegistry.counter(name(baseName, counters.get(i)));
+        }
+        final Meter[] resolvedMeters = new Meter[meters.size()];
+        for (int i = 0; i < resolvedMeters.length; i++) {
+            resolvedMeters[i] = MetricUtils.lowOverheadMeter(metricRegistry, name(baseName, meters.get(i)));
+        }
+        final Timer[] resolvedTimers = new Timer[timers.size()];
+        for (int i = 0; i < resolvedTimers.length; i++) {
+            resolvedTimers[i] = MetricUtils.lowOverheadTimer(metricRegistry, name(baseName, timers.get(i)));
+        }
+        return new MetricHandles(baseName, resolvedCounters, resolvedMeters, resolvedTimers);
+    }
+}
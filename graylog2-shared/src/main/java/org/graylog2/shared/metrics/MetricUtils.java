@@ -76,6 +76,10 @@ public class MetricUtils {
 
         if (type.isEmpty()) {
             type = "gauge";
+        } else if (metric instanceof LongAdderMeter) {
+            type = "meter";
+        } else if (metric instanceof RecorderTimer) {
+            type = "timer";
         }
 
         Map<String, Object> metricMap = Maps.newHashMap();
@@ -184,6 +188,20 @@ public class MetricUtils {
         }
     }
 
+    /**
+     * Registers a {@link LongAdderMeter}, or returns the metric already registered under that name.
+     */
+    public static Meter lowOverheadMeter(MetricRegistry metricRegistry, String name) {
+        return MetricUtils.<Meter>safelyRegister(metricRegistry, name, new LongAdderMeter());
+    }
+
+    /**
+     * Registers a {@link RecorderTimer}, or returns the metric already registered under that name.
+     */
+    public static Timer lowOverheadTimer(MetricRegistry metricRegistry, String name) {
+        return MetricUtils.<Timer>safelyRegister(metricRegistry, name, new RecorderTimer());
+    }
+
     public static void safelyRegisterAll(MetricRegistry metricRegistry, MetricSet metrics) throws IllegalArgumentException {
         try {
             metricRegistry.registerAll(metrics);
@@ -0,0 +1,167 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Timer} which records into one HdrHistogram {@link SingleWriterRecorder} per thread, so recording a value
+ * never contends with other threads. The per-thread recorders are merged into a cumulative histogram whenever a
+ * snapshot is taken, recorders of threads which have died are dropped after their last values have been merged.
+ * <p/>
+ * Values larger than the highest trackable value are recorded as the highest trackable value.
+ */
+public class RecorderTimer extends Timer {
+    private static final int DEFAULT_SIGNIFICANT_DIGITS = 1;
+
+    private final long highestTrackableNanos;
+    private final int numberOfSignificantValueDigits;
+    private final LongAdderMeter meter;
+    private final Clock clock;
+
+    // guarded by recorders
+    private final List<ThreadRecorder> recorders = Lists.newArrayList();
+    // guarded by recorders
+    private final Histogram accumulated;
+
+    private final ThreadLocal<SingleWriterRecorder> threadRecorder = new ThreadLocal<SingleWriterRecorder>() {
+        @Override
+        protected SingleWriterRecorder initialValue() {
+            return register(new SingleWriterRecorder(highestTrackableNanos, numberOfSignificantValueDigits));
+        }
+    };
+
+    public RecorderTimer() {
+        this(1, TimeUnit.MINUTES, DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    public RecorderTimer(long highestTrackableValue, TimeUnit unit, int numberOfSignificantValueDigits) {
+        this(highestTrackableValue, unit, numberOfSignificantValueDigits, Clock.defaultClock());
+    }
+
+    public RecorderTimer(long highestTrackableValue, TimeUnit unit, int numberOfSignificantValueDigits, Clock clock) {
+        // the reservoir of the base class is never updated
+        super(new SlidingWindowReservoir(1), clock);
+        this.highestTrackableNanos = unit.toNanos(highestTrackableValue);
+        this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+        this.accumulated = new Histogram(highestTrackableNanos, numberOfSignificantValueDigits);
+        this.meter = new LongAdderMeter(clock);
+        this.clock = clock;
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            return;
+        }
+        threadRecorder.get().recordValue(Math.min(unit.toNanos(duration), highestTrackableNanos));
+        meter.mark();
+    }
+
+    @Override
+    public <T> T time(Callable<T> event) throws Exception {
+        final long startTime = clock.getTick();
+        try {
+            return event.call();
+        } finally {
+            update(clock.getTick() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return meter.getCount();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return meter.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return meter.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate() {
+        return meter.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return meter.getOneMinuteRate();
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        synchronized (recorders) {
+            final Iterator<ThreadRecorder> iterator = recorders.iterator();
+            while (iterator.hasNext()) {
+                final ThreadRecorder recorder = iterator.next();
+                accumulated.add(recorder.recorder.getIntervalHistogram());
+                if (recorder.isOrphaned()) {
+                    iterator.remove();
+                }
+            }
+            return new HdrSnapshot(accumulated.copy());
+        }
+    }
+
+    private SingleWriterRecorder register(SingleWriterRecorder recorder) {
+        synchronized (recorders) {
+            final Iterator<ThreadRecorder> iterator = recorders.iterator();
+            while (iterator.hasNext()) {
+                final ThreadRecorder threadRecorder = iterator.next();
+                if (threadRecorder.isOrphaned()) {
+                    // the owning thread is gone and cannot write anymore, keep what it has recorded
+                    accumulated.add(threadRecorder.recorder.getIntervalHistogram());
+                    iterator.remove();
+                }
+            }
+            recorders.add(new ThreadRecorder(Thread.currentThread(), recorder));
+        }
+        return recorder;
+    }
+
+    private static class ThreadRecorder {
+        private final WeakReference<Thread> owner;
+        private final SingleWriterRecorder recorder;
+
+        private ThreadRecorder(Thread owner, SingleWriterRecorder recorder) {
+            this.owner = new WeakReference<>(owner);
+            this.recorder = recorder;
+        }
+
+        private boolean isOrphaned() {
+            final Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+}
@@ -16,43 +16,86 @@
  */
 package org.graylog2.shared.stats;
 
-import org.cliffc.high_scale_lib.Counter;
+import com.google.common.collect.ImmutableMap;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Per-stream throughput counters. The counters are striped {@link LongAdder}s which are created once per stream, so
+ * counting a message never allocates and never takes a lock.
+ *
  * @author Dennis Oelkers <dennis@torch.sh>
  */
 @Deprecated
 public class ThroughputStats {
-    private final AtomicReference<ConcurrentHashMap<String, Counter>> streamThroughput;
-    private final AtomicReference<HashMap<String, Counter>> currentStreamThroughput;
+    private final ConcurrentMap<String, LongAdder> streamThroughput;
+    private final AtomicReference<Map<String, Long>> currentStreamThroughput;
 
 
     public ThroughputStats() {
-        this.streamThroughput = new AtomicReference<>(new ConcurrentHashMap<String, Counter>());
-        this.currentStreamThroughput =  new AtomicReference<>();
+        this.streamThroughput = new ConcurrentHashMap<>();
+        this.currentStreamThroughput = new AtomicReference<>();
     }
 
-    public Map<String, Counter> cycleStreamThroughput() {
-        return streamThroughput.getAndSet(new ConcurrentHashMap<String, Counter>());
+    /**
+     * Resolves the throughput counters of the given streams. The returned array has the same order as the given
+     * stream IDs, so callers can keep it and increment the counters by their dense stream index.
+     */
+    public LongAdder[] getStreamThroughputCounters(List<String> streamIds) {
+        final LongAdder[] counters = new LongAdder[streamIds.size()];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = getStreamThroughputCounter(streamIds.get(i));
+        }
+        return counters;
     }
 
     public void incrementStreamThroughput(String streamId) {
-        final ConcurrentHashMap<String, Counter> counterMap = streamThroughput.get();
-        counterMap.putIfAbsent(streamId, new Counter());
-        counterMap.get(streamId).increment();
+        getStreamThroughputCounter(streamId).increment();
+    }
+
+    /**
+     * Returns the number of messages per stream since the last call and resets the counters.
+     */
+    public Map<String, Long> cycleStreamThroughput() {
+        final ImmutableMap.Builder<String, Long> snapshot = ImmutableMap.builder();
+        for (Map.Entry<String, LongAdder> entry : streamThroughput.entrySet()) {
+            final long count = entry.getValue().sumThenReset();
+            if (count > 0) {
+                snapshot.put(entry.getKey(), count);
+            }
+        }
+        return snapshot.build();
     }
 
-    public void setCurrentStreamThroughput(HashMap<String, Counter> throughput) {
+    /**
+     * Removes the counters of all streams which are not in the given collection, e.g. deleted or disabled streams.
+     * Streams which come back get a new counter once they are resolved again.
+     */
+    public void retainStreams(Collection<String> streamIds) {
+        streamThroughput.keySet().retainAll(streamIds);
+    }
+
+    public void setCurrentStreamThroughput(Map<String, Long> throughput) {
         currentStreamThroughput.set(throughput);
     }
 
-    public HashMap<String, Counter> getCurrentStreamThroughput() {
+    public Map<String, Long> getCurrentStreamThroughput() {
         return currentStreamThroughput.get();
     }
 
+    private LongAdder getStreamThroughputCounter(String streamId) {
+        final LongAdder counter = streamThroughput.get(streamId);
+        if (counter != null) {
+            return counter;
+        }
+        final LongAdder newCounter = new LongAdder();
+        final LongAdder existingCounter = streamThroughput.putIfAbsent(streamId, newCounter);
+        return existingCounter == null ? newCounter : existingCounter;
+    }
 }
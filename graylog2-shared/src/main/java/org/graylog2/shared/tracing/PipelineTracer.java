@@ -0,0 +1,254 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.tracing;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.EvictingQueue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageTrace;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.rest.models.system.traces.responses.MessageTraceSummary;
+import org.graylog2.shared.metrics.HdrHistogram;
+import org.graylog2.shared.metrics.MetricUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Collects the {@link MessageTrace stage latencies} of messages into one {@link HdrHistogram} per stage, per input
+ * and per stream, e.g. {@code org.graylog2.plugin.inputs.MessageInput.<input id>.latency.decode}. The histograms
+ * track microseconds.
+ * <p/>
+ * Traces are started after decoding and completed once the default output acknowledged the message, or when the
+ * message was filtered out. Every {@code message_tracing_sample_rate}th completed trace is additionally kept in a
+ * small buffer to be inspected through the REST API.
+ */
+@Singleton
+public class PipelineTracer {
+    // everything slower than that is recorded as the highest trackable value
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final MetricRegistry metricRegistry;
+    private final boolean enabled;
+    private final int sampleRate;
+    private final EvictingQueue<MessageTraceSummary> samples;
+
+    private final ConcurrentMap<String, StageHistograms> inputHistograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, StageHistograms> streamHistograms = new ConcurrentHashMap<>();
+
+    @Inject
+    public PipelineTracer(MetricRegistry metricRegistry,
+                          @Named("message_tracing_enabled") boolean enabled,
+                          @Named("message_tracing_sample_rate") int sampleRate,
+                          @Named("message_tracing_buffer_size") int bufferSize) {
+        this.metricRegistry = metricRegistry;
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.samples = EvictingQueue.create(Math.max(bufferSize, 1));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Starts the trace of a freshly decoded message.
+     *
+     * @param receivedAt  the receive timestamp of the raw message in milliseconds
+     * @param queuedNanos the time the raw message waited in the process buffer
+     * @param decodeNanos the time it took to decode the raw message
+     */
+    public void begin(Message message, long receivedAt, long queuedNanos, long decodeNanos) {
+        if (!enabled) {
+            return;
+        }
+        final MessageTrace trace = new MessageTrace(receivedAt);
+        // the receive timestamp went through the journal, so this is only precise to the millisecond
+        final long sinceReceived = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - receivedAt);
+        trace.record(MessageTrace.JOURNAL_READ, sinceReceived - queuedNanos - decodeNanos);
+        trace.record(MessageTrace.PROCESS_QUEUE, queuedNanos);
+        trace.record(MessageTrace.DECODE, decodeNanos);
+        message.setTrace(trace);
+    }
+
+    /**
+     * Records a stage which happened before the message was decoded, i.e. where no {@link Message} exists yet.
+     */
+    public void recordInputStage(@Nullable String inputId, String stage, long elapsedNanos) {
+        if (!enabled || inputId == null) {
+            return;
+        }
+        histograms(inputHistograms, MessageInput.class, inputId).update(stage, elapsedNanos);
+    }
+
+    /**
+     * Completes the trace of a message which has been acknowledged by the default output.
+     */
+    public void complete(Message message) {
+        final MessageTrace trace = message.getTrace();
+        if (trace == null) {
+            return;
+        }
+        // a message can be written to the same output type more than once, only the first one counts
+        message.setTrace(null);
+
+        trace.record(MessageTrace.TOTAL, TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - trace.getReceivedAt()));
+        recordAll(message, trace);
+
+        if (sampleRate > 0 && ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            sample(message, trace);
+        }
+    }
+
+    /**
+     * Records the stages of a message which has been filtered out and will never reach the outputs.
+     */
+    public void discard(Message message) {
+        final MessageTrace trace = message.getTrace();
+        if (trace == null) {
+            return;
+        }
+        message.setTrace(null);
+        recordAll(message, trace);
+    }
+
+    /**
+     * @return the most recently sampled traces, oldest first
+     */
+    public List<MessageTraceSummary> getSampledTraces() {
+        synchronized (samples) {
+            return ImmutableList.copyOf(samples);
+        }
+    }
+
+    /**
+     * Drops the histograms of all streams which are not in the given collection, e.g. deleted or disabled streams.
+     */
+    public void retainStreams(Collection<String> streamIds) {
+        final Iterator<StageHistograms> it = streamHistograms.values().iterator();
+        while (it.hasNext()) {
+            final StageHistograms histograms = it.next();
+            if (!streamIds.contains(histograms.id)) {
+                it.remove();
+                histograms.unregister();
+            }
+        }
+    }
+
+    private void recordAll(Message message, MessageTrace trace) {
+        final String inputId = message.getSourceInputId();
+        if (inputId != null) {
+            recordAll(histograms(inputHistograms, MessageInput.class, inputId), trace);
+        }
+        for (Stream stream : message.getStreams()) {
+            recordAll(histograms(streamHistograms, Stream.class, stream.getId()), trace);
+        }
+    }
+
+    private void recordAll(StageHistograms histograms, MessageTrace trace) {
+        for (int i = 0; i < trace.size(); i++) {
+            histograms.update(trace.getStage(i), trace.getElapsedNanos(i));
+        }
+    }
+
+    private void sample(Message message, MessageTrace trace) {
+        final List<String> streamIds = Lists.newArrayListWithCapacity(message.getStreams().size());
+        for (Stream stream : message.getStreams()) {
+            streamIds.add(stream.getId());
+        }
+        final Map<String, Long> stages = Maps.newLinkedHashMap();
+        for (int i = 0; i < trace.size(); i++) {
+            stages.put(trace.getStage(i), TimeUnit.NANOSECONDS.toMicros(trace.getElapsedNanos(i)));
+        }
+        final MessageTraceSummary summary = MessageTraceSummary.create(message.getId(),
+                message.getSourceInputId(),
+                streamIds,
+                new DateTime(trace.getReceivedAt(), DateTimeZone.UTC),
+                stages);
+
+        synchronized (samples) {
+            samples.add(summary);
+        }
+    }
+
+    private StageHistograms histograms(ConcurrentMap<String, StageHistograms> histograms, Class<?> type, String id) {
+        StageHistograms stageHistograms = histograms.get(id);
+        if (stageHistograms == null) {
+            final StageHistograms newHistograms = new StageHistograms(id, name(type, id, "latency"));
+            stageHistograms = histograms.putIfAbsent(id, newHistograms);
+            if (stageHistograms == null) {
+                stageHistograms = newHistograms;
+            }
+        }
+        return stageHistograms;
+    }
+
+    private class StageHistograms {
+        private final String id;
+        private final String baseName;
+        private final ConcurrentMap<String, HdrHistogram> histograms = new ConcurrentHashMap<>();
+
+        private StageHistograms(String id, String baseName) {
+            this.id = id;
+            this.baseName = baseName;
+        }
+
+        private void update(String stage, long elapsedNanos) {
+            HdrHistogram histogram = histograms.get(stage);
+            if (histogram == null) {
+                histogram = MetricUtils.safelyRegister(metricRegistry, name(baseName, stage),
+                        new HdrHistogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+                histograms.putIfAbsent(stage, histogram);
+            }
+            histogram.update(Math.min(TimeUnit.NANOSECONDS.toMicros(elapsedNanos), HIGHEST_TRACKABLE_MICROS));
+        }
+
+        private void unregister() {
+            metricRegistry.removeMatching(new MetricFilter() {
+                @Override
+                public boolean matches(String name, Metric metric) {
+                    return name.startsWith(baseName + ".");
+                }
+            });
+        }
+    }
+}
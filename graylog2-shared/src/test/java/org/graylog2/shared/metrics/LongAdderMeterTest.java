@@ -0,0 +1,89 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LongAdderMeterTest {
+    private ManualClock clock;
+    private LongAdderMeter meter;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock();
+        meter = new LongAdderMeter(clock);
+    }
+
+    @Test
+    public void countsMarks() {
+        meter.mark();
+        meter.mark(41);
+
+        assertEquals(42, meter.getCount());
+    }
+
+    @Test
+    public void ratesAreZeroWithoutMarks() {
+        clock.advance(1, TimeUnit.MINUTES);
+
+        assertEquals(0.0, meter.getMeanRate(), 0.0);
+        assertEquals(0.0, meter.getOneMinuteRate(), 0.0);
+    }
+
+    @Test
+    public void ratesFollowTheMarkedEvents() {
+        meter.mark(50);
+        clock.advance(5, TimeUnit.SECONDS);
+
+        assertEquals(10.0, meter.getMeanRate(), 0.001);
+        // the first tick initializes the moving averages with the rate of the interval
+        assertEquals(10.0, meter.getOneMinuteRate(), 0.001);
+        assertEquals(10.0, meter.getFiveMinuteRate(), 0.001);
+        assertEquals(10.0, meter.getFifteenMinuteRate(), 0.001);
+    }
+
+    @Test
+    public void ratesDecayWhileIdle() {
+        meter.mark(50);
+        clock.advance(5, TimeUnit.SECONDS);
+        final double rate = meter.getOneMinuteRate();
+
+        clock.advance(1, TimeUnit.MINUTES);
+
+        assertTrue(meter.getOneMinuteRate() < rate);
+    }
+
+    private static class ManualClock extends Clock {
+        private long tick = 0;
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+
+        private void advance(long duration, TimeUnit unit) {
+            tick += unit.toNanos(duration);
+        }
+    }
+}
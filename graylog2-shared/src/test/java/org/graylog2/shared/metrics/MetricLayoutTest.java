@@ -0,0 +1,76 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricLayoutTest {
+    private static final MetricLayout LAYOUT = new MetricLayout();
+    private static final int FAILURES = LAYOUT.meter("failures");
+    private static final int PROCESSED = LAYOUT.meter("processed");
+    private static final int RUNNING = LAYOUT.counter("running");
+    private static final int EXECUTION_TIME = LAYOUT.timer("executionTime");
+
+    @Test
+    public void resolveRegistersAllMetrics() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final MetricHandles handles = LAYOUT.resolve(metricRegistry, "foo.bar");
+
+        handles.meter(PROCESSED).mark(3);
+        handles.counter(RUNNING).inc();
+
+        assertEquals("foo.bar", handles.getBaseName());
+        assertEquals(4, metricRegistry.getMetrics().size());
+        assertSame(handles.meter(FAILURES), metricRegistry.getMeters().get("foo.bar.failures"));
+        assertSame(handles.timer(EXECUTION_TIME), metricRegistry.getTimers().get("foo.bar.executionTime"));
+        assertEquals(3, metricRegistry.meter("foo.bar.processed").getCount());
+        assertEquals(1, metricRegistry.counter("foo.bar.running").getCount());
+    }
+
+    @Test
+    public void resolveReusesRegisteredMetrics() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final Meter existing = metricRegistry.meter("foo.bar.failures");
+
+        final MetricHandles first = LAYOUT.resolve(metricRegistry, "foo.bar");
+        final MetricHandles second = LAYOUT.resolve(metricRegistry, "foo.bar");
+
+        assertSame(existing, first.meter(FAILURES));
+        assertSame(first.timer(EXECUTION_TIME), second.timer(EXECUTION_TIME));
+    }
+
+    @Test
+    public void lowOverheadMetricsAreReportedWithTheirGenericType() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final MetricHandles handles = LAYOUT.resolve(metricRegistry, "foo.bar");
+
+        final Map<String, Object> meter = MetricUtils.map("foo.bar.processed", handles.meter(PROCESSED));
+        final Map<String, Object> timer = MetricUtils.map("foo.bar.executionTime", handles.timer(EXECUTION_TIME));
+
+        assertEquals("meter", meter.get("type"));
+        assertEquals("timer", timer.get("type"));
+        assertTrue(handles.meter(PROCESSED) instanceof LongAdderMeter);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecorderTimerTest {
+    @Test
+    public void snapshotContainsRecordedValues() {
+        final RecorderTimer timer = new RecorderTimer(1, TimeUnit.SECONDS, 2);
+        timer.update(10, TimeUnit.MILLISECONDS);
+        timer.update(20, TimeUnit.MILLISECONDS);
+
+        final Snapshot snapshot = timer.getSnapshot();
+
+        assertEquals(2, timer.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), snapshot.getMin(), TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), snapshot.getMax(), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void snapshotIsCumulative() {
+        final RecorderTimer timer = new RecorderTimer(1, TimeUnit.SECONDS, 2);
+        timer.update(10, TimeUnit.MILLISECONDS);
+        timer.getSnapshot();
+        timer.update(20, TimeUnit.MILLISECONDS);
+
+        final Snapshot snapshot = timer.getSnapshot();
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), snapshot.getMin(), TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), snapshot.getMax(), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void mergesValuesOfAllThreads() throws Exception {
+        final RecorderTimer timer = new RecorderTimer(1, TimeUnit.SECONDS, 2);
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final long millis = i + 1;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        timer.update(millis, TimeUnit.MILLISECONDS);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // the recording threads are dead by now, their values must not get lost
+        final Snapshot snapshot = timer.getSnapshot();
+
+        assertEquals(400, timer.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), snapshot.getMin(), TimeUnit.MILLISECONDS.toNanos(1) / 10);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(4), snapshot.getMax(), TimeUnit.MILLISECONDS.toNanos(1) / 10);
+    }
+
+    @Test
+    public void clampsValuesAboveHighestTrackableValue() {
+        final RecorderTimer timer = new RecorderTimer(1, TimeUnit.SECONDS, 2);
+        timer.update(1, TimeUnit.HOURS);
+        timer.update(-1, TimeUnit.SECONDS);
+
+        assertEquals(1, timer.getCount());
+        assertTrue(timer.getSnapshot().getMax() >= TimeUnit.SECONDS.toNanos(1) * 99 / 100);
+    }
+
+    @Test
+    public void timesCallables() throws Exception {
+        final RecorderTimer timer = new RecorderTimer();
+
+        final String result = timer.time(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "done";
+            }
+        });
+
+        assertEquals("done", result);
+        assertEquals(1, timer.getCount());
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.stats;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ThroughputStatsTest {
+    @Test
+    public void cycleResetsCounters() {
+        final ThroughputStats stats = new ThroughputStats();
+        stats.incrementStreamThroughput("stream-1");
+        stats.incrementStreamThroughput("stream-1");
+
+        assertThat(stats.cycleStreamThroughput()).containsEntry("stream-1", 2L).hasSize(1);
+        assertThat(stats.cycleStreamThroughput()).isEmpty();
+    }
+
+    @Test
+    public void retainStreamsRemovesCountersOfOtherStreams() {
+        final ThroughputStats stats = new ThroughputStats();
+        final LongAdder[] counters = stats.getStreamThroughputCounters(ImmutableList.of("stream-1", "stream-2"));
+
+        stats.retainStreams(ImmutableList.of("stream-1"));
+        counters[0].increment();
+        counters[1].increment();
+
+        assertThat(stats.cycleStreamThroughput()).containsEntry("stream-1", 1L).doesNotContainKey("stream-2");
+        assertThat(stats.getStreamThroughputCounters(ImmutableList.of("stream-1"))[0]).isSameAs(counters[0]);
+        assertThat(stats.getStreamThroughputCounters(ImmutableList.of("stream-2"))[0]).isNotSameAs(counters[1]);
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.tracing;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageTrace;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.rest.models.system.traces.responses.MessageTraceSummary;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PipelineTracerTest {
+    private MetricRegistry metricRegistry;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+    }
+
+    @Test
+    public void completeRecordsStagesPerInputAndStream() {
+        final PipelineTracer tracer = new PipelineTracer(metricRegistry, true, 0, 10);
+        final Message message = buildMessage("stream-1");
+
+        tracer.begin(message, System.currentTimeMillis(), TimeUnit.MICROSECONDS.toNanos(5), TimeUnit.MICROSECONDS.toNanos(20));
+        message.recordStage(MessageTrace.FILTER_PREFIX + "TestFilter", TimeUnit.MICROSECONDS.toNanos(30));
+        tracer.complete(message);
+
+        assertNull(message.getTrace());
+        for (String stage : new String[]{MessageTrace.JOURNAL_READ, MessageTrace.PROCESS_QUEUE, MessageTrace.DECODE,
+                MessageTrace.FILTER_PREFIX + "TestFilter", MessageTrace.TOTAL}) {
+            assertEquals(1, histogram(MessageInput.class, "input-1", stage).getCount());
+            assertEquals(1, histogram(Stream.class, "stream-1", stage).getCount());
+        }
+        assertEquals(30, histogram(MessageInput.class, "input-1", MessageTrace.FILTER_PREFIX + "TestFilter").getSnapshot().getMax());
+    }
+
+    @Test
+    public void completeIsOnlyCountedOnce() {
+        final PipelineTracer tracer = new PipelineTracer(metricRegistry, true, 0, 10);
+        final Message message = buildMessage("stream-1");
+
+        tracer.begin(message, System.currentTimeMillis(), 0, 0);
+        tracer.complete(message);
+        tracer.complete(message);
+
+        assertEquals(1, histogram(MessageInput.class, "input-1", MessageTrace.TOTAL).getCount());
+    }
+
+    @Test
+    public void discardDoesNotRecordTotal() {
+        final PipelineTracer tracer = new PipelineTracer(metricRegistry, true, 1, 10);
+        final Message message = buildMessage();
+
+        tracer.begin(message, System.currentTimeMillis(), 0, 0);
+        tracer.discard(message);
+
+        assertEquals(1, histogram(MessageInput.class, "input-1", MessageTrace.DECODE).getCount());
+        assertNull(metricRegistry.getHistograms().get(name(MessageInput.class, "input-1", "latency", MessageTrace.TOTAL)));
+        assertTrue(tracer.getSampledTraces().isEmpty());
+    }
+
+    @Test
+    public void disabledTracerDoesNotStartTraces() {
+        final PipelineTracer tracer = new PipelineTracer(metricRegistry, false, 1, 10);
+        final Message message = buildMessage();
+
+        tracer.begin(message, System.currentTimeMillis(), 0, 0);
+        tracer.recordInputStage("input-1", MessageTrace.JOURNAL_WRITE, 1000);
+
+        assertFalse(tracer.isEnabled());
+        assertNull(message.getTrace());
+        assertTrue(metricRegistry.getHistograms().isEmpty());
+    }
+
+    @Test
+    public void sampledTracesAreBounded() {
+        final PipelineTracer tracer = new PipelineTracer(metricRegistry, true, 1, 2);
+        Message last = null;
+        for (int i = 0; i < 3; i++) {
+            last = buildMessage("stream-1");
+            tracer.begin(last, System.currentTimeMillis(), 0, TimeUnit.MICROSECONDS.toNanos(42));
+            tracer.complete(last);
+        }
+
+        final List<MessageTraceSummary> traces = tracer.getSampledTraces();
+        assertEquals(2, traces.size());
+
+        final MessageTraceSummary summary = traces.get(1);
+        assertEquals(last.getId(), summary.messageId());
+        assertEquals("input-1", summary.inputId());
+        assertEquals("stream-1", summary.streamIds().get(0));
+        assertEquals(Long.valueOf(42), summary.stages().get(MessageTrace.DECODE));
+        assertNotNull(summary.stages().get(MessageTrace.TOTAL));
+    }
+
+    @Test
+    public void retainStreamsUnregistersHistogramsOfRemovedStreams() {
+        final PipelineTracer tracer = new PipelineTracer(metricRegistry, true, 0, 10);
+        final Message message = buildMessage("stream-1", "stream-2");
+
+        tracer.begin(message, System.currentTimeMillis(), 0, 0);
+        tracer.complete(message);
+        tracer.retainStreams(ImmutableList.of("stream-2"));
+
+        assertNull(metricRegistry.getHistograms().get(name(Stream.class, "stream-1", "latency", MessageTrace.TOTAL)));
+        assertEquals(1, histogram(Stream.class, "stream-2", MessageTrace.TOTAL).getCount());
+        assertEquals(1, histogram(MessageInput.class, "input-1", MessageTrace.TOTAL).getCount());
+
+        // a re-created stream starts with fresh histograms
+        final Message next = buildMessage("stream-1");
+        tracer.begin(next, System.currentTimeMillis(), 0, 0);
+        tracer.complete(next);
+        assertEquals(1, histogram(Stream.class, "stream-1", MessageTrace.TOTAL).getCount());
+    }
+
+    private Histogram histogram(Class<?> type, String id, String stage) {
+        final Histogram histogram = metricRegistry.getHistograms().get(name(type, id, "latency", stage));
+        assertNotNull("Missing histogram for " + stage, histogram);
+        return histogram;
+    }
+
+    private Message buildMessage(String... streamIds) {
+        final Message message = new Message("message", "source", Tools.iso8601());
+        message.setSourceInputId("input-1");
+        final List<Stream> streams = Lists.newArrayList();
+        for (String streamId : streamIds) {
+            final Stream stream = mock(Stream.class);
+            when(stream.getId()).thenReturn(streamId);
+            streams.add(stream);
+        }
+        message.setStreams(streams);
+        return message;
+    }
+}